@@ -2,12 +2,19 @@ package com.jdb;
 
 import com.jdb.buffer.BufferManager;
 import com.jdb.index.BTreeFile;
+import com.jdb.index.CoveringIndexFile;
+import com.jdb.index.KeyCodec;
+import com.jdb.index.NonUniqueBTreeFile;
+import com.jdb.index.VarIndexEntry;
+import com.jdb.index.VarKeyBTreeFile;
 import com.jdb.storage.*;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
 import java.awt.*;
+import java.util.Iterator;
+import java.util.List;
 
 public class DBGui {
     private JFrame frame;
@@ -20,6 +27,16 @@ public class DBGui {
     private HeapFile heapFile;
     private BufferManager indexBm;
     private TupleDesc schema;
+    private VarKeyBTreeFile nameIndex;
+    private BufferManager nameIndexBm;
+    private KeyCodec nameCodec;
+    private NonUniqueBTreeFile ageIndex;
+    private BufferManager ageIndexBm;
+    private KeyCodec ageCodec;
+    private CoveringIndexFile coveringIndex;
+    private BufferManager coveringIndexBm;
+    private KeyCodec idCodec;
+    private KeyCodec includedCodec;
 
     // --- COLORS (Dark Theme) ---
     private final Color BG_COLOR = new Color(30, 30, 30);        // Dark Gray
@@ -30,12 +47,25 @@ public class DBGui {
     private final Color BTN_SEARCH = new Color(33, 150, 243);    // Blue
     private final Color BTN_EXIT = new Color(244, 67, 54);       // Red
 
-    public DBGui(HeapPage heapPage, BTreeFile index, HeapFile heapFile, BufferManager indexBm, TupleDesc schema) {
+    public DBGui(HeapPage heapPage, BTreeFile index, HeapFile heapFile, BufferManager indexBm, TupleDesc schema,
+                 VarKeyBTreeFile nameIndex, BufferManager nameIndexBm,
+                 NonUniqueBTreeFile ageIndex, BufferManager ageIndexBm,
+                 CoveringIndexFile coveringIndex, BufferManager coveringIndexBm) {
         this.heapPage = heapPage;
         this.index = index;
         this.heapFile = heapFile;
         this.indexBm = indexBm;
         this.schema = schema;
+        this.nameIndex = nameIndex;
+        this.nameIndexBm = nameIndexBm;
+        this.nameCodec = KeyCodec.forColumns(schema, 1);
+        this.ageIndex = ageIndex;
+        this.ageIndexBm = ageIndexBm;
+        this.ageCodec = KeyCodec.forColumns(schema, 2);
+        this.coveringIndex = coveringIndex;
+        this.coveringIndexBm = coveringIndexBm;
+        this.idCodec = KeyCodec.forColumns(schema, 0);
+        this.includedCodec = KeyCodec.forColumns(schema, 1, 2);
         initializeUI();
     }
 
@@ -81,11 +111,11 @@ public class DBGui {
         searchPanel.setLayout(new BorderLayout(10, 10));
 
         searchField = createStyledField();
-        JButton searchBtn = createStyledButton("SEARCH ID", BTN_SEARCH);
+        JButton searchBtn = createStyledButton("SEARCH", BTN_SEARCH);
 
         JPanel searchInputContainer = new JPanel(new BorderLayout(5, 0));
         searchInputContainer.setBackground(PANEL_COLOR);
-        JLabel searchLbl = new JLabel("Enter ID: ");
+        JLabel searchLbl = new JLabel("ID, Name or age=N: ");
         searchLbl.setForeground(TEXT_COLOR);
         
         searchInputContainer.add(searchLbl, BorderLayout.WEST);
@@ -141,6 +171,9 @@ public class DBGui {
 
                 int slot = heapPage.insertTuple(t);
                 index.insert(id, new RecordId(0, slot));
+                nameIndex.insert(nameCodec.encode(t), new RecordId(0, slot));
+                ageIndex.insert(ageCodec.encode(t), new RecordId(0, slot));
+                coveringIndex.insert(idCodec.encode(t), new RecordId(0, slot), includedCodec.encode(t));
 
                 log(">> Inserted: [" + name + "] (ID: " + id + ") at Slot " + slot);
                 
@@ -154,22 +187,25 @@ public class DBGui {
 
         searchBtn.addActionListener(e -> {
             try {
-                int key = Integer.parseInt(searchField.getText());
+                String input = searchField.getText();
+                if (input.startsWith("age=")) {
+                    searchByAge(Integer.parseInt(input.substring(4).trim()));
+                    return;
+                }
+                if (!input.matches("-?\\d+")) {
+                    searchByName(input);
+                    return;
+                }
+                int key = Integer.parseInt(input);
                 long start = System.nanoTime();
-                RecordId rid = index.find(key);
+                VarIndexEntry hit = coveringIndex.lookup(idCodec.encode(key));
                 long end = System.nanoTime();
 
-                if (rid != null) {
-                    log("Index Hit! (" + (end - start) + "ns)");
-                    Tuple t;
-                    if (rid.pageId == 0) {
-                        t = heapPage.getTuple(rid.slotNumber, schema);
-                    } else {
-                        // In a real scenario, fetch via buffer pool
-                        Page p = heapFile.readPage(rid.pageId); 
-                        t = new HeapPage(p).getTuple(rid.slotNumber, schema);
-                    }
-                    log(">> FOUND: ID=" + t.getField(0) + ", Name=" + t.getField(1)+", Age="+ t.getField(2));
+                if (hit != null) {
+                    // Name and age come from the index leaf: no heap read
+                    log("Index Hit! (" + (end - start) + "ns, covered)");
+                    Object[] row = includedCodec.decode(hit.included);
+                    log(">> FOUND: ID=" + key + ", Name=" + row[0] + ", Age=" + row[1]);
                 } else {
                     log(">> ID " + key + " not found.");
                 }
@@ -183,6 +219,9 @@ public class DBGui {
             try {
                 heapFile.writePage(heapPage.getPage());
                 indexBm.flushAll();
+                nameIndexBm.flushAll();
+                ageIndexBm.flushAll();
+                coveringIndexBm.flushAll();
                 log("Saved. Exiting...");
                 frame.dispose();
                 System.out.println("=== AUTO-TRIGGER: Running DBReader... ===");
@@ -193,6 +232,54 @@ public class DBGui {
         });
     }
 
+    /**
+     * Every row with exactly this name, via the name index (names aren't unique).
+     */
+    private void searchByName(String name) {
+        byte[] key = nameCodec.encode(name);
+        long start = System.nanoTime();
+        int hits = 0;
+        Iterator<VarIndexEntry> it = nameIndex.scan(key, key);
+        while (it.hasNext()) {
+            Tuple t = readTuple(it.next().rid);
+            log(">> FOUND: ID=" + t.getField(0) + ", Name=" + t.getField(1) + ", Age=" + t.getField(2));
+            hits++;
+        }
+        long end = System.nanoTime();
+        if (hits > 0) {
+            log("Name index: " + hits + " match(es) (" + (end - start) + "ns)");
+        } else {
+            log(">> Name '" + name + "' not found.");
+        }
+    }
+
+    /**
+     * All rows of one age, from the age index's posting list.
+     */
+    private void searchByAge(int age) {
+        long start = System.nanoTime();
+        List<RecordId> rids = ageIndex.lookup(ageCodec.encode(age));
+        long end = System.nanoTime();
+        for (RecordId rid : rids) {
+            Tuple t = readTuple(rid);
+            log(">> FOUND: ID=" + t.getField(0) + ", Name=" + t.getField(1) + ", Age=" + t.getField(2));
+        }
+        if (rids.isEmpty()) {
+            log(">> No rows with age " + age + ".");
+        } else {
+            log("Age index: " + rids.size() + " row(s) (" + (end - start) + "ns)");
+        }
+    }
+
+    private Tuple readTuple(RecordId rid) {
+        if (rid.pageId == 0) {
+            return heapPage.getTuple(rid.slotNumber, schema);
+        }
+        // In a real scenario, fetch via buffer pool
+        Page p = heapFile.readPage(rid.pageId);
+        return new HeapPage(p).getTuple(rid.slotNumber, schema);
+    }
+
     public void show() {
         frame.setVisible(true);
         log("GUI Initialized. AeroDB Ready.");
@@ -1,8 +1,10 @@
 package com.jdb;
 
+import com.jdb.buffer.BufferManager;
+import com.jdb.buffer.ScanRing;
 import com.jdb.storage.*;
 import java.io.File;
-import java.io.RandomAccessFile;
+import java.io.IOException;
 
 public class DBReader {
     public static void main(String[] args) {
@@ -25,45 +27,44 @@ public class DBReader {
         System.out.printf("%-10s %-20s %-10s%n", "ID", "NAME", "AGE");
         System.out.println("------------------------------------------");
 
-        try {
-            RandomAccessFile raf = new RandomAccessFile(dbFile, "r");
-            
-            // Matches Page.PAGE_SIZE (assuming 4096 or similar constant in your Page class)
-            // If you haven't defined it, check Page.java (usually 4096)
-            int pageSize = 4096; 
-            
-            long fileLength = raf.length();
-            int numPages = (int) (fileLength / pageSize);
+        HeapFile heapFile = new HeapFile(dbFile);
+        BufferManager bm = new BufferManager(heapFile, 64);
+
+        // A full scan: go through a small private ring of frames with read-ahead,
+        // so the scan doesn't flush the pool and the next pages load in the background
+        try (ScanRing ring = bm.newScanRing(8, 8)) {
+            int numPages = heapFile.getNumPages();
 
             for (int i = 0; i < numPages; i++) {
-                // Read raw page bytes
-                byte[] data = new byte[pageSize];
-                raf.read(data);
+                Page rawPage = bm.fetchPage(i, ring);
+                try {
+                    HeapPage heapPage = new HeapPage(rawPage);
 
-                // Load into HeapPage
-                Page rawPage = new Page(i, data);
-                HeapPage heapPage = new HeapPage(rawPage);
+                    // Your HeapPage tracks the exact count of tuples.
+                    // We loop exactly from 0 to getNumTuples() - 1.
+                    int count = heapPage.getNumTuples();
 
-                // --- KEY CHANGE HERE ---
-                // Your HeapPage tracks the exact count of tuples.
-                // We loop exactly from 0 to getNumTuples() - 1.
-                int count = heapPage.getNumTuples();
-                
-                for (int slot = 0; slot < count; slot++) {
-                    Tuple t = heapPage.getTuple(slot, schema);
-                    
-                    System.out.printf("%-10s %-20s %-10s%n", 
-                        t.getField(0), 
-                        t.getField(1), 
-                        t.getField(2)
-                    );
+                    for (int slot = 0; slot < count; slot++) {
+                        Tuple t = heapPage.getTuple(slot, schema);
+
+                        System.out.printf("%-10s %-20s %-10s%n",
+                            t.getField(0),
+                            t.getField(1),
+                            t.getField(2)
+                        );
+                    }
+                } finally {
+                    bm.unpinPage(i, false);
                 }
             }
-            raf.close();
-
         } catch (Exception e) {
             e.printStackTrace();
         }
+        try {
+            heapFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         System.out.println("------------------------------------------");
         System.out.println("End of File.");
     }
@@ -1,7 +1,12 @@
 package com.jdb;
 
 import com.jdb.buffer.BufferManager;
+import com.jdb.buffer.BufferPool;
 import com.jdb.index.BTreeFile;
+import com.jdb.index.CoveringIndexFile;
+import com.jdb.index.KeyCodec;
+import com.jdb.index.NonUniqueBTreeFile;
+import com.jdb.index.VarKeyBTreeFile;
 import com.jdb.storage.*;
 
 import javax.swing.*;
@@ -14,6 +19,9 @@ public class Main {
         // 1. Setup Phase (Initialization)
         File dbFile = new File("data.db");
         File indexFile = new File("index.db");
+        File nameIndexFile = new File("name_index.db");
+        File ageIndexFile = new File("age_index.db");
+        File coveringIndexFile = new File("covering_index.db");
         boolean isExistingDb = dbFile.exists();
 
         // Define Schema
@@ -23,8 +31,10 @@ public class Main {
         schema.addField(Type.INT, "age");
 
         // Initialize Storage
+        // One pool for both files, sized in bytes (100 pages): memory goes to whichever file is hot
+        BufferPool pool = new BufferPool(100L * Page.PAGE_SIZE);
         HeapFile heapFile = new HeapFile(dbFile);
-        BufferManager bm = new BufferManager(heapFile, 50);
+        BufferManager bm = new BufferManager(pool, heapFile);
 
         HeapPage heapPage;
         if (isExistingDb) {
@@ -41,13 +51,60 @@ public class Main {
             Page rootPage = new Page(0);
             indexDisk.writePage(rootPage);
         }
-        BufferManager indexBm = new BufferManager(indexDisk, 50);
+        BufferManager indexBm = new BufferManager(pool, indexDisk);
+
+        // Publish pool and I/O counters over JMX (jconsole: com.jdb)
+        pool.registerMBean("main");
+        heapFile.registerMBean();
+        indexDisk.registerMBean();
         BTreeFile index = new BTreeFile(indexBm, 0);
 
+        // Secondary index on 'name' (variable-length keys), same pool
+        // and on 'age' (non-unique: one posting list per age)
+        boolean nameIndexIsNew = !isExistingDb || !nameIndexFile.exists();
+        boolean ageIndexIsNew = !isExistingDb || !ageIndexFile.exists();
+        boolean coveringIndexIsNew = !isExistingDb || !coveringIndexFile.exists();
+        if (!isExistingDb) {
+            nameIndexFile.delete();
+            ageIndexFile.delete();
+            coveringIndexFile.delete();
+        }
+        HeapFile nameIndexDisk = new HeapFile(nameIndexFile);
+        BufferManager nameIndexBm = new BufferManager(pool, nameIndexDisk);
+        VarKeyBTreeFile nameIndex = new VarKeyBTreeFile(nameIndexBm, 0);
+        KeyCodec nameCodec = KeyCodec.forColumns(schema, 1);
+        HeapFile ageIndexDisk = new HeapFile(ageIndexFile);
+        BufferManager ageIndexBm = new BufferManager(pool, ageIndexDisk);
+        NonUniqueBTreeFile ageIndex = new NonUniqueBTreeFile(ageIndexBm, 0);
+        KeyCodec ageCodec = KeyCodec.forColumns(schema, 2);
+
+        // Covering index on 'id' that also carries 'name' and 'age', so an ID
+        // lookup never has to read the heap page
+        HeapFile coveringIndexDisk = new HeapFile(coveringIndexFile);
+        BufferManager coveringIndexBm = new BufferManager(pool, coveringIndexDisk);
+        CoveringIndexFile coveringIndex = new CoveringIndexFile(coveringIndexBm, 0);
+        KeyCodec idCodec = KeyCodec.forColumns(schema, 0);
+        KeyCodec includedCodec = KeyCodec.forColumns(schema, 1, 2);
+
+        // A database from before these indexes: index the rows it already has
+        for (int slot = 0; isExistingDb && slot < heapPage.getNumTuples(); slot++) {
+            Tuple t = heapPage.getTuple(slot, schema);
+            if (nameIndexIsNew) {
+                nameIndex.insert(nameCodec.encode(t), new RecordId(0, slot));
+            }
+            if (ageIndexIsNew) {
+                ageIndex.insert(ageCodec.encode(t), new RecordId(0, slot));
+            }
+            if (coveringIndexIsNew) {
+                coveringIndex.insert(idCodec.encode(t), new RecordId(0, slot), includedCodec.encode(t));
+            }
+        }
+
         // 2. Launch GUI
         // We pass ALL the necessary backend objects to the GUI
         SwingUtilities.invokeLater(() -> {
-            new DBGui(heapPage, index, heapFile, indexBm, schema).show();
+            new DBGui(heapPage, index, heapFile, indexBm, schema, nameIndex, nameIndexBm, ageIndex, ageIndexBm,
+                    coveringIndex, coveringIndexBm).show();
         });
     }
 }
\ No newline at end of file
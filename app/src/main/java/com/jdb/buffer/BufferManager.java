@@ -3,90 +3,298 @@ package com.jdb.buffer;
 import com.jdb.storage.HeapFile;
 import com.jdb.storage.Page;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * Page access for one HeapFile through a BufferPool. Safe to share between threads.
+ *
+ * The pool does the caching (see BufferPool for eviction, concurrency and
+ * write-back); this class is the per-file view of it that the rest of the
+ * engine uses. Several BufferManagers can share one pool, e.g. the data file
+ * and the index file, so memory goes to whichever file is hot:
+ *
+ *   BufferPool pool = new BufferPool(64L * 1024 * 1024);
+ *   BufferManager data = new BufferManager(pool, dataFile);
+ *   BufferManager index = new BufferManager(pool, indexFile);
+ *
+ * The (HeapFile, maxPages, ...) constructors keep the old behaviour: a
+ * private pool of maxPages pages for this file alone.
+ *
+ * Pin/Unpin:
+ * - fetchPage() pins the page; it cannot be evicted until unpinPage().
+ * - getPage() is the legacy unpinned access: it returns the page without
+ *   holding it, so the caller must not keep it across other pool calls.
+ *
+ * Sequential access:
+ * - Read-ahead (setReadAheadPages) spots a sequential stream of misses and
+ *   prefetches the next pages asynchronously; prefetch() is the explicit hint.
+ * - A ScanRing (newScanRing) gives a bulk scan a few private frames to cycle
+ *   through, so it neither evicts the shared working set nor waits on reads
+ *   of the next pages.
+ *
+ * Page recycling:
+ * - freePage() puts a page on the file's free list; allocateNewPage() hands
+ *   free pages out again (blank) before it extends the file.
+ * - The list is chained through the free pages themselves. Only its head is
+ *   kept here, so the owner of the file saves it (getFreeListHead) and
+ *   restores it on open (setFreeListHead), e.g. in an index header page.
+ */
 public class BufferManager {
     private final HeapFile diskManager;
-    private final Map<Integer, Page> pageCache;
-    private final int maxPages;
+    private final BufferPool pool;
+    private final int fileId;
 
-    // Track which pages have been modified and need saving
-    private final Map<Integer, Boolean> dirtyPages; 
+    // A free page: [0-3] FREE_MARKER, [4-7] next free page (NO_PAGE ends the list)
+    public static final int NO_PAGE = -1;
+    private static final int FREE_MARKER = 0x46524545; // "FREE"
+    private int freeListHead = NO_PAGE; // Guarded by 'this'
+
+    // Sequential detection for accesses outside a scan ring (window 0 = off)
+    private volatile ReadAhead readAhead = new ReadAhead(0, false);
 
     public BufferManager(HeapFile diskManager, int maxPages) {
+        this(diskManager, maxPages, false);
+    }
+
+    public BufferManager(HeapFile diskManager, int maxPages, boolean offHeap) {
+        this(diskManager, maxPages, offHeap, new LruPolicy<>());
+    }
+
+    public BufferManager(HeapFile diskManager, int maxPages, boolean offHeap, ReplacementPolicy<PageKey> policy) {
+        this(new BufferPool((long) maxPages * Page.PAGE_SIZE, offHeap, policy), diskManager);
+    }
+
+    /**
+     * Accesses 'diskManager' through a (possibly shared) pool.
+     */
+    public BufferManager(BufferPool pool, HeapFile diskManager) {
+        this.pool = pool;
         this.diskManager = diskManager;
-        this.maxPages = maxPages;
-        this.dirtyPages = new HashMap<>();
-
-        // LinkedHashMap with accessOrder = true acts as an LRU Cache
-        this.pageCache = new LinkedHashMap<>(maxPages, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
-                if (size() > BufferManager.this.maxPages) {
-                    evictPage(eldest.getKey()); // Write to disk before kicking out
-                    return true;
-                }
-                return false;
-            }
-        };
+        this.fileId = pool.register(diskManager);
     }
 
     /**
-     * Retrieves a page. If not in cache, loads it from disk.
+     * Retrieves a page and pins it. If not in cache, loads it from disk.
+     * Every fetchPage must be matched by an unpinPage.
      */
-    public Page getPage(int pageId) {
-        if (pageCache.containsKey(pageId)) {
-            return pageCache.get(pageId);
-        }
+    public Page fetchPage(int pageId) {
+        return pool.fetch(diskManager, key(pageId), null, readAhead, false);
+    }
+
+    /**
+     * Like fetchPage, for a bulk scan: a miss is loaded into the scan's ring
+     * and hits don't count as reuse for the replacement policy.
+     */
+    public Page fetchPage(int pageId, ScanRing ring) {
+        return pool.fetch(diskManager, key(pageId), ring, ring.readAhead, false);
+    }
+
+    /**
+     * Releases one pin. If 'dirty' the page will be written before eviction.
+     */
+    public void unpinPage(int pageId, boolean dirty) {
+        pool.unpin(key(pageId), dirty);
+    }
 
-        // Not in cache? Load from disk
-        Page p = diskManager.readPage(pageId);
-        pageCache.put(pageId, p);
+    /**
+     * Retrieves a page without keeping it pinned.
+     * The page may be evicted by any later pool call, so don't hold on to it.
+     */
+    public Page getPage(int pageId) {
+        Page p = fetchPage(pageId);
+        unpinPage(pageId, false);
         return p;
     }
 
     /**
-     * Marks a page as "Dirty" (modified). 
+     * Returns the latch of a cached page. The caller should have it pinned.
+     */
+    public StampedLock getLatch(int pageId) {
+        return pool.frame(key(pageId)).latch;
+    }
+
+    /**
+     * Marks a page as "Dirty" (modified).
      * It will be written to disk when evicted or flushed.
      */
     public void setPageDirty(int pageId, boolean dirty) {
-        if (pageCache.containsKey(pageId)) {
-            dirtyPages.put(pageId, dirty);
+        Frame f = pool.lookup(key(pageId));
+        if (f != null) {
+            f.dirty = dirty;
         }
     }
 
     /**
-     * Helper to write a specific page back to disk
+     * True if the page is currently in the pool (or being loaded into it).
+     */
+    public boolean isCached(int pageId) {
+        return pool.lookup(key(pageId)) != null;
+    }
+
+    /**
+     * True if the page is cached and currently pinned by someone.
+     */
+    public boolean isPinned(int pageId) {
+        Frame f = pool.lookup(key(pageId));
+        return f != null && f.isPinned();
+    }
+
+    private PageKey key(int pageId) {
+        return new PageKey(fileId, pageId);
+    }
+
+    // --- Background Writing ---
+
+    /**
+     * Starts the pool's background writer (see BufferPool.startBackgroundWriter).
+     */
+    public PageWriter startBackgroundWriter(double cleanTarget, long intervalMillis) {
+        return pool.startBackgroundWriter(cleanTarget, intervalMillis);
+    }
+
+    public void stopBackgroundWriter() {
+        pool.stopBackgroundWriter();
+    }
+
+    /**
+     * Number of this file's cached pages that are modified and not yet written.
+     */
+    public int getDirtyPageCount() {
+        return pool.getDirtyPageCount(fileId);
+    }
+
+    /**
+     * Forces this file's dirty pages to disk and drops its unpinned pages (Call this on shutdown).
+     * Pinned pages are written but stay cached. Pages are written in page id order.
      */
-    private void evictPage(int pageId) {
-        if (dirtyPages.getOrDefault(pageId, false)) {
-            Page p = pageCache.get(pageId);
-            if (p != null) {
-                diskManager.writePage(p);
-                dirtyPages.remove(pageId);
+    public void flushAll() {
+        pool.flushFile(fileId);
+    }
+
+    // --- Sequential Access ---
+
+    /**
+     * Enables (pages > 0) or disables (0) automatic read-ahead for sequential
+     * misses outside a scan ring.
+     */
+    public void setReadAheadPages(int pages) {
+        this.readAhead = new ReadAhead(pages, false);
+    }
+
+    /**
+     * Starts a bulk scan with a private ring of 'ringPages' frames that
+     * prefetches 'readAheadPages' pages ahead. Close it when the scan ends.
+     */
+    public ScanRing newScanRing(int ringPages, int readAheadPages) {
+        return new ScanRing(this, ringPages, readAheadPages);
+    }
+
+    void closeRing(ScanRing ring) {
+        pool.closeRing(ring);
+    }
+
+    /**
+     * Hint: asynchronously loads pages [fromPageId, fromPageId + count) that
+     * exist and are not cached yet.
+     */
+    public void prefetch(int fromPageId, int count) {
+        pool.prefetch(diskManager, fileId, fromPageId, count, null);
+    }
+
+    /**
+     * Returns a blank page: a recycled one from the free list if there is one,
+     * otherwise a new page at the end of the file.
+     */
+    public int allocateNewPage() {
+        synchronized (this) {
+            if (freeListHead != NO_PAGE) {
+                int pageId = freeListHead;
+                Page p = fetchPage(pageId);
+                StampedLock latch = getLatch(pageId);
+                long stamp = latch.writeLock(); // Stale optimistic readers of the old page must notice
+                try {
+                    if (p.getInt(0) != FREE_MARKER) {
+                        throw new IllegalStateException("Page " + pageId + " is on the free list but not marked free");
+                    }
+                    freeListHead = p.getInt(4);
+                    p.writeBytes(0, new byte[Page.PAGE_SIZE]);
+                } finally {
+                    latch.unlockWrite(stamp);
+                    unpinPage(pageId, true);
+                }
+                return pageId;
             }
         }
+        // The file reserves the next page id atomically and writes it out blank
+        return diskManager.allocatePage();
     }
 
     /**
-     * Forces all dirty pages to disk (Call this on shutdown)
+     * Puts a page the caller no longer references on the free list.
+     * Nobody else may still be using it: readers that might hold on to it
+     * must be able to tell (e.g. by validating a latch stamp) and back off.
      */
-    public void flushAll() {
-        for (Integer pageId : pageCache.keySet()) {
-            evictPage(pageId);
+    public synchronized void freePage(int pageId) {
+        Page p = fetchPage(pageId);
+        StampedLock latch = getLatch(pageId);
+        long stamp = latch.writeLock();
+        try {
+            p.writeBytes(0, new byte[Page.PAGE_SIZE]);
+            p.setInt(0, FREE_MARKER);
+            p.setInt(4, freeListHead);
+        } finally {
+            latch.unlockWrite(stamp);
+            unpinPage(pageId, true);
         }
-        pageCache.clear();
+        freeListHead = pageId;
     }
 
-    public int allocateNewPage() {
-        // Calculate new ID based on current file size
-        int newPageId = diskManager.getNumPages();
-        // Just reading it will create it in our specific HeapFile implementation logic
-        // But explicitly, we should create a blank page
-        Page p = new Page(newPageId);
-        diskManager.writePage(p); 
-        return newPageId;
-    }
-}
\ No newline at end of file
+    public synchronized int getFreeListHead() {
+        return freeListHead;
+    }
+
+    /**
+     * Restores a free list saved by the file's owner (NO_PAGE for none).
+     */
+    public synchronized void setFreeListHead(int pageId) {
+        freeListHead = pageId;
+    }
+
+    /**
+     * Number of pins currently held on a page (0 if it is not cached).
+     */
+    public int getPinCount(int pageId) {
+        Frame f = pool.lookup(key(pageId));
+        return f == null ? 0 : Math.max(0, f.pinCount.get());
+    }
+
+    /**
+     * Number of pages in the underlying file.
+     */
+    public int getNumPages() {
+        return diskManager.getNumPages();
+    }
+
+    /**
+     * Number of this file's pages currently in the pool.
+     */
+    public int getCachedPageCount() {
+        return pool.getCachedPageCount(fileId);
+    }
+
+    public BufferPool getPool() {
+        return pool;
+    }
+
+    public int getFileId() {
+        return fileId;
+    }
+
+    public boolean isOffHeap() {
+        return pool.isOffHeap();
+    }
+
+    public int getMaxPages() {
+        return pool.getMaxPages();
+    }
+}
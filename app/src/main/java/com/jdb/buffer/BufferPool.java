@@ -0,0 +1,638 @@
+package com.jdb.buffer;
+
+import com.jdb.metrics.BufferPoolMetrics;
+import com.jdb.metrics.BufferPoolSnapshot;
+import com.jdb.metrics.MBeans;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.Page;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * One cache of pages shared by any number of HeapFiles. Safe to share between threads.
+ *
+ * The pool is sized by a memory budget (bytes), not per file: every frame
+ * goes to whichever file's pages are being used, so during lookup-heavy
+ * periods the index can hold most of the memory and during scans the data
+ * file can. Each file is accessed through its own BufferManager, which
+ * registers the file and turns page ids into (fileId, pageId) PageKeys.
+ *
+ * Which page is evicted is decided by a pluggable ReplacementPolicy
+ * (LRU by default; CLOCK and scan-resistant 2Q are available).
+ *
+ * Concurrency:
+ * - The page table is a ConcurrentHashMap, so hits never take a pool-wide lock
+ *   to find their frame. Concurrent misses on the same page install a single
+ *   Frame; one thread reads the page and the others wait for it.
+ * - Only the replacement policy bookkeeping is guarded by a mutex, and hits
+ *   skip even that when the policy's access path is lock-free (CLOCK).
+ * - Each frame carries a StampedLock latch that callers use to coordinate
+ *   access to page contents. Write-back holds it in read mode.
+ *
+ * Write-back:
+ * - Eviction prefers clean victims: a dirty page is passed over for a clean
+ *   one among the first few candidates at the cold end of the policy order
+ *   (CLEAN_VICTIM_WINDOW), never for a hotter page further in.
+ * - An optional background PageWriter (startBackgroundWriter) keeps a target
+ *   share of the pool clean by flushing dirty pages in (file, page) order.
+ *
+ * Two frame modes:
+ * - Heap (default): every cached page owns a byte[]; evicted pages are dropped.
+ * - Off-heap: a FrameArena allocates all frames of direct memory once and
+ *   cached Pages are lightweight handles onto those frames. Eviction returns
+ *   the frame to the arena for the next miss, so heap usage stays flat no
+ *   matter how large the pool is.
+ *
+ * Metrics: hits, misses, evictions (clean/dirty), write-backs and pin waits
+ * are counted with LongAdders (getMetrics, snapshot, registerMBean).
+ */
+public final class BufferPool {
+    private final long budgetBytes;
+    private final int maxPages;
+
+    // Page table: (fileId, pageId) -> Frame (includes frames that are still loading)
+    private final ConcurrentHashMap<PageKey, Frame> pageTable;
+
+    // Eviction order. Guarded by 'this' (except lock-free recordAccess).
+    private final ReplacementPolicy<PageKey> policy;
+
+    // Off-heap mode only
+    private final FrameArena arena;
+
+    // Registered files. Guarded by 'this'.
+    private final Map<HeapFile, Integer> fileIds = new IdentityHashMap<>();
+
+    // Optional background writer
+    private volatile PageWriter pageWriter;
+
+    private final BufferPoolMetrics metrics;
+
+    // Frames in use (policy-owned + ring-owned). Guarded by 'this'.
+    private int residentPages;
+
+    private static final int PREFETCH_THREADS = 2;
+
+    // How many of the coldest candidates a miss looks through for a clean victim
+    private static final int CLEAN_VICTIM_WINDOW = 8;
+    private volatile ExecutorService prefetcher;
+
+    public BufferPool(long budgetBytes) {
+        this(budgetBytes, false);
+    }
+
+    public BufferPool(long budgetBytes, boolean offHeap) {
+        this(budgetBytes, offHeap, new LruPolicy<>());
+    }
+
+    public BufferPool(long budgetBytes, boolean offHeap, ReplacementPolicy<PageKey> policy) {
+        if (budgetBytes < Page.PAGE_SIZE) {
+            throw new IllegalArgumentException("Budget must hold at least one page: " + budgetBytes + " bytes");
+        }
+        long pages = budgetBytes / Page.PAGE_SIZE;
+        if (pages > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Budget too large: " + budgetBytes + " bytes");
+        }
+        this.budgetBytes = budgetBytes;
+        this.maxPages = (int) pages;
+        this.pageTable = new ConcurrentHashMap<>(maxPages * 2);
+        this.policy = policy;
+        this.arena = offHeap ? new FrameArena(maxPages) : null;
+        // The gauges read only the fields set above (the class is final, so no subclass state)
+        this.metrics = new BufferPoolMetrics(this::getCachedPageCount, this::getDirtyPageCount, maxPages);
+    }
+
+    /**
+     * Gives a file its id in this pool. Registering the same file again
+     * returns the same id, so two BufferManagers over one file share its pages.
+     */
+    synchronized int register(HeapFile file) {
+        Integer id = fileIds.get(file);
+        if (id == null) {
+            id = fileIds.size();
+            fileIds.put(file, id);
+        }
+        return id;
+    }
+
+    // --- Pinning ---
+
+    /**
+     * Pins a page, loading it from 'file' on a miss. 'readAhead' (nullable)
+     * is told about the access; 'prefetch' marks a background read-ahead load.
+     */
+    Page fetch(HeapFile file, PageKey key, ScanRing ring, ReadAhead readAhead, boolean prefetch) {
+        boolean waited = false;
+        while (true) {
+            Frame f = pageTable.get(key);
+            if (f != null) {
+                if (!f.tryPin()) {
+                    // Being evicted right now: wait for it to leave the table, then reload
+                    if (!waited) {
+                        metrics.recordPinWait();
+                        waited = true;
+                    }
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (ring == null) {
+                    recordAccess(key);
+                }
+                if (!prefetch) {
+                    metrics.recordHit();
+                    if (!waited && f.getPage() == null) {
+                        metrics.recordPinWait(); // Someone else is still reading it
+                    }
+                }
+                noteAccess(file, key, ring, readAhead, false);
+                try {
+                    return f.awaitLoaded();
+                } catch (RuntimeException e) {
+                    f.unpin();
+                    throw e;
+                }
+            }
+
+            // Miss: race to install our own frame. The winner loads the page.
+            Frame mine = new Frame(key, file);
+            mine.tryPin();
+            if (pageTable.putIfAbsent(key, mine) == null) {
+                if (prefetch) {
+                    metrics.recordPrefetch();
+                } else {
+                    metrics.recordMiss();
+                }
+                noteAccess(file, key, ring, readAhead, true);
+                return load(mine, ring, prefetch);
+            }
+        }
+    }
+
+    /**
+     * Releases one pin. If 'dirty' the page will be written before eviction.
+     */
+    void unpin(PageKey key, boolean dirty) {
+        Frame f = frame(key);
+        if (dirty) {
+            f.dirty = true;
+        }
+        f.unpin();
+    }
+
+    /**
+     * The frame of a cached page; throws if the page is not in the pool.
+     */
+    Frame frame(PageKey key) {
+        Frame f = pageTable.get(key);
+        if (f == null) {
+            throw new IllegalStateException("Page " + key + " is not in the buffer pool");
+        }
+        return f;
+    }
+
+    /**
+     * The frame of a page, or null if it is not cached.
+     */
+    Frame lookup(PageKey key) {
+        return pageTable.get(key);
+    }
+
+    // --- Miss Handling ---
+
+    private Page load(Frame mine, ScanRing ring, boolean prefetch) {
+        Frame victim;
+        try {
+            victim = reserveSlot(mine, ring, prefetch);
+        } catch (RuntimeException e) {
+            pageTable.remove(mine.key, mine);
+            mine.markFailed(e);
+            throw e;
+        }
+
+        if (victim != null) {
+            metrics.recordEviction(victim.dirty);
+            try {
+                dropFrame(victim);
+            } catch (RuntimeException e) {
+                // The victim could not be written back: it keeps its slot, and
+                // our frame gives up the reservation it was to take over
+                synchronized (this) {
+                    disown(mine);
+                    policy.recordInsert(victim.key);
+                }
+                victim.cancelEviction();
+                pageTable.remove(mine.key, mine);
+                mine.markFailed(e);
+                throw e;
+            }
+        }
+
+        try {
+            Page p;
+            if (arena == null) {
+                p = mine.file.readPage(mine.pageId);
+            } else {
+                mine.arenaFrameId = arena.acquire();
+                p = mine.file.readPage(mine.pageId, arena.frame(mine.arenaFrameId));
+            }
+            mine.markLoaded(p);
+            return p;
+        } catch (RuntimeException e) {
+            // e.g. the page does not exist: undo the reservation
+            synchronized (this) {
+                disown(mine);
+                residentPages--;
+            }
+            pageTable.remove(mine.key, mine);
+            if (mine.arenaFrameId >= 0) {
+                arena.release(mine.arenaFrameId);
+            }
+            mine.markFailed(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Registers the new frame with the policy (or its scan ring), claiming a
+     * victim if the pool or the ring is full. A prefetch into a full ring
+     * never takes a shared frame; it fails instead.
+     */
+    private synchronized Frame reserveSlot(Frame mine, ScanRing ring, boolean prefetch) {
+        if (ring != null && prefetch && ring.closed) {
+            throw new IllegalStateException("Scan ring closed");
+        }
+        if (ring != null && !ring.closed && ring.isFull()) {
+            // Recycle the ring's oldest unpinned frame instead of touching the shared pool
+            Frame recycled = claimFromRing(ring);
+            if (recycled != null) {
+                adopt(mine, ring);
+                return recycled;
+            }
+            if (prefetch) {
+                throw new IllegalStateException("Scan ring busy");
+            }
+        }
+
+        Frame victim = null;
+        if (residentPages < maxPages) {
+            residentPages++;
+        } else {
+            // The policy proposes candidates; only unpinned frames can be claimed.
+            // First look for a clean one among the coldest few, so this miss
+            // doesn't pay for a write, then take the coldest page there is.
+            PageKey victimKey = policy.evict(key -> {
+                Frame candidate = pageTable.get(key);
+                return candidate != null && !candidate.dirty && candidate.tryClaimForEviction();
+            }, CLEAN_VICTIM_WINDOW);
+            if (victimKey == null) {
+                victimKey = policy.evict(key -> {
+                    Frame candidate = pageTable.get(key);
+                    return candidate != null && candidate.tryClaimForEviction();
+                });
+            }
+            if (victimKey != null) {
+                victim = pageTable.get(victimKey);
+                PageWriter writer = pageWriter;
+                if (victim.dirty && writer != null) {
+                    writer.signal(); // We are about to write in the foreground: the writer is behind
+                }
+            } else if (ring != null && !ring.closed) {
+                victim = claimFromRing(ring); // The ring itself fills the pool
+            }
+            if (victim == null) {
+                throw new IllegalStateException("Buffer pool exhausted: all " + maxPages + " pages are pinned");
+            }
+        }
+        adopt(mine, ring);
+        return victim;
+    }
+
+    private Frame claimFromRing(ScanRing ring) {
+        Iterator<PageKey> it = ring.pages.iterator();
+        while (it.hasNext()) {
+            Frame candidate = pageTable.get(it.next());
+            if (candidate != null && candidate.ring == ring && candidate.tryClaimForEviction()) {
+                it.remove();
+                candidate.ring = null;
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void adopt(Frame f, ScanRing ring) {
+        if (ring != null && !ring.closed) {
+            f.ring = ring;
+            ring.pages.addLast(f.key);
+        } else {
+            policy.recordInsert(f.key);
+        }
+    }
+
+    private void disown(Frame f) {
+        if (f.ring != null) {
+            f.ring.pages.remove(f.key);
+            f.ring = null;
+        } else {
+            policy.remove(f.key);
+        }
+    }
+
+    private void recordAccess(PageKey key) {
+        if (policy.isAccessLockFree()) {
+            policy.recordAccess(key);
+            return;
+        }
+        synchronized (this) {
+            policy.recordAccess(key);
+        }
+    }
+
+    /**
+     * Removes a frame claimed for eviction: writes it if dirty, then frees its slot.
+     */
+    private void dropFrame(Frame victim) {
+        writeBack(victim); // Write to disk before kicking out
+        pageTable.remove(victim.key, victim);
+        if (arena != null) {
+            arena.release(victim.arenaFrameId);
+        }
+    }
+
+    /**
+     * Helper to write a specific page back to its file
+     */
+    private void writeBack(Frame f) {
+        if (!f.dirty) {
+            return;
+        }
+        Page p = f.getPage();
+        if (p == null) {
+            return;
+        }
+        long stamp = f.latch.readLock();
+        try {
+            f.dirty = false; // Cleared first so a concurrent re-dirty is not lost
+            f.file.writePage(p);
+            metrics.recordWriteBack();
+        } catch (RuntimeException e) {
+            f.dirty = true; // Not on disk: keep it for the next write-back
+            throw e;
+        } finally {
+            f.latch.unlockRead(stamp);
+        }
+    }
+
+    // --- Background Writing ---
+
+    /**
+     * Starts a background writer that keeps at least 'cleanTarget' (0..1) of the
+     * pool clean, checking every 'intervalMillis'.
+     */
+    public synchronized PageWriter startBackgroundWriter(double cleanTarget, long intervalMillis) {
+        if (pageWriter != null) {
+            throw new IllegalStateException("Background writer already running");
+        }
+        PageWriter writer = new PageWriter(this, cleanTarget, intervalMillis);
+        writer.start();
+        pageWriter = writer;
+        return writer;
+    }
+
+    public void stopBackgroundWriter() {
+        PageWriter writer;
+        synchronized (this) {
+            writer = pageWriter;
+            pageWriter = null;
+        }
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Number of cached pages that are modified and not yet written.
+     */
+    public int getDirtyPageCount() {
+        return countFrames(f -> f.dirty);
+    }
+
+    /**
+     * Writes up to 'max' dirty, unpinned pages in (file, page) order (sequential I/O).
+     * Returns how many were written.
+     */
+    int writeDirtyPages(int max) {
+        List<Frame> candidates = new ArrayList<>();
+        for (Frame f : pageTable.values()) {
+            if (f.dirty && !f.isPinned() && f.getPage() != null) {
+                candidates.add(f);
+            }
+        }
+        candidates.sort((a, b) -> a.key.compareTo(b.key));
+
+        int written = 0;
+        for (Frame f : candidates) {
+            if (written >= max) {
+                break;
+            }
+            // Hold a pin so the frame can't be evicted (and reused) mid-write
+            if (f.tryPin()) {
+                try {
+                    if (f.dirty) {
+                        writeBack(f);
+                        written++;
+                    }
+                } finally {
+                    f.unpin();
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Forces all dirty pages of every file to disk and drops every unpinned page.
+     */
+    public void flushAll() {
+        flush(f -> true);
+    }
+
+    /**
+     * Like flushAll, for the pages of one file only.
+     */
+    void flushFile(int fileId) {
+        flush(f -> f.key.fileId == fileId);
+    }
+
+    /**
+     * Pinned pages are written but stay cached. Pages are written in (file, page) order.
+     */
+    private void flush(Predicate<Frame> which) {
+        List<Frame> frames = new ArrayList<>();
+        for (Frame f : pageTable.values()) {
+            if (which.test(f)) {
+                frames.add(f);
+            }
+        }
+        frames.sort((a, b) -> a.key.compareTo(b.key));
+        for (Frame f : frames) {
+            writeBack(f);
+        }
+        synchronized (this) {
+            for (Frame f : frames) {
+                if (f.getPage() != null && f.tryClaimForEviction()) {
+                    disown(f);
+                    residentPages--;
+                    writeBack(f); // Catch anything dirtied since the first pass
+                    pageTable.remove(f.key, f);
+                    if (arena != null) {
+                        arena.release(f.arenaFrameId);
+                    }
+                }
+            }
+        }
+    }
+
+    // --- Sequential Access ---
+
+    /**
+     * Drops the ring's unpinned pages; any still pinned go to the replacement policy.
+     */
+    void closeRing(ScanRing ring) {
+        List<Frame> dropped = new ArrayList<>();
+        synchronized (this) {
+            if (ring.closed) {
+                return;
+            }
+            ring.closed = true;
+            for (PageKey key : ring.pages) {
+                Frame f = pageTable.get(key);
+                if (f == null || f.ring != ring) {
+                    continue;
+                }
+                f.ring = null;
+                if (f.getPage() != null && f.tryClaimForEviction()) {
+                    dropped.add(f);
+                    residentPages--;
+                } else {
+                    policy.recordInsert(key);
+                }
+            }
+            ring.pages.clear();
+        }
+        // Write-backs happen outside the pool lock
+        for (Frame f : dropped) {
+            dropFrame(f);
+        }
+    }
+
+    /**
+     * Asynchronously loads pages [fromPageId, fromPageId + count) of 'file'
+     * that exist and are not cached yet.
+     */
+    void prefetch(HeapFile file, int fileId, int fromPageId, int count, ScanRing ring) {
+        int end = Math.min(fromPageId + count, file.getNumPages());
+        for (int id = Math.max(fromPageId, 0); id < end; id++) {
+            PageKey key = new PageKey(fileId, id);
+            if (pageTable.containsKey(key)) {
+                continue;
+            }
+            prefetcher().execute(() -> {
+                try {
+                    fetch(file, key, ring, null, true);
+                    unpin(key, false);
+                } catch (RuntimeException e) {
+                    // Best effort: e.g. every frame is pinned right now
+                }
+            });
+        }
+    }
+
+    private void noteAccess(HeapFile file, PageKey key, ScanRing ring, ReadAhead readAhead, boolean miss) {
+        if (readAhead == null) {
+            return;
+        }
+        int from = readAhead.onAccess(key.pageId, miss);
+        if (from != ReadAhead.NONE) {
+            prefetch(file, key.fileId, from, readAhead.getWindowPages(), ring);
+        }
+    }
+
+    private ExecutorService prefetcher() {
+        ExecutorService ex = prefetcher;
+        if (ex == null) {
+            synchronized (this) {
+                if (prefetcher == null) {
+                    prefetcher = Executors.newFixedThreadPool(PREFETCH_THREADS, r -> {
+                        Thread t = new Thread(r, "jdb-prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+                ex = prefetcher;
+            }
+        }
+        return ex;
+    }
+
+    // --- Stats ---
+
+    public BufferPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public BufferPoolSnapshot snapshot() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Publishes the pool's counters over JMX as com.jdb:type=BufferPool,name=<name>.
+     */
+    public void registerMBean(String name) {
+        MBeans.register(metrics, "BufferPool", name);
+    }
+
+    /**
+     * Number of pages currently cached (or loading) for one file.
+     */
+    int getCachedPageCount(int fileId) {
+        return countFrames(f -> f.key.fileId == fileId);
+    }
+
+    int getDirtyPageCount(int fileId) {
+        return countFrames(f -> f.dirty && f.key.fileId == fileId);
+    }
+
+    private int countFrames(Predicate<Frame> which) {
+        int count = 0;
+        for (Frame f : pageTable.values()) {
+            if (which.test(f)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getCachedPageCount() {
+        return pageTable.size();
+    }
+
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+}
@@ -0,0 +1,121 @@
+package com.jdb.buffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second-chance) replacement.
+ *
+ * Pages sit in a circular array of slots, each with a reference bit. A hit
+ * only sets the bit, with no list reordering and no pool lock. To evict,
+ * the hand sweeps the ring, clearing set bits and taking the first page whose
+ * bit was already clear.
+ */
+public class ClockPolicy<K> implements ReplacementPolicy<K> {
+
+    private static final class Slot<K> {
+        final K key;
+        final int index;
+        volatile boolean referenced;
+
+        Slot(K key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+
+    // Lookup for the lock-free hit path
+    private final ConcurrentHashMap<K, Slot<K>> slotOf = new ConcurrentHashMap<>();
+
+    // The ring. Removed entries leave a null hole that the next insert reuses.
+    private final List<Slot<K>> ring = new ArrayList<>();
+    private final ArrayDeque<Integer> holes = new ArrayDeque<>();
+    private int hand = 0;
+
+    @Override
+    public void recordInsert(K key) {
+        Integer hole = holes.poll();
+        Slot<K> slot = new Slot<>(key, hole == null ? ring.size() : hole);
+        if (hole == null) {
+            ring.add(slot);
+        } else {
+            ring.set(hole, slot);
+        }
+        slotOf.put(key, slot);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        Slot<K> slot = slotOf.get(key);
+        if (slot != null) {
+            slot.referenced = true;
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        Slot<K> slot = slotOf.remove(key);
+        if (slot != null) {
+            ring.set(slot.index, null);
+            holes.push(slot.index);
+        }
+    }
+
+    @Override
+    public K evict(Predicate<K> canEvict) {
+        int n = ring.size();
+        // Two full turns: the first may only clear reference bits
+        for (int step = 0; step < 2 * n; step++) {
+            int idx = hand;
+            hand = (hand + 1) % n;
+            Slot<K> slot = ring.get(idx);
+            if (slot == null) {
+                continue;
+            }
+            if (slot.referenced) {
+                slot.referenced = false; // Second chance
+                continue;
+            }
+            if (canEvict.test(slot.key)) {
+                remove(slot.key);
+                return slot.key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks ahead of the hand without moving it or clearing any bit: the
+     * next unreferenced pages are the ones a sweep would take first.
+     */
+    @Override
+    public K evict(Predicate<K> canEvict, int maxCandidates) {
+        int n = ring.size();
+        int asked = 0;
+        for (int step = 0; step < n && asked < maxCandidates; step++) {
+            Slot<K> slot = ring.get((hand + step) % n);
+            if (slot == null || slot.referenced) {
+                continue;
+            }
+            asked++;
+            if (canEvict.test(slot.key)) {
+                remove(slot.key);
+                return slot.key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return slotOf.size();
+    }
+
+    @Override
+    public boolean isAccessLockFree() {
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package com.jdb.buffer;
+
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.Page;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One slot of the buffer pool: a cached page plus its bookkeeping.
+ *
+ * Pin count protocol:
+ * - >= 0 : number of callers currently using the page. Only 0 may be evicted.
+ * - EVICTED (-1) : an evictor has claimed the frame; pins must fail and retry.
+ * The transition 0 -> EVICTED is a single CAS, so a page can never be pinned
+ * and evicted at the same time.
+ */
+class Frame {
+    static final int EVICTED = -1;
+
+    final PageKey key;
+    final int pageId;
+    final HeapFile file; // Where the page is read from and written back to
+    final AtomicInteger pinCount = new AtomicInteger(0);
+    final StampedLock latch = new StampedLock();
+    volatile boolean dirty;
+
+    // Arena frame index in off-heap mode, -1 otherwise
+    int arenaFrameId = -1;
+
+    // The scan ring that owns this frame, or null if the replacement policy does. Guarded by the pool lock.
+    ScanRing ring;
+
+    // Set exactly once by the thread that loads the page
+    private volatile Page page;
+    private volatile RuntimeException loadError;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    Frame(PageKey key, HeapFile file) {
+        this.key = key;
+        this.pageId = key.pageId;
+        this.file = file;
+    }
+
+    /**
+     * Adds a pin unless the frame is being evicted.
+     */
+    boolean tryPin() {
+        while (true) {
+            int count = pinCount.get();
+            if (count == EVICTED) {
+                return false;
+            }
+            if (pinCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    int unpin() {
+        int count = pinCount.decrementAndGet();
+        if (count < 0) {
+            pinCount.incrementAndGet();
+            throw new IllegalStateException("Page " + pageId + " unpinned more times than pinned");
+        }
+        return count;
+    }
+
+    /**
+     * Claims an unpinned frame for eviction.
+     */
+    boolean tryClaimForEviction() {
+        return pinCount.compareAndSet(0, EVICTED);
+    }
+
+    /**
+     * Gives up a claim from tryClaimForEviction: the frame stays, unpinned.
+     */
+    void cancelEviction() {
+        pinCount.set(0);
+    }
+
+    boolean isPinned() {
+        return pinCount.get() > 0;
+    }
+
+    void markLoaded(Page p) {
+        this.page = p;
+        loaded.countDown();
+    }
+
+    void markFailed(RuntimeException e) {
+        this.loadError = e;
+        loaded.countDown();
+    }
+
+    /**
+     * Blocks until the loading thread has filled the frame, so concurrent
+     * misses on the same page read it from disk only once.
+     */
+    Page awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for page " + pageId, e);
+        }
+        if (loadError != null) {
+            throw loadError;
+        }
+        return page;
+    }
+
+    /**
+     * The page, or null if it is still being loaded.
+     */
+    Page getPage() {
+        return page;
+    }
+}
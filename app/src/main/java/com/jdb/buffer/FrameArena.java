@@ -0,0 +1,73 @@
+package com.jdb.buffer;
+
+import com.jdb.storage.Page;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A fixed set of page-sized frames carved out of direct (off-heap) memory.
+ *
+ * All memory is allocated once, up front, in slabs of SLAB_FRAMES frames.
+ * Frames are handed out by index and returned on eviction, so a buffer pool
+ * built on top of it reuses the same memory forever and the Java heap only
+ * ever holds the small Page handles that point into it.
+ *
+ * acquire/release are synchronized so concurrent misses can share one arena.
+ */
+public class FrameArena {
+    // 4096 frames * 4KB = 16MB per direct allocation
+    private static final int SLAB_FRAMES = 4096;
+
+    private final ByteBuffer[] slabs;
+    private final int numFrames;
+    private final ArrayDeque<Integer> freeFrames;
+
+    public FrameArena(int numFrames) {
+        if (numFrames <= 0) {
+            throw new IllegalArgumentException("Arena needs at least one frame");
+        }
+        this.numFrames = numFrames;
+        this.slabs = new ByteBuffer[(numFrames + SLAB_FRAMES - 1) / SLAB_FRAMES];
+        for (int i = 0; i < slabs.length; i++) {
+            int framesInSlab = Math.min(SLAB_FRAMES, numFrames - i * SLAB_FRAMES);
+            slabs[i] = ByteBuffer.allocateDirect(framesInSlab * Page.PAGE_SIZE);
+        }
+        this.freeFrames = new ArrayDeque<>(numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            freeFrames.add(i);
+        }
+    }
+
+    /**
+     * Takes a free frame. Returns -1 if every frame is in use.
+     */
+    public synchronized int acquire() {
+        Integer frameId = freeFrames.poll();
+        return frameId == null ? -1 : frameId;
+    }
+
+    /**
+     * Gives a frame back. Its contents are left as-is and overwritten by the next reader.
+     */
+    public synchronized void release(int frameId) {
+        freeFrames.push(frameId);
+    }
+
+    /**
+     * Returns a PAGE_SIZE buffer over the memory of one frame.
+     */
+    public ByteBuffer frame(int frameId) {
+        int slab = frameId / SLAB_FRAMES;
+        int offset = (frameId % SLAB_FRAMES) * Page.PAGE_SIZE;
+        return slabs[slab].slice(offset, Page.PAGE_SIZE);
+    }
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    public synchronized int getFreeFrames() {
+        return freeFrames.size();
+    }
+}
@@ -0,0 +1,53 @@
+package com.jdb.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Classic least-recently-used replacement.
+ * Every hit moves the page to the tail of a linked list, and a single
+ * sequential scan larger than the pool flushes out everything else.
+ */
+public class LruPolicy<K> implements ReplacementPolicy<K> {
+    // LinkedHashMap with accessOrder = true acts as the LRU list
+    private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordInsert(K key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        order.get(key); // Moves it to the most-recently-used end
+    }
+
+    @Override
+    public void remove(K key) {
+        order.remove(key);
+    }
+
+    @Override
+    public K evict(Predicate<K> canEvict) {
+        return evict(canEvict, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public K evict(Predicate<K> canEvict, int maxCandidates) {
+        Iterator<K> it = order.keySet().iterator();
+        for (int asked = 0; asked < maxCandidates && it.hasNext(); asked++) {
+            K candidate = it.next();
+            if (canEvict.test(candidate)) {
+                it.remove();
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return order.size();
+    }
+}
@@ -0,0 +1,46 @@
+package com.jdb.buffer;
+
+/**
+ * Identifies a page in a BufferPool that caches several files:
+ * the file's id (assigned by BufferPool.register) plus the page id within it.
+ * Ordered by file, then page, so sorted write-back is sequential per file.
+ */
+public final class PageKey implements Comparable<PageKey> {
+    public final int fileId;
+    public final int pageId;
+
+    public PageKey(int fileId, int pageId) {
+        this.fileId = fileId;
+        this.pageId = pageId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PageKey)) {
+            return false;
+        }
+        PageKey other = (PageKey) o;
+        return fileId == other.fileId && pageId == other.pageId;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * fileId + pageId;
+    }
+
+    @Override
+    public int compareTo(PageKey other) {
+        if (fileId != other.fileId) {
+            return Integer.compare(fileId, other.fileId);
+        }
+        return Integer.compare(pageId, other.pageId);
+    }
+
+    @Override
+    public String toString() {
+        return fileId + ":" + pageId;
+    }
+}
@@ -0,0 +1,124 @@
+package com.jdb.buffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background writer for a BufferPool.
+ *
+ * Wakes up every 'intervalMillis' (or sooner, when the pool had to evict a
+ * dirty page) and writes dirty, unpinned pages in (file, page) order until at
+ * least 'cleanTarget' of the pool is clean. Eviction then almost always finds
+ * a clean victim, so a foreground miss rarely waits on someone else's write.
+ */
+public class PageWriter implements Runnable {
+    private final BufferPool pool;
+    private final double cleanTarget;
+    private final long intervalMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeUp = lock.newCondition();
+    private boolean signalled;
+    private volatile boolean running = true;
+
+    private final AtomicLong pagesWritten = new AtomicLong();
+    private final AtomicLong failedRounds = new AtomicLong();
+    private volatile RuntimeException lastError;
+    private final Thread thread;
+
+    PageWriter(BufferPool pool, double cleanTarget, long intervalMillis) {
+        if (cleanTarget < 0.0 || cleanTarget > 1.0) {
+            throw new IllegalArgumentException("Clean target must be between 0 and 1: " + cleanTarget);
+        }
+        this.pool = pool;
+        this.cleanTarget = cleanTarget;
+        this.intervalMillis = intervalMillis;
+        this.thread = new Thread(this, "jdb-page-writer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            awaitRound();
+            if (!running) {
+                break;
+            }
+            try {
+                int maxDirty = (int) Math.floor(pool.getMaxPages() * (1.0 - cleanTarget));
+                int excess = pool.getDirtyPageCount() - maxDirty;
+                if (excess > 0) {
+                    pagesWritten.addAndGet(pool.writeDirtyPages(excess));
+                }
+            } catch (RuntimeException e) {
+                // Keep the writer alive; the page stays dirty and eviction will retry it
+                lastError = e;
+                failedRounds.incrementAndGet();
+            }
+        }
+    }
+
+    private void awaitRound() {
+        lock.lock();
+        try {
+            if (!signalled) {
+                wakeUp.await(intervalMillis, TimeUnit.MILLISECONDS);
+            }
+            signalled = false;
+        } catch (InterruptedException e) {
+            running = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asks for a round now instead of at the next interval.
+     */
+    void signal() {
+        lock.lock();
+        try {
+            signalled = true;
+            wakeUp.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the thread and waits for the current round to finish.
+     */
+    void shutdown() {
+        running = false;
+        signal();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getPagesWritten() {
+        return pagesWritten.get();
+    }
+
+    /**
+     * Rounds cut short by a failed write.
+     */
+    public long getFailedRounds() {
+        return failedRounds.get();
+    }
+
+    /**
+     * The error that ended the latest failed round, or null if none has failed.
+     */
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+}
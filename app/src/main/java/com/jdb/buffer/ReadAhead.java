@@ -0,0 +1,64 @@
+package com.jdb.buffer;
+
+/**
+ * Detects a sequential page stream and decides when to prefetch.
+ *
+ * A window of 'windowPages' pages is scheduled when a miss continues the
+ * stream (the page right after the previous miss, or right after the last
+ * window). When the reader gets halfway through a window, the next window is
+ * scheduled, so I/O for upcoming pages overlaps with processing of current ones.
+ *
+ * With 'hinted' set (a declared scan), the very first miss starts read-ahead.
+ *
+ * State is updated without locks: under concurrent use the worst outcome is a
+ * redundant or skipped prefetch, never a wrong page.
+ */
+class ReadAhead {
+    static final int NONE = -1;
+
+    private final int windowPages;
+    private final boolean hinted;
+
+    private volatile int lastMiss = NONE;
+    private volatile int windowEnd = NONE; // First page not covered by a scheduled window
+    private volatile int trigger = NONE;   // Accessing this page schedules the next window
+
+    ReadAhead(int windowPages, boolean hinted) {
+        this.windowPages = windowPages;
+        this.hinted = hinted;
+    }
+
+    /**
+     * Records an access and returns the first page of a window to prefetch, or NONE.
+     * The window is [result, result + getWindowPages()).
+     */
+    int onAccess(int pageId, boolean miss) {
+        if (windowPages <= 0) {
+            return NONE;
+        }
+        if (miss) {
+            boolean sequential = hinted || pageId == lastMiss + 1 || pageId == windowEnd;
+            lastMiss = pageId;
+            if (!sequential) {
+                return NONE;
+            }
+            if (pageId >= windowEnd || pageId < trigger - windowPages) {
+                return schedule(pageId + 1); // New stream, or we are past the last window
+            }
+        }
+        if (pageId >= trigger && pageId < windowEnd) {
+            return schedule(windowEnd);
+        }
+        return NONE;
+    }
+
+    private int schedule(int from) {
+        windowEnd = from + windowPages;
+        trigger = from + windowPages / 2;
+        return from;
+    }
+
+    int getWindowPages() {
+        return windowPages;
+    }
+}
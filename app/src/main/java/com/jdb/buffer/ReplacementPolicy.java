@@ -0,0 +1,58 @@
+package com.jdb.buffer;
+
+import java.util.function.Predicate;
+
+/**
+ * Decides which cached page to evict when the buffer pool is full.
+ *
+ * The pool calls every method except recordAccess while holding its own lock,
+ * so implementations need no synchronization of their own for bookkeeping.
+ * recordAccess is on the hit path: if isAccessLockFree() returns true the pool
+ * calls it without the lock, and the implementation must tolerate running
+ * concurrently with the other methods.
+ *
+ * @param <K> the page key type used by the pool
+ */
+public interface ReplacementPolicy<K> {
+
+    /**
+     * A page was loaded into the pool.
+     */
+    void recordInsert(K key);
+
+    /**
+     * A cached page was used again (a hit). Unknown keys must be ignored.
+     */
+    void recordAccess(K key);
+
+    /**
+     * A page left the pool for a reason other than evict() (e.g. flush, failed load).
+     */
+    void remove(K key);
+
+    /**
+     * Picks a victim, removes it from the policy and returns it, or null if
+     * no candidate is accepted. 'canEvict' is asked at most once per candidate
+     * and a 'true' answer commits the pool to evicting that page.
+     */
+    K evict(Predicate<K> canEvict);
+
+    /**
+     * Like evict, but only the 'maxCandidates' coldest pages are considered.
+     * If none is accepted, the policy is left as it was (nothing is removed
+     * or aged), so the caller can follow up with a normal evict().
+     */
+    K evict(Predicate<K> canEvict, int maxCandidates);
+
+    /**
+     * Number of pages currently tracked.
+     */
+    int size();
+
+    /**
+     * True if recordAccess may be called without the pool lock.
+     */
+    default boolean isAccessLockFree() {
+        return false;
+    }
+}
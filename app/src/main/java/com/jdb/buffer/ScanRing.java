@@ -0,0 +1,50 @@
+package com.jdb.buffer;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small private set of buffer frames for one bulk scan.
+ *
+ * Pages that a scan loads through its ring are not handed to the pool's
+ * replacement policy. Once the ring is full, each new page reuses the frame
+ * of the ring's oldest page. A full table scan therefore cycles through a few
+ * frames instead of evicting the shared working set (e.g. hot B+Tree nodes).
+ * The ring also carries a read-ahead hint: the scan is known to be
+ * sequential, so the next pages are prefetched into the ring asynchronously.
+ *
+ * Close the ring when the scan ends. Its unpinned pages are dropped from the
+ * pool then (written first if dirty), so the scan leaves the shared working
+ * set exactly as it found it.
+ */
+public class ScanRing implements AutoCloseable {
+    private final BufferManager owner;
+    private final int size;
+    final ReadAhead readAhead;
+
+    // Pages currently owned by the ring, oldest first. Guarded by the pool lock.
+    final ArrayDeque<PageKey> pages = new ArrayDeque<>();
+    boolean closed;
+
+    ScanRing(BufferManager owner, int size, int readAheadPages) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Scan ring needs at least one frame");
+        }
+        this.owner = owner;
+        // Prefetched pages must not be recycled before the scan reaches them
+        this.size = Math.max(size, 2 * readAheadPages);
+        this.readAhead = new ReadAhead(readAheadPages, true);
+    }
+
+    boolean isFull() {
+        return pages.size() >= size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        owner.closeRing(this);
+    }
+}
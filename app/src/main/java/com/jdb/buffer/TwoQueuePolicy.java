@@ -0,0 +1,108 @@
+package com.jdb.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.function.Predicate;
+
+/**
+ * Scan-resistant 2Q replacement (Johnson and Shasha).
+ *
+ * - A1in: FIFO of pages seen once. A scan streams through A1in and is evicted
+ *   from it without ever touching the hot set.
+ * - A1out: "ghost" FIFO of keys recently evicted from A1in (no data cached).
+ * - Am: LRU of pages with proven reuse, such as B+Tree inner nodes. A page is
+ *   promoted when it is hit again while in A1in (the simplified 2Q rule), or
+ *   requested again while its ghost is still in A1out (the full 2Q rule).
+ *
+ * Promoting on an A1in hit matters when the hot set fits in the pool: such
+ * pages are never evicted between uses, so they would never reach A1out.
+ *
+ * Queue sizes follow the usual tuning (A1in 25%, A1out 50% of the pool),
+ * measured against the number of resident pages when eviction runs.
+ */
+public class TwoQueuePolicy<K> implements ReplacementPolicy<K> {
+    private static final double IN_SHARE = 0.25;
+    private static final double OUT_SHARE = 0.50;
+
+    private final LinkedHashSet<K> a1in = new LinkedHashSet<>();
+    private final LinkedHashSet<K> a1out = new LinkedHashSet<>();
+    private final LinkedHashMap<K, Boolean> am = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int askBudget; // Candidates the current evict() call may still ask about
+
+    @Override
+    public void recordInsert(K key) {
+        if (a1out.remove(key)) {
+            am.put(key, Boolean.TRUE); // Seen again after leaving A1in: it is hot
+        } else {
+            a1in.add(key);
+        }
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        if (a1in.remove(key)) {
+            am.put(key, Boolean.TRUE); // Second use: promote
+        } else {
+            am.get(key); // Moves it to the most-recently-used end of Am
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        if (!a1in.remove(key)) {
+            am.remove(key);
+        }
+    }
+
+    @Override
+    public K evict(Predicate<K> canEvict) {
+        return evict(canEvict, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public K evict(Predicate<K> canEvict, int maxCandidates) {
+        askBudget = maxCandidates;
+        int resident = size();
+        boolean fromIn = a1in.size() > Math.max(1, (int) (resident * IN_SHARE)) || am.isEmpty();
+
+        K victim = fromIn ? evictFromIn(canEvict) : evictFrom(am.keySet().iterator(), canEvict);
+        if (victim == null) {
+            // Everything in the preferred queue is pinned; try the other one
+            victim = fromIn ? evictFrom(am.keySet().iterator(), canEvict) : evictFromIn(canEvict);
+        }
+        return victim;
+    }
+
+    private K evictFromIn(Predicate<K> canEvict) {
+        K victim = evictFrom(a1in.iterator(), canEvict);
+        if (victim != null) {
+            a1out.add(victim);
+            int maxOut = Math.max(1, (int) ((size() + 1) * OUT_SHARE));
+            Iterator<K> it = a1out.iterator();
+            while (a1out.size() > maxOut) {
+                it.next();
+                it.remove();
+            }
+        }
+        return victim;
+    }
+
+    private K evictFrom(Iterator<K> it, Predicate<K> canEvict) {
+        while (askBudget > 0 && it.hasNext()) {
+            askBudget--;
+            K candidate = it.next();
+            if (canEvict.test(candidate)) {
+                it.remove();
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return a1in.size() + am.size();
+    }
+}
@@ -0,0 +1,179 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds a B+ Tree bottom-up from entries that are already sorted by key.
+ *
+ * Instead of descending from the root for every key, the loader only ever
+ * appends: it fills the current leaf up to the fill factor, then starts the
+ * next one and hands its first key up to the level above, which fills its
+ * own current node the same way. Only the rightmost node of each level is
+ * pinned, no entry is ever shifted, and pages are allocated (and so written)
+ * in file order. With a fill factor of 1.0 every node except the last one
+ * on each level is full, so the tree is about half the size of one built by
+ * sequential inserts, whose splits leave nodes half empty.
+ *
+ * Usage:
+ *   BTreeFile index = new BTreeBulkLoader(bm, 0, 0.9).load(sortedEntries);
+ */
+public class BTreeBulkLoader {
+    private final BufferManager bufferManager;
+    private final int metaPageId;
+    private final double fillFactor;
+
+    // The open (rightmost, pinned) node of each internal level, bottom-up
+    private final List<Integer> levelPageIds = new ArrayList<>();
+    private final List<BTreeInternalPage> levelPages = new ArrayList<>();
+
+    private int leafPageId = BTreeLeafPage.NO_PAGE; // NO_PAGE while no leaf is pinned
+    private BTreeLeafPage leaf;
+    private int leafTarget;
+    private int internalTarget;
+
+    /**
+     * @param fillFactor share (0..1] of each node to fill. Leave room (e.g. 0.8)
+     *                   if many inserts will follow, to delay the first splits.
+     */
+    public BTreeBulkLoader(BufferManager bufferManager, int metaPageId, double fillFactor) {
+        if (fillFactor <= 0.0 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        }
+        this.bufferManager = bufferManager;
+        this.metaPageId = metaPageId;
+        this.fillFactor = fillFactor;
+    }
+
+    /**
+     * Loads 'sorted' (non-decreasing keys) into a new index and opens it.
+     * The header page must be blank or not exist yet.
+     */
+    public BTreeFile load(Iterator<IndexEntry> sorted) {
+        // 1. Claim the header page (it is written last, once the root is known)
+        while (bufferManager.getNumPages() <= metaPageId) {
+            bufferManager.allocateNewPage();
+        }
+        Page metaRaw = bufferManager.fetchPage(metaPageId);
+        try {
+            if (metaRaw.getInt(0) != 0 || metaRaw.getInt(4) != 0) {
+                throw new IllegalStateException("Bulk load needs an empty index file (page " + metaPageId + " is in use)");
+            }
+
+            // 2. Stream the entries into leaves, pushing separators upwards
+            levelPageIds.clear();
+            levelPages.clear();
+            internalTarget = 0;
+            leafPageId = newLeaf(BTreeLeafPage.NO_PAGE);
+            leafTarget = Math.max(1, (int) (fillFactor * leaf.getMaxCapacity()));
+            boolean first = true;
+            int lastKey = 0;
+            while (sorted.hasNext()) {
+                IndexEntry e = sorted.next();
+                if (!first && e.key < lastKey) {
+                    throw new IllegalArgumentException("Bulk load input is not sorted: " + e.key + " after " + lastKey);
+                }
+                first = false;
+                lastKey = e.key;
+                if (leaf.getKeyCount() >= leafTarget) {
+                    int previousLeafId = leafPageId;
+                    BTreeLeafPage previous = leaf;
+                    leafPageId = newLeaf(previousLeafId);
+                    previous.setNextPageId(leafPageId);
+                    bufferManager.unpinPage(previousLeafId, true);
+                    addChild(0, e.key, leafPageId, previousLeafId);
+                }
+                leaf.insert(e.key, e.rid); // Always lands at the end: no shifting
+            }
+
+            // 3. Close every level; the last open node of the top level is the root
+            int rootPageId = leafPageId;
+            int height = levelPageIds.size() + 1;
+            if (!levelPageIds.isEmpty()) {
+                rootPageId = levelPageIds.get(levelPageIds.size() - 1);
+            }
+            releaseOpenNodes();
+
+            BTreeMetaPage meta = new BTreeMetaPage(metaRaw);
+            meta.format(rootPageId);
+            meta.setHeight(height);
+        } finally {
+            releaseOpenNodes(); // Only left pinned if the load failed (e.g. unsorted input)
+            bufferManager.unpinPage(metaPageId, true);
+        }
+        return new BTreeFile(bufferManager, metaPageId);
+    }
+
+    /**
+     * Unpins the open leaf and the open node of every internal level.
+     */
+    private void releaseOpenNodes() {
+        if (leafPageId != BTreeLeafPage.NO_PAGE) {
+            bufferManager.unpinPage(leafPageId, true);
+            leafPageId = BTreeLeafPage.NO_PAGE;
+        }
+        for (int pageId : levelPageIds) {
+            bufferManager.unpinPage(pageId, true);
+        }
+        levelPageIds.clear();
+        levelPages.clear();
+        leaf = null;
+    }
+
+    /**
+     * Allocates the next leaf (pinned) and links it after 'prevPageId'.
+     */
+    private int newLeaf(int prevPageId) {
+        int pageId = bufferManager.allocateNewPage();
+        leaf = new BTreeLeafPage(bufferManager.fetchPage(pageId));
+        leaf.format();
+        leaf.setPrevPageId(prevPageId);
+        return pageId;
+    }
+
+    /**
+     * A new node 'childPageId' (starting at 'separator') was opened on the
+     * level below 'level'; 'leftSiblingId' is the node before it.
+     */
+    private void addChild(int level, int separator, int childPageId, int leftSiblingId) {
+        if (level == levelPages.size()) {
+            // First split on the level below: this level starts with one node
+            // whose leftmost pointer is the left sibling
+            int pageId = bufferManager.allocateNewPage();
+            levelPages.add(newInternal(pageId, leftSiblingId));
+            levelPageIds.add(pageId);
+        }
+
+        BTreeInternalPage node = levelPages.get(level);
+        if (internalTarget == 0) {
+            internalTarget = Math.max(2, (int) (fillFactor * node.getMaxCapacity()));
+        }
+        if (node.getKeyCount() < internalTarget) {
+            node.insert(separator, childPageId); // Appends: keys arrive in order
+            return;
+        }
+
+        // This node is full too: the separator moves up and starts the next node
+        int previousId = levelPageIds.get(level);
+        int pageId = bufferManager.allocateNewPage();
+        levelPages.set(level, newInternal(pageId, childPageId));
+        levelPageIds.set(level, pageId);
+        bufferManager.unpinPage(previousId, true);
+        addChild(level + 1, separator, pageId, previousId);
+    }
+
+    /**
+     * Pins the fresh page 'pageId' as an internal node whose leftmost pointer is 'leftmostChild'.
+     */
+    private BTreeInternalPage newInternal(int pageId, int leftmostChild) {
+        BTreeInternalPage node = new BTreeInternalPage(bufferManager.fetchPage(pageId));
+        node.format();
+        node.setPointer(0, leftmostChild);
+        node.setKeyCount(1);
+        return node;
+    }
+}
@@ -0,0 +1,256 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Streams the entries with lo <= key <= hi, in ascending or descending key order.
+ *
+ * The cursor walks the leaf chain through the sibling links and holds a pin
+ * on one leaf at a time (two for a moment while it steps to the next: the
+ * sibling is pinned while the link to it is still latched, so a delete can't
+ * recycle it in between). Entries are read lazily, so stopping early is cheap.
+ * Close it (try-with-resources) if you stop before the end; a cursor that
+ * runs out releases its leaf by itself.
+ *
+ * Concurrent inserts are allowed. Each step reads the leaf under its read
+ * latch; if the leaf changed since the previous step (its stamp no longer
+ * validates), the cursor finds its place again by the last entry it
+ * returned: its key, and its RecordId among the duplicates of that key. It
+ * follows entries that a split moved to a new sibling. Deletes never merge
+ * or rebalance a leaf that a cursor has pinned.
+ */
+public class BTreeCursor implements IndexCursor {
+    private final BufferManager bufferManager;
+    private final int lo;
+    private final int hi;
+    private final boolean descending;
+
+    // The one pinned leaf (null once the scan is over)
+    private BTreeLeafPage leaf;
+    private int leafPageId = BTreeLeafPage.NO_PAGE;
+    private StampedLock latch;
+    private long version; // Stamp of the leaf as we last saw it
+    private int index; // Next slot to look at
+
+    // The last entry returned, to find our place again after a concurrent change
+    private boolean hasLast;
+    private int lastKey;
+    private RecordId lastRid;
+    private boolean reseek; // Set when a change was seen: leaves are positioned by key until one holds our place
+
+    private IndexEntry next; // Read ahead by hasNext()
+
+    /**
+     * 'startLeafId' must be pinned by the caller; the cursor takes over that pin.
+     */
+    BTreeCursor(BufferManager bufferManager, int startLeafId, int lo, int hi, boolean descending) {
+        this.bufferManager = bufferManager;
+        this.lo = lo;
+        this.hi = hi;
+        this.descending = descending;
+        if (lo > hi) {
+            bufferManager.unpinPage(startLeafId, false);
+            return; // Empty range
+        }
+        reseek = true; // The first leaf is positioned by lo / hi
+        moveTo(startLeafId);
+        if (descending) {
+            skipRight();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && leaf != null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public IndexEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        IndexEntry e = next;
+        next = null;
+        return e;
+    }
+
+    /**
+     * Finds the next entry in range, hopping to sibling leaves as needed.
+     * Returns null (and releases the leaf) when the range is exhausted.
+     */
+    private IndexEntry advance() {
+        while (leaf != null) {
+            int siblingId;
+            long stamp = latch.readLock();
+            try {
+                if (!latch.validate(version)) {
+                    // The leaf changed since the last step (an insert or a split)
+                    reseek = true;
+                    seek(false);
+                }
+                if (descending ? index >= 0 : index < leaf.getKeyCount()) {
+                    int i = descending ? index-- : index++;
+                    int key = leaf.getKeyAt(i);
+                    if (descending ? key < lo : key > hi) {
+                        break;
+                    }
+                    if (descending ? key > hi : key < lo) {
+                        continue;
+                    }
+                    hasLast = true;
+                    lastKey = key;
+                    lastRid = leaf.getValueAt(i);
+                    return new IndexEntry(key, lastRid);
+                }
+                siblingId = descending ? leaf.getPrevPageId() : leaf.getNextPageId();
+                pin(siblingId);
+            } finally {
+                latch.unlockRead(stamp);
+            }
+            moveTo(siblingId);
+        }
+        close();
+        return null;
+    }
+
+    /**
+     * Unpins the current leaf and moves to 'pageId', which the caller has
+     * already pinned (or ends the scan on NO_PAGE), positioning the cursor in it.
+     */
+    private void moveTo(int pageId) {
+        int cameFrom = leafPageId;
+        release();
+        while (pageId != BTreeLeafPage.NO_PAGE) {
+            Page raw = bufferManager.getPage(pageId); // Already pinned: just look it up
+            leafPageId = pageId;
+            leaf = new BTreeLeafPage(raw);
+            latch = bufferManager.getLatch(pageId);
+            long stamp = latch.readLock();
+            int nextId;
+            try {
+                // Going left, the leaf may have split after we read its id: the
+                // new right half sits between it and where we came from
+                nextId = leaf.getNextPageId();
+                if (!descending || cameFrom == BTreeLeafPage.NO_PAGE || nextId == cameFrom) {
+                    seek(true);
+                    // If our place is past this whole leaf too (ours split more
+                    // than once), the next one is positioned by key as well
+                    reseek = reseek && (descending ? index < 0 : index >= leaf.getKeyCount());
+                    return;
+                }
+                pin(nextId);
+            } finally {
+                latch.unlockRead(stamp);
+            }
+            release();
+            pageId = nextId;
+        }
+    }
+
+    /**
+     * Sets 'index' for the current (read-latched) leaf: its first or last slot
+     * when simply moving on, or by the last entry returned after a change.
+     * 'moved' is set when the leaf is one we just stepped to.
+     */
+    private void seek(boolean moved) {
+        if (!reseek) {
+            index = descending ? leaf.getKeyCount() - 1 : 0;
+        } else if (hasLast) {
+            // Duplicates of lastKey may sit on either side of the last entry,
+            // so look for that entry itself
+            int i = findLast();
+            if (i >= 0) {
+                index = descending ? i - 1 : i + 1;
+            } else if (descending) {
+                // It moved right or was deleted: the duplicates still here come before it
+                index = leaf.upperBound(lastKey) - 1;
+            } else {
+                // In the leaf we were reading, the duplicates still here came
+                // before it (a split moves it right along with those after it);
+                // in a leaf we stepped to they all come after it
+                index = moved ? leaf.lowerBound(lastKey) : leaf.upperBound(lastKey);
+            }
+        } else {
+            index = descending ? leaf.upperBound(hi) - 1 : leaf.lowerBound(lo);
+        }
+        version = latch.tryOptimisticRead();
+    }
+
+    /**
+     * Index of the last entry returned in the current leaf, or -1 if it's not here.
+     */
+    private int findLast() {
+        for (int i = leaf.lowerBound(lastKey); i < leaf.getKeyCount() && leaf.getKeyAt(i) == lastKey; i++) {
+            RecordId rid = leaf.getValueAt(i);
+            if (rid.pageId == lastRid.pageId && rid.slotNumber == lastRid.slotNumber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A descending scan starts at the leaf that covered 'hi' when the tree was
+     * searched. If that leaf has split since, keys <= hi may now be to its right.
+     */
+    private void skipRight() {
+        while (leaf != null) {
+            int nextId;
+            long stamp = latch.readLock();
+            try {
+                nextId = leaf.getNextPageId();
+                if (nextId == BTreeLeafPage.NO_PAGE || index < leaf.getKeyCount() - 1) {
+                    return; // hi falls inside this leaf
+                }
+                pin(nextId);
+            } finally {
+                latch.unlockRead(stamp);
+            }
+
+            Page raw = bufferManager.getPage(nextId);
+            StampedLock nextLatch = bufferManager.getLatch(nextId);
+            long nextStamp = nextLatch.readLock();
+            boolean move;
+            try {
+                BTreeLeafPage nextLeaf = new BTreeLeafPage(raw);
+                move = nextLeaf.getKeyCount() > 0 && nextLeaf.getKeyAt(0) <= hi;
+            } finally {
+                nextLatch.unlockRead(nextStamp);
+            }
+            if (!move) {
+                bufferManager.unpinPage(nextId, false);
+                return;
+            }
+            reseek = true;
+            moveTo(nextId);
+        }
+    }
+
+    private void pin(int pageId) {
+        if (pageId != BTreeLeafPage.NO_PAGE) {
+            bufferManager.fetchPage(pageId);
+        }
+    }
+
+    private void release() {
+        if (leaf != null) {
+            leaf = null;
+            latch = null;
+            bufferManager.unpinPage(leafPageId, false);
+            leafPageId = BTreeLeafPage.NO_PAGE;
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
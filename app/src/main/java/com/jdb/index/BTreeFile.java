@@ -4,144 +4,1420 @@ import com.jdb.buffer.BufferManager;
 import com.jdb.storage.Page;
 import com.jdb.storage.RecordId;
 
-public class BTreeFile {
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A B+ Tree index (int key -> RecordId) stored in one file.
+ *
+ * The file starts with a header page (see BTreeMetaPage) that records where
+ * the root is. When the root splits, the new root id is written to the header,
+ * so reopening the index is a single page read at any size.
+ * Nodes split at every level, so the tree grows in height as needed.
+ * Leaves are chained by sibling links, which scan() uses for range queries.
+ * delete() merges or rebalances nodes that fall below a quarter full and
+ * hands emptied pages to the file's free list, which the header page saves,
+ * so churn reuses pages instead of growing the file.
+ *
+ * Concurrency (optimistic lock coupling):
+ * Any number of threads may call find, scan and insert at once. Every node
+ * is guarded by the StampedLock latch of its buffer frame, used as a
+ * version counter:
+ * - Readers take no locks. They note the node's stamp, read it, and
+ *   validate the stamp before trusting what they read. A failed check
+ *   means a writer got in between, and the operation restarts from the root.
+ * - Going down, the child is pinned and its stamp taken before the parent
+ *   is validated, so a reader never follows a pointer a split just moved.
+ * - Writers descend the same way and upgrade stamps to write latches only
+ *   on the nodes they change: the leaf they insert into, or a node being
+ *   split plus its parent. Splits are eager: a full internal node is split
+ *   on the way down, so the parent of a splitting node always has room and
+ *   a split never has to lock more than one level up.
+ * Pins keep nodes in the pool while their stamps are in use, so an eviction
+ * can never swap a latch under a reader.
+ *
+ * Appends (keys above every key in the tree, e.g. increasing ids):
+ * - The rightmost leaf splits where the new key goes rather than in the
+ *   middle: the old leaf stays full and the new one starts with just the
+ *   new key (PostgreSQL's rightmost "fastpath" split). A full node on the
+ *   rightmost path splits the same way. Otherwise an ascending load would
+ *   leave every node but the last half empty for good.
+ * - The tree remembers its rightmost leaf, and an append that fits there
+ *   goes straight to it without a descent (tryAppend).
+ *
+ * Swizzled upper levels (optional, see setPinnedLevels):
+ * The root and the levels just below it are read by every lookup and never
+ * leave the pool, yet each visit still costs a page table lookup, a pin and
+ * a replacement-policy update. With pinned levels, those nodes stay pinned
+ * and each one keeps direct references to its pinned children (the child
+ * pointers "swizzled" from page ids into frames). find and scan walk those
+ * references without touching the page table and only go through
+ * BufferManager below them. A node's references are only trusted while its
+ * stamp is the one they were built under; any change to the node (a split
+ * below it, a merge) makes them stale, lookups fall back to the page table,
+ * and the next lookup rebuilds them. A node dropped from the pinned set is
+ * marked invalid before its pin is released, so a reader still holding it
+ * notices before its frame can be evicted and reused.
+ */
+public class BTreeFile implements Index {
     private final BufferManager bufferManager;
-    private int rootPageId;
+    private final int metaPageId;
+    private volatile int rootPageId; // Changes only while the old root is write-latched
+    private volatile int height;
+    private boolean upgraded; // Opening rewrote a version 1 index
+
+    // tryXxx() result: a page we read changed under us, start again from the root
+    private static final int RESTART = -2;
+
+    // A hint, checked before use: the leaf with no right sibling, as last seen by an insert
+    private volatile int rightmostLeafId = BTreeLeafPage.NO_PAGE;
+
+    // Swizzled upper levels (setPinnedLevels). The map is guarded by swizzleLock.
+    private volatile int pinnedLevels;
+    private volatile SwizzledNode swizzledRoot;
+    private volatile boolean swizzleStale;
+    private final ReentrantLock swizzleLock = new ReentrantLock();
+    private Map<Integer, SwizzledNode> swizzled = new HashMap<>();
+
+    /**
+     * A pinned internal node of the upper levels: its frame's page and latch,
+     * plus references to its pinned children.
+     */
+    private static class SwizzledNode {
+        final int pageId;
+        final Page page;
+        final StampedLock latch;
+        volatile Children children; // null if the children aren't swizzled
+        volatile boolean valid = true; // False once dropped (and about to be unpinned)
+
+        SwizzledNode(int pageId, Page page, StampedLock latch) {
+            this.pageId = pageId;
+            this.page = page;
+            this.latch = latch;
+        }
+
+        /**
+         * True if nothing we read from the node since 'stamp' can have changed.
+         */
+        boolean validate(long stamp) {
+            return latch.validate(stamp) && valid;
+        }
+    }
+
+    /**
+     * A node's children by child index, as they were at 'stamp'.
+     */
+    private static class Children {
+        final long stamp;
+        final SwizzledNode[] nodes;
 
-    public BTreeFile(BufferManager bufferManager, int rootPageId) {
+        Children(long stamp, SwizzledNode[] nodes) {
+            this.stamp = stamp;
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * A sorted batch of keys, worked through one leaf at a time (findBatch,
+     * insertBatch). Each entry packs (key << 32 | position in the caller's
+     * arrays), so sorting the longs sorts by key and remembers where results go.
+     */
+    private static class Batch {
+        final long[] entries;
+        final RecordId[] rids; // Values to insert, by position (null for lookups)
+        int next;              // First entry not done yet
+        long fence = Long.MAX_VALUE; // Keys below this belong to the leaf the last descent reached
+
+        Batch(int[] keys, RecordId[] rids) {
+            entries = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                entries[i] = ((long) keys[i] << 32) | i;
+            }
+            Arrays.sort(entries);
+            this.rids = rids;
+        }
+
+        int keyAt(int i) {
+            return (int) (entries[i] >> 32);
+        }
+
+        int positionAt(int i) {
+            return (int) entries[i];
+        }
+
+        /**
+         * True if entry 'i' exists and falls in the current leaf.
+         */
+        boolean inLeaf(int i) {
+            return i < entries.length && keyAt(i) < fence;
+        }
+    }
+
+    /**
+     * Opens the index whose header is page 'metaPageId' (normally 0).
+     * A blank (or missing) header page creates a new, empty index.
+     */
+    public BTreeFile(BufferManager bufferManager, int metaPageId) {
         this.bufferManager = bufferManager;
-        this.rootPageId = rootPageId;
-        initRootIfNeeded();
+        this.metaPageId = metaPageId;
+        openOrCreate();
+    }
+
+    private void openOrCreate() {
+        // A brand-new file may not even have the header page yet
+        while (bufferManager.getNumPages() <= metaPageId) {
+            bufferManager.allocateNewPage();
+        }
+
+        Page p = bufferManager.fetchPage(metaPageId);
+        boolean dirty = false;
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(p);
+
+            // Case 1: An existing index. Just read the root pointer.
+            if (meta.isValid()) {
+                if (meta.getKeyFormat() != BTreeMetaPage.KEY_FORMAT_INT) {
+                    throw new IllegalStateException("Page " + metaPageId + " heads an index with key format " + meta.getKeyFormat() + ", not int keys");
+                }
+                rootPageId = meta.getRootPageId();
+                height = meta.getHeight();
+                if (meta.getVersion() < 2) {
+                    upgradeFromV1(meta);
+                    dirty = true;
+                } else if (meta.getVersion() < BTreeMetaPage.VERSION) {
+                    // v2 had no free list
+                    meta.setFreeListHead(BufferManager.NO_PAGE);
+                    meta.setVersion(BTreeMetaPage.VERSION);
+                    dirty = true;
+                }
+                bufferManager.setFreeListHead(meta.getFreeListHead());
+                return;
+            }
+
+            boolean blank = p.getInt(0) == 0 && p.getInt(4) == 0;
+            if (blank) {
+                // Case 2: A new index. The root starts as an empty leaf.
+                rootPageId = newRootLeaf();
+                height = 1;
+                meta.format(rootPageId);
+            } else {
+                // Case 3: An older index that kept its root node on this page.
+                // Move the node to its own page, put the header here, then upgrade.
+                rootPageId = bufferManager.allocateNewPage();
+                Page rootRaw = bufferManager.fetchPage(rootPageId);
+                rootRaw.writeBytes(0, p.readBytes(0, Page.PAGE_SIZE));
+                bufferManager.unpinPage(rootPageId, true);
+                p.writeBytes(0, new byte[Page.PAGE_SIZE]);
+                meta.format(rootPageId);
+                meta.setVersion(1);
+                upgradeFromV1(meta);
+            }
+            dirty = true;
+        } finally {
+            bufferManager.unpinPage(metaPageId, dirty);
+        }
+    }
+
+    private int newRootLeaf() {
+        int pageId = bufferManager.allocateNewPage();
+        Page rootRaw = bufferManager.fetchPage(pageId);
+        new BTreeLeafPage(rootRaw).format();
+        bufferManager.unpinPage(pageId, true);
+        return pageId;
     }
 
-    private void initRootIfNeeded() {
-        // (Same as before: Initialize empty root if needed)
+    /**
+     * Version 1 leaves have no sibling links (their entries start 8 bytes earlier).
+     * Every entry is re-inserted into a new tree in the current layout;
+     * the old pages are simply no longer referenced.
+     */
+    private void upgradeFromV1(BTreeMetaPage meta) {
+        int oldRootId = rootPageId;
+        meta.setFreeListHead(BufferManager.NO_PAGE);
+        bufferManager.setFreeListHead(BufferManager.NO_PAGE);
+        rootPageId = newRootLeaf();
+        height = 1; // Still single-threaded: the constructor hasn't returned
+        meta.setRootPageId(rootPageId);
+        meta.setHeight(height);
+
+        copyV1Entries(oldRootId);
+
+        meta.setVersion(BTreeMetaPage.VERSION);
+        upgraded = true;
+    }
+
+    private void copyV1Entries(int pageId) {
+        Page rawPage = bufferManager.fetchPage(pageId);
         try {
-            Page p = bufferManager.getPage(rootPageId);
-            if (p.getInt(0) == 0 && p.getInt(4) == 0) {
-                BTreeLeafPage leaf = new BTreeLeafPage(p);
-                leaf.setPageType(BTreePage.TYPE_LEAF);
-                bufferManager.setPageDirty(rootPageId, true);
+            int count = rawPage.getInt(4);
+            if (rawPage.getInt(0) == BTreePage.TYPE_LEAF) {
+                for (int i = 0; i < count; i++) {
+                    int offset = 12 + i * 12; // v1: [Key][PageID][Slot] right after the 12-byte header
+                    insertEntry(rawPage.getInt(offset), new RecordId(rawPage.getInt(offset + 4), rawPage.getInt(offset + 8)));
+                }
+            } else {
+                BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+                for (int i = 0; i < count; i++) {
+                    copyV1Entries(internal.getValueAt(i));
+                }
             }
-        } catch (Exception e) {}
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+        }
+    }
+
+    public int getRootPageId() {
+        return rootPageId;
+    }
+
+    /**
+     * True if opening the index upgraded it from the version 1 layout.
+     */
+    public boolean wasUpgraded() {
+        return upgraded;
+    }
+
+    /**
+     * Number of levels, counting the root (1 = the root is a leaf).
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    // --- Swizzled upper levels ---
+
+    /**
+     * Keeps the top 'levels' levels of internal nodes pinned and swizzled
+     * (see the class comment), so lookups skip the page table there. 0 (the
+     * default) turns it off and releases the pins. The leaves are never
+     * included, and levels are only added while the pinned nodes fit in a
+     * quarter of the buffer pool.
+     */
+    public void setPinnedLevels(int levels) {
+        if (levels < 0) {
+            throw new IllegalArgumentException("levels must be >= 0, got " + levels);
+        }
+        pinnedLevels = levels;
+        swizzleLock.lock();
+        try {
+            rebuild();
+        } finally {
+            swizzleLock.unlock();
+        }
+    }
+
+    public int getPinnedLevels() {
+        return pinnedLevels;
+    }
+
+    /**
+     * Number of nodes currently pinned as swizzled upper levels.
+     */
+    public int getSwizzledNodeCount() {
+        swizzleLock.lock();
+        try {
+            return swizzled.size();
+        } finally {
+            swizzleLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuilds stale swizzled references, unless another thread is at it.
+     */
+    private void rebuildSwizzled() {
+        if (swizzleLock.tryLock()) {
+            try {
+                rebuild();
+            } finally {
+                swizzleLock.unlock();
+            }
+        }
     }
 
+    /**
+     * Swizzles the top levels again from the root down, reusing the nodes
+     * (and pins) that are still among them. Called with swizzleLock held.
+     */
+    private void rebuild() {
+        // Cleared first: a change while we read the tree makes the next lookup rebuild again
+        swizzleStale = false;
+        Map<Integer, SwizzledNode> old = swizzled;
+        Map<Integer, SwizzledNode> now = new HashMap<>();
+        int budget = bufferManager.getMaxPages() / 4;
+        int levels = Math.min(pinnedLevels, height - 1);
+        SwizzledNode root = null;
+
+        if (levels > 0) {
+            // 1. The root, then one level at a time, while the nodes fit the budget
+            root = swizzle(rootPageId, old, now);
+            List<SwizzledNode> level = new ArrayList<>();
+            level.add(root);
+            for (int depth = 1; depth < levels && !level.isEmpty(); depth++) {
+                List<SwizzledNode> below = new ArrayList<>();
+                for (SwizzledNode node : level) {
+                    // 2. Read the node's child ids under one stamp
+                    long stamp = node.latch.tryOptimisticRead();
+                    int[] childIds = readChildIds(node.page);
+                    if (stamp == 0 || !node.latch.validate(stamp) || childIds == null) {
+                        swizzleStale = true; // Being changed: leave it to the page table for now
+                        continue;
+                    }
+                    if (now.size() + childIds.length > budget) {
+                        break;
+                    }
+                    SwizzledNode[] children = new SwizzledNode[childIds.length];
+                    for (int i = 0; i < childIds.length; i++) {
+                        children[i] = swizzle(childIds[i], old, now);
+                    }
+                    Collections.addAll(below, children);
+                    node.children = new Children(stamp, children);
+                }
+                level = below;
+            }
+        }
+        swizzledRoot = root;
+
+        // 3. Drop the nodes that are no longer swizzled: invalid first, so a
+        //    reader still on one fails validation, then release the pin
+        for (SwizzledNode node : old.values()) {
+            if (!now.containsKey(node.pageId)) {
+                node.valid = false;
+                node.children = null;
+                bufferManager.unpinPage(node.pageId, false);
+            }
+        }
+        swizzled = now;
+    }
+
+    /**
+     * The swizzled node for 'pageId': the existing one, or a newly pinned one.
+     */
+    private SwizzledNode swizzle(int pageId, Map<Integer, SwizzledNode> old, Map<Integer, SwizzledNode> now) {
+        SwizzledNode node = now.get(pageId);
+        if (node == null) {
+            node = old.get(pageId);
+            if (node == null) {
+                Page p = bufferManager.fetchPage(pageId); // The pin is kept until the node is dropped
+                node = new SwizzledNode(pageId, p, bufferManager.getLatch(pageId));
+            }
+            node.children = null; // Set again if its level gets swizzled children
+            now.put(pageId, node);
+        }
+        return node;
+    }
+
+    /**
+     * An internal node's child page ids, or null on a torn read.
+     */
+    private static int[] readChildIds(Page rawPage) {
+        if (rawPage.getInt(0) != BTreePage.TYPE_INTERNAL) {
+            return null;
+        }
+        try {
+            BTreeInternalPage node = new BTreeInternalPage(rawPage);
+            int[] ids = new int[node.getKeyCount()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = node.getValueAt(i);
+            }
+            return ids;
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    @Override
     public RecordId find(int key) {
-        // (Same as before)
-        int currentPageId = rootPageId;
-        while (true) {
-            Page rawPage = bufferManager.getPage(currentPageId);
-            int pageType = rawPage.getInt(0);
+        RecordId[] found = new RecordId[1];
+        while (tryFindLeaf(key, found, false) == RESTART) {
+            Thread.onSpinWait();
+        }
+        return found[0] != null ? found[0] : findInRun(key);
+    }
+
+    /**
+     * A lookup's descent reaches the last leaf that can hold 'key'. A run of
+     * duplicates split across leaves may have copies only further left, so a
+     * miss looks again from the first leaf that can hold it.
+     */
+    private RecordId findInRun(int key) {
+        try (BTreeCursor cursor = scan(key, key)) {
+            return cursor.hasNext() ? cursor.next().rid : null;
+        }
+    }
+
+    /**
+     * Returns a cursor over the entries with lo <= key <= hi, in ascending key order.
+     */
+    @Override
+    public BTreeCursor scan(int lo, int hi) {
+        return scan(lo, hi, false);
+    }
+
+    /**
+     * Returns a cursor over the entries with lo <= key <= hi.
+     * The cursor pins one leaf at a time; close it if you stop early.
+     */
+    public BTreeCursor scan(int lo, int hi, boolean descending) {
+        // Ascending: start one key lower, so equal keys left behind by a split are not skipped
+        int startKey = descending ? hi : (lo == Integer.MIN_VALUE ? lo : lo - 1);
+        int leafPageId;
+        while ((leafPageId = tryFindLeaf(startKey, null, true)) == RESTART) {
+            Thread.onSpinWait();
+        }
+        // The leaf is handed over pinned, so a delete can't recycle it before the cursor starts
+        return new BTreeCursor(bufferManager, leafPageId, lo, hi, descending);
+    }
 
-            if (pageType == BTreePage.TYPE_LEAF) {
-                return new BTreeLeafPage(rawPage).lookup(key);
+    /**
+     * One optimistic descent to the leaf whose key range covers 'key'.
+     * If 'found' is given, the leaf is also searched for 'key' (result in found[0]).
+     * Returns the leaf's page id, or RESTART if a node changed while we read it.
+     * With 'keepPin' a returned leaf stays pinned for the caller.
+     */
+    private int tryFindLeaf(int key, RecordId[] found, boolean keepPin) {
+        return tryFindLeaf(key, found, keepPin, null);
+    }
+
+    /**
+     * With a 'batch', the descent starts at its next key and the leaf answers
+     * every batch key it covers (results in found[position]).
+     */
+    private int tryFindLeaf(int key, RecordId[] found, boolean keepPin, Batch batch) {
+        if (batch != null) {
+            batch.fence = Long.MAX_VALUE;
+        }
+        if (swizzleStale) {
+            rebuildSwizzled();
+        }
+        int pageId = BufferManager.NO_PAGE; // The page we hold a pin on, if any
+        boolean pinned = false;
+        try {
+            Page rawPage;
+            StampedLock latch;
+            long stamp;
+
+            SwizzledNode node = swizzledRoot;
+            if (node != null && node.pageId == rootPageId) {
+                // 1. Fast path: follow swizzled references while there are some
+                stamp = node.latch.tryOptimisticRead();
+                if (stamp == 0 || node.pageId != rootPageId) {
+                    return RESTART;
+                }
+                while (true) {
+                    if (node.page.getInt(0) != BTreePage.TYPE_INTERNAL) {
+                        swizzleStale = true; // Swizzled while the tree was shrinking
+                        return RESTART;
+                    }
+                    int index = readChildIndex(node.page, key, batch);
+                    int childPageId = index == RESTART ? RESTART : readChildAt(node.page, index);
+                    Children children = node.children;
+                    if (!node.validate(stamp)) {
+                        return RESTART;
+                    }
+                    SwizzledNode next = null;
+                    if (children != null) {
+                        if (children.stamp != stamp) {
+                            swizzleStale = true; // The node changed since its references were built
+                        } else if (index < children.nodes.length) {
+                            next = children.nodes[index];
+                        }
+                    }
+                    if (next != null) {
+                        long nextStamp = next.latch.tryOptimisticRead();
+                        if (nextStamp == 0 || !node.validate(stamp)) {
+                            return RESTART;
+                        }
+                        node = next;
+                        stamp = nextStamp;
+                        continue;
+                    }
+
+                    // 2. Below the swizzled levels: through the page table as usual
+                    Page childRaw = bufferManager.fetchPage(childPageId);
+                    pageId = childPageId;
+                    StampedLock childLatch = bufferManager.getLatch(childPageId);
+                    long childStamp = childLatch.tryOptimisticRead();
+                    if (childStamp == 0 || !node.validate(stamp)) {
+                        return RESTART;
+                    }
+                    rawPage = childRaw;
+                    latch = childLatch;
+                    stamp = childStamp;
+                    break;
+                }
             } else {
-                currentPageId = new BTreeInternalPage(rawPage).lookup(key);
+                if (pinnedLevels > 0 && height > 1) {
+                    swizzleStale = true; // The root changed (or nothing is swizzled yet)
+                }
+                pageId = rootPageId;
+                rawPage = bufferManager.fetchPage(pageId);
+                latch = bufferManager.getLatch(pageId);
+                stamp = latch.tryOptimisticRead();
+                if (stamp == 0 || pageId != rootPageId) {
+                    return RESTART; // Being written, or no longer the root
+                }
+            }
+
+            while (rawPage.getInt(0) != BTreePage.TYPE_LEAF) {
+                int childPageId = readChild(rawPage, key, batch);
+                if (!latch.validate(stamp)) {
+                    return RESTART;
+                }
+
+                // Lock coupling: pin the child and note its stamp, then check
+                // the parent still points at it before letting the parent go
+                Page childRaw = bufferManager.fetchPage(childPageId);
+                StampedLock childLatch = bufferManager.getLatch(childPageId);
+                long childStamp = childLatch.tryOptimisticRead();
+                if (childStamp == 0 || !latch.validate(stamp)) {
+                    bufferManager.unpinPage(childPageId, false);
+                    return RESTART;
+                }
+                bufferManager.unpinPage(pageId, false);
+                pageId = childPageId;
+                rawPage = childRaw;
+                latch = childLatch;
+                stamp = childStamp;
+            }
+
+            int batchEnd = 0;
+            if (batch != null) {
+                batchEnd = readRun(rawPage, found, batch);
+            } else if (found != null) {
+                found[0] = readValue(rawPage, key);
+            }
+            if (!latch.validate(stamp)) {
+                return RESTART;
+            }
+            if (batch != null) {
+                batch.next = batchEnd;
+            }
+            pinned = keepPin;
+            return pageId;
+        } finally {
+            if (!pinned && pageId != BufferManager.NO_PAGE) {
+                bufferManager.unpinPage(pageId, false);
+            }
+        }
+    }
+
+    /**
+     * Child lookup during an optimistic read. A writer may be changing the
+     * node, so a torn key count can point past the entries; that read is
+     * doomed to fail validation anyway, so report it as a sentinel.
+     */
+    private static int readChild(Page rawPage, int key) {
+        return readChild(rawPage, key, null);
+    }
+
+    /**
+     * As above; also narrows the batch's fence to the separator after the
+     * chosen child, so it ends as the upper bound of the leaf reached.
+     */
+    private static int readChild(Page rawPage, int key, Batch batch) {
+        int index = readChildIndex(rawPage, key, batch);
+        return index == RESTART ? RESTART : readChildAt(rawPage, index);
+    }
+
+    /**
+     * The index of the child to follow (the swizzled path needs the index,
+     * not just the page id), or RESTART on a torn read.
+     */
+    private static int readChildIndex(Page rawPage, int key, Batch batch) {
+        try {
+            BTreeInternalPage node = new BTreeInternalPage(rawPage);
+            int i = node.upperBound(key);
+            if (batch != null && i < node.getKeyCount()) {
+                batch.fence = Math.min(batch.fence, node.getKeyAt(i));
             }
+            return i - 1;
+        } catch (IndexOutOfBoundsException e) {
+            return RESTART;
+        }
+    }
+
+    private static int readChildAt(Page rawPage, int index) {
+        try {
+            return new BTreeInternalPage(rawPage).getValueAt(index);
+        } catch (IndexOutOfBoundsException e) {
+            return RESTART;
+        }
+    }
+
+    /**
+     * Looks up every batch key the leaf covers, from one wrapper and one
+     * visit. Returns the index of the first key left for the next leaf; the
+     * caller validates the leaf's stamp before trusting any of it.
+     */
+    private static int readRun(Page rawPage, RecordId[] found, Batch batch) {
+        int i = batch.next;
+        try {
+            BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+            do {
+                found[batch.positionAt(i)] = leaf.lookup(batch.keyAt(i));
+                i++;
+            } while (batch.inLeaf(i));
+        } catch (IndexOutOfBoundsException e) {
+            // Torn read: validation fails and the run is read again
+        }
+        return i;
+    }
+
+    private static RecordId readValue(Page rawPage, int key) {
+        try {
+            return new BTreeLeafPage(rawPage).lookup(key);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
         }
     }
 
     /**
      * The Main Insert Entry Point
      */
+    @Override
     public void insert(int key, RecordId rid) {
-        // recursiveInsert returns a PushUpEntry if the root splits
-        PushUpEntry result = insertRecursive(rootPageId, key, rid);
+        insertEntry(key, rid);
+    }
 
-        if (result != null) {
-            // ROOT SPLIT! The tree grows in height.
-            createNewRoot(result);
+    /**
+     * insert(), but not overridable: the constructor uses it to upgrade a v1 index.
+     */
+    private void insertEntry(int key, RecordId rid) {
+        if (tryAppend(key, rid)) {
+            return;
+        }
+        while (!tryInsert(key, rid, null)) {
+            // Another thread changed a node we read (or we split one): start again from the root
+            Thread.onSpinWait();
         }
     }
 
     /**
-     * Recursive helper. Returns PushUpEntry if the child split, null otherwise.
+     * The append fast path: inserts into the remembered rightmost leaf
+     * without a descent, if the key goes after all of its keys and there's
+     * room. Returns false (nothing done) otherwise.
+     *
+     * No parent is needed to check that the leaf is the right one: a leaf
+     * with no right sibling is the rightmost one, and a key above its last
+     * key is above its lower bound too. The checks are read optimistically,
+     * and the write latch is only granted if nothing changed since.
      */
-    private PushUpEntry insertRecursive(int currentPageId, int key, RecordId rid) {
-        Page rawPage = bufferManager.getPage(currentPageId);
-        int pageType = rawPage.getInt(0);
+    private boolean tryAppend(int key, RecordId rid) {
+        int pageId = rightmostLeafId;
+        if (pageId == BTreeLeafPage.NO_PAGE) {
+            return false;
+        }
+        Page rawPage = bufferManager.fetchPage(pageId);
+        try {
+            StampedLock latch = bufferManager.getLatch(pageId);
+            long stamp = latch.tryOptimisticRead();
+            if (stamp == 0 || rawPage.getInt(0) != BTreePage.TYPE_LEAF) {
+                return false; // Being written, or no longer a leaf (merged away and recycled)
+            }
+            BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+            int count = leaf.getKeyCount();
+            try {
+                if (leaf.getNextPageId() != BTreeLeafPage.NO_PAGE || count == 0
+                        || count >= leaf.getMaxCapacity() || key < leaf.getKeyAt(count - 1)) {
+                    return false;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                return false; // Torn read
+            }
+            long writeStamp = latch.tryConvertToWriteLock(stamp);
+            if (writeStamp == 0) {
+                return false;
+            }
+            try {
+                leaf.insert(key, rid);
+            } finally {
+                latch.unlockWrite(writeStamp);
+            }
+            bufferManager.setPageDirty(pageId, true);
+            return true;
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+        }
+    }
 
-        if (pageType == BTreePage.TYPE_LEAF) {
-            return handleLeafInsert(rawPage, key, rid);
-        } else {
-            return handleInternalInsert(rawPage, key, rid);
+    /**
+     * One optimistic descent. Returns true once the entry is in the tree.
+     * With a 'batch', 'key' is its next key, and every following key the
+     * leaf covers is inserted under the same latch while the leaf has room.
+     */
+    private boolean tryInsert(int key, RecordId rid, Batch batch) {
+        if (batch != null) {
+            batch.fence = Long.MAX_VALUE;
         }
+        int parentId = BTreeLeafPage.NO_PAGE;
+        Page parentRaw = null;
+        StampedLock parentLatch = null;
+        long parentStamp = 0;
+
+        int pageId = rootPageId;
+        Page rawPage = bufferManager.fetchPage(pageId);
+        boolean rightmost = true; // Every node so far was its parent's last child
+        try {
+            StampedLock latch = bufferManager.getLatch(pageId);
+            long stamp = latch.tryOptimisticRead();
+            if (stamp == 0 || pageId != rootPageId) {
+                return false;
+            }
+
+            while (true) {
+                if (rawPage.getInt(0) == BTreePage.TYPE_LEAF) {
+                    BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+                    if (leaf.getKeyCount() < leaf.getMaxCapacity()) {
+                        // Case 1: Leaf has space. Latch just the leaf and insert.
+                        long writeStamp = latch.tryConvertToWriteLock(stamp);
+                        if (writeStamp == 0) {
+                            return false;
+                        }
+                        try {
+                            if (batch == null) {
+                                leaf.insert(key, rid);
+                            } else {
+                                insertRun(leaf, batch);
+                            }
+                            if (leaf.getNextPageId() == BTreeLeafPage.NO_PAGE) {
+                                rightmostLeafId = pageId; // Later appends can come straight here
+                            }
+                        } finally {
+                            latch.unlockWrite(writeStamp);
+                        }
+                        bufferManager.setPageDirty(pageId, true);
+                        return true;
+                    }
+
+                    // Case 2: Leaf is full. Latch it and its parent, SPLIT, and insert.
+                    long[] writeStamps = lockForSplit(parentId, parentLatch, parentStamp, pageId, latch, stamp);
+                    if (writeStamps == null) {
+                        return false;
+                    }
+                    int newRightmost = BTreeLeafPage.NO_PAGE;
+                    try {
+                        boolean wasRightmost = leaf.getNextPageId() == BTreeLeafPage.NO_PAGE;
+                        PushUpEntry pushUp = splitLeaf(leaf, key, rid);
+                        addToParent(parentRaw, pageId, pushUp);
+                        if (wasRightmost) {
+                            newRightmost = pushUp.childPageId;
+                        }
+                    } finally {
+                        unlock(parentLatch, writeStamps[0], latch, writeStamps[1]);
+                    }
+                    if (newRightmost != BTreeLeafPage.NO_PAGE) {
+                        rightmostLeafId = newRightmost;
+                    }
+                    if (batch != null) {
+                        batch.next++; // The rest of the run goes to whichever half covers it on the next descent
+                    }
+                    saveFreeList(); // The new page may have come off the free list
+                    return true;
+                }
+
+                BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+                int count = internal.getKeyCount();
+                if (count >= internal.getMaxCapacity()) {
+                    // Eager split: a full node on the way down is split now,
+                    // while its parent is known to have room, then we start over.
+                    // On the rightmost path, an append splits off just the last child.
+                    boolean append = rightmost && key >= internal.getKeyAt(count - 1);
+                    long[] writeStamps = lockForSplit(parentId, parentLatch, parentStamp, pageId, latch, stamp);
+                    if (writeStamps == null) {
+                        return false;
+                    }
+                    try {
+                        addToParent(parentRaw, pageId, splitInternal(internal, append ? count - 1 : count / 2));
+                    } finally {
+                        unlock(parentLatch, writeStamps[0], latch, writeStamps[1]);
+                    }
+                    saveFreeList();
+                    return false;
+                }
+
+                int index = readChildIndex(rawPage, key, batch);
+                int childPageId = index == RESTART ? RESTART : readChildAt(rawPage, index);
+                if (!latch.validate(stamp)) {
+                    return false;
+                }
+                rightmost = rightmost && index == count - 1;
+                Page childRaw = bufferManager.fetchPage(childPageId);
+                StampedLock childLatch = bufferManager.getLatch(childPageId);
+                long childStamp = childLatch.tryOptimisticRead();
+                if (childStamp == 0 || !latch.validate(stamp)) {
+                    bufferManager.unpinPage(childPageId, false);
+                    return false;
+                }
+
+                // Step down: this node becomes the parent, the old parent is released
+                if (parentId != BTreeLeafPage.NO_PAGE) {
+                    bufferManager.unpinPage(parentId, false);
+                }
+                parentId = pageId;
+                parentRaw = rawPage;
+                parentLatch = latch;
+                parentStamp = stamp;
+                pageId = childPageId;
+                rawPage = childRaw;
+                latch = childLatch;
+                stamp = childStamp;
+            }
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+            if (parentId != BTreeLeafPage.NO_PAGE) {
+                bufferManager.unpinPage(parentId, false);
+            }
+        }
+    }
+
+    /**
+     * Inserts the batch's next keys into a write-latched leaf with room for
+     * at least one: all it covers, or until it is full.
+     */
+    private static void insertRun(BTreeLeafPage leaf, Batch batch) {
+        int i = batch.next;
+        do {
+            leaf.insert(batch.keyAt(i), batch.rids[batch.positionAt(i)]);
+            i++;
+        } while (batch.inLeaf(i) && leaf.getKeyCount() < leaf.getMaxCapacity());
+        batch.next = i;
     }
 
-    private PushUpEntry handleLeafInsert(Page rawPage, int key, RecordId rid) {
-        BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+    // --- Batches ---
 
-        // Case 1: Leaf has space. Just insert.
-        if (leaf.getKeyCount() < leaf.getMaxCapacity()) {
-            leaf.insert(key, rid);
-            bufferManager.setPageDirty(leaf.page.getPageId(), true);
-            return null; // No split occurred
+    /**
+     * Looks up many keys at once. Returns one RecordId per key, in the order
+     * of 'keys' (null where a key is absent).
+     * The keys are sorted first; one descent then answers every key that
+     * falls in the leaf it reaches, so n keys spread over L leaves cost about
+     * L descents instead of n.
+     */
+    public RecordId[] findBatch(int[] keys) {
+        RecordId[] found = new RecordId[keys.length];
+        Batch batch = new Batch(keys, null);
+        while (batch.next < keys.length) {
+            if (tryFindLeaf(batch.keyAt(batch.next), found, false, batch) == RESTART) {
+                Thread.onSpinWait();
+            }
+        }
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == null) {
+                found[i] = findInRun(keys[i]);
+            }
         }
+        return found;
+    }
 
-        // Case 2: Leaf is full. SPLIT.
-        // A. Allocate new page
+    /**
+     * Inserts keys[i] -> rids[i] for every i. Same effect as calling insert()
+     * for each, but keys are sorted and each leaf is latched and dirtied once
+     * for all the keys it takes, instead of once per key.
+     */
+    public void insertBatch(int[] keys, RecordId[] rids) {
+        if (keys.length != rids.length) {
+            throw new IllegalArgumentException(keys.length + " keys but " + rids.length + " RecordIds");
+        }
+        Batch batch = new Batch(keys, rids);
+        while (batch.next < keys.length) {
+            int next = batch.next;
+            if (!tryInsert(batch.keyAt(next), rids[batch.positionAt(next)], batch)) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Upgrades the stamps of a node and its parent (none for the root) to
+     * write latches, parent first. Returns {parentStamp, nodeStamp}, or null
+     * (holding nothing) if either changed since it was read.
+     */
+    private long[] lockForSplit(int parentId, StampedLock parentLatch, long parentStamp,
+                                int pageId, StampedLock latch, long stamp) {
+        long parentWrite = 0;
+        if (parentId != BTreeLeafPage.NO_PAGE) {
+            parentWrite = parentLatch.tryConvertToWriteLock(parentStamp);
+            if (parentWrite == 0) {
+                return null;
+            }
+        }
+        long write = latch.tryConvertToWriteLock(stamp);
+        if (write == 0) {
+            if (parentLatch != null) {
+                parentLatch.unlockWrite(parentWrite);
+            }
+            return null;
+        }
+        return new long[] {parentWrite, write};
+    }
+
+    private void unlock(StampedLock parentLatch, long parentWrite, StampedLock latch, long write) {
+        latch.unlockWrite(write);
+        if (parentLatch != null) {
+            parentLatch.unlockWrite(parentWrite);
+        }
+    }
+
+    /**
+     * Splits a full (write-latched) leaf and inserts the new entry into the
+     * correct half. Returns the key and page to add to the parent.
+     */
+    private PushUpEntry splitLeaf(BTreeLeafPage leaf, int key, RecordId rid) {
+        // A. Allocate new page. Nobody can reach it until the old leaf's latch is released.
         int newPageId = bufferManager.allocateNewPage();
-        Page newRawPage = bufferManager.getPage(newPageId);
+        Page newRawPage = bufferManager.fetchPage(newPageId);
         BTreeLeafPage newLeaf = new BTreeLeafPage(newRawPage);
+        newLeaf.format();
 
-        // B. Insert the new key into the correct page (Old or New) temp?
-        // Simplified: We split first, then insert the new key into the correct half.
-        // Note: For simplicity in this tutorial, we assume the new key fits after split.
-        
-        int splitKey = leaf.split(newLeaf);
-
-        // Decide where to put the new value
-        if (key >= splitKey) {
+        // B. Split, then insert the new key into the correct half.
+        //    An append to the rightmost leaf moves nothing: the new key starts the new leaf.
+        int count = leaf.getKeyCount();
+        int splitKey;
+        if (leaf.getNextPageId() == BTreeLeafPage.NO_PAGE && key > leaf.getKeyAt(count - 1)) {
+            leaf.split(newLeaf, count);
             newLeaf.insert(key, rid);
+            splitKey = key;
         } else {
-            leaf.insert(key, rid);
+            splitKey = leaf.split(newLeaf);
+            if (key >= splitKey) {
+                newLeaf.insert(key, rid);
+            } else {
+                leaf.insert(key, rid);
+            }
+        }
+
+        // The old right neighbour now has the new page on its left.
+        // Waiting for its latch is safe: writers only ever wait left-to-right.
+        int nextPageId = newLeaf.getNextPageId();
+        if (nextPageId != BTreeLeafPage.NO_PAGE) {
+            Page nextRaw = bufferManager.fetchPage(nextPageId);
+            StampedLock nextLatch = bufferManager.getLatch(nextPageId);
+            long nextStamp = nextLatch.writeLock();
+            try {
+                new BTreeLeafPage(nextRaw).setPrevPageId(newPageId);
+            } finally {
+                nextLatch.unlockWrite(nextStamp);
+            }
+            bufferManager.unpinPage(nextPageId, true);
         }
 
         bufferManager.setPageDirty(leaf.page.getPageId(), true);
-        bufferManager.setPageDirty(newLeaf.page.getPageId(), true);
+        bufferManager.unpinPage(newPageId, true);
 
         // C. Return the notification to the parent
         return new PushUpEntry(splitKey, newPageId);
     }
 
-    private PushUpEntry handleInternalInsert(Page rawPage, int key, RecordId rid) {
-        BTreeInternalPage internal = new BTreeInternalPage(rawPage);
-        int childPageId = internal.lookup(key);
+    /**
+     * Splits a full (write-latched) internal node; the key at 'splitIndex' moves up.
+     */
+    private PushUpEntry splitInternal(BTreeInternalPage internal, int splitIndex) {
+        int newPageId = bufferManager.allocateNewPage();
+        Page newRawPage = bufferManager.fetchPage(newPageId);
+        BTreeInternalPage newInternal = new BTreeInternalPage(newRawPage);
+        newInternal.format();
 
-        // Recursively go down
-        PushUpEntry result = insertRecursive(childPageId, key, rid);
+        int splitKey = internal.split(newInternal, splitIndex);
 
-        // If child didn't split, we are done.
-        if (result == null) return null;
+        bufferManager.setPageDirty(internal.page.getPageId(), true);
+        bufferManager.unpinPage(newPageId, true);
+        return new PushUpEntry(splitKey, newPageId);
+    }
 
-        // If child DID split, we must insert the pushed-up key into THIS internal node
-        if (internal.getKeyCount() < internal.getMaxCapacity()) {
-            internal.insert(result.key, result.childPageId);
-            bufferManager.setPageDirty(internal.page.getPageId(), true);
-            return null;
-        } else {
-            // THIS internal node is full too! We need to implement Internal Split.
-            // For now, let's throw exception to keep this step digestible.
-            // (Implementing Internal Split is 80% similar to Leaf Split)
-            throw new RuntimeException("Internal Node Full - Depth > 2 not implemented yet!");
+    /**
+     * Adds a split's new right node to the (write-latched) parent, or grows a
+     * new root above 'pageId' if it has no parent. The parent never overflows:
+     * full internal nodes are split on the way down.
+     */
+    private void addToParent(Page parentRaw, int pageId, PushUpEntry result) {
+        if (parentRaw == null) {
+            // ROOT SPLIT! The tree grows in height.
+            createNewRoot(pageId, result);
+            return;
         }
+        new BTreeInternalPage(parentRaw).insert(result.key, result.childPageId);
+        bufferManager.setPageDirty(parentRaw.getPageId(), true);
     }
 
-    private void createNewRoot(PushUpEntry result) {
+    /**
+     * Called with the old root write-latched, so only one thread grows the tree at a time.
+     */
+    private void createNewRoot(int oldRootId, PushUpEntry result) {
         // 1. Allocate a new Page for the new Root
         int newRootId = bufferManager.allocateNewPage();
-        Page newRootRaw = bufferManager.getPage(newRootId);
+        Page newRootRaw = bufferManager.fetchPage(newRootId);
         BTreeInternalPage newRoot = new BTreeInternalPage(newRootRaw);
+        newRoot.format();
 
         // 2. Point the new root to the Old Root (Left) and New Child (Right)
-        newRoot.setPointer(0, rootPageId); // Old Root becomes left child
+        newRoot.setPointer(0, oldRootId);  // Old Root becomes left child
+        newRoot.setKeyCount(1);            // Count the leftmost pointer, or insert() would overwrite it
         newRoot.insert(result.key, result.childPageId); // PushUp key points to right child
+        bufferManager.unpinPage(newRootId, true);
+
+        // 3. Update the header page, then publish the new root in memory.
+        // Readers that still start at the old root see its stamp change and restart.
+        Page metaRaw = bufferManager.fetchPage(metaPageId);
+        StampedLock metaLatch = bufferManager.getLatch(metaPageId);
+        long metaStamp = metaLatch.writeLock(); // Keeps write-back from copying a half-updated header
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(metaRaw);
+            meta.setRootPageId(newRootId);
+            meta.setHeight(height + 1);
+        } finally {
+            metaLatch.unlockWrite(metaStamp);
+        }
+        bufferManager.unpinPage(metaPageId, true);
+        this.height++;
+        this.rootPageId = newRootId;
+        if (pinnedLevels > 0) {
+            swizzleStale = true; // The next lookup swizzles the new top levels
+        }
+    }
+
+    /**
+     * Copies the file's free list head into the header page, so recycled
+     * pages are still found after a restart.
+     */
+    private void saveFreeList() {
+        Page metaRaw = bufferManager.fetchPage(metaPageId);
+        StampedLock metaLatch = bufferManager.getLatch(metaPageId);
+        long metaStamp = metaLatch.writeLock();
+        try {
+            new BTreeMetaPage(metaRaw).setFreeListHead(bufferManager.getFreeListHead());
+        } finally {
+            metaLatch.unlockWrite(metaStamp);
+        }
+        bufferManager.unpinPage(metaPageId, true);
+    }
+
+    // --- Delete ---
 
-        // 3. Update the global root pointer
+    /**
+     * Removes one entry with 'key'. Returns false if there is none.
+     */
+    @Override
+    public boolean delete(int key) {
+        int result;
+        while ((result = tryDelete(key)) == RESTART) {
+            Thread.onSpinWait();
+        }
+        if (result == 0) {
+            // As in findInRun(): copies of a split run may sit only further left
+            return deleteFromRun(key);
+        }
+        return result == 1;
+    }
+
+    /**
+     * Removes the first entry with 'key', walking right from the first leaf
+     * that can hold it. Each leaf is write-latched in turn, and the next one
+     * is pinned before the link to it is let go (as BTreeCursor does). The
+     * leaf is not rebalanced: like a delete that finds its sibling busy, it
+     * is left underfull for a later delete to top up.
+     */
+    private boolean deleteFromRun(int key) {
+        int startKey = key == Integer.MIN_VALUE ? key : key - 1;
+        int pageId;
+        while ((pageId = tryFindLeaf(startKey, null, true)) == RESTART) {
+            Thread.onSpinWait();
+        }
+        while (true) {
+            BTreeLeafPage leaf = new BTreeLeafPage(bufferManager.getPage(pageId));
+            StampedLock latch = bufferManager.getLatch(pageId);
+            int nextId;
+            boolean removed = false;
+            long stamp = latch.writeLock();
+            try {
+                int i = leaf.lowerBound(key);
+                if (i < leaf.getKeyCount()) {
+                    if (leaf.getKeyAt(i) == key) {
+                        leaf.remove(i);
+                        removed = true;
+                    }
+                    nextId = BTreeLeafPage.NO_PAGE; // Past the key: no copy further on
+                } else {
+                    nextId = leaf.getNextPageId();
+                    if (nextId != BTreeLeafPage.NO_PAGE) {
+                        bufferManager.fetchPage(nextId);
+                    }
+                }
+            } finally {
+                latch.unlockWrite(stamp);
+            }
+            bufferManager.unpinPage(pageId, removed);
+            if (removed || nextId == BTreeLeafPage.NO_PAGE) {
+                return removed;
+            }
+            pageId = nextId;
+        }
+    }
+
+    /**
+     * Fewest entries a node (other than the root) should keep. A quarter, not
+     * half: at half, a delete right after a split would merge the pages back.
+     */
+    private static int minEntries(BTreePage node) {
+        return Math.max(2, node.getMaxCapacity() / 4);
+    }
+
+    /**
+     * One optimistic descent. Returns 1 (deleted), 0 (no such key) or RESTART.
+     */
+    private int tryDelete(int key) {
+        int parentId = BTreeLeafPage.NO_PAGE;
+        Page parentRaw = null;
+        StampedLock parentLatch = null;
+        long parentStamp = 0;
+        List<Integer> freed = new ArrayList<>();
+
+        int pageId = rootPageId;
+        Page rawPage = bufferManager.fetchPage(pageId);
+        try {
+            StampedLock latch = bufferManager.getLatch(pageId);
+            long stamp = latch.tryOptimisticRead();
+            if (stamp == 0 || pageId != rootPageId) {
+                return RESTART;
+            }
+
+            while (true) {
+                if (rawPage.getInt(0) == BTreePage.TYPE_LEAF) {
+                    BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+                    int index = readIndex(rawPage, key);
+                    if (!latch.validate(stamp)) {
+                        return RESTART;
+                    }
+                    if (index < 0) {
+                        return 0;
+                    }
+
+                    if (parentId == BTreeLeafPage.NO_PAGE || leaf.getKeyCount() - 1 >= minEntries(leaf)) {
+                        // Case 1: The leaf stays full enough. Latch just the leaf.
+                        long writeStamp = latch.tryConvertToWriteLock(stamp);
+                        if (writeStamp == 0) {
+                            return RESTART;
+                        }
+                        try {
+                            leaf.remove(index);
+                        } finally {
+                            latch.unlockWrite(writeStamp);
+                        }
+                        bufferManager.setPageDirty(pageId, true);
+                        return 1;
+                    }
+
+                    // Case 2: The leaf underflows. Latch its parent too and rebalance with a sibling.
+                    long[] writeStamps = lockForSplit(parentId, parentLatch, parentStamp, pageId, latch, stamp);
+                    if (writeStamps == null) {
+                        return RESTART;
+                    }
+                    try {
+                        leaf.remove(index);
+                        bufferManager.setPageDirty(pageId, true);
+                        rebalance(parentRaw, rawPage, key, freed);
+                    } finally {
+                        unlock(parentLatch, writeStamps[0], latch, writeStamps[1]);
+                    }
+                    return 1;
+                }
+
+                BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+                if (parentId != BTreeLeafPage.NO_PAGE && internal.getKeyCount() <= minEntries(internal)) {
+                    // Eager merge: a node on the way down that one more merge below
+                    // would leave underfull is topped up now, while its parent has
+                    // children to spare, then we start over
+                    long[] writeStamps = lockForSplit(parentId, parentLatch, parentStamp, pageId, latch, stamp);
+                    if (writeStamps == null) {
+                        return RESTART;
+                    }
+                    try {
+                        rebalance(parentRaw, rawPage, key, freed);
+                    } finally {
+                        unlock(parentLatch, writeStamps[0], latch, writeStamps[1]);
+                    }
+                    return RESTART;
+                }
+
+                int childPageId = readChild(rawPage, key);
+                if (!latch.validate(stamp)) {
+                    return RESTART;
+                }
+                Page childRaw = bufferManager.fetchPage(childPageId);
+                StampedLock childLatch = bufferManager.getLatch(childPageId);
+                long childStamp = childLatch.tryOptimisticRead();
+                if (childStamp == 0 || !latch.validate(stamp)) {
+                    bufferManager.unpinPage(childPageId, false);
+                    return RESTART;
+                }
+
+                if (parentId != BTreeLeafPage.NO_PAGE) {
+                    bufferManager.unpinPage(parentId, false);
+                }
+                parentId = pageId;
+                parentRaw = rawPage;
+                parentLatch = latch;
+                parentStamp = stamp;
+                pageId = childPageId;
+                rawPage = childRaw;
+                latch = childLatch;
+                stamp = childStamp;
+            }
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+            if (parentId != BTreeLeafPage.NO_PAGE) {
+                bufferManager.unpinPage(parentId, false);
+            }
+            // Recycle only now: the latches are released and nothing points at these pages
+            if (!freed.isEmpty()) {
+                for (int freedId : freed) {
+                    bufferManager.freePage(freedId);
+                }
+                saveFreeList();
+            }
+        }
+    }
+
+    /**
+     * Slot of 'key' in a leaf during an optimistic read, or -1 if absent
+     * (or if a torn read ran off the page; validation catches that).
+     */
+    private static int readIndex(Page rawPage, int key) {
+        try {
+            BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+            int i = leaf.upperBound(key) - 1;
+            return i >= 0 && leaf.getKeyAt(i) == key ? i : -1;
+        } catch (IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Tops up the underfull node 'nodeRaw' from a sibling under the same
+     * parent: the two are merged if they fit in one page, otherwise their
+     * entries are evened out. The caller holds write latches on the parent
+     * and the node; the sibling is only tried, never waited for (it may be on
+     * our left, and writers only wait left-to-right). Pages emptied by a
+     * merge are added to 'freed'.
+     */
+    private void rebalance(Page parentRaw, Page nodeRaw, int key, List<Integer> freed) {
+        BTreeInternalPage parent = new BTreeInternalPage(parentRaw);
+        int pageId = nodeRaw.getPageId();
+        int index = parent.upperBound(key) - 1; // 'key' is routed through this node
+
+        // Pair up with the right sibling if there is one, else with the left one
+        int leftIndex = index + 1 < parent.getKeyCount() ? index : index - 1;
+        if (leftIndex < 0) {
+            return;
+        }
+        int leftId = parent.getValueAt(leftIndex);
+        int rightId = parent.getValueAt(leftIndex + 1);
+        int siblingId = leftId == pageId ? rightId : leftId;
+
+        Page siblingRaw = bufferManager.fetchPage(siblingId);
+        StampedLock siblingLatch = bufferManager.getLatch(siblingId);
+        long siblingStamp = siblingLatch.tryWriteLock();
+        if (siblingStamp == 0) {
+            // Busy: leave the node underfull this time, a later delete will fix it
+            bufferManager.unpinPage(siblingId, false);
+            return;
+        }
+
+        boolean merged;
+        try {
+            Page leftRaw = leftId == pageId ? nodeRaw : siblingRaw;
+            Page rightRaw = leftId == pageId ? siblingRaw : nodeRaw;
+            if (nodeRaw.getInt(0) == BTreePage.TYPE_LEAF) {
+                merged = rebalanceLeaves(parent, leftIndex, new BTreeLeafPage(leftRaw), new BTreeLeafPage(rightRaw));
+            } else {
+                merged = rebalanceInternal(parent, leftIndex, new BTreeInternalPage(leftRaw), new BTreeInternalPage(rightRaw));
+            }
+        } finally {
+            siblingLatch.unlockWrite(siblingStamp);
+            bufferManager.unpinPage(siblingId, true);
+        }
+        bufferManager.setPageDirty(pageId, true);
+        bufferManager.setPageDirty(parentRaw.getPageId(), true);
+
+        if (merged) {
+            freed.add(rightId);
+            if (parentRaw.getPageId() == rootPageId && parent.getKeyCount() == 1) {
+                // The root is down to one child: that child becomes the root
+                collapseRoot(parent.getValueAt(0));
+                freed.add(parentRaw.getPageId());
+            }
+        }
+    }
+
+    private boolean rebalanceLeaves(BTreeInternalPage parent, int leftIndex, BTreeLeafPage left, BTreeLeafPage right) {
+        int leftId = left.page.getPageId();
+        int rightId = right.page.getPageId();
+        // A cursor on either leaf could miss entries moved behind it, or sit on a
+        // recycled page: leave pinned leaves alone (our own pin counts once)
+        if (bufferManager.getPinCount(leftId) > 1 || bufferManager.getPinCount(rightId) > 1) {
+            return false;
+        }
+
+        if (left.getKeyCount() + right.getKeyCount() <= left.getMaxCapacity()) {
+            left.merge(right);
+
+            // Unlink the right leaf from the chain
+            int nextPageId = right.getNextPageId();
+            left.setNextPageId(nextPageId);
+            if (nextPageId != BTreeLeafPage.NO_PAGE) {
+                Page nextRaw = bufferManager.fetchPage(nextPageId);
+                StampedLock nextLatch = bufferManager.getLatch(nextPageId);
+                long nextStamp = nextLatch.writeLock(); // To our right: waiting is safe
+                try {
+                    new BTreeLeafPage(nextRaw).setPrevPageId(leftId);
+                } finally {
+                    nextLatch.unlockWrite(nextStamp);
+                }
+                bufferManager.unpinPage(nextPageId, true);
+            }
+            parent.remove(leftIndex + 1);
+            return true;
+        }
+
+        parent.setKeyAt(leftIndex + 1, left.redistribute(right));
+        return false;
+    }
+
+    private boolean rebalanceInternal(BTreeInternalPage parent, int leftIndex, BTreeInternalPage left, BTreeInternalPage right) {
+        int separator = parent.getKeyAt(leftIndex + 1);
+        if (left.getKeyCount() + right.getKeyCount() <= left.getMaxCapacity()) {
+            left.merge(separator, right);
+            parent.remove(leftIndex + 1);
+            return true;
+        }
+        parent.setKeyAt(leftIndex + 1, left.redistribute(separator, right));
+        return false;
+    }
+
+    /**
+     * Called with the old root write-latched, like createNewRoot.
+     */
+    private void collapseRoot(int newRootId) {
+        Page metaRaw = bufferManager.fetchPage(metaPageId);
+        StampedLock metaLatch = bufferManager.getLatch(metaPageId);
+        long metaStamp = metaLatch.writeLock();
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(metaRaw);
+            meta.setRootPageId(newRootId);
+            meta.setHeight(height - 1);
+        } finally {
+            metaLatch.unlockWrite(metaStamp);
+        }
+        bufferManager.unpinPage(metaPageId, true);
+        this.height--;
         this.rootPageId = newRootId;
-        bufferManager.setPageDirty(newRootId, true);
-        
-        // NOTE: In a real DB, you must update the "Header Page" on disk to save the new root ID.
-        System.out.println("Tree grew! New Root ID: " + rootPageId);
+        if (pinnedLevels > 0) {
+            swizzleStale = true;
+        }
     }
-}
\ No newline at end of file
+}
@@ -14,9 +14,18 @@ public class BTreeInternalPage extends BTreePage {
     // Entry = 4 bytes (Key) + 4 bytes (PageId) = 8 bytes
     private static final int ENTRY_SIZE = 8;
 
+    // Calculate max capacity: (4096 - 12) / 8 ~= 510 entries
+    private static final int CAPACITY = (Page.PAGE_SIZE - HEADER_SIZE) / ENTRY_SIZE;
+
     public BTreeInternalPage(Page page) {
-        // Calculate max capacity: (4096 - 12) / 8 ~= 510 entries
-        super(page, TYPE_INTERNAL, (Page.PAGE_SIZE - HEADER_SIZE) / ENTRY_SIZE);
+        super(page);
+    }
+
+    /**
+     * Sets up a fresh page as an empty internal node (no leftmost pointer yet).
+     */
+    public void format() {
+        format(TYPE_INTERNAL, CAPACITY);
     }
 
     /**
@@ -24,18 +33,27 @@ public class BTreeInternalPage extends BTreePage {
      * Logic: Find the largest key in this node that is <= searchKey.
      */
     public int lookup(int key) {
-        int count = getKeyCount();
-        
-        // Start checking from the last key and move backwards (simple logic)
-        // We skip index 0 because it's the leftmost dummy key usually
-        for (int i = count - 1; i > 0; i--) {
-            if (key >= getKeyAt(i)) {
-                return getValueAt(i);
+        // The last entry whose key is <= searchKey. If smaller than all keys,
+        // upperBound returns 1 and we take the leftmost pointer (index 0).
+        return getValueAt(upperBound(key) - 1);
+    }
+
+    /**
+     * Binary search over the real keys (index 1 onwards; index 0 is the dummy):
+     * index of the first key that is > 'key' (getKeyCount() if none).
+     */
+    int upperBound(int key) {
+        int lo = 1;
+        int hi = getKeyCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKeyAt(mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
-        
-        // If smaller than all keys, return the leftmost pointer (index 0)
-        return getValueAt(0);
+        return lo;
     }
 
     /**
@@ -47,16 +65,15 @@ public class BTreeInternalPage extends BTreePage {
         if (count >= getMaxCapacity()) {
             throw new RuntimeException("Internal Page is full!");
         }
-
-        // 1. Find position
-        int i = count - 1;
-        while (i > 0 && getKeyAt(i) > key) {
-            copyEntry(i, i + 1);
-            i--;
+        if (count == 0) {
+            throw new IllegalStateException("Set the leftmost pointer (and a key count of 1) before inserting keys");
         }
 
-        // 2. Insert
-        int targetIndex = i + 1;
+        // 1. Find position (never index 0: that is the leftmost pointer)
+        int targetIndex = upperBound(key);
+
+        // 2. Shift the entries after it one slot right (one bulk move), then insert
+        moveEntries(targetIndex, targetIndex + 1, count - targetIndex);
         setKeyAt(targetIndex, key);
         setValueAt(targetIndex, childPageId);
 
@@ -64,6 +81,99 @@ public class BTreeInternalPage extends BTreePage {
         setKeyCount(count + 1);
     }
 
+    /**
+     * Splits this full internal page.
+     * 1. The middle key moves UP: it is returned and kept in neither page.
+     * 2. Its child pointer becomes the recipient's leftmost pointer (index 0).
+     * 3. The entries after it move to the recipient.
+     */
+    public int split(BTreeInternalPage recipient) {
+        return split(recipient, getKeyCount() / 2);
+    }
+
+    /**
+     * As above, with the key at 'splitIndex' (1 .. getKeyCount() - 1) moving up.
+     */
+    public int split(BTreeInternalPage recipient, int splitIndex) {
+        int count = getKeyCount();
+        if (splitIndex < 1 || splitIndex >= count) {
+            throw new IllegalArgumentException("splitIndex " + splitIndex + " out of range for " + count + " children");
+        }
+        int pushUpKey = getKeyAt(splitIndex);
+
+        // Index 0 of the recipient keeps the pushed-up key as its dummy key
+        for (int i = splitIndex; i < count; i++) {
+            recipient.setKeyAt(i - splitIndex, getKeyAt(i));
+            recipient.setValueAt(i - splitIndex, getValueAt(i));
+        }
+
+        recipient.setKeyCount(count - splitIndex);
+        this.setKeyCount(splitIndex);
+        return pushUpKey;
+    }
+
+    /**
+     * Removes the key and child pointer at 'index' (>= 1), closing the gap.
+     */
+    void remove(int index) {
+        int count = getKeyCount();
+        moveEntries(index + 1, index, count - index - 1);
+        setKeyCount(count - 1);
+    }
+
+    /**
+     * Appends 'right' (this node's right sibling) to this node. 'separator' is
+     * the parent's key between the two; it comes down to sit in front of
+     * right's leftmost pointer. The caller checks that everything fits.
+     */
+    void merge(int separator, BTreeInternalPage right) {
+        int count = getKeyCount();
+        int n = right.getKeyCount();
+        setKeyAt(count, separator);
+        setValueAt(count, right.getValueAt(0));
+        for (int i = 1; i < n; i++) {
+            setKeyAt(count + i, right.getKeyAt(i));
+            setValueAt(count + i, right.getValueAt(i));
+        }
+        setKeyCount(count + n);
+        right.setKeyCount(0);
+    }
+
+    /**
+     * Evens out the children of this node and 'right', its right sibling,
+     * rotating through the parent's 'separator'. Returns the new separator.
+     */
+    int redistribute(int separator, BTreeInternalPage right) {
+        // Line everything up: our entries, then (separator, right's leftmost), then right's
+        int count = getKeyCount();
+        int n = right.getKeyCount();
+        int total = count + n;
+        int[] keys = new int[total];
+        int[] children = new int[total];
+        for (int i = 0; i < count; i++) {
+            keys[i] = getKeyAt(i);
+            children[i] = getValueAt(i);
+        }
+        for (int i = 0; i < n; i++) {
+            keys[count + i] = i == 0 ? separator : right.getKeyAt(i);
+            children[count + i] = right.getValueAt(i);
+        }
+
+        // Like a split: the key at the cut moves up, its child becomes right's leftmost
+        int leftCount = total / 2;
+        for (int i = leftCount; i < total; i++) {
+            right.setKeyAt(i - leftCount, keys[i]);
+            right.setValueAt(i - leftCount, children[i]);
+        }
+        for (int i = 0; i < leftCount; i++) {
+            setKeyAt(i, keys[i]);
+            setValueAt(i, children[i]);
+        }
+        setKeyCount(leftCount);
+        right.setKeyCount(total - leftCount);
+        return keys[leftCount];
+    }
+
     /**
      * Sets the pointer for the very first entry (Leftmost child).
      * The key at index 0 is technically ignored/dummy.
@@ -74,17 +184,17 @@ public class BTreeInternalPage extends BTreePage {
 
     // --- Helpers ---
 
-    private int getKeyAt(int index) {
+    int getKeyAt(int index) {
         int offset = HEADER_SIZE + (index * ENTRY_SIZE);
         return page.getInt(offset);
     }
 
-    private void setKeyAt(int index, int key) {
+    void setKeyAt(int index, int key) {
         int offset = HEADER_SIZE + (index * ENTRY_SIZE);
         page.setInt(offset, key);
     }
 
-    private int getValueAt(int index) {
+    int getValueAt(int index) {
         int offset = HEADER_SIZE + (index * ENTRY_SIZE) + 4; // Skip Key (4 bytes)
         return page.getInt(offset);
     }
@@ -94,8 +204,7 @@ public class BTreeInternalPage extends BTreePage {
         page.setInt(offset, childPageId);
     }
 
-    private void copyEntry(int fromIndex, int toIndex) {
-        setKeyAt(toIndex, getKeyAt(fromIndex));
-        setValueAt(toIndex, getValueAt(fromIndex));
+    private void moveEntries(int fromIndex, int toIndex, int n) {
+        page.moveBytes(HEADER_SIZE + fromIndex * ENTRY_SIZE, HEADER_SIZE + toIndex * ENTRY_SIZE, n * ENTRY_SIZE);
     }
 }
\ No newline at end of file
@@ -6,17 +6,54 @@ import com.jdb.storage.RecordId;
 /**
  * Leaf Node Layout:
  * [Header]
+ * [12-15]: Left sibling PageID  (NO_PAGE if this is the first leaf)
+ * [16-19]: Right sibling PageID (NO_PAGE if this is the last leaf)
  * [Key 1][PageID 1][Slot 1]
  * [Key 2][PageID 2][Slot 2]
  * ...
+ *
+ * The sibling links chain all leaves in key order, so a range scan walks
+ * sideways from leaf to leaf instead of going back through the root.
  */
 public class BTreeLeafPage extends BTreePage {
     // Each entry is: 4 bytes (Key) + 4 bytes (PageId) + 4 bytes (SlotNum) = 12 bytes
     private static final int ENTRY_SIZE = 12;
 
+    public static final int NO_PAGE = -1;
+    private static final int OFFSET_PREV = HEADER_SIZE;
+    private static final int OFFSET_NEXT = HEADER_SIZE + 4;
+    private static final int ENTRIES_START = HEADER_SIZE + 8;
+
+    // Calculate max capacity based on page size (4096 - 20) / 12 ~= 339 keys
+    private static final int CAPACITY = (Page.PAGE_SIZE - ENTRIES_START) / ENTRY_SIZE;
+
     public BTreeLeafPage(Page page) {
-        // Calculate max capacity based on page size (4096 - 12) / 12 ~= 340 keys
-        super(page, TYPE_LEAF, (Page.PAGE_SIZE - HEADER_SIZE) / ENTRY_SIZE);
+        super(page);
+    }
+
+    /**
+     * Sets up a fresh page as an empty, unlinked leaf.
+     */
+    public void format() {
+        format(TYPE_LEAF, CAPACITY);
+        setPrevPageId(NO_PAGE);
+        setNextPageId(NO_PAGE);
+    }
+
+    public int getPrevPageId() {
+        return page.getInt(OFFSET_PREV);
+    }
+
+    public void setPrevPageId(int pageId) {
+        page.setInt(OFFSET_PREV, pageId);
+    }
+
+    public int getNextPageId() {
+        return page.getInt(OFFSET_NEXT);
+    }
+
+    public void setNextPageId(int pageId) {
+        page.setInt(OFFSET_NEXT, pageId);
     }
 
     /**
@@ -28,16 +65,11 @@ public class BTreeLeafPage extends BTreePage {
             throw new RuntimeException("Leaf Page is full! (Split logic needed)");
         }
 
-        // 1. Find the position to insert (Simple Linear Search for now)
-        int i = count - 1;
-        while (i >= 0 && getKeyAt(i) > key) {
-            // Shift entry to the right
-            copyEntry(i, i + 1);
-            i--;
-        }
+        // 1. Find the position to insert (after any equal keys)
+        int targetIndex = upperBound(key);
 
-        // 2. Insert new entry
-        int targetIndex = i + 1;
+        // 2. Shift the entries after it one slot right (one bulk move), then insert
+        moveEntries(targetIndex, targetIndex + 1, count - targetIndex);
         setKeyAt(targetIndex, key);
         setValueAt(targetIndex, rid);
 
@@ -49,22 +81,65 @@ public class BTreeLeafPage extends BTreePage {
      * Returns the RecordId for a given key, or null if not found.
      */
     public RecordId lookup(int key) {
-        for (int i = 0; i < getKeyCount(); i++) {
-            if (getKeyAt(i) == key) {
-                return getValueAt(i);
-            }
+        int i = upperBound(key) - 1;
+        if (i >= 0 && getKeyAt(i) == key) {
+            return getValueAt(i);
         }
         return null;
     }
 
+    /**
+     * Binary search: index of the first key that is >= 'key' (getKeyCount() if none).
+     */
+    int lowerBound(int key) {
+        int lo = 0;
+        int hi = getKeyCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKeyAt(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Binary search: index of the first key that is > 'key' (getKeyCount() if none).
+     */
+    int upperBound(int key) {
+        int lo = 0;
+        int hi = getKeyCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKeyAt(mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     /**
      * Splits this full leaf page.
      * 1. Moves the upper half of keys/values to the 'recipient' page.
      * 2. Returns the first key of the new page (to be inserted into parent).
+     * 3. Links the recipient in as this page's right sibling.
      */
     public int split(BTreeLeafPage recipient) {
+        return split(recipient, getKeyCount() / 2);
+    }
+
+    /**
+     * As above, but moves the entries from 'splitIndex' on. With
+     * splitIndex == getKeyCount() nothing moves (an append split: the
+     * caller puts the new key in the empty recipient), and the returned
+     * key is meaningless.
+     */
+    public int split(BTreeLeafPage recipient, int splitIndex) {
         int count = getKeyCount();
-        int splitIndex = count / 2;
         int newCount = count - splitIndex;
 
         // Move entries from splitIndex -> end to the recipient
@@ -78,37 +153,96 @@ public class BTreeLeafPage extends BTreePage {
         recipient.setKeyCount(newCount);
         this.setKeyCount(splitIndex);
 
+        // Link the recipient in right after this page.
+        // (The caller fixes the prev link of the old right neighbour.)
+        recipient.setPrevPageId(page.getPageId());
+        recipient.setNextPageId(getNextPageId());
+        setNextPageId(recipient.page.getPageId());
+
         // Return the first key of the new page (this is the key that goes up)
         return recipient.getKeyAt(0);
     }
 
+    /**
+     * Removes the entry at 'index', closing the gap.
+     */
+    void remove(int index) {
+        int count = getKeyCount();
+        moveEntries(index + 1, index, count - index - 1);
+        setKeyCount(count - 1);
+    }
+
+    /**
+     * Appends every entry of 'right' (this page's right sibling) to this page.
+     * The caller checks that they fit, and unlinks 'right' from the chain.
+     */
+    void merge(BTreeLeafPage right) {
+        int count = getKeyCount();
+        int n = right.getKeyCount();
+        for (int i = 0; i < n; i++) {
+            setKeyAt(count + i, right.getKeyAt(i));
+            setValueAt(count + i, right.getValueAt(i));
+        }
+        setKeyCount(count + n);
+        right.setKeyCount(0);
+    }
+
+    /**
+     * Evens out the entries of this page and 'right', its right sibling.
+     * Returns the new first key of 'right' (its new separator in the parent).
+     */
+    int redistribute(BTreeLeafPage right) {
+        int count = getKeyCount();
+        int n = right.getKeyCount();
+        int leftTarget = (count + n) / 2;
+        if (count > leftTarget) {
+            // Our tail moves to the front of the right page
+            int move = count - leftTarget;
+            right.moveEntries(0, move, n);
+            for (int i = 0; i < move; i++) {
+                right.setKeyAt(i, getKeyAt(leftTarget + i));
+                right.setValueAt(i, getValueAt(leftTarget + i));
+            }
+        } else {
+            // The right page's head moves to our end
+            int move = leftTarget - count;
+            for (int i = 0; i < move; i++) {
+                setKeyAt(count + i, right.getKeyAt(i));
+                setValueAt(count + i, right.getValueAt(i));
+            }
+            right.moveEntries(move, 0, n - move);
+        }
+        setKeyCount(leftTarget);
+        right.setKeyCount(count + n - leftTarget);
+        return right.getKeyAt(0);
+    }
+
     // --- Helpers to read/write specific slots ---
 
-    private int getKeyAt(int index) {
-        int offset = HEADER_SIZE + (index * ENTRY_SIZE);
+    int getKeyAt(int index) {
+        int offset = ENTRIES_START + (index * ENTRY_SIZE);
         return page.getInt(offset);
     }
 
     private void setKeyAt(int index, int key) {
-        int offset = HEADER_SIZE + (index * ENTRY_SIZE);
+        int offset = ENTRIES_START + (index * ENTRY_SIZE);
         page.setInt(offset, key);
     }
 
-    private RecordId getValueAt(int index) {
-        int offset = HEADER_SIZE + (index * ENTRY_SIZE) + 4; // Skip Key (4 bytes)
+    RecordId getValueAt(int index) {
+        int offset = ENTRIES_START + (index * ENTRY_SIZE) + 4; // Skip Key (4 bytes)
         int pageId = page.getInt(offset);
         int slotNum = page.getInt(offset + 4);
         return new RecordId(pageId, slotNum);
     }
 
     private void setValueAt(int index, RecordId rid) {
-        int offset = HEADER_SIZE + (index * ENTRY_SIZE) + 4;
+        int offset = ENTRIES_START + (index * ENTRY_SIZE) + 4;
         page.setInt(offset, rid.pageId);
         page.setInt(offset + 4, rid.slotNumber);
     }
 
-    private void copyEntry(int fromIndex, int toIndex) {
-        setKeyAt(toIndex, getKeyAt(fromIndex));
-        setValueAt(toIndex, getValueAt(fromIndex));
+    private void moveEntries(int fromIndex, int toIndex, int n) {
+        page.moveBytes(ENTRIES_START + fromIndex * ENTRY_SIZE, ENTRIES_START + toIndex * ENTRY_SIZE, n * ENTRY_SIZE);
     }
 }
\ No newline at end of file
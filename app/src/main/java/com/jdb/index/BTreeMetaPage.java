@@ -0,0 +1,100 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+
+/**
+ * The index header page. Lets an index reopen without searching for its root.
+ *
+ * Layout:
+ * [0-3]:   Magic ("JDBI")
+ * [4-7]:   Format version
+ * [8-11]:  Root page id
+ * [12-15]: Tree height (1 = the root is a leaf)
+ * [16-19]: First page of the file's free list (see BufferManager.freePage)
+ * [20-23]: Key format: KEY_FORMAT_INT (BTreeFile), KEY_FORMAT_VAR (VarKeyBTreeFile),
+ *          KEY_FORMAT_POSTINGS (NonUniqueBTreeFile) or KEY_FORMAT_COVERING (CoveringIndexFile)
+ *
+ * The magic sits where a node page keeps its type (0 or 1), so a meta page
+ * can never be mistaken for a node and vice versa.
+ */
+public class BTreeMetaPage {
+    public static final int MAGIC = 0x4A444249; // "JDBI"
+    // 1: first version. 2: leaves carry sibling links (entries moved 8 bytes).
+    // 3: the header saves the free list head (deleted nodes are recycled).
+    public static final int VERSION = 3;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_ROOT = 8;
+    private static final int OFFSET_HEIGHT = 12;
+    private static final int OFFSET_FREE_HEAD = 16;
+    private static final int OFFSET_KEY_FORMAT = 20;
+
+    // Zero, so every header written before the field existed reads as an int index
+    public static final int KEY_FORMAT_INT = 0;
+    public static final int KEY_FORMAT_VAR = 1;
+    public static final int KEY_FORMAT_POSTINGS = 2;
+    public static final int KEY_FORMAT_COVERING = 3;
+
+    protected Page page;
+
+    public BTreeMetaPage(Page page) {
+        this.page = page;
+    }
+
+    /**
+     * Writes a fresh header for a tree whose root is 'rootPageId'.
+     */
+    public void format(int rootPageId) {
+        page.setInt(OFFSET_MAGIC, MAGIC);
+        page.setInt(OFFSET_VERSION, VERSION);
+        setRootPageId(rootPageId);
+        setHeight(1);
+        setFreeListHead(BufferManager.NO_PAGE);
+    }
+
+    public boolean isValid() {
+        return page.getInt(OFFSET_MAGIC) == MAGIC;
+    }
+
+    public int getVersion() {
+        return page.getInt(OFFSET_VERSION);
+    }
+
+    public void setVersion(int version) {
+        page.setInt(OFFSET_VERSION, version);
+    }
+
+    public int getRootPageId() {
+        return page.getInt(OFFSET_ROOT);
+    }
+
+    public void setRootPageId(int rootPageId) {
+        page.setInt(OFFSET_ROOT, rootPageId);
+    }
+
+    public int getHeight() {
+        return page.getInt(OFFSET_HEIGHT);
+    }
+
+    public void setHeight(int height) {
+        page.setInt(OFFSET_HEIGHT, height);
+    }
+
+    public int getFreeListHead() {
+        return page.getInt(OFFSET_FREE_HEAD);
+    }
+
+    public void setFreeListHead(int pageId) {
+        page.setInt(OFFSET_FREE_HEAD, pageId);
+    }
+
+    public int getKeyFormat() {
+        return page.getInt(OFFSET_KEY_FORMAT);
+    }
+
+    public void setKeyFormat(int format) {
+        page.setInt(OFFSET_KEY_FORMAT, format);
+    }
+}
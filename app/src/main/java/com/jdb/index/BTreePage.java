@@ -21,14 +21,23 @@ public class BTreePage {
     public static final int TYPE_INTERNAL = 0;
     public static final int TYPE_LEAF = 1;
 
-    public BTreePage(Page page, int type, int maxCapacity) {
+    /**
+     * Wraps a page without changing it. Readers (optimistic ones included)
+     * build these on shared frames, so nothing here may write: a writer sets
+     * up a freshly allocated page with format() instead.
+     */
+    protected BTreePage(Page page) {
         this.page = page;
-        // Initialize header if count is 0 (new page)
-        if (getKeyCount() == 0) {
-            setPageType(type);
-            setMaxCapacity(maxCapacity);
-            setKeyCount(0);
-        }
+    }
+
+    /**
+     * Writes the header of an empty node. Only for a page nobody else can
+     * reach yet (just allocated, not linked into the tree).
+     */
+    protected void format(int type, int maxCapacity) {
+        setPageType(type);
+        setMaxCapacity(maxCapacity);
+        setKeyCount(0);
     }
 
     public int getPageType() {
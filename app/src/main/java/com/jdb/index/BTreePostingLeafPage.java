@@ -0,0 +1,36 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+
+/**
+ * Slotted leaf node of a NonUniqueBTreeFile (layout in BTreeVarPage). Each
+ * key appears once; its value is a variable-length PostingList.
+ */
+public class BTreePostingLeafPage extends BTreeVarPage {
+
+    public BTreePostingLeafPage(Page page) {
+        super(page, TYPE_POSTING_LEAF, VARIABLE_VALUE, 0);
+    }
+
+    /**
+     * Index of the first key that is >= 'key' (getKeyCount() if none).
+     */
+    int lowerBound(byte[] key) {
+        return search(key, false);
+    }
+
+    /**
+     * Index of 'key', or -1 if it isn't on this page.
+     */
+    int indexOf(byte[] key) {
+        int i = lowerBound(key);
+        if (i < getKeyCount() && KeyCodec.compare(getKeyAt(i), key) == 0) {
+            return i;
+        }
+        return -1;
+    }
+
+    byte[] getPostingAt(int index) {
+        return getValueBytesAt(index);
+    }
+}
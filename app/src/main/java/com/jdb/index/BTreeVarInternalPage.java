@@ -0,0 +1,51 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Slotted internal node with variable-length separator keys (layout in
+ * BTreeVarPage). Value: [Child PageID 4]. Slot 0 holds the leftmost child
+ * and has no key, like index 0 of BTreeInternalPage.
+ *
+ * Separators are usually shorter than real keys: a leaf split sends up the
+ * shortest key that still divides the two pages (KeyCodec.shortestSeparator).
+ */
+public class BTreeVarInternalPage extends BTreeVarPage {
+    static final int VALUE_SIZE = 4;
+
+    public BTreeVarInternalPage(Page page) {
+        super(page, TYPE_VAR_INTERNAL, VALUE_SIZE, 1);
+    }
+
+    /**
+     * The child whose range holds 'key': after the last separator <= key.
+     */
+    public int lookup(byte[] key) {
+        return getChildAt(search(key, true) - 1);
+    }
+
+    /**
+     * The leftmost child that may hold 'key' when equal keys straddle a
+     * separator: after the last separator < key. Range scans start here.
+     */
+    int lookupFirst(byte[] key) {
+        return getChildAt(search(key, false) - 1);
+    }
+
+    /**
+     * Slot of the child 'lookup' takes for 'key'.
+     */
+    int childIndex(byte[] key) {
+        return search(key, true) - 1;
+    }
+
+    int getChildAt(int index) {
+        return page.getInt(valueOffset(index));
+    }
+
+    static byte[] encodeValue(int childPageId) {
+        return ByteBuffer.allocate(VALUE_SIZE).putInt(childPageId).array();
+    }
+}
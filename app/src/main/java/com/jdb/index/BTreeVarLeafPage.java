@@ -0,0 +1,99 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Slotted leaf node with variable-length keys (layout in BTreeVarPage).
+ * Value: [PageID 4][Slot 4] of the record the key points to.
+ *
+ * Covering leaves (TYPE_COVERING_LEAF, see CoveringIndexFile) have
+ * variable-length values: [PageID 4][Slot 4][included column bytes].
+ */
+public class BTreeVarLeafPage extends BTreeVarPage {
+    static final int VALUE_SIZE = 8;
+
+    public BTreeVarLeafPage(Page page) {
+        this(page, false);
+    }
+
+    public BTreeVarLeafPage(Page page, boolean covering) {
+        super(page, covering ? TYPE_COVERING_LEAF : TYPE_VAR_LEAF, covering ? VARIABLE_VALUE : VALUE_SIZE, 0);
+    }
+
+    public int getPrevPageId() {
+        return page.getInt(OFFSET_PREV);
+    }
+
+    public void setPrevPageId(int pageId) {
+        page.setInt(OFFSET_PREV, pageId);
+    }
+
+    public int getNextPageId() {
+        return page.getInt(OFFSET_NEXT);
+    }
+
+    public void setNextPageId(int pageId) {
+        page.setInt(OFFSET_NEXT, pageId);
+    }
+
+    /**
+     * Returns the RecordId for a given key, or null if not found.
+     */
+    public RecordId lookup(byte[] key) {
+        int i = upperBound(key) - 1;
+        if (i >= 0 && KeyCodec.compare(getKeyAt(i), key) == 0) {
+            return getValueAt(i);
+        }
+        return null;
+    }
+
+    /**
+     * Index of the first key that is >= 'key' (getKeyCount() if none).
+     */
+    int lowerBound(byte[] key) {
+        return search(key, false);
+    }
+
+    /**
+     * Index of the first key that is > 'key' (getKeyCount() if none).
+     */
+    int upperBound(byte[] key) {
+        return search(key, true);
+    }
+
+    RecordId getValueAt(int index) {
+        int offset = valueOffset(index);
+        return new RecordId(page.getInt(offset), page.getInt(offset + 4));
+    }
+
+    /**
+     * The included column bytes stored after the RecordId (covering leaves only).
+     */
+    byte[] getIncludedAt(int index) {
+        return page.readBytes(valueOffset(index) + VALUE_SIZE, valueLength(index) - VALUE_SIZE);
+    }
+
+    /**
+     * Overwrites the value at 'index' in place. Only possible when the new
+     * value is exactly as long as the old one; returns false otherwise.
+     */
+    boolean trySetValueAt(int index, byte[] value) {
+        if (value.length != valueLength(index)) {
+            return false;
+        }
+        page.writeBytes(valueOffset(index), value);
+        return true;
+    }
+
+    static byte[] encodeValue(RecordId rid) {
+        return ByteBuffer.allocate(VALUE_SIZE).putInt(rid.pageId).putInt(rid.slotNumber).array();
+    }
+
+    static byte[] encodeValue(RecordId rid, byte[] included) {
+        return ByteBuffer.allocate(VALUE_SIZE + included.length)
+                .putInt(rid.pageId).putInt(rid.slotNumber).put(included).array();
+    }
+}
@@ -0,0 +1,365 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+
+import java.util.List;
+
+/**
+ * Base class for slotted B+ Tree nodes with variable-length byte[] keys
+ * (see KeyCodec for how column values become keys).
+ *
+ * Layout:
+ * [0-3]:   Page Type (TYPE_VAR_INTERNAL, TYPE_VAR_LEAF, ...)
+ * [4-7]:   Entry count
+ * [8-11]:  Start of the cell area (cells are packed from the end of the page down)
+ * [12-13]: Prefix length
+ * [16-19]: Left sibling (leaves only)
+ * [20-23]: Right sibling (leaves only)
+ * [24 ..]: The prefix bytes, then the slot array: one 2-byte cell offset per
+ *          entry, in key order. Free space sits between slots and cells.
+ * Cell:    [2 bytes suffix length][suffix][value], or, for pages with
+ *          VARIABLE_VALUE: [2 bytes suffix length][suffix][2 bytes value length][value]
+ *
+ * Prefix compression: every key on the page starts with the page's prefix,
+ * which is stored once; cells keep only the rest. The prefix is the longest
+ * common prefix of the first and last key (keys are sorted, so that covers
+ * them all) and is recomputed whenever the page is rebuilt.
+ *
+ * Inserts that share the prefix and fit go straight into the free space (one
+ * slot-array shift). Anything else is done by reading the entries out and
+ * rebuilding the page (rebuild), which also picks the new prefix.
+ */
+public class BTreeVarPage {
+    public static final int TYPE_VAR_INTERNAL = 2;
+    public static final int TYPE_VAR_LEAF = 3;
+    public static final int TYPE_POSTING_LEAF = 4;
+    public static final int TYPE_POSTING_OVERFLOW = 5; // See PostingOverflowPage
+    public static final int TYPE_COVERING_LEAF = 7; // After HashBucketPage.TYPE_HASH_BUCKET
+
+    // valueSize for pages whose values differ in length (each cell stores its own)
+    protected static final int VARIABLE_VALUE = -1;
+
+    private static final int OFFSET_TYPE = 0;
+    private static final int OFFSET_COUNT = 4;
+    private static final int OFFSET_CELLS = 8;
+    private static final int OFFSET_PREFIX_LEN = 12;
+    protected static final int OFFSET_PREV = 16;
+    protected static final int OFFSET_NEXT = 20;
+    protected static final int HEADER_SIZE = 24;
+
+    private static final int SLOT_SIZE = 2;
+    private static final int LENGTH_SIZE = 2;
+
+    // Keys are limited so that any four entries fit on a page: splits always succeed
+    public static final int MAX_KEY_SIZE = (Page.PAGE_SIZE - HEADER_SIZE) / 4 - SLOT_SIZE - LENGTH_SIZE - 8;
+
+    protected final Page page;
+    private final int valueSize;
+    private final int firstKeyed; // Internal nodes: slot 0 (the leftmost pointer) has no key
+
+    protected BTreeVarPage(Page page, int type, int valueSize, int firstKeyed) {
+        this.page = page;
+        this.valueSize = valueSize;
+        this.firstKeyed = firstKeyed;
+        // A blank page: set up an empty node
+        if (page.getInt(OFFSET_CELLS) == 0) {
+            page.setInt(OFFSET_TYPE, type);
+            page.setInt(OFFSET_COUNT, 0);
+            page.setInt(OFFSET_CELLS, Page.PAGE_SIZE);
+            page.setShort(OFFSET_PREFIX_LEN, (short) 0);
+            page.setInt(OFFSET_PREV, BTreeLeafPage.NO_PAGE);
+            page.setInt(OFFSET_NEXT, BTreeLeafPage.NO_PAGE);
+        }
+    }
+
+    public int getPageType() {
+        return page.getInt(OFFSET_TYPE);
+    }
+
+    public int getKeyCount() {
+        return page.getInt(OFFSET_COUNT);
+    }
+
+    public int getPrefixLength() {
+        return page.getShort(OFFSET_PREFIX_LEN);
+    }
+
+    public byte[] getPrefix() {
+        return page.readBytes(HEADER_SIZE, getPrefixLength());
+    }
+
+    /**
+     * Bytes left between the slot array and the cells.
+     */
+    public int getFreeSpace() {
+        return page.getInt(OFFSET_CELLS) - slotOffset(getKeyCount());
+    }
+
+    // --- Reading entries ---
+
+    private int slotOffset(int index) {
+        return HEADER_SIZE + getPrefixLength() + index * SLOT_SIZE;
+    }
+
+    private int cellOffset(int index) {
+        return page.getShort(slotOffset(index)) & 0xFFFF;
+    }
+
+    /**
+     * The full key at 'index' (prefix + suffix).
+     */
+    public byte[] getKeyAt(int index) {
+        int prefixLen = getPrefixLength();
+        int cell = cellOffset(index);
+        int suffixLen = page.getShort(cell) & 0xFFFF;
+        byte[] key = new byte[prefixLen + suffixLen];
+        page.readBytes(HEADER_SIZE, key, 0, prefixLen);
+        page.readBytes(cell + LENGTH_SIZE, key, prefixLen, suffixLen);
+        return key;
+    }
+
+    /**
+     * Offset of the value bytes of entry 'index'.
+     */
+    protected int valueOffset(int index) {
+        int cell = cellOffset(index);
+        int offset = cell + LENGTH_SIZE + (page.getShort(cell) & 0xFFFF);
+        return valueSize == VARIABLE_VALUE ? offset + LENGTH_SIZE : offset;
+    }
+
+    protected int valueLength(int index) {
+        if (valueSize != VARIABLE_VALUE) {
+            return valueSize;
+        }
+        return page.getShort(valueOffset(index) - LENGTH_SIZE) & 0xFFFF;
+    }
+
+    protected byte[] getValueBytesAt(int index) {
+        return page.readBytes(valueOffset(index), valueLength(index));
+    }
+
+    /**
+     * Compares 'key' with the stored key at 'index', without copying it out.
+     * The caller has already checked that 'key' starts with the page prefix.
+     */
+    private int compareSuffix(byte[] key, int prefixLen, int index) {
+        int cell = cellOffset(index);
+        int suffixLen = page.getShort(cell) & 0xFFFF;
+        int n = Math.min(key.length - prefixLen, suffixLen);
+        for (int i = 0; i < n; i++) {
+            int a = key[prefixLen + i] & 0xFF;
+            int b = page.getByte(cell + LENGTH_SIZE + i) & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return (key.length - prefixLen) - suffixLen;
+    }
+
+    /**
+     * Binary search over the keyed slots: index of the first key that is
+     * > 'key' (upper) or >= 'key' (!upper); getKeyCount() if none.
+     */
+    protected int search(byte[] key, boolean upper) {
+        int lo = firstKeyed;
+        int hi = getKeyCount();
+        if (lo >= hi) {
+            return lo;
+        }
+
+        // Compare against the prefix once: a key outside it sorts before or after every entry
+        int prefixLen = getPrefixLength();
+        int n = Math.min(prefixLen, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = key[i] & 0xFF;
+            int b = page.getByte(HEADER_SIZE + i) & 0xFF;
+            if (a != b) {
+                return a < b ? lo : hi;
+            }
+        }
+        if (key.length < prefixLen) {
+            return lo; // A proper prefix of the prefix sorts first
+        }
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareSuffix(key, prefixLen, mid);
+            if (c > 0 || (upper && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // --- Writing entries ---
+
+    private int cellSize(int suffixLen, byte[] value) {
+        if (valueSize == VARIABLE_VALUE) {
+            return LENGTH_SIZE + suffixLen + LENGTH_SIZE + value.length;
+        }
+        return LENGTH_SIZE + suffixLen + valueSize;
+    }
+
+    private int writeCell(int cell, byte[] key, int keyFrom, int suffixLen, byte[] value) {
+        page.setShort(cell, (short) suffixLen);
+        page.writeBytes(cell + LENGTH_SIZE, key, keyFrom, suffixLen);
+        int offset = cell + LENGTH_SIZE + suffixLen;
+        if (valueSize == VARIABLE_VALUE) {
+            page.setShort(offset, (short) value.length);
+            offset += LENGTH_SIZE;
+        }
+        page.writeBytes(offset, value);
+        return cell;
+    }
+
+    /**
+     * Fast path: puts the entry at 'index' if the key shares the page prefix
+     * and the cell fits in the free space. Returns false otherwise (then the
+     * caller rebuilds or splits the page).
+     */
+    protected boolean tryInsertAt(int index, byte[] key, byte[] value) {
+        int prefixLen = getPrefixLength();
+        int count = getKeyCount();
+        boolean keyed = index >= firstKeyed;
+        if (keyed && count > firstKeyed) {
+            if (key.length < prefixLen) {
+                return false;
+            }
+            for (int i = 0; i < prefixLen; i++) {
+                if (key[i] != page.getByte(HEADER_SIZE + i)) {
+                    return false;
+                }
+            }
+        } else if (prefixLen > 0) {
+            return false; // First key on the page, or the unkeyed slot: just rebuild
+        }
+
+        int suffixLen = keyed ? key.length - prefixLen : 0;
+        int size = cellSize(suffixLen, value);
+        if (getFreeSpace() < size + SLOT_SIZE) {
+            return false;
+        }
+
+        // 1. Write the cell at the bottom of the free space
+        int cell = page.getInt(OFFSET_CELLS) - size;
+        writeCell(cell, key, prefixLen, suffixLen, value);
+        page.setInt(OFFSET_CELLS, cell);
+
+        // 2. Shift the slots after it one place right and point the new slot at the cell
+        int from = slotOffset(index);
+        page.moveBytes(from, from + SLOT_SIZE, (count - index) * SLOT_SIZE);
+        page.setShort(from, (short) cell);
+        page.setInt(OFFSET_COUNT, count + 1);
+        return true;
+    }
+
+    /**
+     * Drops the entry at 'index' from the slot array. Its cell stays where it
+     * is until the next rebuild reclaims the space.
+     */
+    protected void removeAt(int index) {
+        int count = getKeyCount();
+        int from = slotOffset(index + 1);
+        page.moveBytes(from, from - SLOT_SIZE, (count - index - 1) * SLOT_SIZE);
+        page.setInt(OFFSET_COUNT, count - 1);
+    }
+
+    /**
+     * Reads every entry out (full keys), e.g. to rebuild or split the page.
+     */
+    protected void readAll(List<byte[]> keys, List<byte[]> values) {
+        int count = getKeyCount();
+        for (int i = 0; i < count; i++) {
+            keys.add(i < firstKeyed ? new byte[0] : getKeyAt(i));
+            values.add(getValueBytesAt(i));
+        }
+    }
+
+    private int commonPrefix(List<byte[]> keys) {
+        if (keys.size() <= firstKeyed) {
+            return 0;
+        }
+        byte[] first = keys.get(firstKeyed);
+        byte[] last = keys.get(keys.size() - 1);
+        int n = Math.min(first.length, last.length);
+        int common = 0;
+        while (common < n && first[common] == last[common]) {
+            common++;
+        }
+        return common;
+    }
+
+    /**
+     * Bytes a rebuild of these entries would take, including header and prefix.
+     */
+    protected int requiredBytes(List<byte[]> keys, List<byte[]> values) {
+        int prefixLen = commonPrefix(keys);
+        int total = HEADER_SIZE + prefixLen;
+        for (int i = 0; i < keys.size(); i++) {
+            int suffixLen = i < firstKeyed ? 0 : keys.get(i).length - prefixLen;
+            total += SLOT_SIZE + cellSize(suffixLen, values.get(i));
+        }
+        return total;
+    }
+
+    protected boolean fits(List<byte[]> keys, List<byte[]> values) {
+        return requiredBytes(keys, values) <= Page.PAGE_SIZE;
+    }
+
+    /**
+     * Picks where to cut an overfull entry list: the index nearest the middle
+     * by bytes (not by count) whose two halves both fit on a page. 'min' is the
+     * first allowed cut (internal nodes keep a leftmost pointer and one key).
+     */
+    protected int splitPoint(List<byte[]> keys, List<byte[]> values, int min) {
+        int n = keys.size();
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += keys.get(i).length + values.get(i).length;
+        }
+        int middle = min;
+        long sum = 0;
+        for (int i = 0; i < n - 1; i++) {
+            sum += keys.get(i).length + values.get(i).length;
+            if (sum * 2 >= total) {
+                middle = Math.max(min, i + 1);
+                break;
+            }
+        }
+        // Walk outwards from the byte midpoint until both halves fit
+        for (int d = 0; d < n; d++) {
+            for (int mid : new int[]{middle - d, middle + d}) {
+                if (mid >= min && mid <= n - 1
+                        && fits(keys.subList(0, mid), values.subList(0, mid))
+                        && fits(keys.subList(mid, n), values.subList(mid, n))) {
+                    return mid;
+                }
+            }
+        }
+        throw new IllegalStateException("No split point fits " + n + " entries");
+    }
+
+    /**
+     * Rewrites the page with exactly these (sorted) entries, choosing the
+     * longest prefix they share. Sibling links are kept.
+     */
+    protected void rebuild(List<byte[]> keys, List<byte[]> values) {
+        int prefixLen = commonPrefix(keys);
+        byte[] prefix = keys.size() > firstKeyed ? keys.get(firstKeyed) : new byte[0];
+
+        page.setShort(OFFSET_PREFIX_LEN, (short) prefixLen);
+        page.writeBytes(HEADER_SIZE, prefix, 0, prefixLen);
+        int cells = Page.PAGE_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            int suffixLen = i < firstKeyed ? 0 : key.length - prefixLen;
+            cells -= cellSize(suffixLen, values.get(i));
+            writeCell(cells, key, i < firstKeyed ? 0 : prefixLen, suffixLen, values.get(i));
+            page.setShort(HEADER_SIZE + prefixLen + i * SLOT_SIZE, (short) cells);
+        }
+        page.setInt(OFFSET_CELLS, cells);
+        page.setInt(OFFSET_COUNT, keys.size());
+    }
+}
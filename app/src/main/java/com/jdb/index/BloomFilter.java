@@ -0,0 +1,71 @@
+package com.jdb.index;
+
+/**
+ * A Bloom filter over int keys: answers "definitely not here" or "maybe
+ * here". Each SortedRun keeps one in memory, so a lookup skips every run
+ * that can't hold the key without reading any of its pages.
+ *
+ * With 10 bits per key and 7 hash functions about 1% of absent keys get a
+ * false "maybe". The k probe positions come from one 64-bit hash split in
+ * two (h1 + i * h2), which is as good as k independent hashes.
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final int hashes;
+    private final long numBits;
+
+    public BloomFilter(int expectedKeys, int bitsPerKey) {
+        long n = Math.max(64, (long) expectedKeys * bitsPerKey);
+        this.bits = new long[(int) ((n + 63) / 64)];
+        this.hashes = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+        this.numBits = bits.length * 64L;
+    }
+
+    /**
+     * A filter read back from disk (see getBits / getHashCount).
+     */
+    public BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.numBits = bits.length * 64L;
+    }
+
+    public void add(int key) {
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(int key) {
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    public int getHashCount() {
+        return hashes;
+    }
+
+    // SplitMix64 finalizer: spreads nearby keys over all 64 bits
+    private static long mix(int key) {
+        long z = key * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
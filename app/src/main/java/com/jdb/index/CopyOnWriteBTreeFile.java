@@ -0,0 +1,520 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A copy-on-write B+ Tree (int key -> RecordId), in the style of LMDB.
+ *
+ * Published pages are never modified. An insert copies the path from the
+ * root down to the leaf into new pages, changes the copies, and then
+ * publishes the new root with one volatile write. Each published root is a
+ * version of the whole tree:
+ * - Readers open a Snapshot, which holds on to one root. Everything below
+ *   it is immutable, so lookups and scans take no latches and never retry,
+ *   whatever the writer is doing.
+ * - There is one writer at a time (insert is synchronized). It pays for the
+ *   readers' freedom by writing height + (splits) new pages per insert.
+ * - Pages replaced by a version are recycled once no open snapshot is older
+ *   than that version. Close snapshots promptly, or the file keeps growing.
+ *
+ * Leaves are not chained: a sibling link would force the neighbours to be
+ * copied too. Scans walk down from the snapshot's root instead.
+ * The header page uses the regular BTreeMetaPage layout. Recycling happens in
+ * memory only: pages retired before a restart are not reused.
+ *
+ * Usage:
+ *   try (CopyOnWriteBTreeFile.Snapshot s = index.snapshot()) {
+ *       RecordId rid = s.find(42);
+ *   }
+ */
+public class CopyOnWriteBTreeFile {
+    private final BufferManager bufferManager;
+    private final int metaPageId;
+
+    // The latest published version; readers start here
+    private volatile Version current;
+
+    // Open snapshots per version number
+    private final ConcurrentSkipListMap<Long, Integer> readers = new ConcurrentSkipListMap<>();
+
+    // Writer only (guarded by 'this'): replaced pages waiting for old readers, and pages ready for reuse
+    private final ArrayDeque<RetiredPages> retired = new ArrayDeque<>();
+    private final ArrayDeque<Integer> freePages = new ArrayDeque<>();
+
+    private static final class Version {
+        final long number;
+        final int rootPageId;
+        final int height;
+
+        Version(long number, int rootPageId, int height) {
+            this.number = number;
+            this.rootPageId = rootPageId;
+            this.height = height;
+        }
+    }
+
+    private static final class RetiredPages {
+        final long version; // The first version that no longer uses them
+        final List<Integer> pageIds;
+
+        RetiredPages(long version, List<Integer> pageIds) {
+            this.version = version;
+            this.pageIds = pageIds;
+        }
+    }
+
+    /**
+     * Opens the index whose header is page 'metaPageId' (normally 0).
+     * A blank (or missing) header page creates a new, empty index.
+     */
+    public CopyOnWriteBTreeFile(BufferManager bufferManager, int metaPageId) {
+        this.bufferManager = bufferManager;
+        this.metaPageId = metaPageId;
+
+        while (bufferManager.getNumPages() <= metaPageId) {
+            bufferManager.allocateNewPage();
+        }
+        Page p = bufferManager.fetchPage(metaPageId);
+        boolean dirty = false;
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(p);
+            if (meta.isValid()) {
+                current = new Version(0, meta.getRootPageId(), meta.getHeight());
+            } else if (p.getInt(0) == 0 && p.getInt(4) == 0) {
+                int rootPageId = bufferManager.allocateNewPage();
+                Page rootRaw = bufferManager.fetchPage(rootPageId);
+                newLeaf(rootRaw);
+                bufferManager.unpinPage(rootPageId, true);
+                meta.format(rootPageId);
+                dirty = true;
+                current = new Version(0, rootPageId, 1);
+            } else {
+                throw new IllegalStateException("Page " + metaPageId + " is not an index header");
+            }
+        } finally {
+            bufferManager.unpinPage(metaPageId, dirty);
+        }
+    }
+
+    /**
+     * Opens a read-only view of the latest version. Close it when done.
+     */
+    public Snapshot snapshot() {
+        while (true) {
+            Version v = current;
+            readers.merge(v.number, 1, Integer::sum);
+            // If the writer published in between, it may not have seen us and
+            // could already be reusing this version's old pages: try again
+            if (current == v) {
+                return new Snapshot(v);
+            }
+            release(v.number);
+        }
+    }
+
+    private void release(long version) {
+        readers.computeIfPresent(version, (k, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Lookup on the latest version.
+     */
+    public RecordId find(int key) {
+        try (Snapshot s = snapshot()) {
+            return s.find(key);
+        }
+    }
+
+    public int getRootPageId() {
+        return current.rootPageId;
+    }
+
+    public int getHeight() {
+        return current.height;
+    }
+
+    /**
+     * Number of the latest version (counts inserts since the index was opened).
+     */
+    public long getVersion() {
+        return current.number;
+    }
+
+    /**
+     * Pages waiting for old snapshots to close before they can be reused.
+     */
+    public synchronized int getRetiredPageCount() {
+        int n = 0;
+        for (RetiredPages r : retired) {
+            n += r.pageIds.size();
+        }
+        return n;
+    }
+
+    // --- Writing ---
+
+    /**
+     * Inserts a copy of the root-to-leaf path and publishes it as a new version.
+     */
+    public synchronized void insert(int key, RecordId rid) {
+        Version base = current;
+        List<Integer> replaced = new ArrayList<>();
+
+        // 1. Copy the path, splitting copies that overflow
+        PathCopy result = copyInsert(base.rootPageId, key, rid, replaced);
+
+        // 2. A split root gets a new root above it
+        int rootPageId = result.pageId;
+        int height = base.height;
+        if (result.split != null) {
+            int newRootId = allocatePage();
+            Page rootRaw = bufferManager.fetchPage(newRootId);
+            BTreeInternalPage root = new BTreeInternalPage(rootRaw);
+            root.format();
+            root.setPointer(0, result.pageId);
+            root.setKeyCount(1);
+            root.insert(result.split.key, result.split.childPageId);
+            bufferManager.unpinPage(newRootId, true);
+            rootPageId = newRootId;
+            height++;
+        }
+
+        // 3. Header first, then publish in memory: new snapshots see the new tree
+        writeMeta(rootPageId, height);
+        Version published = new Version(base.number + 1, rootPageId, height);
+        current = published;
+
+        // 4. The old path is garbage once every older snapshot is closed
+        retired.addLast(new RetiredPages(published.number, replaced));
+        reclaim();
+    }
+
+    /**
+     * Result of copying one node: the copy's page id, and the new right
+     * sibling (with its separator) if the copy had to split.
+     */
+    private static final class PathCopy {
+        final int pageId;
+        final PushUpEntry split;
+
+        PathCopy(int pageId, PushUpEntry split) {
+            this.pageId = pageId;
+            this.split = split;
+        }
+    }
+
+    private PathCopy copyInsert(int pageId, int key, RecordId rid, List<Integer> replaced) {
+        Page rawPage = bufferManager.fetchPage(pageId);
+        try {
+            if (rawPage.getInt(0) == BTreePage.TYPE_LEAF) {
+                return copyLeafInsert(rawPage, key, rid, replaced);
+            }
+
+            // Internal: copy the child first, then this node pointing at the copy
+            BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+            int childIndex = internal.upperBound(key) - 1;
+            PathCopy child = copyInsert(internal.getValueAt(childIndex), key, rid, replaced);
+
+            int copyId = copyOf(rawPage, replaced);
+            Page copyRaw = bufferManager.fetchPage(copyId);
+            try {
+                BTreeInternalPage copy = new BTreeInternalPage(copyRaw);
+                copy.setPointer(childIndex, child.pageId);
+                if (child.split == null) {
+                    return new PathCopy(copyId, null);
+                }
+                if (copy.getKeyCount() < copy.getMaxCapacity()) {
+                    copy.insert(child.split.key, child.split.childPageId);
+                    return new PathCopy(copyId, null);
+                }
+
+                // The copy is full: split it, the middle key moves up
+                int rightId = allocatePage();
+                Page rightRaw = bufferManager.fetchPage(rightId);
+                BTreeInternalPage right = new BTreeInternalPage(rightRaw);
+                right.format();
+                int splitKey = copy.split(right);
+                if (child.split.key >= splitKey) {
+                    right.insert(child.split.key, child.split.childPageId);
+                } else {
+                    copy.insert(child.split.key, child.split.childPageId);
+                }
+                bufferManager.unpinPage(rightId, true);
+                return new PathCopy(copyId, new PushUpEntry(splitKey, rightId));
+            } finally {
+                bufferManager.unpinPage(copyId, true);
+            }
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+        }
+    }
+
+    private PathCopy copyLeafInsert(Page rawPage, int key, RecordId rid, List<Integer> replaced) {
+        int copyId = copyOf(rawPage, replaced);
+        Page copyRaw = bufferManager.fetchPage(copyId);
+        try {
+            BTreeLeafPage copy = new BTreeLeafPage(copyRaw);
+            if (copy.getKeyCount() < copy.getMaxCapacity()) {
+                copy.insert(key, rid);
+                return new PathCopy(copyId, null);
+            }
+
+            int rightId = allocatePage();
+            Page rightRaw = bufferManager.fetchPage(rightId);
+            BTreeLeafPage right = new BTreeLeafPage(rightRaw);
+            right.format();
+            int splitKey = copy.split(right);
+            if (key >= splitKey) {
+                right.insert(key, rid);
+            } else {
+                copy.insert(key, rid);
+            }
+            // No sibling chain in a copy-on-write tree
+            copy.setNextPageId(BTreeLeafPage.NO_PAGE);
+            right.setPrevPageId(BTreeLeafPage.NO_PAGE);
+            right.setNextPageId(BTreeLeafPage.NO_PAGE);
+            bufferManager.unpinPage(rightId, true);
+            return new PathCopy(copyId, new PushUpEntry(splitKey, rightId));
+        } finally {
+            bufferManager.unpinPage(copyId, true);
+        }
+    }
+
+    /**
+     * Copies a published page into a fresh one and records the original as replaced.
+     */
+    private int copyOf(Page original, List<Integer> replaced) {
+        int copyId = allocatePage();
+        Page copyRaw = bufferManager.fetchPage(copyId);
+        copyRaw.writeBytes(0, original.readBytes(0, Page.PAGE_SIZE));
+        bufferManager.unpinPage(copyId, true);
+        replaced.add(original.getPageId());
+        return copyId;
+    }
+
+    private int allocatePage() {
+        Integer reused = freePages.pollFirst();
+        if (reused == null) {
+            return bufferManager.allocateNewPage();
+        }
+        Page p = bufferManager.fetchPage(reused);
+        p.writeBytes(0, new byte[Page.PAGE_SIZE]);
+        bufferManager.unpinPage(reused, true);
+        return reused;
+    }
+
+    private void newLeaf(Page rawPage) {
+        new BTreeLeafPage(rawPage).format();
+    }
+
+    private void writeMeta(int rootPageId, int height) {
+        Page metaRaw = bufferManager.fetchPage(metaPageId);
+        StampedLock metaLatch = bufferManager.getLatch(metaPageId);
+        long stamp = metaLatch.writeLock(); // Keeps write-back from copying a half-updated header
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(metaRaw);
+            meta.setRootPageId(rootPageId);
+            meta.setHeight(height);
+        } finally {
+            metaLatch.unlockWrite(stamp);
+        }
+        bufferManager.unpinPage(metaPageId, true);
+    }
+
+    /**
+     * Moves retired pages that no open snapshot can reach to the free list.
+     */
+    private void reclaim() {
+        Long oldest = readers.isEmpty() ? null : readers.firstKey();
+        while (!retired.isEmpty() && (oldest == null || retired.peekFirst().version <= oldest)) {
+            freePages.addAll(retired.pollFirst().pageIds);
+        }
+    }
+
+    // --- Reading ---
+
+    /**
+     * A consistent, read-only view of one version of the tree.
+     * Safe to use from any thread; never blocks the writer or other readers.
+     */
+    public class Snapshot implements AutoCloseable {
+        private final Version version;
+        private volatile boolean closed;
+
+        private Snapshot(Version version) {
+            this.version = version;
+        }
+
+        public long getVersion() {
+            return version.number;
+        }
+
+        public int getRootPageId() {
+            return version.rootPageId;
+        }
+
+        public RecordId find(int key) {
+            checkOpen();
+            int pageId = version.rootPageId;
+            while (true) {
+                Page rawPage = bufferManager.fetchPage(pageId);
+                try {
+                    if (rawPage.getInt(0) == BTreePage.TYPE_LEAF) {
+                        return new BTreeLeafPage(rawPage).lookup(key);
+                    }
+                    pageId = new BTreeInternalPage(rawPage).lookup(key);
+                } finally {
+                    bufferManager.unpinPage(rawPage.getPageId(), false);
+                }
+            }
+        }
+
+        /**
+         * Entries with lo <= key <= hi in ascending order, as of this snapshot.
+         * Finish with the iterator before closing the snapshot: once it is
+         * closed, the iterator throws IllegalStateException.
+         */
+        public Iterator<IndexEntry> scan(int lo, int hi) {
+            checkOpen();
+            return new SnapshotScan(this, lo, hi);
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed");
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(version.number);
+            }
+        }
+    }
+
+    /**
+     * Walks the leaves of one version left to right. With no sibling links,
+     * it keeps the path from the root and the next child to visit per level.
+     * One leaf's matching entries are copied out at a time; no page stays pinned.
+     */
+    private class SnapshotScan implements Iterator<IndexEntry> {
+        private final Snapshot snapshot; // Its pages may be reused once it is closed
+        private final int lo;
+        private final int hi;
+        private final int[] pathPages;
+        private final int[] nextChild;
+        private int depth; // Number of internal levels on the path
+
+        private final List<IndexEntry> buffered = new ArrayList<>();
+        private int position;
+        private boolean done;
+
+        SnapshotScan(Snapshot snapshot, int lo, int hi) {
+            Version version = snapshot.version;
+            this.snapshot = snapshot;
+            this.lo = lo;
+            this.hi = hi;
+            this.pathPages = new int[version.height];
+            this.nextChild = new int[version.height];
+            if (lo > hi) {
+                done = true;
+                return;
+            }
+            // Start one key lower: a split inside a run of equal keys leaves
+            // copies of 'lo' left of a separator equal to it
+            descend(version.rootPageId, lo == Integer.MIN_VALUE ? lo : lo - 1);
+        }
+
+        /**
+         * Goes down from 'pageId' to the leaf covering 'key', then buffers that leaf.
+         */
+        private void descend(int pageId, int key) {
+            while (true) {
+                Page rawPage = bufferManager.fetchPage(pageId);
+                try {
+                    if (rawPage.getInt(0) == BTreePage.TYPE_LEAF) {
+                        BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+                        buffered.clear();
+                        position = 0;
+                        for (int i = leaf.lowerBound(lo); i < leaf.getKeyCount(); i++) {
+                            int k = leaf.getKeyAt(i);
+                            if (k > hi) {
+                                done = true;
+                                break;
+                            }
+                            buffered.add(new IndexEntry(k, leaf.getValueAt(i)));
+                        }
+                        return;
+                    }
+                    BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+                    int index = internal.upperBound(key) - 1;
+                    pathPages[depth] = pageId;
+                    nextChild[depth] = index + 1;
+                    depth++;
+                    pageId = internal.getValueAt(index);
+                } finally {
+                    bufferManager.unpinPage(rawPage.getPageId(), false);
+                }
+            }
+        }
+
+        /**
+         * Moves to the next leaf: up to the nearest level with a child left, then down its left edge.
+         */
+        private void nextLeaf() {
+            while (depth > 0) {
+                int level = depth - 1;
+                int pageId = pathPages[level];
+                Page rawPage = bufferManager.fetchPage(pageId);
+                int childId = BTreeLeafPage.NO_PAGE;
+                try {
+                    BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+                    if (nextChild[level] < internal.getKeyCount()) {
+                        childId = internal.getValueAt(nextChild[level]++);
+                    }
+                } finally {
+                    bufferManager.unpinPage(pageId, false);
+                }
+                if (childId != BTreeLeafPage.NO_PAGE) {
+                    descend(childId, Integer.MIN_VALUE);
+                    return;
+                }
+                depth--;
+            }
+            done = true;
+            buffered.clear();
+        }
+
+        @Override
+        public boolean hasNext() {
+            snapshot.checkOpen();
+            while (position >= buffered.size()) {
+                if (done) {
+                    return false;
+                }
+                nextLeaf();
+            }
+            return true;
+        }
+
+        @Override
+        public IndexEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffered.get(position++);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.RecordId;
+
+import java.util.Iterator;
+
+/**
+ * A covering index: a VarKeyBTreeFile whose leaf entries carry a few extra
+ * ("included") columns next to the RecordId, e.g. id -> (RecordId, name, age).
+ * A query that only needs the key and the included columns is answered from
+ * the leaf alone, without the second random read of the heap page.
+ *
+ * Included columns are opaque bytes here; build and read them with a
+ * KeyCodec over the columns you include, the same way keys are built:
+ *
+ *   KeyCodec included = KeyCodec.forColumns(schema, 1, 2);
+ *   index.insert(idCodec.encode(t), rid, included.encode(t));
+ *   Object[] nameAndAge = included.decode(index.lookup(key).included);
+ *
+ * The price is the usual one for covering indexes: bigger leaves (fewer
+ * entries per page), and every change to an included column must reach the
+ * index too (update), not just changes to the key.
+ *
+ * Leaves are TYPE_COVERING_LEAF pages and the header says KEY_FORMAT_COVERING,
+ * so a covering index and a plain VarKeyBTreeFile never open each other's files.
+ */
+public class CoveringIndexFile extends VarKeyBTreeFile {
+    // Key plus included bytes: a covering cell keeps an extra 2-byte value length,
+    // so this keeps any four entries on a page, as MAX_KEY_SIZE does for plain leaves
+    public static final int MAX_ENTRY_SIZE = BTreeVarPage.MAX_KEY_SIZE - 2;
+
+    /**
+     * Opens the index whose header is page 'metaPageId' (normally 0).
+     * A blank (or missing) header page creates a new, empty index.
+     */
+    public CoveringIndexFile(BufferManager bufferManager, int metaPageId) {
+        super(bufferManager, metaPageId, true);
+    }
+
+    /**
+     * Adds (key -> rid) with no included columns.
+     */
+    @Override
+    public void insert(byte[] key, RecordId rid) {
+        insert(key, rid, new byte[0]);
+    }
+
+    public void insert(byte[] key, RecordId rid, byte[] included) {
+        checkSize(key, included);
+        insertEntry(key, BTreeVarLeafPage.encodeValue(rid, included));
+    }
+
+    /**
+     * Replaces the included columns of the entry (key, rid), after the row
+     * changed without its key changing. (If the key changed too, delete the
+     * old entry and insert the new one.) Returns false if there is no such entry.
+     */
+    public boolean update(byte[] key, RecordId rid, byte[] included) {
+        checkSize(key, included);
+        return replaceEntry(key, rid, BTreeVarLeafPage.encodeValue(rid, included));
+    }
+
+    /**
+     * One entry with this key, included columns and all, or null.
+     */
+    public VarIndexEntry lookup(byte[] key) {
+        Iterator<VarIndexEntry> it = scan(key, key);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private static void checkSize(byte[] key, byte[] included) {
+        if (key.length + included.length > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Key and included columns of " + (key.length + included.length) + " bytes exceed the limit of " + MAX_ENTRY_SIZE);
+        }
+    }
+}
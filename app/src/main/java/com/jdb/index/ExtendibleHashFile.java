@@ -0,0 +1,426 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A disk-resident extendible hash index (int key -> RecordId) for tables
+ * that are only ever searched by exact key. Duplicate keys are allowed, as
+ * in BTreeFile, but there are no range scans: use a BTreeFile for those.
+ *
+ * 1. The directory maps the low 'global depth' bits of a key's hash to a
+ *    bucket page. Several slots may share a bucket: a bucket of 'local
+ *    depth' d is pointed to by every slot that agrees on the low d bits.
+ * 2. A lookup hashes the key, reads the bucket id from the directory and
+ *    reads that one page. The directory is loaded into memory when the
+ *    index is opened (and written through on every change), so a lookup
+ *    visits one page, where a B+Tree descent visits one per level.
+ * 3. An insert into a full bucket splits just that bucket: its entries are
+ *    divided between it and a new bucket by the next hash bit. Only when
+ *    the bucket's local depth already equals the global depth does the
+ *    directory double first (each slot is copied, no bucket moves).
+ *
+ * Buckets never merge and the directory never shrinks; a delete just
+ * removes the entry. The file's first page is the header (HashMetaPage),
+ * followed by directory pages and buckets as they are allocated.
+ *
+ * Concurrency: one index-level read/write lock, like VarKeyBTreeFile. Any
+ * number of threads may find at once; insert and delete are exclusive.
+ */
+public class ExtendibleHashFile {
+    // Largest directory the header can list: 2^19 slots on 512 pages
+    public static final int MAX_GLOBAL_DEPTH = 31 - Integer.numberOfLeadingZeros(
+            HashMetaPage.MAX_DIRECTORY_PAGES * HashMetaPage.ENTRIES_PER_PAGE);
+
+    private final BufferManager bufferManager;
+    private final int metaPageId;
+    private int globalDepth;
+    private int[] directory;      // Slot -> bucket page id
+    private int[] directoryPages; // Where the directory is stored, ENTRIES_PER_PAGE slots each
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the index whose header is page 'metaPageId' (normally 0).
+     * A blank (or missing) header page creates a new, empty index.
+     */
+    public ExtendibleHashFile(BufferManager bufferManager, int metaPageId) {
+        this.bufferManager = bufferManager;
+        this.metaPageId = metaPageId;
+        openOrCreate();
+    }
+
+    private void openOrCreate() {
+        while (bufferManager.getNumPages() <= metaPageId) {
+            bufferManager.allocateNewPage();
+        }
+
+        Page p = bufferManager.fetchPage(metaPageId);
+        boolean dirty = false;
+        try {
+            HashMetaPage meta = new HashMetaPage(p);
+            if (meta.isValid()) {
+                globalDepth = meta.getGlobalDepth();
+                directoryPages = meta.getDirectoryPageIds();
+                bufferManager.setFreeListHead(meta.getFreeListHead());
+                directory = new int[1 << globalDepth];
+                for (int i = 0; i < directory.length; i++) {
+                    int dirId = directoryPages[i / HashMetaPage.ENTRIES_PER_PAGE];
+                    Page dir = bufferManager.fetchPage(dirId);
+                    directory[i] = dir.getInt((i % HashMetaPage.ENTRIES_PER_PAGE) * 4);
+                    bufferManager.unpinPage(dirId, false);
+                }
+                return;
+            }
+            if (p.getInt(0) != 0 || p.getInt(4) != 0) {
+                throw new IllegalStateException("Page " + metaPageId + " is not a hash index header");
+            }
+            meta.format();
+            dirty = true; // saveMeta() never rewrites the magic: it must reach disk from here
+        } finally {
+            bufferManager.unpinPage(metaPageId, dirty);
+        }
+
+        // A new index: one empty bucket that every key hashes to
+        int bucketId = bufferManager.allocateNewPage();
+        new HashBucketPage(bufferManager.fetchPage(bucketId));
+        bufferManager.unpinPage(bucketId, true);
+        globalDepth = 0;
+        directory = new int[] { bucketId };
+        directoryPages = new int[] { bufferManager.allocateNewPage() };
+        writeDirectory(0, 1);
+        saveMeta();
+    }
+
+    public int getGlobalDepth() {
+        lock.readLock().lock();
+        try {
+            return globalDepth;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct bucket chains (directory slots may share one).
+     */
+    public int getBucketCount() {
+        lock.readLock().lock();
+        try {
+            int buckets = 0;
+            for (int i = 0; i < directory.length; i++) {
+                // A bucket of local depth d first appears at the slot equal to its low d bits
+                int depth = getLocalDepth(directory[i]);
+                if (i < (1 << depth)) {
+                    buckets++;
+                }
+            }
+            return buckets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Spreads the key's bits (MurmurHash3's finalizer), so sequential ids
+     * fill the buckets evenly through the low bits the directory uses.
+     */
+    static int hash(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int slotFor(int key) {
+        return hash(key) & ((1 << globalDepth) - 1);
+    }
+
+    // --- Lookups ---
+
+    /**
+     * Returns the RecordId of one entry with this key, or null.
+     */
+    public RecordId find(int key) {
+        lock.readLock().lock();
+        try {
+            // Each page stays pinned while it's read: other readers share the lock and may evict
+            int pageId = directory[slotFor(key)];
+            while (pageId != BTreeLeafPage.NO_PAGE) {
+                int bucketPageId = pageId;
+                Page raw = bufferManager.fetchPage(bucketPageId);
+                try {
+                    HashBucketPage bucket = new HashBucketPage(raw);
+                    int i = bucket.indexOf(key);
+                    if (i >= 0) {
+                        return bucket.getValueAt(i);
+                    }
+                    pageId = bucket.getOverflowPageId();
+                } finally {
+                    bufferManager.unpinPage(bucketPageId, false);
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Updates ---
+
+    public void insert(int key, RecordId rid) {
+        lock.writeLock().lock();
+        try {
+            while (true) {
+                int bucketId = directory[slotFor(key)];
+
+                // 1. Room anywhere in the bucket: done
+                int pageId = bucketId;
+                int lastPageId = bucketId;
+                while (pageId != BTreeLeafPage.NO_PAGE) {
+                    HashBucketPage page = new HashBucketPage(bufferManager.fetchPage(pageId));
+                    if (!page.isFull()) {
+                        page.insert(key, rid);
+                        bufferManager.unpinPage(pageId, true);
+                        return;
+                    }
+                    lastPageId = pageId;
+                    pageId = page.getOverflowPageId();
+                    bufferManager.unpinPage(lastPageId, false);
+                }
+
+                // 2. Full: split it, then try again (the key's half may still be full)
+                List<IndexEntry> entries = readBucket(bucketId);
+                int localDepth = getLocalDepth(bucketId);
+                if (localDepth < MAX_GLOBAL_DEPTH && worthSplitting(entries, key)) {
+                    split(bucketId, localDepth, entries);
+                    continue;
+                }
+
+                // 3. No split would make room: chain an overflow page
+                int overflowId = bufferManager.allocateNewPage();
+                HashBucketPage overflow = new HashBucketPage(bufferManager.fetchPage(overflowId));
+                overflow.insert(key, rid);
+                bufferManager.unpinPage(overflowId, true);
+                new HashBucketPage(bufferManager.fetchPage(lastPageId)).setOverflowPageId(overflowId);
+                bufferManager.unpinPage(lastPageId, true);
+                return;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes one entry with 'key'. Returns false if there is none.
+     * An overflow page that becomes empty is unlinked and recycled.
+     */
+    public boolean delete(int key) {
+        lock.writeLock().lock();
+        try {
+            int prevPageId = BTreeLeafPage.NO_PAGE;
+            int pageId = directory[slotFor(key)];
+            while (pageId != BTreeLeafPage.NO_PAGE) {
+                HashBucketPage page = new HashBucketPage(bufferManager.fetchPage(pageId));
+                int i = page.indexOf(key);
+                if (i < 0) {
+                    int next = page.getOverflowPageId();
+                    bufferManager.unpinPage(pageId, false);
+                    prevPageId = pageId;
+                    pageId = next;
+                    continue;
+                }
+                page.removeAt(i);
+                int next = page.getOverflowPageId();
+                boolean unlink = page.getCount() == 0 && prevPageId != BTreeLeafPage.NO_PAGE;
+                bufferManager.unpinPage(pageId, true);
+                if (unlink) {
+                    new HashBucketPage(bufferManager.fetchPage(prevPageId)).setOverflowPageId(next);
+                    bufferManager.unpinPage(prevPageId, true);
+                    bufferManager.freePage(pageId);
+                    saveMeta();
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * False if one hash value (as far as a split could ever look) has a full
+     * page of entries by itself, counting 'key': no split can give them
+     * room, so the bucket chains an overflow page instead of splitting
+     * again and again (doubling the directory each time).
+     */
+    private static boolean worthSplitting(List<IndexEntry> entries, int key) {
+        int mask = (1 << MAX_GLOBAL_DEPTH) - 1;
+        Map<Integer, Integer> perHash = new HashMap<>();
+        perHash.put(hash(key) & mask, 1);
+        for (IndexEntry e : entries) {
+            if (perHash.merge(hash(e.key) & mask, 1, Integer::sum) >= HashBucketPage.CAPACITY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits the bucket at 'bucketId' (local depth 'localDepth') into itself
+     * and a new bucket, one level deeper, by hash bit 'localDepth'.
+     */
+    private void split(int bucketId, int localDepth, List<IndexEntry> entries) {
+        // 1. The directory must be able to tell the two halves apart
+        if (localDepth == globalDepth) {
+            doubleDirectory();
+        }
+
+        // 2. Divide the entries by the next hash bit
+        List<IndexEntry> stay = new ArrayList<>();
+        List<IndexEntry> move = new ArrayList<>();
+        for (IndexEntry e : entries) {
+            ((hash(e.key) >>> localDepth & 1) == 0 ? stay : move).add(e);
+        }
+        int newBucketId = bufferManager.allocateNewPage();
+        writeBucket(bucketId, localDepth + 1, stay);
+        writeBucket(newBucketId, localDepth + 1, move);
+
+        // 3. The slots with that bit set now point at the new bucket. They
+        //    are every 2^(localDepth+1)-th slot, from the first one with the bit set.
+        int first = (hash(entries.get(0).key) & ((1 << localDepth) - 1)) | (1 << localDepth);
+        int step = 1 << (localDepth + 1);
+        for (int slot = first; slot < directory.length; slot += step) {
+            directory[slot] = newBucketId;
+            writeDirectory(slot, slot + 1);
+        }
+        saveMeta(); // The free list may have changed
+    }
+
+    /**
+     * Doubles the directory: slot i + 2^depth starts out pointing where slot i does.
+     */
+    private void doubleDirectory() {
+        int[] doubled = new int[directory.length * 2];
+        System.arraycopy(directory, 0, doubled, 0, directory.length);
+        System.arraycopy(directory, 0, doubled, directory.length, directory.length);
+
+        int pagesNeeded = (doubled.length + HashMetaPage.ENTRIES_PER_PAGE - 1) / HashMetaPage.ENTRIES_PER_PAGE;
+        int[] pages = new int[pagesNeeded];
+        System.arraycopy(directoryPages, 0, pages, 0, directoryPages.length);
+        for (int i = directoryPages.length; i < pagesNeeded; i++) {
+            pages[i] = bufferManager.allocateNewPage();
+        }
+
+        int oldLength = directory.length;
+        directory = doubled;
+        directoryPages = pages;
+        globalDepth++;
+        // Only the new upper half changed (the lower half's page ids are the same)
+        writeDirectory(oldLength, doubled.length);
+        saveMeta();
+    }
+
+    /**
+     * Every entry of the bucket chain starting at 'bucketId'.
+     */
+    private List<IndexEntry> readBucket(int bucketId) {
+        List<IndexEntry> entries = new ArrayList<>();
+        int pageId = bucketId;
+        while (pageId != BTreeLeafPage.NO_PAGE) {
+            HashBucketPage page = new HashBucketPage(bufferManager.fetchPage(pageId));
+            for (int i = 0; i < page.getCount(); i++) {
+                entries.add(new IndexEntry(page.getKeyAt(i), page.getValueAt(i)));
+            }
+            int next = page.getOverflowPageId();
+            bufferManager.unpinPage(pageId, false);
+            pageId = next;
+        }
+        return entries;
+    }
+
+    private int getLocalDepth(int bucketId) {
+        Page raw = bufferManager.fetchPage(bucketId);
+        try {
+            return new HashBucketPage(raw).getLocalDepth();
+        } finally {
+            bufferManager.unpinPage(bucketId, false);
+        }
+    }
+
+    /**
+     * Rewrites the bucket chain starting at 'bucketId' to hold exactly
+     * 'entries': its pages are reused in order, more are chained on if
+     * needed, and any left over go to the free list.
+     */
+    private void writeBucket(int bucketId, int localDepth, List<IndexEntry> entries) {
+        int pageId = bucketId;
+        int next = 0;
+        while (true) {
+            HashBucketPage page = new HashBucketPage(bufferManager.fetchPage(pageId));
+            page.clear();
+            if (pageId == bucketId) {
+                page.setLocalDepth(localDepth);
+            }
+            while (next < entries.size() && !page.isFull()) {
+                IndexEntry e = entries.get(next++);
+                page.insert(e.key, e.rid);
+            }
+            int following = page.getOverflowPageId();
+            if (next == entries.size()) {
+                page.setOverflowPageId(BTreeLeafPage.NO_PAGE);
+                bufferManager.unpinPage(pageId, true);
+                // Free whatever was chained after this page
+                while (following != BTreeLeafPage.NO_PAGE) {
+                    int after = new HashBucketPage(bufferManager.fetchPage(following)).getOverflowPageId();
+                    bufferManager.unpinPage(following, false);
+                    bufferManager.freePage(following);
+                    following = after;
+                }
+                return;
+            }
+            if (following == BTreeLeafPage.NO_PAGE) {
+                following = bufferManager.allocateNewPage();
+                page.setOverflowPageId(following);
+            }
+            bufferManager.unpinPage(pageId, true);
+            pageId = following;
+        }
+    }
+
+    /**
+     * Writes directory slots [from, to) to their pages.
+     */
+    private void writeDirectory(int from, int to) {
+        int perPage = HashMetaPage.ENTRIES_PER_PAGE;
+        int slot = from;
+        while (slot < to) {
+            int pageId = directoryPages[slot / perPage];
+            int end = Math.min(to, (slot / perPage + 1) * perPage);
+            Page p = bufferManager.fetchPage(pageId);
+            for (; slot < end; slot++) {
+                p.setInt((slot % perPage) * 4, directory[slot]);
+            }
+            bufferManager.unpinPage(pageId, true);
+        }
+    }
+
+    private void saveMeta() {
+        Page p = bufferManager.fetchPage(metaPageId);
+        HashMetaPage meta = new HashMetaPage(p);
+        meta.setGlobalDepth(globalDepth);
+        meta.setFreeListHead(bufferManager.getFreeListHead());
+        meta.setDirectoryPageIds(directoryPages);
+        bufferManager.unpinPage(metaPageId, true);
+    }
+}
@@ -0,0 +1,136 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+/**
+ * One bucket of an ExtendibleHashFile: the entries whose key hashes share
+ * the bucket's low 'local depth' bits, in no particular order.
+ *
+ * Layout:
+ * [0-3]:   Page Type (TYPE_HASH_BUCKET)
+ * [4-7]:   Entry count
+ * [8-11]:  Local depth (only meaningful on the bucket's first page)
+ * [12-15]: Overflow page (NO_PAGE if none)
+ * [Key 1][PageID 1][Slot 1]
+ * [Key 2][PageID 2][Slot 2]
+ * ...
+ *
+ * A bucket is normally a single page. It only grows an overflow chain when
+ * splitting can't help: one hash value fills a page by itself (many
+ * duplicates of one key), or the directory is as large as it may get.
+ */
+public class HashBucketPage {
+    // After the B+Tree page types (see BTreePage and BTreeVarPage)
+    public static final int TYPE_HASH_BUCKET = 6;
+
+    private static final int OFFSET_TYPE = 0;
+    private static final int OFFSET_COUNT = 4;
+    private static final int OFFSET_DEPTH = 8;
+    private static final int OFFSET_OVERFLOW = 12;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 12;
+
+    // (4096 - 16) / 12 = 340 entries
+    public static final int CAPACITY = (Page.PAGE_SIZE - HEADER_SIZE) / ENTRY_SIZE;
+
+    private final Page page;
+
+    public HashBucketPage(Page page) {
+        this.page = page;
+        // A blank page: an empty bucket of depth 0
+        if (page.getInt(OFFSET_TYPE) == 0) {
+            page.setInt(OFFSET_TYPE, TYPE_HASH_BUCKET);
+            page.setInt(OFFSET_COUNT, 0);
+            page.setInt(OFFSET_DEPTH, 0);
+            page.setInt(OFFSET_OVERFLOW, BTreeLeafPage.NO_PAGE);
+        }
+    }
+
+    public int getCount() {
+        return page.getInt(OFFSET_COUNT);
+    }
+
+    private void setCount(int count) {
+        page.setInt(OFFSET_COUNT, count);
+    }
+
+    public boolean isFull() {
+        return getCount() >= CAPACITY;
+    }
+
+    public int getLocalDepth() {
+        return page.getInt(OFFSET_DEPTH);
+    }
+
+    public void setLocalDepth(int depth) {
+        page.setInt(OFFSET_DEPTH, depth);
+    }
+
+    public int getOverflowPageId() {
+        return page.getInt(OFFSET_OVERFLOW);
+    }
+
+    public void setOverflowPageId(int pageId) {
+        page.setInt(OFFSET_OVERFLOW, pageId);
+    }
+
+    public int getKeyAt(int index) {
+        return page.getInt(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    public RecordId getValueAt(int index) {
+        int offset = HEADER_SIZE + index * ENTRY_SIZE;
+        return new RecordId(page.getInt(offset + 4), page.getInt(offset + 8));
+    }
+
+    /**
+     * Index of the first entry with 'key', or -1.
+     */
+    public int indexOf(int key) {
+        int count = getCount();
+        for (int i = 0; i < count; i++) {
+            if (page.getInt(HEADER_SIZE + i * ENTRY_SIZE) == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends an entry. The caller checks there's room.
+     */
+    public void insert(int key, RecordId rid) {
+        int count = getCount();
+        if (count >= CAPACITY) {
+            throw new RuntimeException("Hash bucket page is full!");
+        }
+        int offset = HEADER_SIZE + count * ENTRY_SIZE;
+        page.setInt(offset, key);
+        page.setInt(offset + 4, rid.pageId);
+        page.setInt(offset + 8, rid.slotNumber);
+        setCount(count + 1);
+    }
+
+    /**
+     * Removes the entry at 'index' by moving the last entry into its place.
+     */
+    public void removeAt(int index) {
+        int last = getCount() - 1;
+        if (index != last) {
+            int from = HEADER_SIZE + last * ENTRY_SIZE;
+            int to = HEADER_SIZE + index * ENTRY_SIZE;
+            page.setInt(to, page.getInt(from));
+            page.setInt(to + 4, page.getInt(from + 4));
+            page.setInt(to + 8, page.getInt(from + 8));
+        }
+        setCount(last);
+    }
+
+    /**
+     * Empties the page (keeping its local depth and overflow link).
+     */
+    public void clear() {
+        setCount(0);
+    }
+}
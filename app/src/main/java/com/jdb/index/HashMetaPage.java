@@ -0,0 +1,86 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+
+/**
+ * The header page of an ExtendibleHashFile.
+ *
+ * Layout:
+ * [0-3]:   Magic ("JDBH")
+ * [4-7]:   Format version
+ * [8-11]:  Global depth (the directory has 2^depth slots)
+ * [12-15]: First page of the file's free list (see BufferManager.freePage)
+ * [16-19]: Number of directory pages
+ * [20..]:  Directory page ids, in slot order
+ *
+ * Each directory page holds ENTRIES_PER_PAGE bucket page ids. The magic
+ * differs from BTreeMetaPage's, so neither kind of index opens the other's
+ * file by mistake.
+ */
+public class HashMetaPage {
+    public static final int MAGIC = 0x4A444248; // "JDBH"
+    public static final int VERSION = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_DEPTH = 8;
+    private static final int OFFSET_FREE_HEAD = 12;
+    private static final int OFFSET_DIR_COUNT = 16;
+    private static final int OFFSET_DIR_PAGES = 20;
+
+    public static final int ENTRIES_PER_PAGE = Page.PAGE_SIZE / 4;
+    public static final int MAX_DIRECTORY_PAGES = (Page.PAGE_SIZE - OFFSET_DIR_PAGES) / 4;
+
+    protected Page page;
+
+    public HashMetaPage(Page page) {
+        this.page = page;
+    }
+
+    public void format() {
+        page.setInt(OFFSET_MAGIC, MAGIC);
+        page.setInt(OFFSET_VERSION, VERSION);
+        setGlobalDepth(0);
+        setFreeListHead(BufferManager.NO_PAGE);
+        page.setInt(OFFSET_DIR_COUNT, 0);
+    }
+
+    public boolean isValid() {
+        return page.getInt(OFFSET_MAGIC) == MAGIC;
+    }
+
+    public int getGlobalDepth() {
+        return page.getInt(OFFSET_DEPTH);
+    }
+
+    public void setGlobalDepth(int depth) {
+        page.setInt(OFFSET_DEPTH, depth);
+    }
+
+    public int getFreeListHead() {
+        return page.getInt(OFFSET_FREE_HEAD);
+    }
+
+    public void setFreeListHead(int pageId) {
+        page.setInt(OFFSET_FREE_HEAD, pageId);
+    }
+
+    public int[] getDirectoryPageIds() {
+        int[] ids = new int[page.getInt(OFFSET_DIR_COUNT)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = page.getInt(OFFSET_DIR_PAGES + i * 4);
+        }
+        return ids;
+    }
+
+    public void setDirectoryPageIds(int[] ids) {
+        if (ids.length > MAX_DIRECTORY_PAGES) {
+            throw new IllegalArgumentException("At most " + MAX_DIRECTORY_PAGES + " directory pages, got " + ids.length);
+        }
+        page.setInt(OFFSET_DIR_COUNT, ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            page.setInt(OFFSET_DIR_PAGES + i * 4, ids[i]);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.jdb.index;
+
+import com.jdb.storage.RecordId;
+
+/**
+ * An int key -> RecordId index, whatever engine stores it. Pick the engine
+ * per index by its read/write mix:
+ * - BTreeFile: pages updated in place. Reads and range scans touch the
+ *   fewest pages; each insert dirties a random leaf.
+ * - LsmIndex: inserts go to memory and reach disk in large sorted runs
+ *   written sequentially, so ingest is cheap; reads may check several runs.
+ *
+ * One difference: inserting a key that is already there keeps both entries
+ * in a BTreeFile, while an LsmIndex keeps only the newest.
+ */
+public interface Index {
+
+    void insert(int key, RecordId rid);
+
+    /**
+     * Returns the RecordId for 'key', or null if not found.
+     */
+    RecordId find(int key);
+
+    /**
+     * Removes one entry with 'key'. Returns false if there is none.
+     */
+    boolean delete(int key);
+
+    /**
+     * Returns a cursor over the entries with lo <= key <= hi, in ascending key order.
+     */
+    IndexCursor scan(int lo, int hi);
+}
@@ -0,0 +1,13 @@
+package com.jdb.index;
+
+import java.util.Iterator;
+
+/**
+ * A range scan over an Index. Close it (try-with-resources) if you stop
+ * before the end, so the engine can release what the scan holds.
+ */
+public interface IndexCursor extends Iterator<IndexEntry>, AutoCloseable {
+
+    @Override
+    void close();
+}
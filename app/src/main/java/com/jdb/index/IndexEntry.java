@@ -0,0 +1,16 @@
+package com.jdb.index;
+
+import com.jdb.storage.RecordId;
+
+/**
+ * One (key, RecordId) pair returned by an index scan.
+ */
+public class IndexEntry {
+    public int key;
+    public RecordId rid;
+
+    public IndexEntry(int key, RecordId rid) {
+        this.key = key;
+        this.rid = rid;
+    }
+}
@@ -0,0 +1,159 @@
+package com.jdb.index;
+
+import com.jdb.storage.Tuple;
+import com.jdb.storage.TupleDesc;
+import com.jdb.storage.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Turns index keys (one or more INT / STRING columns) into byte strings whose
+ * unsigned byte order is the key order, so the variable-length B+ Tree can
+ * compare any key with one memcmp-style loop.
+ *
+ * Encoding, per column:
+ * - INT: 4 bytes big-endian with the sign bit flipped (so -1 sorts before 0).
+ * - STRING: its UTF-8 bytes (byte order = code point order). A string that is
+ *   not the last column is terminated by 0x00 0x00, and a 0x00 inside it is
+ *   written as 0x00 0xFF, so "ab" < "ab\0" < "abc" still holds when more
+ *   columns follow.
+ *
+ * Usage:
+ *   KeyCodec byTenant = new KeyCodec(Type.INT, Type.INT);
+ *   byte[] key = byTenant.encode(tenantId, id);
+ */
+public class KeyCodec {
+    private final Type[] types;
+    private final int[] columns; // Tuple field of each key column (for encode(Tuple)), or null
+
+    public KeyCodec(Type... types) {
+        this(types, null);
+    }
+
+    private KeyCodec(Type[] types, int[] columns) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("A key needs at least one column");
+        }
+        this.types = types.clone();
+        this.columns = columns;
+    }
+
+    /**
+     * A codec for the given fields of a table, e.g. forColumns(schema, 1) for 'name'.
+     */
+    public static KeyCodec forColumns(TupleDesc schema, int... fields) {
+        Type[] types = new Type[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = schema.getType(fields[i]);
+        }
+        return new KeyCodec(types, fields.clone());
+    }
+
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    public byte[] encode(Object... values) {
+        if (values.length != types.length) {
+            throw new IllegalArgumentException("Expected " + types.length + " key columns, got " + values.length);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < types.length; i++) {
+            boolean last = i == types.length - 1;
+            if (types[i] == Type.INT) {
+                int v = ((Integer) values[i]) ^ Integer.MIN_VALUE;
+                out.write(v >>> 24);
+                out.write(v >>> 16);
+                out.write(v >>> 8);
+                out.write(v);
+            } else {
+                byte[] utf8 = ((String) values[i]).getBytes(StandardCharsets.UTF_8);
+                if (last) {
+                    out.write(utf8, 0, utf8.length);
+                } else {
+                    for (byte b : utf8) {
+                        out.write(b);
+                        if (b == 0) {
+                            out.write(0xFF);
+                        }
+                    }
+                    out.write(0);
+                    out.write(0);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the key columns of a row (codec built with forColumns).
+     */
+    public byte[] encode(Tuple tuple) {
+        if (columns == null) {
+            throw new IllegalStateException("This codec was not built from a schema");
+        }
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = tuple.getField(columns[i]);
+        }
+        return encode(values);
+    }
+
+    public Object[] decode(byte[] key) {
+        Object[] values = new Object[types.length];
+        int pos = 0;
+        for (int i = 0; i < types.length; i++) {
+            boolean last = i == types.length - 1;
+            if (types[i] == Type.INT) {
+                int v = ((key[pos] & 0xFF) << 24) | ((key[pos + 1] & 0xFF) << 16)
+                        | ((key[pos + 2] & 0xFF) << 8) | (key[pos + 3] & 0xFF);
+                values[i] = v ^ Integer.MIN_VALUE;
+                pos += 4;
+            } else if (last) {
+                values[i] = new String(key, pos, key.length - pos, StandardCharsets.UTF_8);
+                pos = key.length;
+            } else {
+                ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+                while (true) {
+                    byte b = key[pos++];
+                    if (b == 0) {
+                        if (key[pos++] == 0) {
+                            break; // Terminator
+                        }
+                        // 0x00 0xFF: an escaped zero byte
+                    }
+                    utf8.write(b);
+                }
+                values[i] = new String(utf8.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Key order: unsigned lexicographic, a prefix sorts first.
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    /**
+     * Suffix truncation: the shortest key s with left < s <= right, used as the
+     * separator when a leaf splits between 'left' (its last key) and 'right'
+     * (the new page's first key). Shorter separators mean more fanout.
+     */
+    public static byte[] shortestSeparator(byte[] left, byte[] right) {
+        int common = 0;
+        int max = Math.min(left.length, right.length);
+        while (common < max && left[common] == right[common]) {
+            common++;
+        }
+        if (common == right.length) {
+            return right; // left == right (duplicates): no shorter key fits between them
+        }
+        // right's first differing byte is larger (or left ran out), so cutting right just after it is > left
+        return Arrays.copyOf(right, common + 1);
+    }
+}
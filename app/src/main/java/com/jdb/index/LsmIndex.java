@@ -0,0 +1,486 @@
+package com.jdb.index;
+
+import com.jdb.storage.RecordId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A log-structured merge (LSM) index: the write-optimized alternative to
+ * BTreeFile behind the same Index interface.
+ *
+ * 1. Inserts and deletes go into the memtable, a sorted in-memory map.
+ *    Nothing is read from or written to disk.
+ * 2. When the memtable holds 'memtableLimit' entries it is flushed: written
+ *    front to back as a new level-0 SortedRun file (sequential page writes
+ *    only), and a fresh memtable takes its place.
+ * 3. A background compaction thread merges runs so lookups don't have to
+ *    check too many: once a level has 'fanout' runs, they are merged into
+ *    one run on the next level (size-tiered). A merge into the oldest level
+ *    also drops deleted keys for good.
+ *
+ * Lookups check the memtable, the memtable being flushed, then the runs from
+ * newest to oldest; the first entry found wins. Each run's Bloom filter
+ * skips runs that can't hold the key without a page read. Scans merge all
+ * of them in key order.
+ *
+ * The run files live in one directory and are found again on reopen. The
+ * memtable is only in memory: close() (or flush()) writes it out.
+ */
+public class LsmIndex implements Index {
+    public static final int DEFAULT_MEMTABLE_LIMIT = 64 * 1024;
+    public static final int DEFAULT_FANOUT = 4;
+
+    private final File directory;
+    private final int memtableLimit;
+    private final int fanout;
+
+    // Writers put into the memtable under the read lock; a flush swaps it out under the write lock
+    private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentSkipListMap<Integer, RecordId> memtable = new ConcurrentSkipListMap<>();
+    private volatile ConcurrentSkipListMap<Integer, RecordId> flushing; // Still readable until its run is listed
+    private final AtomicInteger memtableSize = new AtomicInteger();
+    private final Object flushLock = new Object();
+
+    // Newest first: by level, then by sequence number (descending). Replaced, never changed in place.
+    private volatile List<SortedRun> runs = new ArrayList<>();
+    private final Object runsLock = new Object();
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    private final Object compactionLock = new Object();
+    private final ExecutorService compactor;
+
+    private static final Comparator<SortedRun> NEWEST_FIRST =
+            Comparator.comparingInt(SortedRun::getLevel).thenComparing(SortedRun::getSeq, Comparator.reverseOrder());
+
+    public static LsmIndex open(File directory) {
+        return open(directory, DEFAULT_MEMTABLE_LIMIT, DEFAULT_FANOUT);
+    }
+
+    /**
+     * Opens (or creates) the index stored in 'directory', and starts
+     * compacting whatever the last session left due for a merge.
+     */
+    public static LsmIndex open(File directory, int memtableLimit, int fanout) {
+        LsmIndex index = new LsmIndex(directory, memtableLimit, fanout);
+        index.compactor.execute(index::compact); // In case the last session stopped short of it
+        return index;
+    }
+
+    private LsmIndex(File directory, int memtableLimit, int fanout) {
+        if (memtableLimit < 1 || fanout < 2) {
+            throw new IllegalArgumentException("memtableLimit must be >= 1 and fanout >= 2");
+        }
+        this.directory = directory;
+        this.memtableLimit = memtableLimit;
+        this.fanout = fanout;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create index directory " + directory);
+        }
+
+        // Pick up the runs of an earlier session. A .tmp file is a run whose write never finished.
+        List<SortedRun> found = new ArrayList<>();
+        File[] files = directory.listFiles();
+        for (File f : files == null ? new File[0] : files) {
+            if (f.getName().endsWith(".tmp")) {
+                f.delete();
+            } else if (f.getName().endsWith(".run")) {
+                SortedRun run = new SortedRun(f);
+                found.add(run);
+                nextSeq.accumulateAndGet(run.getSeq() + 1, Math::max);
+            }
+        }
+        found.sort(NEWEST_FIRST);
+        runs = found;
+
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "lsm-compactor-" + directory.getName());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // --- Writes ---
+
+    @Override
+    public void insert(int key, RecordId rid) {
+        if (SortedRun.isTombstone(rid)) {
+            throw new IllegalArgumentException("RecordId " + rid.pageId + ":" + rid.slotNumber + " is reserved for deletes");
+        }
+        put(key, rid);
+    }
+
+    /**
+     * Writes a tombstone over 'key'. Returns false if it had no entry.
+     */
+    @Override
+    public boolean delete(int key) {
+        boolean existed = find(key) != null;
+        if (existed) {
+            put(key, SortedRun.TOMBSTONE);
+        }
+        return existed;
+    }
+
+    private void put(int key, RecordId rid) {
+        memtableLock.readLock().lock();
+        try {
+            memtable.put(key, rid);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        if (memtableSize.incrementAndGet() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the memtable out as a new level-0 run (a no-op if it is empty),
+     * then lets the compactor check whether level 0 is due for a merge.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            // 1. Swap in an empty memtable. The old one stays readable as 'flushing'.
+            ConcurrentSkipListMap<Integer, RecordId> full;
+            memtableLock.writeLock().lock();
+            try {
+                full = memtable;
+                if (full.isEmpty()) {
+                    return;
+                }
+                flushing = full;
+                memtable = new ConcurrentSkipListMap<>();
+                memtableSize.set(0);
+            } finally {
+                memtableLock.writeLock().unlock();
+            }
+
+            // 2. Write it out in key order, then list the run before retiring 'flushing'
+            //    (readers look at 'flushing' before the run list, so they see one or the other)
+            SortedRun run = writeRun(0, nextSeq.getAndIncrement(), entries(full, Integer.MIN_VALUE, Integer.MAX_VALUE), full.size());
+            synchronized (runsLock) {
+                List<SortedRun> updated = new ArrayList<>(runs);
+                updated.add(run);
+                updated.sort(NEWEST_FIRST);
+                runs = updated;
+            }
+            flushing = null;
+        }
+        if (!compactor.isShutdown()) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    private SortedRun writeRun(int level, long seq, Iterator<IndexEntry> entries, int expectedCount) {
+        File tmp = new File(directory, "L" + level + "-" + seq + ".tmp");
+        SortedRun.write(tmp, level, seq, entries, expectedCount);
+        File file = new File(directory, "L" + level + "-" + seq + ".run");
+        if (!tmp.renameTo(file)) {
+            throw new RuntimeException("Could not rename " + tmp + " to " + file);
+        }
+        return new SortedRun(file);
+    }
+
+    // --- Reads ---
+
+    @Override
+    public RecordId find(int key) {
+        // Newest first: the memtable, the one being flushed, then the runs
+        RecordId rid = memtable.get(key);
+        if (rid == null) {
+            ConcurrentSkipListMap<Integer, RecordId> f = flushing;
+            if (f != null) {
+                rid = f.get(key);
+            }
+        }
+        if (rid == null) {
+            List<SortedRun> snapshot = acquireRuns();
+            try {
+                for (SortedRun run : snapshot) {
+                    rid = run.find(key);
+                    if (rid != null) {
+                        break;
+                    }
+                }
+            } finally {
+                releaseRuns(snapshot);
+            }
+        }
+        return rid == null || SortedRun.isTombstone(rid) ? null : rid;
+    }
+
+    @Override
+    public IndexCursor scan(int lo, int hi) {
+        List<Iterator<IndexEntry>> sources = new ArrayList<>();
+        sources.add(entries(memtable, lo, hi));
+        ConcurrentSkipListMap<Integer, RecordId> f = flushing;
+        if (f != null) {
+            sources.add(entries(f, lo, hi));
+        }
+        List<SortedRun> snapshot = acquireRuns();
+        for (SortedRun run : snapshot) {
+            sources.add(run.iterator(lo, hi));
+        }
+        return new LsmCursor(new MergeIterator(sources, false), snapshot);
+    }
+
+    /**
+     * The current run list, each run retained so a compaction can't delete
+     * its file while we read it. Pair with releaseRuns.
+     */
+    private List<SortedRun> acquireRuns() {
+        synchronized (runsLock) {
+            List<SortedRun> snapshot = runs;
+            for (SortedRun run : snapshot) {
+                run.retain();
+            }
+            return snapshot;
+        }
+    }
+
+    private void releaseRuns(List<SortedRun> snapshot) {
+        for (SortedRun run : snapshot) {
+            run.release();
+        }
+    }
+
+    private static Iterator<IndexEntry> entries(ConcurrentSkipListMap<Integer, RecordId> map, int lo, int hi) {
+        if (lo > hi) {
+            return new ArrayList<IndexEntry>().iterator();
+        }
+        Iterator<Map.Entry<Integer, RecordId>> it = map.subMap(lo, true, hi, true).entrySet().iterator();
+        return new Iterator<IndexEntry>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public IndexEntry next() {
+                Map.Entry<Integer, RecordId> e = it.next();
+                return new IndexEntry(e.getKey(), e.getValue());
+            }
+        };
+    }
+
+    // --- Compaction ---
+
+    /**
+     * Merges runs until no level has 'fanout' of them. The background thread
+     * calls this after every flush; call it directly to compact right away.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            while (true) {
+                // 1. The lowest level that is full
+                List<SortedRun> current = runs;
+                int level = -1;
+                for (SortedRun run : current) {
+                    if (countAtLevel(current, run.getLevel()) >= fanout) {
+                        level = run.getLevel();
+                        break;
+                    }
+                }
+                if (level < 0) {
+                    return;
+                }
+
+                // 2. Merge all its runs (newest first, so newer entries win) into one run a level down.
+                //    Only the compactor adds runs below level 0, so the deeper levels can't change meanwhile.
+                List<SortedRun> inputs = new ArrayList<>();
+                boolean deeperRuns = false;
+                long seq = -1;
+                int expected = 0;
+                for (SortedRun run : current) {
+                    if (run.getLevel() == level) {
+                        inputs.add(run);
+                        seq = Math.max(seq, run.getSeq());
+                        expected += run.getEntryCount();
+                    } else if (run.getLevel() > level) {
+                        deeperRuns = true;
+                    }
+                }
+                List<Iterator<IndexEntry>> sources = new ArrayList<>();
+                for (SortedRun run : inputs) {
+                    sources.add(run.iterator(Integer.MIN_VALUE, Integer.MAX_VALUE));
+                }
+                // Nothing older to hide: tombstones have done their job
+                boolean keepTombstones = deeperRuns;
+                SortedRun merged = writeRun(level + 1, seq, new MergeIterator(sources, keepTombstones), expected);
+
+                // 3. Swap it in; the inputs' files go when their last reader is done
+                synchronized (runsLock) {
+                    List<SortedRun> updated = new ArrayList<>(runs);
+                    updated.removeAll(inputs);
+                    updated.add(merged);
+                    updated.sort(NEWEST_FIRST);
+                    runs = updated;
+                }
+                for (SortedRun run : inputs) {
+                    run.markObsolete();
+                }
+            }
+        }
+    }
+
+    private static int countAtLevel(List<SortedRun> runs, int level) {
+        int n = 0;
+        for (SortedRun run : runs) {
+            if (run.getLevel() == level) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Levels of the current runs, newest first (e.g. [0, 0, 1, 2]).
+     */
+    public int[] getRunLevels() {
+        List<SortedRun> current = runs;
+        int[] levels = new int[current.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = current.get(i).getLevel();
+        }
+        return levels;
+    }
+
+    /**
+     * Flushes the memtable, waits for compaction to finish and closes the run files.
+     */
+    public void close() {
+        flush();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (runsLock) {
+            releaseRuns(runs);
+            runs = new ArrayList<>();
+        }
+    }
+
+    /**
+     * K-way merge of sorted sources, given newest first. For a key found in
+     * several sources only the newest entry is kept; tombstones are kept only
+     * if asked (a compaction that still has older runs below it).
+     */
+    private static class MergeIterator implements Iterator<IndexEntry> {
+        private final List<Iterator<IndexEntry>> sources;
+        private final boolean keepTombstones;
+        // Heads of the sources: {source index} ordered by (key, source index)
+        private final IndexEntry[] heads;
+        private final PriorityQueue<Integer> queue;
+        private IndexEntry next;
+
+        MergeIterator(List<Iterator<IndexEntry>> sources, boolean keepTombstones) {
+            this.sources = sources;
+            this.keepTombstones = keepTombstones;
+            this.heads = new IndexEntry[sources.size()];
+            this.queue = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int c = Integer.compare(heads[a].key, heads[b].key);
+                return c != 0 ? c : Integer.compare(a, b);
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                pull(i);
+            }
+            next = advance();
+        }
+
+        private void pull(int source) {
+            Iterator<IndexEntry> it = sources.get(source);
+            if (it.hasNext()) {
+                heads[source] = it.next();
+                queue.add(source);
+            }
+        }
+
+        private IndexEntry advance() {
+            while (!queue.isEmpty()) {
+                // The smallest key, from the newest source that has it
+                int source = queue.poll();
+                IndexEntry e = heads[source];
+                pull(source);
+                // Skip the same key in older sources
+                while (!queue.isEmpty() && heads[queue.peek()].key == e.key) {
+                    pull(queue.poll());
+                }
+                if (keepTombstones || !SortedRun.isTombstone(e.rid)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public IndexEntry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            IndexEntry e = next;
+            next = advance();
+            return e;
+        }
+    }
+
+    /**
+     * A scan: the merged entries, holding its runs until closed or finished.
+     */
+    private static class LsmCursor implements IndexCursor {
+        private final MergeIterator merged;
+        private List<SortedRun> snapshot;
+
+        LsmCursor(MergeIterator merged, List<SortedRun> snapshot) {
+            this.merged = merged;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean more = merged.hasNext();
+            if (!more) {
+                close();
+            }
+            return more;
+        }
+
+        @Override
+        public IndexEntry next() {
+            return merged.next();
+        }
+
+        @Override
+        public void close() {
+            if (snapshot != null) {
+                for (SortedRun run : snapshot) {
+                    run.release();
+                }
+                snapshot = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A non-unique secondary index (byte[] key -> every RecordId with that key),
+ * for low-cardinality columns such as 'age'.
+ *
+ * Each key is stored once, in a BTreePostingLeafPage, followed by its posting
+ * list (see PostingList): the sorted RecordIds, delta-coded inline while the
+ * list is short, and moved to a chain of PostingOverflowPages once it passes
+ * INLINE_LIMIT bytes. So "all rows with age = 30" is one descent plus a read
+ * of the list, and a popular key never fills the leaves with copies of itself.
+ *
+ * Internal nodes and the header page are the same as VarKeyBTreeFile's (key
+ * format KEY_FORMAT_POSTINGS), and so is the concurrency: one tree-level
+ * read/write lock.
+ */
+public class NonUniqueBTreeFile {
+    // Small enough that four keys with full inline lists always fit a leaf, so splits succeed
+    public static final int MAX_KEY_SIZE = 256;
+    static final int INLINE_LIMIT = 512;
+
+    private final BufferManager bufferManager;
+    private final int metaPageId;
+    private int rootPageId;
+    private int height;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the index whose header is page 'metaPageId' (normally 0).
+     * A blank (or missing) header page creates a new, empty index.
+     */
+    public NonUniqueBTreeFile(BufferManager bufferManager, int metaPageId) {
+        this.bufferManager = bufferManager;
+        this.metaPageId = metaPageId;
+        openOrCreate();
+    }
+
+    private void openOrCreate() {
+        while (bufferManager.getNumPages() <= metaPageId) {
+            bufferManager.allocateNewPage();
+        }
+
+        Page p = bufferManager.fetchPage(metaPageId);
+        boolean dirty = false;
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(p);
+            if (meta.isValid()) {
+                if (meta.getKeyFormat() != BTreeMetaPage.KEY_FORMAT_POSTINGS) {
+                    throw new IllegalStateException("Page " + metaPageId + " heads an index with key format " + meta.getKeyFormat() + ", not posting lists");
+                }
+                rootPageId = meta.getRootPageId();
+                height = meta.getHeight();
+                bufferManager.setFreeListHead(meta.getFreeListHead());
+                return;
+            }
+            if (p.getInt(0) != 0 || p.getInt(4) != 0) {
+                throw new IllegalStateException("Page " + metaPageId + " is not an index header");
+            }
+
+            // A new index: the root starts as an empty leaf
+            rootPageId = bufferManager.allocateNewPage();
+            new BTreePostingLeafPage(bufferManager.fetchPage(rootPageId));
+            bufferManager.unpinPage(rootPageId, true);
+            height = 1;
+            meta.format(rootPageId);
+            meta.setKeyFormat(BTreeMetaPage.KEY_FORMAT_POSTINGS);
+            dirty = true;
+        } finally {
+            bufferManager.unpinPage(metaPageId, dirty);
+        }
+    }
+
+    public int getRootPageId() {
+        lock.readLock().lock();
+        try {
+            return rootPageId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getHeight() {
+        lock.readLock().lock();
+        try {
+            return height;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Lookups ---
+
+    /**
+     * Every RecordId with this key, sorted by (pageId, slot). Empty if none.
+     */
+    public List<RecordId> lookup(byte[] key) {
+        lock.readLock().lock();
+        try {
+            byte[] posting = findPosting(key);
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            if (!PostingList.isOverflow(posting)) {
+                return PostingList.decodeInline(posting);
+            }
+            List<RecordId> rids = new ArrayList<>(PostingList.getCount(posting));
+            int pageId = PostingList.getFirstPageId(posting);
+            while (pageId != BTreeLeafPage.NO_PAGE) {
+                int overflowId = pageId;
+                Page raw = bufferManager.fetchPage(overflowId);
+                try {
+                    PostingOverflowPage overflow = new PostingOverflowPage(raw);
+                    overflow.readAll(rids);
+                    pageId = overflow.getNextPageId();
+                } finally {
+                    bufferManager.unpinPage(overflowId, false);
+                }
+            }
+            return rids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * How many rows have this key, from the list header alone.
+     */
+    public int count(byte[] key) {
+        lock.readLock().lock();
+        try {
+            byte[] posting = findPosting(key);
+            return posting == null ? 0 : PostingList.getCount(posting);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private byte[] findPosting(byte[] key) {
+        // Each node stays pinned while it's read: other readers share the lock and may evict
+        int pageId = rootPageId;
+        for (int level = height; level > 1; level--) {
+            int nodeId = pageId;
+            Page raw = bufferManager.fetchPage(nodeId);
+            try {
+                pageId = new BTreeVarInternalPage(raw).lookup(key);
+            } finally {
+                bufferManager.unpinPage(nodeId, false);
+            }
+        }
+        Page raw = bufferManager.fetchPage(pageId);
+        try {
+            BTreePostingLeafPage leaf = new BTreePostingLeafPage(raw);
+            int index = leaf.indexOf(key);
+            return index < 0 ? null : leaf.getPostingAt(index);
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+        }
+    }
+
+    // --- Inserts ---
+
+    /**
+     * Adds 'rid' to the key's posting list. Adding a pair that is already
+     * there does nothing.
+     */
+    public void insert(byte[] key, RecordId rid) {
+        if (key.length > MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Key of " + key.length + " bytes exceeds the limit of " + MAX_KEY_SIZE);
+        }
+        lock.writeLock().lock();
+        try {
+            VarKeyBTreeFile.Split split = insertRecursive(rootPageId, height, key, rid);
+            if (split != null) {
+                rootPageId = VarKeyBTreeFile.newRoot(bufferManager, rootPageId, split);
+                height++;
+                Page metaRaw = bufferManager.fetchPage(metaPageId);
+                BTreeMetaPage meta = new BTreeMetaPage(metaRaw);
+                meta.setRootPageId(rootPageId);
+                meta.setHeight(height);
+                bufferManager.unpinPage(metaPageId, true);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private VarKeyBTreeFile.Split insertRecursive(int pageId, int level, byte[] key, RecordId rid) {
+        Page p = bufferManager.fetchPage(pageId);
+        try {
+            if (level == 1) {
+                return insertIntoLeaf(new BTreePostingLeafPage(p), key, rid);
+            }
+            BTreeVarInternalPage node = new BTreeVarInternalPage(p);
+            int childIndex = node.childIndex(key);
+            VarKeyBTreeFile.Split split = insertRecursive(node.getChildAt(childIndex), level - 1, key, rid);
+            if (split == null) {
+                return null;
+            }
+            return VarKeyBTreeFile.insertIntoInternal(bufferManager, node, childIndex + 1, split);
+        } finally {
+            bufferManager.unpinPage(pageId, true);
+        }
+    }
+
+    private VarKeyBTreeFile.Split insertIntoLeaf(BTreePostingLeafPage leaf, byte[] key, RecordId rid) {
+        // 1. The new value: a one-entry list, or the key's list with 'rid' added
+        int index = leaf.lowerBound(key);
+        byte[] posting;
+        if (index < leaf.getKeyCount() && KeyCodec.compare(leaf.getKeyAt(index), key) == 0) {
+            posting = addToPosting(leaf.getPostingAt(index), rid);
+            if (posting == null) {
+                return null; // Already listed
+            }
+            leaf.removeAt(index); // Its cell is reclaimed by the next rebuild
+        } else {
+            posting = PostingList.encodeInline(Collections.singletonList(rid));
+        }
+
+        // 2. Put it in place: straight into free space, else rebuild, else split
+        if (leaf.tryInsertAt(index, key, posting)) {
+            return null;
+        }
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        leaf.readAll(keys, values);
+        keys.add(index, key);
+        values.add(index, posting);
+        if (leaf.fits(keys, values)) {
+            leaf.rebuild(keys, values);
+            return null;
+        }
+
+        int mid = leaf.splitPoint(keys, values, 1);
+        int newPageId = bufferManager.allocateNewPage();
+        Page newRaw = bufferManager.fetchPage(newPageId);
+        try {
+            new BTreePostingLeafPage(newRaw).rebuild(keys.subList(mid, keys.size()), values.subList(mid, values.size()));
+            leaf.rebuild(keys.subList(0, mid), values.subList(0, mid));
+        } finally {
+            bufferManager.unpinPage(newPageId, true);
+        }
+        return new VarKeyBTreeFile.Split(KeyCodec.shortestSeparator(keys.get(mid - 1), keys.get(mid)), newPageId);
+    }
+
+    /**
+     * Returns the posting list with 'rid' added, or null if it was there already.
+     */
+    private byte[] addToPosting(byte[] posting, RecordId rid) {
+        if (PostingList.isOverflow(posting)) {
+            return addToOverflow(posting, rid);
+        }
+        List<RecordId> rids = PostingList.decodeInline(posting);
+        int i = PostingList.search(rids, rid);
+        if (i >= 0) {
+            return null;
+        }
+        rids.add(-i - 1, rid);
+        byte[] inline = PostingList.encodeInline(rids);
+        if (inline.length <= INLINE_LIMIT) {
+            return inline;
+        }
+
+        // Too long to keep in the leaf: move it to full overflow pages
+        int first = BTreeLeafPage.NO_PAGE;
+        int prev = BTreeLeafPage.NO_PAGE;
+        for (int from = 0; from < rids.size(); from += PostingOverflowPage.CAPACITY) {
+            int pageId = bufferManager.allocateNewPage();
+            PostingOverflowPage overflow = new PostingOverflowPage(bufferManager.fetchPage(pageId));
+            overflow.setAll(rids.subList(from, Math.min(rids.size(), from + PostingOverflowPage.CAPACITY)));
+            bufferManager.unpinPage(pageId, true);
+            if (prev == BTreeLeafPage.NO_PAGE) {
+                first = pageId;
+            } else {
+                linkAfter(prev, pageId);
+            }
+            prev = pageId;
+        }
+        return PostingList.encodeOverflow(rids.size(), first, prev);
+    }
+
+    private byte[] addToOverflow(byte[] posting, RecordId rid) {
+        int count = PostingList.getCount(posting);
+        int first = PostingList.getFirstPageId(posting);
+        int last = PostingList.getLastPageId(posting);
+
+        // 1. Find the page whose run 'rid' belongs in. New rows usually have the
+        //    largest RecordId yet, so try the last page before walking the chain.
+        int target = last;
+        Page lastRaw = bufferManager.fetchPage(last);
+        PostingOverflowPage lastPage = new PostingOverflowPage(lastRaw);
+        boolean append = lastPage.getCount() == 0
+                || PostingList.compare(lastPage.getRecordId(lastPage.getCount() - 1), rid) < 0;
+        bufferManager.unpinPage(last, false);
+        if (!append) {
+            target = first;
+            while (true) {
+                Page pageRaw = bufferManager.fetchPage(target);
+                int next;
+                try {
+                    PostingOverflowPage page = new PostingOverflowPage(pageRaw);
+                    boolean here = page.getNextPageId() == BTreeLeafPage.NO_PAGE
+                            || PostingList.compare(page.getRecordId(page.getCount() - 1), rid) >= 0;
+                    next = here ? BTreeLeafPage.NO_PAGE : page.getNextPageId();
+                } finally {
+                    bufferManager.unpinPage(target, false);
+                }
+                if (next == BTreeLeafPage.NO_PAGE) {
+                    break;
+                }
+                target = next;
+            }
+        }
+
+        // 2. Insert into its run, splitting the page if it's full
+        Page raw = bufferManager.fetchPage(target);
+        try {
+            PostingOverflowPage page = new PostingOverflowPage(raw);
+            int i = page.search(rid);
+            if (i >= 0) {
+                return null;
+            }
+            int at = -i - 1;
+            if (page.getCount() < PostingOverflowPage.CAPACITY) {
+                page.insertAt(at, rid);
+                return PostingList.encodeOverflow(count + 1, first, last);
+            }
+
+            // A full page: appends start a fresh page (so pages stay full),
+            // anything else moves the upper half of the run to a new page
+            List<RecordId> run = new ArrayList<>();
+            page.readAll(run);
+            run.add(at, rid);
+            int keep = append ? run.size() - 1 : run.size() / 2;
+            int newPageId = bufferManager.allocateNewPage();
+            PostingOverflowPage right = new PostingOverflowPage(bufferManager.fetchPage(newPageId));
+            right.setAll(run.subList(keep, run.size()));
+            right.setNextPageId(page.getNextPageId());
+            bufferManager.unpinPage(newPageId, true);
+            page.setAll(run.subList(0, keep));
+            page.setNextPageId(newPageId);
+            return PostingList.encodeOverflow(count + 1, first, target == last ? newPageId : last);
+        } finally {
+            bufferManager.unpinPage(target, true);
+        }
+    }
+
+    private void linkAfter(int pageId, int nextPageId) {
+        Page raw = bufferManager.fetchPage(pageId);
+        new PostingOverflowPage(raw).setNextPageId(nextPageId);
+        bufferManager.unpinPage(pageId, true);
+    }
+}
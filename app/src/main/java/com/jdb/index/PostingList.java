@@ -0,0 +1,149 @@
+package com.jdb.index;
+
+import com.jdb.storage.RecordId;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The value NonUniqueBTreeFile stores after each key: every RecordId with
+ * that key, sorted by (pageId, slot). Two forms:
+ *
+ * Inline:   [0][varint count][entries]. Entries are delta-coded against the
+ *           previous one: varint page delta, then the slot (a new page) or
+ *           the slot delta (same page). Rows of one page that share a key
+ *           cost ~2 bytes each instead of 8.
+ * Overflow: [1][count 4][first page 4][last page 4]. The list lives in a
+ *           chain of PostingOverflowPages; 'last' lets appends skip the walk.
+ */
+public class PostingList {
+    static final byte INLINE = 0;
+    static final byte OVERFLOW = 1;
+
+    private static final int OVERFLOW_SIZE = 13;
+
+    /**
+     * RecordId order: by page, then by slot.
+     */
+    public static int compare(RecordId a, RecordId b) {
+        if (a.pageId != b.pageId) {
+            return Integer.compare(a.pageId, b.pageId);
+        }
+        return Integer.compare(a.slotNumber, b.slotNumber);
+    }
+
+    /**
+     * Index of 'rid' in a sorted list, or -(insertion point) - 1.
+     */
+    static int search(List<RecordId> rids, RecordId rid) {
+        int lo = 0;
+        int hi = rids.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(rids.get(mid), rid);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    // --- Inline form ---
+
+    static byte[] encodeInline(List<RecordId> rids) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(INLINE);
+        writeVarInt(out, rids.size());
+        int prevPage = 0;
+        int prevSlot = 0;
+        for (int i = 0; i < rids.size(); i++) {
+            RecordId rid = rids.get(i);
+            if (i == 0) {
+                writeVarInt(out, (rid.pageId << 1) ^ (rid.pageId >> 31)); // Zig-zag: the first page may be negative
+                writeVarInt(out, rid.slotNumber);
+            } else {
+                writeVarInt(out, rid.pageId - prevPage);
+                writeVarInt(out, rid.pageId == prevPage ? rid.slotNumber - prevSlot : rid.slotNumber);
+            }
+            prevPage = rid.pageId;
+            prevSlot = rid.slotNumber;
+        }
+        return out.toByteArray();
+    }
+
+    static List<RecordId> decodeInline(byte[] value) {
+        int[] pos = {1};
+        int count = readVarInt(value, pos);
+        List<RecordId> rids = new ArrayList<>(count);
+        int page = 0;
+        int slot = 0;
+        for (int i = 0; i < count; i++) {
+            int pageDelta = readVarInt(value, pos);
+            int slotValue = readVarInt(value, pos);
+            if (i == 0) {
+                page = (pageDelta >>> 1) ^ -(pageDelta & 1);
+                slot = slotValue;
+            } else {
+                page += pageDelta;
+                slot = pageDelta == 0 ? slot + slotValue : slotValue;
+            }
+            rids.add(new RecordId(page, slot));
+        }
+        return rids;
+    }
+
+    // --- Overflow form ---
+
+    static byte[] encodeOverflow(int count, int firstPageId, int lastPageId) {
+        return ByteBuffer.allocate(OVERFLOW_SIZE).put(OVERFLOW)
+                .putInt(count).putInt(firstPageId).putInt(lastPageId).array();
+    }
+
+    static boolean isOverflow(byte[] value) {
+        return value[0] == OVERFLOW;
+    }
+
+    static int getCount(byte[] value) {
+        if (isOverflow(value)) {
+            return ByteBuffer.wrap(value).getInt(1);
+        }
+        return readVarInt(value, new int[]{1});
+    }
+
+    static int getFirstPageId(byte[] value) {
+        return ByteBuffer.wrap(value).getInt(5);
+    }
+
+    static int getLastPageId(byte[] value) {
+        return ByteBuffer.wrap(value).getInt(9);
+    }
+
+    // --- Varints: 7 bits per byte, high bit = more bytes follow ---
+
+    private static void writeVarInt(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarInt(byte[] in, int[] pos) {
+        int v = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in[pos[0]++];
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.util.List;
+
+/**
+ * One page of a long posting list (see PostingList). Pages of a list are
+ * chained in RecordId order, and each holds a sorted run.
+ *
+ * Layout:
+ * [0-3]:  Page Type (BTreeVarPage.TYPE_POSTING_OVERFLOW)
+ * [4-7]:  RecordId count
+ * [8-11]: Next page of the list (NO_PAGE at the end)
+ * [12..]: RecordIds: [PageID 4][Slot 4] each
+ */
+public class PostingOverflowPage {
+    private static final int OFFSET_TYPE = 0;
+    private static final int OFFSET_COUNT = 4;
+    private static final int OFFSET_NEXT = 8;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 8;
+
+    public static final int CAPACITY = (Page.PAGE_SIZE - HEADER_SIZE) / ENTRY_SIZE;
+
+    private final Page page;
+
+    public PostingOverflowPage(Page page) {
+        this.page = page;
+        // A blank page: an empty run at the end of its list
+        if (page.getInt(OFFSET_TYPE) == 0) {
+            page.setInt(OFFSET_TYPE, BTreeVarPage.TYPE_POSTING_OVERFLOW);
+            page.setInt(OFFSET_COUNT, 0);
+            page.setInt(OFFSET_NEXT, BTreeLeafPage.NO_PAGE);
+        }
+    }
+
+    public int getCount() {
+        return page.getInt(OFFSET_COUNT);
+    }
+
+    public int getNextPageId() {
+        return page.getInt(OFFSET_NEXT);
+    }
+
+    public void setNextPageId(int pageId) {
+        page.setInt(OFFSET_NEXT, pageId);
+    }
+
+    public RecordId getRecordId(int index) {
+        int offset = HEADER_SIZE + index * ENTRY_SIZE;
+        return new RecordId(page.getInt(offset), page.getInt(offset + 4));
+    }
+
+    /**
+     * Index of 'rid', or -(insertion point) - 1.
+     */
+    int search(RecordId rid) {
+        int lo = 0;
+        int hi = getCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = PostingList.compare(getRecordId(mid), rid);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Inserts at 'index', shifting the rest right. The caller checks there's room.
+     */
+    void insertAt(int index, RecordId rid) {
+        int count = getCount();
+        int offset = HEADER_SIZE + index * ENTRY_SIZE;
+        page.moveBytes(offset, offset + ENTRY_SIZE, (count - index) * ENTRY_SIZE);
+        page.setInt(offset, rid.pageId);
+        page.setInt(offset + 4, rid.slotNumber);
+        page.setInt(OFFSET_COUNT, count + 1);
+    }
+
+    void readAll(List<RecordId> out) {
+        for (int i = 0; i < getCount(); i++) {
+            out.add(getRecordId(i));
+        }
+    }
+
+    /**
+     * Replaces the page's run with these (sorted) RecordIds.
+     */
+    void setAll(List<RecordId> rids) {
+        for (int i = 0; i < rids.size(); i++) {
+            int offset = HEADER_SIZE + i * ENTRY_SIZE;
+            page.setInt(offset, rids.get(i).pageId);
+            page.setInt(offset + 4, rids.get(i).slotNumber);
+        }
+        page.setInt(OFFSET_COUNT, rids.size());
+    }
+}
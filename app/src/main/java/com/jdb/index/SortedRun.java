@@ -0,0 +1,333 @@
+package com.jdb.index;
+
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One immutable, sorted run of an LsmIndex: a file of (key, RecordId)
+ * entries in key order, each key at most once. Runs are written front to
+ * back in one pass (write) and never modified; compaction merges them into
+ * new runs and deletes the old files.
+ *
+ * File layout (pages of Page.PAGE_SIZE, written with HeapFile):
+ * Page 0 (header):
+ * [0-3]:   MAGIC
+ * [4-7]:   Entry count
+ * [8-11]:  Data pages (D)
+ * [12-15]: Bloom filter size in longs (B)
+ * [16-19]: Bloom filter hash count
+ * [20-23]: Level
+ * [24-31]: Sequence number (newer runs have larger ones)
+ * Pages 1..D (data):  [count 4] then entries of [key 4][PageID 4][Slot 4]
+ * Then the fence keys: the first key of every data page, 1024 per page
+ * Then the Bloom filter bits, 512 longs per page
+ *
+ * The fences and the Bloom filter are loaded into memory when the run is
+ * opened, so a point lookup reads at most one page, and none when the
+ * filter rules the key out.
+ *
+ * A deleted key is stored as a TOMBSTONE entry that hides older runs'
+ * entries for it, until a compaction into the oldest level drops both.
+ */
+public class SortedRun {
+    public static final int MAGIC = 0x4A44424C; // "JDBL"
+
+    // The RecordId a delete writes: no real row has this page id
+    static final RecordId TOMBSTONE = new RecordId(Integer.MIN_VALUE, -1);
+
+    private static final int ENTRY_SIZE = 12;
+    static final int ENTRIES_PER_PAGE = (Page.PAGE_SIZE - 4) / ENTRY_SIZE;
+    private static final int FENCES_PER_PAGE = Page.PAGE_SIZE / 4;
+    private static final int LONGS_PER_PAGE = Page.PAGE_SIZE / 8;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+
+    private final File file;
+    private final HeapFile heapFile;
+    private final int entryCount;
+    private final int dataPages;
+    private final int level;
+    private final long seq;
+    private final int[] fences;
+    private final BloomFilter bloom;
+
+    // One reference for being in the index's run list, plus one per reader using it.
+    // The file is deleted when an obsolete run's last reader lets go.
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private volatile boolean obsolete;
+
+    public static boolean isTombstone(RecordId rid) {
+        return rid.pageId == TOMBSTONE.pageId && rid.slotNumber == TOMBSTONE.slotNumber;
+    }
+
+    /**
+     * Opens an existing run file.
+     */
+    public SortedRun(File file) {
+        this.file = file;
+        this.heapFile = new HeapFile(file);
+        Page header = heapFile.readPage(0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IllegalStateException(file + " is not a sorted run");
+        }
+        entryCount = header.getInt(4);
+        dataPages = header.getInt(8);
+        int bloomLongs = header.getInt(12);
+        int bloomHashes = header.getInt(16);
+        level = header.getInt(20);
+        seq = header.getLong(24);
+
+        // Fence keys and Bloom filter, straight after the data pages
+        fences = new int[dataPages];
+        int pageId = 1 + dataPages;
+        for (int i = 0; i < dataPages; i += FENCES_PER_PAGE) {
+            Page p = heapFile.readPage(pageId++);
+            for (int j = 0; j < FENCES_PER_PAGE && i + j < dataPages; j++) {
+                fences[i + j] = p.getInt(j * 4);
+            }
+        }
+        long[] bits = new long[bloomLongs];
+        for (int i = 0; i < bloomLongs; i += LONGS_PER_PAGE) {
+            Page p = heapFile.readPage(pageId++);
+            for (int j = 0; j < LONGS_PER_PAGE && i + j < bloomLongs; j++) {
+                bits[i + j] = p.getLong(j * 8);
+            }
+        }
+        bloom = new BloomFilter(bits, bloomHashes);
+    }
+
+    /**
+     * Writes 'entries' (ascending, unique keys) to a new run file.
+     * 'expectedCount' (an upper bound is fine) sizes the Bloom filter.
+     */
+    public static void write(File file, int level, long seq, Iterator<IndexEntry> entries, int expectedCount) {
+        HeapFile out = new HeapFile(file);
+        BloomFilter bloom = new BloomFilter(Math.max(1, expectedCount), BLOOM_BITS_PER_KEY);
+        List<Integer> fences = new ArrayList<>();
+        int count = 0;
+        int pageId = 1;
+
+        // 1. Data pages, filled one after the other
+        Page page = null;
+        int onPage = 0;
+        boolean first = true;
+        int prevKey = 0;
+        while (entries.hasNext()) {
+            IndexEntry e = entries.next();
+            if (!first && e.key <= prevKey) {
+                throw new IllegalArgumentException("Run entries must be in ascending key order: " + e.key + " after " + prevKey);
+            }
+            first = false;
+            prevKey = e.key;
+            if (page == null) {
+                page = new Page(pageId++);
+                onPage = 0;
+                fences.add(e.key);
+            }
+            int offset = 4 + onPage * ENTRY_SIZE;
+            page.setInt(offset, e.key);
+            page.setInt(offset + 4, e.rid.pageId);
+            page.setInt(offset + 8, e.rid.slotNumber);
+            onPage++;
+            count++;
+            bloom.add(e.key);
+            if (onPage == ENTRIES_PER_PAGE) {
+                page.setInt(0, onPage);
+                out.writePage(page);
+                page = null;
+            }
+        }
+        if (page != null) {
+            page.setInt(0, onPage);
+            out.writePage(page);
+        }
+        int dataPages = fences.size();
+
+        // 2. Fence keys, then the Bloom filter
+        for (int i = 0; i < dataPages; i += FENCES_PER_PAGE) {
+            Page p = new Page(pageId++);
+            for (int j = 0; j < FENCES_PER_PAGE && i + j < dataPages; j++) {
+                p.setInt(j * 4, fences.get(i + j));
+            }
+            out.writePage(p);
+        }
+        long[] bits = bloom.getBits();
+        for (int i = 0; i < bits.length; i += LONGS_PER_PAGE) {
+            Page p = new Page(pageId++);
+            for (int j = 0; j < LONGS_PER_PAGE && i + j < bits.length; j++) {
+                p.setLong(j * 8, bits[i + j]);
+            }
+            out.writePage(p);
+        }
+
+        // 3. The header last: a run without one is an unfinished write
+        Page header = new Page(0);
+        header.setInt(0, MAGIC);
+        header.setInt(4, count);
+        header.setInt(8, dataPages);
+        header.setInt(12, bits.length);
+        header.setInt(16, bloom.getHashCount());
+        header.setInt(20, level);
+        header.setLong(24, seq);
+        out.writePage(header);
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close run " + file, e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    // --- Lookups ---
+
+    /**
+     * The RecordId stored for 'key' (possibly TOMBSTONE), or null if this
+     * run has no entry for it.
+     */
+    public RecordId find(int key) {
+        if (dataPages == 0 || key < fences[0] || !bloom.mightContain(key)) {
+            return null;
+        }
+        Page p = heapFile.readPage(1 + pageFor(key));
+        int lo = 0;
+        int hi = p.getInt(0) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = p.getInt(4 + mid * ENTRY_SIZE);
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                int offset = 4 + mid * ENTRY_SIZE;
+                return new RecordId(p.getInt(offset + 4), p.getInt(offset + 8));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Index of the last data page whose first key is <= key (0 if none).
+     */
+    private int pageFor(int key) {
+        int lo = 0;
+        int hi = dataPages - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (fences[mid] <= key) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * The entries with lo <= key <= hi, tombstones included, read a page at a time.
+     */
+    public Iterator<IndexEntry> iterator(int lo, int hi) {
+        return new Iterator<IndexEntry>() {
+            private int dataPage = dataPages == 0 ? 0 : pageFor(lo);
+            private Page page;
+            private int index;
+            private IndexEntry next = advance();
+
+            private IndexEntry advance() {
+                while (dataPage < dataPages) {
+                    if (page == null) {
+                        page = heapFile.readPage(1 + dataPage);
+                        index = 0;
+                    }
+                    while (index < page.getInt(0)) {
+                        int offset = 4 + index++ * ENTRY_SIZE;
+                        int key = page.getInt(offset);
+                        if (key > hi) {
+                            dataPage = dataPages;
+                            return null;
+                        }
+                        if (key >= lo) {
+                            return new IndexEntry(key, new RecordId(page.getInt(offset + 4), page.getInt(offset + 8)));
+                        }
+                    }
+                    page = null;
+                    dataPage++;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public IndexEntry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                IndexEntry e = next;
+                next = advance();
+                return e;
+            }
+        };
+    }
+
+    // --- Lifetime ---
+
+    /**
+     * Called by a reader before using the run (after finding it in the run list).
+     */
+    void retain() {
+        refs.incrementAndGet();
+    }
+
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            closeFile();
+            if (obsolete) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Drops the run list's reference: a compaction replaced this run. The
+     * file goes once no reader is using it.
+     */
+    void markObsolete() {
+        obsolete = true;
+        release();
+    }
+
+    private void closeFile() {
+        try {
+            heapFile.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close run " + file, e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jdb.index;
+
+import com.jdb.storage.RecordId;
+
+/**
+ * One (key, RecordId) pair returned by a VarKeyBTreeFile scan.
+ * Decode the key with the KeyCodec that built it.
+ * From a CoveringIndexFile, 'included' holds the entry's extra column
+ * bytes as well (null for plain indexes).
+ */
+public class VarIndexEntry {
+    public byte[] key;
+    public RecordId rid;
+    public byte[] included;
+
+    public VarIndexEntry(byte[] key, RecordId rid) {
+        this(key, rid, null);
+    }
+
+    public VarIndexEntry(byte[] key, RecordId rid, byte[] included) {
+        this.key = key;
+        this.rid = rid;
+        this.included = included;
+    }
+}
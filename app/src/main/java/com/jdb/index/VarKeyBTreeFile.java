@@ -0,0 +1,524 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A B+ Tree index over variable-length byte[] keys (byte[] key -> RecordId),
+ * e.g. names, or composite keys like (tenant, id) built with KeyCodec.
+ * Duplicate keys are allowed.
+ *
+ * Same file format idea as BTreeFile: a header page (BTreeMetaPage, key format
+ * KEY_FORMAT_VAR) points at the root, and leaves are chained by sibling links.
+ * Nodes are slotted pages (BTreeVarPage) that store each page's common key
+ * prefix once, and leaf splits send up the shortest separator that divides
+ * the two halves, so long keys with shared prefixes still give a wide,
+ * shallow tree.
+ *
+ * Concurrency: one tree-level read/write lock. Any number of threads may
+ * find and scan at once; insert takes the lock exclusively. (Variable-size
+ * nodes split by bytes, not by count, which makes BTreeFile's eager,
+ * latch-per-node splits much harder to get right.)
+ */
+public class VarKeyBTreeFile {
+    private final BufferManager bufferManager;
+    private final int metaPageId;
+    private final boolean covering; // Leaves are TYPE_COVERING_LEAF (see CoveringIndexFile)
+    private int rootPageId;
+    private int height;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long modCount; // Bumped by every insert or delete; scans use it to notice moved entries
+
+    /**
+     * A split's result: the separator and the new right-hand page.
+     */
+    static class Split {
+        final byte[] key;
+        final int pageId;
+
+        Split(byte[] key, int pageId) {
+            this.key = key;
+            this.pageId = pageId;
+        }
+    }
+
+    /**
+     * Opens the index whose header is page 'metaPageId' (normally 0).
+     * A blank (or missing) header page creates a new, empty index.
+     */
+    public VarKeyBTreeFile(BufferManager bufferManager, int metaPageId) {
+        this(bufferManager, metaPageId, false);
+    }
+
+    protected VarKeyBTreeFile(BufferManager bufferManager, int metaPageId, boolean covering) {
+        this.bufferManager = bufferManager;
+        this.metaPageId = metaPageId;
+        this.covering = covering;
+        openOrCreate();
+    }
+
+    private BTreeVarLeafPage leafPage(Page p) {
+        return new BTreeVarLeafPage(p, covering);
+    }
+
+    private void openOrCreate() {
+        while (bufferManager.getNumPages() <= metaPageId) {
+            bufferManager.allocateNewPage();
+        }
+
+        Page p = bufferManager.fetchPage(metaPageId);
+        boolean dirty = false;
+        try {
+            BTreeMetaPage meta = new BTreeMetaPage(p);
+            if (meta.isValid()) {
+                if (meta.getKeyFormat() != keyFormat()) {
+                    throw new IllegalStateException("Page " + metaPageId + " heads an index with key format " + meta.getKeyFormat() + ", not " + (covering ? "a covering index" : "variable-length keys"));
+                }
+                rootPageId = meta.getRootPageId();
+                height = meta.getHeight();
+                bufferManager.setFreeListHead(meta.getFreeListHead());
+                return;
+            }
+            if (p.getInt(0) != 0 || p.getInt(4) != 0) {
+                throw new IllegalStateException("Page " + metaPageId + " is not an index header");
+            }
+
+            // A new index: the root starts as an empty leaf
+            rootPageId = bufferManager.allocateNewPage();
+            leafPage(bufferManager.fetchPage(rootPageId));
+            bufferManager.unpinPage(rootPageId, true);
+            height = 1;
+            meta.format(rootPageId);
+            meta.setKeyFormat(keyFormat());
+            dirty = true;
+        } finally {
+            bufferManager.unpinPage(metaPageId, dirty);
+        }
+    }
+
+    private int keyFormat() {
+        return covering ? BTreeMetaPage.KEY_FORMAT_COVERING : BTreeMetaPage.KEY_FORMAT_VAR;
+    }
+
+    public int getRootPageId() {
+        lock.readLock().lock();
+        try {
+            return rootPageId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getHeight() {
+        lock.readLock().lock();
+        try {
+            return height;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Lookups ---
+
+    /**
+     * Returns the RecordId of one entry with this key, or null.
+     */
+    public RecordId find(byte[] key) {
+        lock.readLock().lock();
+        try {
+            // A split can fall inside a run of equal keys (the separator is then
+            // the key itself), so start at the leftmost leaf that may hold it and
+            // go right past any leaves the run (or deletes) left without a copy
+            int leafId = findFirstLeaf(key);
+            while (leafId != BTreeLeafPage.NO_PAGE) {
+                Page p = bufferManager.fetchPage(leafId);
+                int nextId;
+                try {
+                    BTreeVarLeafPage leaf = leafPage(p);
+                    int i = leaf.lowerBound(key);
+                    if (i < leaf.getKeyCount()) {
+                        return KeyCodec.compare(leaf.getKeyAt(i), key) == 0 ? leaf.getValueAt(i) : null;
+                    }
+                    nextId = leaf.getNextPageId();
+                } finally {
+                    bufferManager.unpinPage(leafId, false);
+                }
+                leafId = nextId;
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Every entry with lo <= key <= hi, in key order. A null bound is open.
+     * The iterator copies one leaf at a time under the read lock, so inserts
+     * may run between calls to next(); if one did, the scan finds its place
+     * again by the last key it returned and how many entries with that key
+     * it has returned (new duplicates always go after the existing ones).
+     */
+    public Iterator<VarIndexEntry> scan(byte[] lo, byte[] hi) {
+        return new VarScan(lo, hi);
+    }
+
+    /**
+     * The leftmost leaf that may hold 'key' (null = the first leaf).
+     */
+    private int findFirstLeaf(byte[] key) {
+        int pageId = rootPageId;
+        for (int level = height; level > 1; level--) {
+            int nodeId = pageId;
+            Page p = bufferManager.fetchPage(nodeId);
+            try {
+                BTreeVarInternalPage node = new BTreeVarInternalPage(p);
+                pageId = key == null ? node.getChildAt(0) : node.lookupFirst(key);
+            } finally {
+                bufferManager.unpinPage(nodeId, false);
+            }
+        }
+        return pageId;
+    }
+
+    private class VarScan implements Iterator<VarIndexEntry> {
+        private final byte[] lo;
+        private final byte[] hi;
+        private final List<VarIndexEntry> buffered = new ArrayList<>();
+        private int position;
+        private int nextLeafId = BTreeLeafPage.NO_PAGE;
+        private long seenModCount;
+        private byte[] lastKey;
+        private int lastKeyRun; // Entries with lastKey returned so far
+        private boolean done;
+
+        VarScan(byte[] lo, byte[] hi) {
+            this.lo = lo;
+            this.hi = hi;
+            fill();
+        }
+
+        /**
+         * Copies the next non-empty run of matching entries into 'buffered'.
+         */
+        private void fill() {
+            buffered.clear();
+            position = 0;
+            lock.readLock().lock();
+            try {
+                // 1. Where to continue: the next leaf, unless the tree changed since we left it
+                int leafId;
+                boolean reseek = lastKey != null && modCount != seenModCount;
+                if (lastKey == null) {
+                    leafId = findFirstLeaf(lo);
+                } else if (reseek) {
+                    leafId = findFirstLeaf(lastKey);
+                } else {
+                    leafId = nextLeafId;
+                }
+                seenModCount = modCount;
+
+                // 2. Copy entries until one is past 'hi' or a leaf gave us something.
+                //    A reseek lands on the first entry with lastKey and steps over
+                //    the ones already returned (the run may span leaves).
+                int skip = reseek ? lastKeyRun : 0;
+                while (leafId != BTreeLeafPage.NO_PAGE) {
+                    int pinnedId = leafId;
+                    Page raw = bufferManager.fetchPage(pinnedId);
+                    try {
+                        BTreeVarLeafPage leaf = leafPage(raw);
+                        int i = 0;
+                        if (reseek) {
+                            i = leaf.lowerBound(lastKey); // Entries before lastKey were returned already
+                        } else if (lastKey == null && lo != null) {
+                            i = leaf.lowerBound(lo);
+                        }
+                        for (; i < leaf.getKeyCount(); i++) {
+                            byte[] key = leaf.getKeyAt(i);
+                            if (skip > 0) {
+                                if (KeyCodec.compare(key, lastKey) == 0) {
+                                    skip--;
+                                    continue;
+                                }
+                                skip = 0;
+                            }
+                            if (hi != null && KeyCodec.compare(key, hi) > 0) {
+                                done = true;
+                                return;
+                            }
+                            buffered.add(new VarIndexEntry(key, leaf.getValueAt(i), covering ? leaf.getIncludedAt(i) : null));
+                        }
+                        nextLeafId = leaf.getNextPageId();
+                    } finally {
+                        bufferManager.unpinPage(pinnedId, false);
+                    }
+                    leafId = nextLeafId;
+                    if (!buffered.isEmpty()) {
+                        return;
+                    }
+                }
+                done = true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < buffered.size()) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            fill();
+            return position < buffered.size();
+        }
+
+        @Override
+        public VarIndexEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            VarIndexEntry e = buffered.get(position++);
+            if (lastKey != null && KeyCodec.compare(e.key, lastKey) == 0) {
+                lastKeyRun++;
+            } else {
+                lastKeyRun = 1;
+            }
+            lastKey = e.key;
+            return e;
+        }
+    }
+
+    // --- Inserts ---
+
+    public void insert(byte[] key, RecordId rid) {
+        if (key.length > BTreeVarPage.MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Key of " + key.length + " bytes exceeds the limit of " + BTreeVarPage.MAX_KEY_SIZE);
+        }
+        insertEntry(key, BTreeVarLeafPage.encodeValue(rid));
+    }
+
+    /**
+     * Inserts a raw leaf value (the caller has checked its size).
+     */
+    protected void insertEntry(byte[] key, byte[] value) {
+        lock.writeLock().lock();
+        try {
+            modCount++;
+            Split split = insertRecursive(rootPageId, height, key, value);
+            if (split != null) {
+                createNewRoot(split);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // --- Deletes and updates ---
+
+    /**
+     * Removes the entry (key, rid). Returns false if there is none.
+     * Leaves are not merged: an emptied leaf stays in the chain until an
+     * insert fills it again.
+     */
+    public boolean delete(byte[] key, RecordId rid) {
+        return replaceEntry(key, rid, null);
+    }
+
+    /**
+     * Finds the entry (key, rid) and gives it 'value' instead (null removes
+     * it). A value of the same length is written in place; anything else
+     * removes the entry and inserts it again, which may split the leaf.
+     * Returns false if there is no such entry.
+     */
+    protected boolean replaceEntry(byte[] key, RecordId rid, byte[] value) {
+        lock.writeLock().lock();
+        try {
+            // 1. Walk the run of equal keys (it may span leaves) for this rid
+            int leafId = findFirstLeaf(key);
+            while (leafId != BTreeLeafPage.NO_PAGE) {
+                Page p = bufferManager.fetchPage(leafId);
+                boolean dirty = false;
+                int nextId;
+                try {
+                    BTreeVarLeafPage leaf = leafPage(p);
+                    for (int i = leaf.lowerBound(key); i < leaf.getKeyCount(); i++) {
+                        if (KeyCodec.compare(leaf.getKeyAt(i), key) != 0) {
+                            return false;
+                        }
+                        RecordId found = leaf.getValueAt(i);
+                        if (found.pageId != rid.pageId || found.slotNumber != rid.slotNumber) {
+                            continue;
+                        }
+                        // 2. Same size: overwrite; entries don't move, so scans needn't know
+                        dirty = true;
+                        if (value != null && leaf.trySetValueAt(i, value)) {
+                            return true;
+                        }
+                        modCount++;
+                        leaf.removeAt(i);
+                        break;
+                    }
+                    nextId = leaf.getNextPageId();
+                } finally {
+                    bufferManager.unpinPage(leafId, dirty);
+                }
+                if (dirty) {
+                    // 3. Different size: put it back as a fresh insert
+                    if (value != null) {
+                        Split split = insertRecursive(rootPageId, height, key, value);
+                        if (split != null) {
+                            createNewRoot(split);
+                        }
+                    }
+                    return true;
+                }
+                leafId = nextId;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Split insertRecursive(int pageId, int level, byte[] key, byte[] value) {
+        Page p = bufferManager.fetchPage(pageId);
+        try {
+            if (level == 1) {
+                return insertIntoLeaf(pageId, p, key, value);
+            }
+            BTreeVarInternalPage node = new BTreeVarInternalPage(p);
+            int childIndex = node.childIndex(key);
+            Split split = insertRecursive(node.getChildAt(childIndex), level - 1, key, value);
+            if (split == null) {
+                return null;
+            }
+            // The new page goes right after the child that split
+            return insertIntoInternal(bufferManager, node, childIndex + 1, split);
+        } finally {
+            bufferManager.unpinPage(pageId, true);
+        }
+    }
+
+    private Split insertIntoLeaf(int pageId, Page p, byte[] key, byte[] value) {
+        BTreeVarLeafPage leaf = leafPage(p);
+        int index = leaf.upperBound(key);
+
+        // 1. Fast path: the key shares the page prefix and fits
+        if (leaf.tryInsertAt(index, key, value)) {
+            return null;
+        }
+
+        // 2. Rebuild with the new entry: it may still fit under a shorter prefix
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        leaf.readAll(keys, values);
+        keys.add(index, key);
+        values.add(index, value);
+        if (leaf.fits(keys, values)) {
+            leaf.rebuild(keys, values);
+            return null;
+        }
+
+        // 3. Split by bytes: each half must fit once it has its own (longer) prefix
+        int mid = leaf.splitPoint(keys, values, 1);
+        int newPageId = bufferManager.allocateNewPage();
+        Page newRaw = bufferManager.fetchPage(newPageId);
+        try {
+            BTreeVarLeafPage right = leafPage(newRaw);
+            right.rebuild(keys.subList(mid, keys.size()), values.subList(mid, values.size()));
+            leaf.rebuild(keys.subList(0, mid), values.subList(0, mid));
+
+            // 4. Link the new page in after this one
+            int oldNext = leaf.getNextPageId();
+            right.setPrevPageId(pageId);
+            right.setNextPageId(oldNext);
+            leaf.setNextPageId(newPageId);
+            if (oldNext != BTreeLeafPage.NO_PAGE) {
+                Page nextRaw = bufferManager.fetchPage(oldNext);
+                leafPage(nextRaw).setPrevPageId(newPageId);
+                bufferManager.unpinPage(oldNext, true);
+            }
+        } finally {
+            bufferManager.unpinPage(newPageId, true);
+        }
+        // 5. Suffix truncation: push up the shortest key between the halves
+        return new Split(KeyCodec.shortestSeparator(keys.get(mid - 1), keys.get(mid)), newPageId);
+    }
+
+    /**
+     * Adds the pointer to a split child's new right half at 'index' of its
+     * parent, splitting the parent in turn if it is full.
+     * (Shared with NonUniqueBTreeFile, whose internal nodes are the same.)
+     */
+    static Split insertIntoInternal(BufferManager bufferManager, BTreeVarInternalPage node, int index, Split child) {
+        byte[] pointer = BTreeVarInternalPage.encodeValue(child.pageId);
+        if (node.tryInsertAt(index, child.key, pointer)) {
+            return null;
+        }
+
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        node.readAll(keys, values);
+        keys.add(index, child.key);
+        values.add(index, pointer);
+        if (node.fits(keys, values)) {
+            node.rebuild(keys, values);
+            return null;
+        }
+
+        // The middle key moves up; its pointer becomes the new node's leftmost child
+        // (slot 0 is unkeyed, so the key simply isn't stored there)
+        int mid = node.splitPoint(keys, values, 2);
+        byte[] pushUp = keys.get(mid);
+        int newPageId = bufferManager.allocateNewPage();
+        Page newRaw = bufferManager.fetchPage(newPageId);
+        try {
+            BTreeVarInternalPage right = new BTreeVarInternalPage(newRaw);
+            right.rebuild(keys.subList(mid, keys.size()), values.subList(mid, values.size()));
+            node.rebuild(keys.subList(0, mid), values.subList(0, mid));
+        } finally {
+            bufferManager.unpinPage(newPageId, true);
+        }
+        return new Split(pushUp, newPageId);
+    }
+
+    /**
+     * Writes a new root over the old one and the split's new page; returns its id.
+     */
+    static int newRoot(BufferManager bufferManager, int oldRootId, Split split) {
+        int newRootId = bufferManager.allocateNewPage();
+        Page rootRaw = bufferManager.fetchPage(newRootId);
+        try {
+            List<byte[]> keys = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>();
+            keys.add(new byte[0]);
+            values.add(BTreeVarInternalPage.encodeValue(oldRootId));
+            keys.add(split.key);
+            values.add(BTreeVarInternalPage.encodeValue(split.pageId));
+            new BTreeVarInternalPage(rootRaw).rebuild(keys, values);
+        } finally {
+            bufferManager.unpinPage(newRootId, true);
+        }
+        return newRootId;
+    }
+
+    private void createNewRoot(Split split) {
+        rootPageId = newRoot(bufferManager, rootPageId, split);
+        height++;
+        Page metaRaw = bufferManager.fetchPage(metaPageId);
+        BTreeMetaPage meta = new BTreeMetaPage(metaRaw);
+        meta.setRootPageId(rootPageId);
+        meta.setHeight(height);
+        bufferManager.unpinPage(metaPageId, true);
+    }
+}
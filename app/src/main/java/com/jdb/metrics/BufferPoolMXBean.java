@@ -0,0 +1,28 @@
+package com.jdb.metrics;
+
+/**
+ * JMX view of a buffer pool's counters (see BufferPoolMetrics).
+ */
+public interface BufferPoolMXBean {
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getPrefetches();
+
+    long getCleanEvictions();
+
+    long getDirtyEvictions();
+
+    long getWriteBacks();
+
+    long getPinWaits();
+
+    int getCachedPages();
+
+    int getDirtyPages();
+
+    int getCapacityPages();
+}
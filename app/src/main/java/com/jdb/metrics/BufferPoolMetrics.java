@@ -0,0 +1,127 @@
+package com.jdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters of one buffer pool.
+ *
+ * Every record method is a single LongAdder increment, so recording on the
+ * hit path takes no lock and threads on different cores don't fight over a
+ * shared counter. Gauges (cached/dirty pages) are read from the pool only
+ * when someone asks for them.
+ */
+public class BufferPoolMetrics implements BufferPoolMXBean {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder cleanEvictions = new LongAdder();
+    private final LongAdder dirtyEvictions = new LongAdder();
+    private final LongAdder writeBacks = new LongAdder();
+    private final LongAdder pinWaits = new LongAdder();
+
+    private final IntSupplier cachedPages;
+    private final IntSupplier dirtyPages;
+    private final int capacityPages;
+
+    public BufferPoolMetrics(IntSupplier cachedPages, IntSupplier dirtyPages, int capacityPages) {
+        this.cachedPages = cachedPages;
+        this.dirtyPages = dirtyPages;
+        this.capacityPages = capacityPages;
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * A page was loaded in the background by read-ahead (not a miss).
+     */
+    public void recordPrefetch() {
+        prefetches.increment();
+    }
+
+    public void recordEviction(boolean dirty) {
+        if (dirty) {
+            dirtyEvictions.increment();
+        } else {
+            cleanEvictions.increment();
+        }
+    }
+
+    public void recordWriteBack() {
+        writeBacks.increment();
+    }
+
+    /**
+     * A fetch found its page still loading or being evicted and had to wait.
+     */
+    public void recordPinWait() {
+        pinWaits.increment();
+    }
+
+    public BufferPoolSnapshot snapshot() {
+        return new BufferPoolSnapshot(hits.sum(), misses.sum(), prefetches.sum(),
+                cleanEvictions.sum(), dirtyEvictions.sum(), writeBacks.sum(), pinWaits.sum(),
+                cachedPages.getAsInt(), dirtyPages.getAsInt(), capacityPages);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return snapshot().getHitRatio();
+    }
+
+    @Override
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    @Override
+    public long getCleanEvictions() {
+        return cleanEvictions.sum();
+    }
+
+    @Override
+    public long getDirtyEvictions() {
+        return dirtyEvictions.sum();
+    }
+
+    @Override
+    public long getWriteBacks() {
+        return writeBacks.sum();
+    }
+
+    @Override
+    public long getPinWaits() {
+        return pinWaits.sum();
+    }
+
+    @Override
+    public int getCachedPages() {
+        return cachedPages.getAsInt();
+    }
+
+    @Override
+    public int getDirtyPages() {
+        return dirtyPages.getAsInt();
+    }
+
+    @Override
+    public int getCapacityPages() {
+        return capacityPages;
+    }
+}
@@ -0,0 +1,51 @@
+package com.jdb.metrics;
+
+/**
+ * A point-in-time copy of a buffer pool's counters.
+ */
+public class BufferPoolSnapshot {
+    public final long hits;
+    public final long misses;
+    public final long prefetches;
+    public final long cleanEvictions;
+    public final long dirtyEvictions;
+    public final long writeBacks;
+    public final long pinWaits;
+    public final int cachedPages;
+    public final int dirtyPages;
+    public final int capacityPages;
+
+    BufferPoolSnapshot(long hits, long misses, long prefetches, long cleanEvictions, long dirtyEvictions,
+                       long writeBacks, long pinWaits, int cachedPages, int dirtyPages, int capacityPages) {
+        this.hits = hits;
+        this.misses = misses;
+        this.prefetches = prefetches;
+        this.cleanEvictions = cleanEvictions;
+        this.dirtyEvictions = dirtyEvictions;
+        this.writeBacks = writeBacks;
+        this.pinWaits = pinWaits;
+        this.cachedPages = cachedPages;
+        this.dirtyPages = dirtyPages;
+        this.capacityPages = capacityPages;
+    }
+
+    /**
+     * Hits / (hits + misses), or 0 before the first access.
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public long getEvictions() {
+        return cleanEvictions + dirtyEvictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d (%.1f%%) prefetches=%d evictions=%d clean/%d dirty "
+                        + "writeBacks=%d pinWaits=%d cached=%d/%d dirty=%d",
+                hits, misses, 100 * getHitRatio(), prefetches, cleanEvictions, dirtyEvictions,
+                writeBacks, pinWaits, cachedPages, capacityPages, dirtyPages);
+    }
+}
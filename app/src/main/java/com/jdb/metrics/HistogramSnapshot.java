@@ -0,0 +1,53 @@
+package com.jdb.metrics;
+
+/**
+ * A point-in-time copy of a LatencyHistogram.
+ */
+public class HistogramSnapshot {
+    public final long count;
+    public final long totalNanos;
+    private final long[] buckets;
+
+    HistogramSnapshot(long[] buckets, long count, long totalNanos) {
+        this.buckets = buckets;
+        this.count = count;
+        this.totalNanos = totalNanos;
+    }
+
+    public double getMeanMicros() {
+        return count == 0 ? 0.0 : totalNanos / 1000.0 / count;
+    }
+
+    /**
+     * Latency (us) that 'fraction' (0..1) of the operations stayed under,
+     * rounded up to the bucket boundary. 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double fraction) {
+        long total = 0;
+        for (long c : buckets) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long needed = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= needed && buckets[i] > 0) {
+                return LatencyHistogram.bucketLimitMicros(i);
+            }
+        }
+        return LatencyHistogram.bucketLimitMicros(buckets.length - 1);
+    }
+
+    public long getBucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50<%dus p99<%dus",
+                count, getMeanMicros(), getPercentileMicros(0.5), getPercentileMicros(0.99));
+    }
+}
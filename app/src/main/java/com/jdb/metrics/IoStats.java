@@ -0,0 +1,60 @@
+package com.jdb.metrics;
+
+/**
+ * Page read/write latencies of one HeapFile.
+ */
+public class IoStats implements IoStatsMXBean {
+    private final LatencyHistogram reads = new LatencyHistogram();
+    private final LatencyHistogram writes = new LatencyHistogram();
+
+    public void recordRead(long nanos) {
+        reads.record(nanos);
+    }
+
+    public void recordWrite(long nanos) {
+        writes.record(nanos);
+    }
+
+    public HistogramSnapshot readSnapshot() {
+        return reads.snapshot();
+    }
+
+    public HistogramSnapshot writeSnapshot() {
+        return writes.snapshot();
+    }
+
+    @Override
+    public long getPageReads() {
+        return reads.snapshot().count;
+    }
+
+    @Override
+    public long getPageWrites() {
+        return writes.snapshot().count;
+    }
+
+    @Override
+    public double getMeanReadMicros() {
+        return reads.snapshot().getMeanMicros();
+    }
+
+    @Override
+    public long getP99ReadMicros() {
+        return reads.snapshot().getPercentileMicros(0.99);
+    }
+
+    @Override
+    public double getMeanWriteMicros() {
+        return writes.snapshot().getMeanMicros();
+    }
+
+    @Override
+    public long getP99WriteMicros() {
+        return writes.snapshot().getPercentileMicros(0.99);
+    }
+
+    @Override
+    public String toString() {
+        return "reads[" + reads.snapshot() + "] writes[" + writes.snapshot() + "]";
+    }
+}
@@ -0,0 +1,18 @@
+package com.jdb.metrics;
+
+/**
+ * JMX view of one file's page I/O (see IoStats). Latencies are in microseconds.
+ */
+public interface IoStatsMXBean {
+    long getPageReads();
+
+    long getPageWrites();
+
+    double getMeanReadMicros();
+
+    long getP99ReadMicros();
+
+    double getMeanWriteMicros();
+
+    long getP99WriteMicros();
+}
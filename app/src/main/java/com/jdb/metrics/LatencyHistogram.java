@@ -0,0 +1,60 @@
+package com.jdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with power-of-two microsecond buckets.
+ *
+ * Bucket 0 counts operations under 1us, bucket i (i > 0) counts operations
+ * in [2^(i-1), 2^i) us; the last bucket also takes everything slower.
+ * record() is one LongAdder increment per bucket plus a running total, so it
+ * can sit on the I/O path of many threads without any contention.
+ */
+public class LatencyHistogram {
+    public static final int BUCKETS = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[bucketOf(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        // floor(log2(micros)) + 1
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Upper bound (exclusive) of a bucket in microseconds.
+     */
+    static long bucketLimitMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Copies the current counts. Not atomic across buckets, but every
+     * recorded operation lands in the snapshot or in a later one.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new HistogramSnapshot(counts, count.sum(), totalNanos.sum());
+    }
+}
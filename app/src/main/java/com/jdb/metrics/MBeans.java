@@ -0,0 +1,43 @@
+package com.jdb.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers metrics objects with the platform MBean server as
+ * "com.jdb:type=<type>,name=<name>", so jconsole / VisualVM can read them.
+ */
+public final class MBeans {
+    private MBeans() {
+    }
+
+    /**
+     * Registers 'bean', replacing anything already registered under the same name.
+     */
+    public static ObjectName register(Object bean, String type, String name) {
+        try {
+            ObjectName objectName = ObjectName.getInstance("com.jdb:type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register MBean " + type + "/" + name, e);
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException("Could not unregister MBean " + objectName, e);
+        }
+    }
+}
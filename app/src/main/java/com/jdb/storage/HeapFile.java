@@ -1,21 +1,49 @@
 package com.jdb.storage;
 
+import com.jdb.metrics.IoStats;
+import com.jdb.metrics.MBeans;
+
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Page-granular access to a single database file.
+ *
+ * All I/O goes through positional FileChannel reads/writes, so there is no
+ * shared file pointer: any number of threads may read (or write distinct)
+ * pages at the same time without a global lock. The file size is cached
+ * and only grows, which keeps readPage free of a length() system call.
+ *
+ * Every page read and write is timed into the file's IoStats (a lock-free
+ * histogram), readable via getIoStats() or JMX (registerMBean).
+ */
 public class HeapFile {
     private File file;
     private RandomAccessFile raf;
+    protected FileChannel channel;
+
+    // Cached file length in bytes (kept in sync by writePage)
+    protected final AtomicLong fileSize;
+
+    // Read/write latency histograms
+    protected final IoStats ioStats = new IoStats();
 
     public HeapFile(File f) {
         this.file = f;
         try {
             // "rw" mode allows both reading and writing
             this.raf = new RandomAccessFile(f, "rw");
+            this.channel = raf.getChannel();
+            this.fileSize = new AtomicLong(channel.size());
         } catch (FileNotFoundException e) {
             throw new RuntimeException("Could not open DB file: " + f.getPath(), e);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read size of DB file: " + f.getPath(), e);
         }
     }
 
@@ -24,16 +52,36 @@ public class HeapFile {
      */
     public Page readPage(int pageId) {
         Page p = new Page(pageId);
-        int offset = pageId * Page.PAGE_SIZE;
-        
+        readInto(pageId, p.getBuffer());
+        return p;
+    }
+
+    /**
+     * Reads a page into caller-owned memory (e.g. a buffer pool frame) and
+     * returns a Page that is a view over it.
+     */
+    public Page readPage(int pageId, ByteBuffer frame) {
+        readInto(pageId, frame.duplicate().clear());
+        return new Page(pageId, frame);
+    }
+
+    private void readInto(int pageId, ByteBuffer dst) {
+        long offset = (long) pageId * Page.PAGE_SIZE;
+
+        if (offset + Page.PAGE_SIZE > fileSize.get()) {
+            throw new IllegalArgumentException("Page " + pageId + " does not exist in file.");
+        }
+
+        long start = System.nanoTime();
         try {
-            if (offset + Page.PAGE_SIZE > raf.length()) {
-                throw new IllegalArgumentException("Page " + pageId + " does not exist in file.");
+            // Fill the buffer without touching the channel position
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, offset + dst.position());
+                if (n < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
             }
-            
-            raf.seek(offset);
-            raf.readFully(p.getData()); // Fill the page's byte buffer
-            return p;
+            ioStats.recordRead(System.nanoTime() - start);
         } catch (IOException e) {
             throw new RuntimeException("Error reading page " + pageId, e);
         }
@@ -43,27 +91,55 @@ public class HeapFile {
      * Writes a page to the disk.
      */
     public void writePage(Page p) {
-        int offset = p.getPageId() * Page.PAGE_SIZE;
+        long offset = (long) p.getPageId() * Page.PAGE_SIZE;
+        long start = System.nanoTime();
         try {
-            raf.seek(offset);
-            raf.write(p.getData());
+            ByteBuffer src = p.getBuffer();
+            while (src.hasRemaining()) {
+                channel.write(src, offset + src.position());
+            }
+            fileSize.accumulateAndGet(offset + Page.PAGE_SIZE, Math::max);
+            ioStats.recordWrite(System.nanoTime() - start);
         } catch (IOException e) {
             throw new RuntimeException("Error writing page " + p.getPageId(), e);
         }
     }
 
+    /**
+     * Appends a blank page and returns its id. Safe to call from many threads:
+     * each caller reserves a distinct page id before writing.
+     */
+    public int allocatePage() {
+        long offset = fileSize.getAndAdd(Page.PAGE_SIZE);
+        int pageId = (int) (offset / Page.PAGE_SIZE);
+        writePage(new Page(pageId));
+        return pageId;
+    }
+
     /**
      * Returns the number of pages currently in the file.
      */
     public int getNumPages() {
-        try {
-            return (int) (raf.length() / Page.PAGE_SIZE);
-        } catch (IOException e) {
-            throw new RuntimeException("Error getting file size", e);
-        }
+        return (int) (fileSize.get() / Page.PAGE_SIZE);
+    }
+
+    public File getFile() {
+        return file;
     }
-    
+
+    public IoStats getIoStats() {
+        return ioStats;
+    }
+
+    /**
+     * Publishes this file's IoStats over JMX as com.jdb:type=HeapFile,name=<file name>.
+     */
+    public void registerMBean() {
+        MBeans.register(ioStats, "HeapFile", file.getName());
+    }
+
     public void close() throws IOException {
+        channel.close();
         raf.close();
     }
-}
\ No newline at end of file
+}
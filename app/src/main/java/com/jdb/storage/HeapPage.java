@@ -69,7 +69,7 @@ public class HeapPage {
 
         // 2. Write Data (Backwards from the current FreeSpacePtr)
         int writeStart = getFreeSpacePtr() - dataLen;
-        System.arraycopy(data, 0, page.getData(), writeStart, dataLen);
+        page.writeBytes(writeStart, data);
         setFreeSpacePtr(writeStart);
 
         // 3. Write Slot (Forwards from the last slot)
@@ -93,8 +93,7 @@ public class HeapPage {
         int offset = getSlotOffset(slotId);
         int len = getSlotLength(slotId);
 
-        byte[] data = new byte[len];
-        System.arraycopy(page.getData(), offset, data, 0, len);
+        byte[] data = page.readBytes(offset, len);
 
         Tuple t = new Tuple(td);
         t.deserialize(data);
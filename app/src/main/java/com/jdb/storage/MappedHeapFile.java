@@ -0,0 +1,128 @@
+package com.jdb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A HeapFile whose pages are served straight out of a memory-mapped region.
+ *
+ * readPage() does not copy: it returns a Page that is a view over the mapping,
+ * so reads of a cached (OS page cache) file cost no allocation of page data.
+ * Writes through such a view land in the mapping directly; writePage() only
+ * has to copy when it is given an ordinary array-backed page.
+ *
+ * The file is mapped in fixed chunks of CHUNK_PAGES pages. New chunks are
+ * mapped on demand as writePage() (and so BufferManager.allocateNewPage())
+ * extends the file. Mapping a chunk grows the file on disk up to the chunk
+ * boundary, so close() truncates it back to the last written page.
+ *
+ * IoStats here time the copies in and out of the mapping. Zero-copy
+ * readPage(int) views are not timed: their cost is paid later, as page
+ * faults, by whoever reads the view.
+ */
+public class MappedHeapFile extends HeapFile {
+    // 1024 pages * 4KB = 4MB per mapping
+    public static final int CHUNK_PAGES = 1024;
+    private static final long CHUNK_BYTES = (long) CHUNK_PAGES * Page.PAGE_SIZE;
+
+    // Copy-on-grow array so readers never need a lock to find their chunk
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    public MappedHeapFile(File f) {
+        super(f);
+    }
+
+    /**
+     * Returns a view over the mapped page. No bytes are copied.
+     */
+    @Override
+    public Page readPage(int pageId) {
+        long offset = (long) pageId * Page.PAGE_SIZE;
+        if (offset + Page.PAGE_SIZE > fileSize.get()) {
+            throw new IllegalArgumentException("Page " + pageId + " does not exist in file.");
+        }
+        return new Page(pageId, pageSlice(pageId));
+    }
+
+    /**
+     * Copies the mapped page into caller-owned memory (e.g. an off-heap pool frame).
+     */
+    @Override
+    public Page readPage(int pageId, ByteBuffer frame) {
+        long start = System.nanoTime();
+        Page view = readPage(pageId);
+        frame.duplicate().clear().put(view.getBuffer());
+        ioStats.recordRead(System.nanoTime() - start);
+        return new Page(pageId, frame);
+    }
+
+    /**
+     * Copies the page into the mapping and extends the logical file size.
+     */
+    @Override
+    public void writePage(Page p) {
+        long start = System.nanoTime();
+        int pageId = p.getPageId();
+        ByteBuffer dst = pageSlice(pageId);
+        dst.put(p.getBuffer()); // A no-op copy onto itself if p is already our view
+        fileSize.accumulateAndGet((long) (pageId + 1) * Page.PAGE_SIZE, Math::max);
+        ioStats.recordWrite(System.nanoTime() - start);
+    }
+
+    /**
+     * Forces all mapped changes to the storage device.
+     */
+    public void sync() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        chunks = new MappedByteBuffer[0];
+        // Drop the padding that mapping whole chunks added past the last page
+        if (channel.size() > fileSize.get()) {
+            channel.truncate(fileSize.get());
+        }
+        super.close();
+    }
+
+    // --- Mapping Helpers ---
+
+    private ByteBuffer pageSlice(int pageId) {
+        int chunkIdx = pageId / CHUNK_PAGES;
+        int offsetInChunk = (pageId % CHUNK_PAGES) * Page.PAGE_SIZE;
+        return chunkFor(chunkIdx).slice(offsetInChunk, Page.PAGE_SIZE);
+    }
+
+    private MappedByteBuffer chunkFor(int chunkIdx) {
+        MappedByteBuffer[] current = chunks;
+        if (chunkIdx < current.length) {
+            return current[chunkIdx];
+        }
+        return growTo(chunkIdx);
+    }
+
+    private synchronized MappedByteBuffer growTo(int chunkIdx) {
+        MappedByteBuffer[] current = chunks;
+        if (chunkIdx < current.length) {
+            return current[chunkIdx]; // Another thread mapped it first
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, chunkIdx + 1);
+        try {
+            for (int i = current.length; i <= chunkIdx; i++) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * CHUNK_BYTES, CHUNK_BYTES);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error mapping chunk " + chunkIdx + " of " + getFile().getPath(), e);
+        }
+        chunks = grown;
+        return grown[chunkIdx];
+    }
+}
@@ -1,21 +1,30 @@
 package com.jdb.storage;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.nio.ByteOrder;
 
 /**
  * Represents a fixed-size block of data in the database.
  * Standard Page Size: 4KB (4096 bytes)
+ *
+ * A page is either backed by its own byte[] or is a view over memory owned by
+ * someone else (e.g. a memory-mapped region of the file). Views have no
+ * backing array, so code that works for both kinds should use the byte-range
+ * helpers instead of getData().
+ *
+ * Every typed accessor goes through one ByteBuffer created with the page and
+ * uses absolute indexes only, so reads and writes allocate nothing and never
+ * touch buffer position state (safe for concurrent readers).
  */
 public class Page {
     public static final int PAGE_SIZE = 4096;
     private int pageId;
     private byte[] data;
+    private final ByteBuffer buf;
 
     // Constructor for a new, empty page
     public Page(int pageId) {
-        this.pageId = pageId;
-        this.data = new byte[PAGE_SIZE];
+        this(pageId, new byte[PAGE_SIZE]);
     }
 
     // Constructor for loading existing data (from disk)
@@ -25,6 +34,16 @@ public class Page {
             throw new IllegalArgumentException("Data must be exactly " + PAGE_SIZE + " bytes");
         }
         this.data = data;
+        this.buf = ByteBuffer.wrap(data);
+    }
+
+    // Constructor for a page that is a view over external memory (no copy)
+    public Page(int pageId, ByteBuffer view) {
+        this.pageId = pageId;
+        if (view.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("View must be exactly " + PAGE_SIZE + " bytes");
+        }
+        this.buf = view.duplicate().order(ByteOrder.BIG_ENDIAN);
     }
 
     public int getPageId() {
@@ -32,29 +51,107 @@ public class Page {
     }
 
     /**
-     * Get the raw byte array (for writing to disk)
+     * Get the raw byte array (for writing to disk).
+     * Only available for array-backed pages.
      */
     public byte[] getData() {
+        if (data == null) {
+            throw new UnsupportedOperationException("Page " + pageId + " is a view and has no backing array");
+        }
         return data;
     }
 
     /**
-     * Helper to write an integer at a specific offset
+     * True if this page is a view over external memory rather than its own byte[].
      */
-    public void setInt(int offset, int value) {
-        // Use ByteBuffer to easily convert int to bytes
-        ByteBuffer.wrap(data).putInt(offset, value);
+    public boolean isView() {
+        return data == null;
     }
 
     /**
-     * Helper to read an integer from a specific offset
+     * Returns a fresh ByteBuffer over the whole page (position 0, limit PAGE_SIZE).
+     * Writes through the buffer modify the page. Meant for bulk I/O, not hot paths.
      */
+    public ByteBuffer getBuffer() {
+        return buf.duplicate().clear();
+    }
+
+    // --- Typed accessors (big-endian, allocation-free) ---
+
     public int getInt(int offset) {
-        return ByteBuffer.wrap(data).getInt(offset);
+        return buf.getInt(offset);
+    }
+
+    public void setInt(int offset, int value) {
+        buf.putInt(offset, value);
+    }
+
+    public long getLong(int offset) {
+        return buf.getLong(offset);
+    }
+
+    public void setLong(int offset, long value) {
+        buf.putLong(offset, value);
+    }
+
+    public short getShort(int offset) {
+        return buf.getShort(offset);
+    }
+
+    public void setShort(int offset, short value) {
+        buf.putShort(offset, value);
+    }
+
+    public byte getByte(int offset) {
+        return buf.get(offset);
+    }
+
+    public void setByte(int offset, byte value) {
+        buf.put(offset, value);
+    }
+
+    // --- Byte ranges ---
+
+    /**
+     * Copies 'length' bytes starting at 'offset' out of the page into a new array.
+     */
+    public byte[] readBytes(int offset, int length) {
+        byte[] dst = new byte[length];
+        readBytes(offset, dst, 0, length);
+        return dst;
+    }
+
+    /**
+     * Copies 'length' bytes starting at 'offset' into dst[dstOffset..] (no allocation).
+     */
+    public void readBytes(int offset, byte[] dst, int dstOffset, int length) {
+        buf.get(offset, dst, dstOffset, length);
+    }
+
+    /**
+     * Copies the whole 'src' array into the page starting at 'offset'.
+     */
+    public void writeBytes(int offset, byte[] src) {
+        writeBytes(offset, src, 0, src.length);
+    }
+
+    /**
+     * Copies src[srcOffset..srcOffset+length) into the page starting at 'offset'.
+     */
+    public void writeBytes(int offset, byte[] src, int srcOffset, int length) {
+        buf.put(offset, src, srcOffset, length);
+    }
+
+    /**
+     * Moves 'length' bytes within the page from 'srcOffset' to 'dstOffset'.
+     * The ranges may overlap (like System.arraycopy); used to shift sorted entries.
+     */
+    public void moveBytes(int srcOffset, int dstOffset, int length) {
+        buf.put(dstOffset, buf, srcOffset, length);
     }
 
     @Override
     public String toString() {
         return "Page{id=" + pageId + "}";
     }
-}
\ No newline at end of file
+}
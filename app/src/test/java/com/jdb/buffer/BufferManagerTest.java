@@ -6,6 +6,15 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class BufferManagerTest {
@@ -52,4 +61,447 @@ public class BufferManagerTest {
         try { hf.close(); } catch(Exception e){}
         try { hfCheck.close(); } catch(Exception e){}
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOffHeapFramesAreReusedAcrossEvictions() {
+        HeapFile hf = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(hf, 4, true);
+        assertTrue(bm.isOffHeap());
+
+        // 1. Create far more pages than there are frames, writing each through the pool
+        int numPages = 40;
+        for (int i = 0; i < numPages; i++) {
+            int pageId = bm.allocateNewPage();
+            Page p = bm.getPage(pageId);
+            assertTrue(p.isView(), "Off-heap pages should be handles onto arena frames");
+            p.setInt(0, pageId * 7);
+            bm.setPageDirty(pageId, true);
+        }
+
+        // 2. Every evicted frame was written back before being recycled
+        for (int i = 0; i < numPages; i++) {
+            assertEquals(i * 7, bm.getPage(i).getInt(0));
+        }
+        bm.flushAll();
+
+        HeapFile hfCheck = new HeapFile(tempFile);
+        for (int i = 0; i < numPages; i++) {
+            assertEquals(i * 7, hfCheck.readPage(i).getInt(0));
+        }
+
+        try { hf.close(); } catch(Exception e){}
+        try { hfCheck.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testPinnedPagesAreNeverEvicted() {
+        HeapFile hf = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(hf, 2);
+        for (int i = 0; i < 10; i++) bm.allocateNewPage();
+
+        // 1. Pin page 0 and modify it
+        Page pinned = bm.fetchPage(0);
+        pinned.setInt(0, 4242);
+        assertTrue(bm.isPinned(0));
+
+        // 2. Stream the other pages through the single remaining slot
+        for (int i = 1; i < 10; i++) {
+            bm.getPage(i);
+        }
+
+        // 3. Page 0 survived and is the very same cached copy
+        assertSame(pinned, bm.fetchPage(0));
+        bm.unpinPage(0, false);
+        bm.unpinPage(0, true);
+        assertFalse(bm.isPinned(0));
+
+        // 4. Once every slot is pinned, a miss must fail instead of stealing a frame
+        bm.fetchPage(1);
+        bm.fetchPage(2);
+        assertThrows(IllegalStateException.class, () -> bm.fetchPage(3));
+        bm.unpinPage(1, false);
+        bm.unpinPage(2, false);
+
+        bm.flushAll();
+        assertEquals(4242, hf.readPage(0).getInt(0));
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testConcurrentMissesLoadPageOnce() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        HeapFile hf = new HeapFile(tempFile) {
+            @Override
+            public Page readPage(int pageId) {
+                reads.incrementAndGet();
+                try { release.await(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+                return super.readPage(pageId);
+            }
+        };
+        hf.allocatePage();
+        BufferManager bm = new BufferManager(hf, 4);
+
+        // 1. Eight threads miss on the same page while the first read is held open
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Page>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> bm.fetchPage(0)));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        // 2. Everyone got the same frame, and the disk was read exactly once
+        Page first = results.get(0).get();
+        for (Future<Page> f : results) {
+            assertSame(first, f.get());
+        }
+        assertEquals(1, reads.get());
+        for (int t = 0; t < threads; t++) bm.unpinPage(0, false);
+        pool.shutdown();
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testConcurrentFetchUnpinStress() throws Exception {
+        HeapFile hf = new HeapFile(tempFile);
+        int numPages = 64;
+        for (int i = 0; i < numPages; i++) {
+            Page p = new Page(i);
+            p.setInt(0, i);
+            hf.writePage(p);
+        }
+        BufferManager bm = new BufferManager(hf, 16, true);
+
+        // Threads hammer a pool much smaller than the file; every pinned page must hold its own data
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                for (int n = 0; n < 5000; n++) {
+                    int pageId = (n * 17 + seed * 5) % numPages;
+                    Page p = bm.fetchPage(pageId);
+                    try {
+                        if (p.getInt(0) != pageId) return false;
+                    } finally {
+                        bm.unpinPage(pageId, false);
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(), "A pinned page was swapped out from under its reader");
+        }
+        pool.shutdown();
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testEveryPolicyWritesBackAndRespectsPins() {
+        List<ReplacementPolicy<PageKey>> policies = List.of(new LruPolicy<>(), new ClockPolicy<>(), new TwoQueuePolicy<>());
+        for (ReplacementPolicy<PageKey> policy : policies) {
+            if (tempFile.exists()) tempFile.delete();
+            HeapFile hf = new HeapFile(tempFile);
+            BufferManager bm = new BufferManager(hf, 3, false, policy);
+            for (int i = 0; i < 20; i++) bm.allocateNewPage();
+
+            Page pinned = bm.fetchPage(0);
+            for (int round = 0; round < 3; round++) {
+                for (int i = 1; i < 20; i++) {
+                    Page p = bm.fetchPage(i);
+                    p.setInt(0, i + round);
+                    bm.unpinPage(i, true);
+                }
+            }
+            assertSame(pinned, bm.fetchPage(0), policy.getClass().getSimpleName() + " evicted a pinned page");
+            bm.unpinPage(0, false);
+            bm.unpinPage(0, false);
+            bm.flushAll();
+
+            for (int i = 1; i < 20; i++) {
+                assertEquals(i + 2, hf.readPage(i).getInt(0));
+            }
+            try { hf.close(); } catch(Exception e){}
+        }
+    }
+
+    @Test
+    public void testEvictionPrefersCleanVictims() {
+        AtomicInteger writes = new AtomicInteger();
+        HeapFile hf = new HeapFile(tempFile) {
+            @Override
+            public void writePage(Page p) {
+                writes.incrementAndGet();
+                super.writePage(p);
+            }
+        };
+        for (int i = 0; i < 4; i++) hf.allocatePage();
+        BufferManager bm = new BufferManager(hf, 3);
+
+        // Page 0 is the LRU victim, but it is dirty; pages 1 and 2 are clean
+        bm.fetchPage(0).setInt(0, 5);
+        bm.unpinPage(0, true);
+        bm.getPage(1);
+        bm.getPage(2);
+
+        writes.set(0);
+        bm.getPage(3);
+        assertEquals(0, writes.get(), "The miss should have evicted a clean page instead of writing page 0");
+        assertEquals(1, bm.getDirtyPageCount());
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testCleanVictimIsOnlySoughtAtTheColdEnd() {
+        AtomicInteger writes = new AtomicInteger();
+        HeapFile hf = new HeapFile(tempFile) {
+            @Override
+            public void writePage(Page p) {
+                writes.incrementAndGet();
+                super.writePage(p);
+            }
+        };
+        for (int i = 0; i < 21; i++) hf.allocatePage();
+        BufferManager bm = new BufferManager(hf, 20);
+
+        // Twelve cold dirty pages, then eight hot clean ones
+        for (int i = 0; i < 12; i++) {
+            bm.fetchPage(i).setInt(0, i);
+            bm.unpinPage(i, true);
+        }
+        for (int i = 12; i < 20; i++) bm.getPage(i);
+
+        // The first clean candidate is too far in: a cold dirty page goes instead
+        writes.set(0);
+        bm.getPage(20);
+        assertEquals(1, writes.get());
+        long reads = hf.getIoStats().getPageReads();
+        for (int i = 12; i < 20; i++) bm.getPage(i);
+        assertEquals(reads, hf.getIoStats().getPageReads(), "A hot clean page was evicted");
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testBackgroundWriterKeepsCleanShare() throws Exception {
+        HeapFile hf = new HeapFile(tempFile);
+        for (int i = 0; i < 10; i++) hf.allocatePage();
+        BufferManager bm = new BufferManager(hf, 10);
+
+        // 1. Dirty the whole pool
+        for (int i = 0; i < 10; i++) {
+            bm.fetchPage(i).setInt(0, 100 + i);
+            bm.unpinPage(i, true);
+        }
+        assertEquals(10, bm.getDirtyPageCount());
+
+        // 2. The writer brings it down to at most 40% dirty without anyone evicting
+        PageWriter writer = bm.startBackgroundWriter(0.6, 10);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bm.getDirtyPageCount() > 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        bm.stopBackgroundWriter();
+
+        assertTrue(bm.getDirtyPageCount() <= 4, "Writer should have cleaned at least 60% of the pool");
+        assertTrue(writer.getPagesWritten() >= 6);
+
+        // 3. Lowest page ids go first, so the first six are already on disk
+        for (int i = 0; i < 6; i++) {
+            assertEquals(100 + i, hf.readPage(i).getInt(0));
+        }
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testBackgroundWriterRecordsFailedWrites() throws Exception {
+        AtomicBoolean diskFull = new AtomicBoolean();
+        HeapFile hf = new HeapFile(tempFile) {
+            @Override
+            public void writePage(Page p) {
+                if (diskFull.get()) {
+                    throw new RuntimeException("disk full");
+                }
+                super.writePage(p);
+            }
+        };
+        for (int i = 0; i < 4; i++) hf.allocatePage();
+        diskFull.set(true);
+        BufferManager bm = new BufferManager(hf, 4);
+        for (int i = 0; i < 4; i++) {
+            bm.fetchPage(i).setInt(0, i);
+            bm.unpinPage(i, true);
+        }
+
+        // The writer keeps going, and the failure is there to read
+        PageWriter writer = bm.startBackgroundWriter(1.0, 10);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getFailedRounds() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        bm.stopBackgroundWriter();
+
+        assertTrue(writer.getFailedRounds() >= 2, "The writer should have retried after a failure");
+        assertEquals("disk full", writer.getLastError().getMessage());
+        assertEquals(0, writer.getPagesWritten());
+        assertEquals(4, bm.getDirtyPageCount());
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testFailedEvictionLeavesThePoolUsable() throws Exception {
+        AtomicBoolean diskFull = new AtomicBoolean();
+        HeapFile hf = new HeapFile(tempFile) {
+            @Override
+            public void writePage(Page p) {
+                if (diskFull.get()) {
+                    throw new RuntimeException("disk full");
+                }
+                super.writePage(p);
+            }
+        };
+        for (int i = 0; i < 3; i++) hf.allocatePage();
+        BufferManager bm = new BufferManager(hf, 2);
+        for (int i = 0; i < 2; i++) {
+            bm.fetchPage(i).setInt(0, 10 + i);
+            bm.unpinPage(i, true);
+        }
+
+        // The miss on page 2 has to write a dirty victim, and can't
+        diskFull.set(true);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> bm.fetchPage(2));
+        assertEquals("disk full", e.getMessage());
+        assertFalse(bm.isCached(2));
+        assertEquals(2, bm.getCachedPageCount());
+        assertEquals(2, bm.getDirtyPageCount());
+
+        // Neither the victim nor the failed page is left stuck: a retry fails
+        // the same way, and both old pages are still there with their data
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Integer> retry = pool.submit(() -> {
+            assertThrows(RuntimeException.class, () -> bm.fetchPage(2));
+            int sum = 0;
+            for (int i = 0; i < 2; i++) {
+                sum += bm.fetchPage(i).getInt(0);
+                bm.unpinPage(i, false);
+            }
+            return sum;
+        });
+        assertEquals(21, (int) retry.get(5, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        // Once writes work again the miss goes through and nothing was lost
+        diskFull.set(false);
+        bm.fetchPage(2);
+        bm.unpinPage(2, false);
+        bm.flushAll();
+        assertEquals(10, hf.readPage(0).getInt(0));
+        assertEquals(11, hf.readPage(1).getInt(0));
+        try { hf.close(); } catch(Exception ex){}
+    }
+
+    @Test
+    public void testScanRingDoesNotEvictWorkingSet() {
+        HeapFile hf = new HeapFile(tempFile);
+        for (int i = 0; i < 200; i++) {
+            Page p = new Page(i);
+            p.setInt(0, i);
+            hf.writePage(p);
+        }
+        BufferManager bm = new BufferManager(hf, 20);
+
+        // 1. A hot working set of 10 pages
+        for (int i = 0; i < 10; i++) bm.getPage(i);
+
+        // 2. A full scan of the rest through a small ring with read-ahead
+        try (ScanRing ring = bm.newScanRing(4, 4)) {
+            for (int i = 10; i < 200; i++) {
+                Page p = bm.fetchPage(i, ring);
+                assertEquals(i, p.getInt(0));
+                bm.unpinPage(i, false);
+            }
+        }
+
+        // 3. The working set is untouched
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bm.isCached(i), "Hot page " + i + " was evicted by the scan");
+        }
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testReadAheadPrefetchesSequentialPages() throws Exception {
+        AtomicInteger prefetchReads = new AtomicInteger();
+        HeapFile hf = new HeapFile(tempFile) {
+            @Override
+            public Page readPage(int pageId) {
+                if (Thread.currentThread().getName().startsWith("jdb-prefetch")) {
+                    prefetchReads.incrementAndGet();
+                } else {
+                    // Make foreground reads slow, like a cold disk, so read-ahead gets ahead of them
+                    try { Thread.sleep(2); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                }
+                return super.readPage(pageId);
+            }
+        };
+        for (int i = 0; i < 64; i++) {
+            Page p = new Page(i);
+            p.setInt(0, i);
+            hf.writePage(p);
+        }
+
+        // 1. Pool-level detection: a few sequential misses start read-ahead
+        BufferManager bm = new BufferManager(hf, 64);
+        bm.setReadAheadPages(8);
+        for (int i = 0; i < 32; i++) {
+            assertEquals(i, bm.getPage(i).getInt(0));
+        }
+        assertTrue(prefetchReads.get() > 0, "Sequential misses should have triggered read-ahead");
+
+        // 2. An explicit hint loads the requested range in the background
+        bm.prefetch(40, 8);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bm.isCached(47) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(bm.isCached(40) && bm.isCached(47));
+        assertEquals(47, bm.getPage(47).getInt(0));
+        try { hf.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testFreedPagesAreReusedBlank() {
+        HeapFile hf = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(hf, 8);
+        for (int i = 0; i < 4; i++) bm.allocateNewPage();
+        Page p = bm.fetchPage(2);
+        p.setInt(100, 42);
+        bm.unpinPage(2, true);
+
+        bm.freePage(2);
+        bm.freePage(3);
+        assertEquals(3, bm.getFreeListHead());
+
+        // Last freed, first reused; the file doesn't grow and pages come back blank
+        assertEquals(3, bm.allocateNewPage());
+        assertEquals(2, bm.allocateNewPage());
+        assertEquals(0, bm.fetchPage(2).getInt(100));
+        bm.unpinPage(2, false);
+        assertEquals(BufferManager.NO_PAGE, bm.getFreeListHead());
+        assertEquals(4, bm.getNumPages());
+        assertEquals(4, bm.allocateNewPage());
+
+        // The chain lives in the pages: a restored head works after a restart
+        bm.freePage(1);
+        bm.freePage(4);
+        int head = bm.getFreeListHead();
+        bm.flushAll();
+        BufferManager reopened = new BufferManager(hf, 8);
+        reopened.setFreeListHead(head);
+        assertEquals(4, reopened.allocateNewPage());
+        assertEquals(1, reopened.allocateNewPage());
+        try { hf.close(); } catch(Exception e){}
+    }
+}
@@ -0,0 +1,149 @@
+package com.jdb.buffer;
+
+import com.jdb.metrics.BufferPoolSnapshot;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.Page;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+    private File dataFile = new File("pool_data_test.dat");
+    private File indexFile = new File("pool_index_test.dat");
+
+    @AfterEach
+    public void cleanup() {
+        if (dataFile.exists()) dataFile.delete();
+        if (indexFile.exists()) indexFile.delete();
+    }
+
+    @Test
+    public void testFilesShareOneBudget() {
+        HeapFile data = new HeapFile(dataFile);
+        HeapFile index = new HeapFile(indexFile);
+        for (int i = 0; i < 20; i++) {
+            Page d = new Page(i);
+            d.setInt(0, 1000 + i);
+            data.writePage(d);
+            Page x = new Page(i);
+            x.setInt(0, 2000 + i);
+            index.writePage(x);
+        }
+
+        // 10 pages worth of memory for both files
+        BufferPool pool = new BufferPool(10L * Page.PAGE_SIZE);
+        assertEquals(10, pool.getMaxPages());
+        BufferManager dataBm = new BufferManager(pool, data);
+        BufferManager indexBm = new BufferManager(pool, index);
+        assertNotEquals(dataBm.getFileId(), indexBm.getFileId());
+        assertEquals(dataBm.getFileId(), new BufferManager(pool, data).getFileId(), "Same file, same id");
+
+        // 1. Same page id in two files: two different cached pages
+        assertEquals(1000, dataBm.getPage(0).getInt(0));
+        assertEquals(2000, indexBm.getPage(0).getInt(0));
+
+        // 2. A data scan fills the pool...
+        for (int i = 0; i < 10; i++) {
+            dataBm.getPage(i);
+        }
+        assertTrue(dataBm.getCachedPageCount() >= 9);
+
+        // 3. ...then a lookup-heavy phase moves the memory over to the index
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 8; i++) {
+                assertEquals(2000 + i, indexBm.getPage(i).getInt(0));
+            }
+        }
+        assertEquals(8, indexBm.getCachedPageCount());
+        assertEquals(2, dataBm.getCachedPageCount());
+        assertEquals(10, pool.getCachedPageCount());
+
+        try { data.close(); index.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testFlushIsPerFileAndWritesToTheRightFile() {
+        HeapFile data = new HeapFile(dataFile);
+        HeapFile index = new HeapFile(indexFile);
+        BufferPool pool = new BufferPool(4L * Page.PAGE_SIZE);
+        BufferManager dataBm = new BufferManager(pool, data);
+        BufferManager indexBm = new BufferManager(pool, index);
+        dataBm.allocateNewPage();
+        indexBm.allocateNewPage();
+
+        Page d = dataBm.fetchPage(0);
+        d.setInt(0, 7);
+        dataBm.unpinPage(0, true);
+        Page x = indexBm.fetchPage(0);
+        x.setInt(0, 9);
+        indexBm.unpinPage(0, true);
+        assertEquals(2, pool.getDirtyPageCount());
+
+        // Flushing the index leaves the data file's page cached and dirty
+        indexBm.flushAll();
+        assertEquals(9, index.readPage(0).getInt(0));
+        assertEquals(0, data.readPage(0).getInt(0));
+        assertTrue(dataBm.isCached(0));
+        assertFalse(indexBm.isCached(0));
+        assertEquals(1, dataBm.getDirtyPageCount());
+
+        pool.flushAll();
+        assertEquals(7, data.readPage(0).getInt(0));
+        assertEquals(0, pool.getCachedPageCount());
+
+        try { data.close(); index.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testMetricsCountHitsMissesEvictionsAndIo() throws Exception {
+        HeapFile data = new HeapFile(dataFile);
+        for (int i = 0; i < 4; i++) {
+            data.writePage(new Page(i));
+        }
+        BufferPool pool = new BufferPool(2L * Page.PAGE_SIZE);
+        BufferManager bm = new BufferManager(pool, data);
+
+        bm.getPage(0);                 // miss
+        bm.getPage(0);                 // hit
+        bm.fetchPage(1).setInt(0, 5);  // miss
+        bm.unpinPage(1, true);
+        bm.fetchPage(2).setInt(0, 6);  // miss, evicts clean page 0
+        bm.unpinPage(2, true);
+        bm.getPage(3);                 // miss, only dirty pages left: evicts page 1
+
+        BufferPoolSnapshot s = pool.snapshot();
+        assertEquals(1, s.hits);
+        assertEquals(4, s.misses);
+        assertEquals(0.2, s.getHitRatio(), 1e-9);
+        assertEquals(1, s.cleanEvictions);
+        assertEquals(1, s.dirtyEvictions);
+        assertEquals(1, s.writeBacks);
+        assertEquals(2, s.cachedPages);
+        assertEquals(2, s.capacityPages);
+
+        // 4 setup writes + 1 write-back; 4 page reads, all timed
+        assertEquals(5, data.getIoStats().writeSnapshot().count);
+        assertEquals(4, data.getIoStats().readSnapshot().count);
+
+        // The same numbers over JMX
+        pool.registerMBean("pool-test");
+        data.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(4L, server.getAttribute(new ObjectName("com.jdb:type=BufferPool,name=\"pool-test\""), "Misses"));
+        assertEquals(1L, server.getAttribute(new ObjectName("com.jdb:type=BufferPool,name=\"pool-test\""), "DirtyEvictions"));
+        assertEquals(4L, server.getAttribute(new ObjectName("com.jdb:type=HeapFile,name=\"" + dataFile.getName() + "\""), "PageReads"));
+
+        try { data.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testBudgetMustHoldAPage() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(Page.PAGE_SIZE - 1));
+        assertEquals(2, new BufferPool(3L * Page.PAGE_SIZE - 1).getMaxPages());
+    }
+}
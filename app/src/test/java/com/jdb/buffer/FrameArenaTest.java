@@ -0,0 +1,36 @@
+package com.jdb.buffer;
+
+import com.jdb.storage.Page;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameArenaTest {
+
+    @Test
+    public void testAcquireReleaseAndIsolation() {
+        FrameArena arena = new FrameArena(3);
+        assertEquals(3, arena.getFreeFrames());
+
+        int a = arena.acquire();
+        int b = arena.acquire();
+        int c = arena.acquire();
+        assertEquals(-1, arena.acquire(), "Arena is exhausted after 3 frames");
+
+        // Frames are independent slices of direct memory
+        ByteBuffer fa = arena.frame(a);
+        ByteBuffer fb = arena.frame(b);
+        assertTrue(fa.isDirect());
+        assertEquals(Page.PAGE_SIZE, fa.capacity());
+        fa.putInt(0, 42);
+        fb.putInt(0, 43);
+        assertEquals(42, arena.frame(a).getInt(0));
+        assertEquals(43, arena.frame(b).getInt(0));
+
+        // Released frames come back
+        arena.release(c);
+        assertEquals(1, arena.getFreeFrames());
+        assertEquals(c, arena.acquire());
+    }
+}
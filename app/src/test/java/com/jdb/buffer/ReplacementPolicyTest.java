@@ -0,0 +1,85 @@
+package com.jdb.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplacementPolicyTest {
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsedUnpinned() {
+        ReplacementPolicy<Integer> lru = new LruPolicy<>();
+        lru.recordInsert(1);
+        lru.recordInsert(2);
+        lru.recordInsert(3);
+        lru.recordAccess(1);
+
+        // 2 is the oldest, but pretend it is pinned
+        assertEquals(3, lru.evict(k -> k != 2));
+        assertEquals(2, lru.evict(k -> true));
+        assertEquals(1, lru.size());
+    }
+
+    @Test
+    public void testClockGivesReferencedPagesASecondChance() {
+        ReplacementPolicy<Integer> clock = new ClockPolicy<>();
+        clock.recordInsert(1);
+        clock.recordInsert(2);
+        clock.recordInsert(3);
+        clock.recordAccess(1);
+
+        assertTrue(clock.isAccessLockFree());
+        assertEquals(2, clock.evict(k -> true)); // 1 was referenced, so the hand skips it once
+        clock.remove(3);
+        assertEquals(1, clock.size());
+        assertEquals(1, clock.evict(k -> true));
+        assertNull(clock.evict(k -> true));
+    }
+
+    @Test
+    public void testBoundedEvictOnlyLooksAtTheColdEnd() {
+        List<ReplacementPolicy<Integer>> policies = List.of(new LruPolicy<>(), new ClockPolicy<>(), new TwoQueuePolicy<>());
+        for (ReplacementPolicy<Integer> policy : policies) {
+            for (int k = 1; k <= 10; k++) policy.recordInsert(k);
+            policy.recordAccess(3);
+
+            // Only pages 1, 2 and 4 are cold enough to be asked about (3 was just used)
+            List<Integer> asked = new ArrayList<>();
+            assertNull(policy.evict(k -> {
+                asked.add(k);
+                return false;
+            }, 3));
+            assertFalse(asked.contains(3), policy.getClass().getSimpleName());
+            assertEquals(3, asked.size());
+            assertEquals(10, policy.size());
+
+            // Giving up changed nothing: a normal evict still starts at the cold end
+            assertEquals(2, policy.evict(k -> k == 2, 3));
+            assertEquals(1, policy.evict(k -> true));
+        }
+    }
+
+    @Test
+    public void testTwoQueueProtectsReusedPagesFromScans() {
+        ReplacementPolicy<Integer> twoQ = new TwoQueuePolicy<>();
+
+        // 1. Page 1 is loaded, evicted, then requested again: it is promoted to Am
+        twoQ.recordInsert(1);
+        assertEquals(1, twoQ.evict(k -> true));
+        twoQ.recordInsert(1);
+
+        // 2. A scan streams through a 4-page pool
+        int resident = 1;
+        for (int pageId = 100; pageId < 200; pageId++) {
+            if (resident >= 4) {
+                assertNotEquals(1, (int) twoQ.evict(k -> true), "The hot page must survive the scan");
+                resident--;
+            }
+            twoQ.recordInsert(pageId);
+            resident++;
+        }
+        assertEquals(4, twoQ.size());
+    }
+}
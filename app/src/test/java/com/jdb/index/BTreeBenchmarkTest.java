@@ -0,0 +1,420 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.HeapPage;
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+import com.jdb.storage.Tuple;
+import com.jdb.storage.TupleDesc;
+import com.jdb.storage.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Point lookups per second for trees of height 1, 2 and 3, with every page
+ * cached, so the numbers measure node search and not I/O.
+ */
+public class BTreeBenchmarkTest {
+    private File tempFile = new File("btree_bench.dat");
+    private File lsmDir = new File("lsm_bench");
+
+    private static final int LOOKUPS = 200_000;
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+        File[] runs = lsmDir.listFiles();
+        if (runs != null) {
+            for (File f : runs) f.delete();
+        }
+        lsmDir.delete();
+    }
+
+    @Test
+    public void testLookupsPerSecondByHeight() {
+        // Sequential inserts fill leaves (~340 keys) and internal nodes (~510 children)
+        int[] sizes = {300, 20_000, 200_000};
+        for (int expectedHeight = 1; expectedHeight <= sizes.length; expectedHeight++) {
+            int n = sizes[expectedHeight - 1];
+            if (tempFile.exists()) tempFile.delete();
+            HeapFile disk = new HeapFile(tempFile);
+            BufferManager bm = new BufferManager(disk, 4096);
+            BTreeFile btree = new BTreeFile(bm, 0);
+            for (int k = 0; k < n; k++) {
+                btree.insert(k, new RecordId(k, 0));
+            }
+            assertEquals(expectedHeight, btree.getHeight());
+
+            Random random = new Random(7);
+            long found = 0;
+            for (int i = 0; i < LOOKUPS / 4; i++) { // Warm up
+                if (btree.find(random.nextInt(n)) != null) found++;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (btree.find(random.nextInt(n)) != null) found++;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("B+Tree height %d (%d keys): %.0f lookups/s%n",
+                    expectedHeight, n, LOOKUPS * 1e9 / elapsed);
+            assertEquals(LOOKUPS + LOOKUPS / 4, found);
+            try { disk.close(); } catch(Exception e){}
+        }
+    }
+
+    @Test
+    public void testBulkLoadVersusInserts() {
+        int n = 200_000;
+
+        // 1. One insert per key, in random order (ascending inserts take the
+        //    append path and come out nearly as dense as a bulk load)
+        List<Integer> order = new ArrayList<>();
+        for (int k = 0; k < n; k++) order.add(k);
+        Collections.shuffle(order, new Random(2));
+        if (tempFile.exists()) tempFile.delete();
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        long start = System.nanoTime();
+        BTreeFile inserted = new BTreeFile(bm, 0);
+        for (int k : order) {
+            inserted.insert(k, new RecordId(k, 0));
+        }
+        bm.flushAll();
+        long insertNanos = System.nanoTime() - start;
+        int insertPages = disk.getNumPages();
+        try { disk.close(); } catch(Exception e){}
+
+        // 2. Bottom-up from the same sorted stream
+        tempFile.delete();
+        disk = new HeapFile(tempFile);
+        bm = new BufferManager(disk, 256);
+        start = System.nanoTime();
+        BTreeFile loaded = new BTreeBulkLoader(bm, 0, 1.0).load(BTreeBulkLoaderTest.sortedEntries(n, 1));
+        bm.flushAll();
+        long loadNanos = System.nanoTime() - start;
+        int loadPages = disk.getNumPages();
+
+        System.out.printf("Build %d keys: inserts %.0f ms (%d pages), bulk load %.0f ms (%d pages), %.1fx faster%n",
+                n, insertNanos / 1e6, insertPages, loadNanos / 1e6, loadPages, (double) insertNanos / loadNanos);
+        assertEquals(n - 1, loaded.find(n - 1).pageId);
+        assertTrue(loadPages * 3 < insertPages * 2, "Bulk-loaded tree should be much denser");
+        assertTrue(loadNanos < insertNanos, "Bulk load should beat one insert per key");
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testMixedLoadScalesWithThreads() throws Exception {
+        // 95% lookups, 5% inserts of new keys, on 1, 2, 4, ... threads (up to the core count)
+        int n = 200_000;
+        int opsPerThread = 200_000;
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            if (tempFile.exists()) tempFile.delete();
+            HeapFile disk = new HeapFile(tempFile);
+            BufferManager bm = new BufferManager(disk, 4096);
+            BTreeFile btree = new BTreeBulkLoader(bm, 0, 0.9).load(BTreeBulkLoaderTest.sortedEntries(n, 2));
+            AtomicInteger nextKey = new AtomicInteger();
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Long>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                results.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    long found = 0;
+                    for (int i = 0; i < opsPerThread; i++) {
+                        if (random.nextInt(100) < 5) {
+                            int key = 2 * nextKey.getAndIncrement() + 1; // Odd keys are new
+                            btree.insert(key, new RecordId(key, 0));
+                        } else if (btree.find(2 * random.nextInt(n)) != null) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }));
+            }
+            long found = 0;
+            for (Future<Long> f : results) found += f.get();
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+
+            double opsPerSecond = (double) threads * opsPerThread * 1e9 / elapsed;
+            if (threads == 1) base = opsPerSecond;
+            System.out.printf("B+Tree 95/5 mixed load, %d threads: %.0f ops/s (%.1fx)%n",
+                    threads, opsPerSecond, opsPerSecond / base);
+            assertEquals((long) threads * opsPerThread - nextKey.get(), found);
+            try { disk.close(); } catch(Exception e){}
+        }
+    }
+
+    @Test
+    public void testBatchedVersusSingleKeyCalls() {
+        // Ingest 200k random keys, then look them all up, in batches of 10k vs one call per key
+        int n = 200_000;
+        int batchSize = 10_000;
+        int[] keys = new int[n];
+        Random random = new Random(13);
+        for (int i = 0; i < n; i++) keys[i] = random.nextInt();
+        RecordId rid = new RecordId(1, 1);
+
+        long[] insertNanos = new long[2];
+        BTreeFile btree = null;
+        HeapFile disk = null;
+        for (int batched = 0; batched < 2; batched++) {
+            if (disk != null) {
+                try { disk.close(); } catch(Exception e){}
+            }
+            if (tempFile.exists()) tempFile.delete();
+            disk = new HeapFile(tempFile);
+            btree = new BTreeFile(new BufferManager(disk, 4096), 0);
+
+            long start = System.nanoTime();
+            for (int from = 0; from < n; from += batchSize) {
+                if (batched == 1) {
+                    RecordId[] rids = new RecordId[batchSize];
+                    Arrays.fill(rids, rid);
+                    btree.insertBatch(Arrays.copyOfRange(keys, from, from + batchSize), rids);
+                } else {
+                    for (int i = from; i < from + batchSize; i++) btree.insert(keys[i], rid);
+                }
+            }
+            insertNanos[batched] = System.nanoTime() - start;
+        }
+
+        // Lookups on the same tree: one warm-up pass each, then the timed pass
+        long[] findNanos = new long[2];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int batched = 0; batched < 2; batched++) {
+                long found = 0;
+                long start = System.nanoTime();
+                for (int from = 0; from < n; from += batchSize) {
+                    if (batched == 1) {
+                        for (RecordId r : btree.findBatch(Arrays.copyOfRange(keys, from, from + batchSize))) {
+                            if (r != null) found++;
+                        }
+                    } else {
+                        for (int i = from; i < from + batchSize; i++) {
+                            if (btree.find(keys[i]) != null) found++;
+                        }
+                    }
+                }
+                findNanos[batched] = System.nanoTime() - start;
+                assertEquals(n, found);
+            }
+        }
+
+        System.out.printf("Batches of %d: insert %.0f ms -> %.0f ms (%.1fx), find %.0f ms -> %.0f ms (%.1fx)%n",
+                batchSize, insertNanos[0] / 1e6, insertNanos[1] / 1e6, (double) insertNanos[0] / insertNanos[1],
+                findNanos[0] / 1e6, findNanos[1] / 1e6, (double) findNanos[0] / findNanos[1]);
+        assertTrue(findNanos[1] < findNanos[0], "Batched lookups should share descents");
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testRandomIngestBTreeVersusLsm() {
+        // Random keys into a pool much smaller than the tree: every B+Tree insert
+        // lands on a page that has likely been evicted (a read and, later, a write)
+        int n = 200_000;
+        int[] keys = new int[n];
+        Random random = new Random(21);
+        for (int i = 0; i < n; i++) keys[i] = random.nextInt();
+
+        if (tempFile.exists()) tempFile.delete();
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            btree.insert(keys[i], new RecordId(i, 0));
+        }
+        bm.flushAll();
+        long btreeNanos = System.nanoTime() - start;
+        long btreeWrites = disk.getIoStats().getPageWrites();
+
+        // Same keys into the LSM index: sorted runs written front to back, merged in the background
+        LsmIndex lsm = LsmIndex.open(lsmDir, 16 * 1024, 4);
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            lsm.insert(keys[i], new RecordId(i, 0));
+        }
+        lsm.flush();
+        long lsmNanos = System.nanoTime() - start;
+
+        System.out.printf("Random ingest of %d keys: B+Tree %.0f ms (%d page writes), LSM %.0f ms, %.1fx faster%n",
+                n, btreeNanos / 1e6, btreeWrites, lsmNanos / 1e6, (double) btreeNanos / lsmNanos);
+        for (int i = 0; i < n; i += 997) {
+            assertNotNull(lsm.find(keys[i]));
+            assertNotNull(btree.find(keys[i]));
+        }
+        assertTrue(lsmNanos < btreeNanos, "LSM ingest should beat in-place B+Tree inserts");
+        lsm.close();
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testHashVersusBTreeLookups() {
+        // Exact-match lookups on 200k sequential ids, every page cached
+        int n = 200_000;
+        if (tempFile.exists()) tempFile.delete();
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 4096);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        File hashFile = new File("hash_bench.dat");
+        HeapFile hashDisk = new HeapFile(hashFile);
+        BufferManager hashBm = new BufferManager(hashDisk, 4096);
+        ExtendibleHashFile hash = new ExtendibleHashFile(hashBm, 0);
+        for (int k = 0; k < n; k++) {
+            btree.insert(k, new RecordId(k, 0));
+            hash.insert(k, new RecordId(k, 0));
+        }
+
+        long btreeNanos = Long.MAX_VALUE;
+        long hashNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) { // The first round warms up
+            Random random = new Random(13);
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                assertNotNull(btree.find(random.nextInt(n)));
+            }
+            btreeNanos = Math.min(btreeNanos, System.nanoTime() - start);
+            random = new Random(13);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                assertNotNull(hash.find(random.nextInt(n)));
+            }
+            hashNanos = Math.min(hashNanos, System.nanoTime() - start);
+        }
+
+        System.out.printf("Point lookups, %d keys: B+Tree (height %d) %.0f/s, extendible hash (depth %d) %.0f/s%n",
+                n, btree.getHeight(), LOOKUPS * 1e9 / btreeNanos, hash.getGlobalDepth(), LOOKUPS * 1e9 / hashNanos);
+        assertTrue(hashNanos < btreeNanos, "One bucket read should beat a root-to-leaf descent");
+        try { disk.close(); hashDisk.close(); } catch(Exception e){}
+        hashFile.delete();
+    }
+
+    @Test
+    public void testSwizzledUpperLevelsVersusPageTable() {
+        // Height 3, every page cached: the two inner levels either go through
+        // the page table on every lookup or are followed as swizzled references
+        int n = 200_000;
+        if (tempFile.exists()) tempFile.delete();
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 4096);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        for (int k = 0; k < n; k++) {
+            btree.insert(k, new RecordId(k, 0));
+        }
+        assertEquals(3, btree.getHeight());
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < 6; round++) { // Alternate, so both get warm; keep each one's best
+            int mode = round % 2;
+            btree.setPinnedLevels(mode == 0 ? 0 : 2);
+            Random random = new Random(17);
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                assertNotNull(btree.find(random.nextInt(n)));
+            }
+            best[mode] = Math.min(best[mode], System.nanoTime() - start);
+        }
+
+        System.out.printf("Height-3 lookups: page table %.0f ns, swizzled top 2 levels (%d nodes) %.0f ns, %.1fx faster%n",
+                (double) best[0] / LOOKUPS, btree.getSwizzledNodeCount(), (double) best[1] / LOOKUPS, (double) best[0] / best[1]);
+        assertTrue(best[1] < best[0], "Swizzled lookups should skip work, not add it");
+        btree.setPinnedLevels(0);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testCoveringIndexVersusHeapFetch() {
+        // The GUI's "search by ID": index hit, then the row's name and age.
+        // Either the heap page is read for them, or the covering leaf has them.
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.STRING, "name");
+        schema.addField(Type.INT, "age");
+        KeyCodec idCodec = KeyCodec.forColumns(schema, 0);
+        KeyCodec includedCodec = KeyCodec.forColumns(schema, 1, 2);
+
+        int n = 50_000;
+        if (tempFile.exists()) tempFile.delete();
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 4096);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        File coveringFile = new File("covering_bench.dat");
+        HeapFile coveringDisk = new HeapFile(coveringFile);
+        BufferManager coveringBm = new BufferManager(coveringDisk, 4096);
+        CoveringIndexFile covering = new CoveringIndexFile(coveringBm, 0);
+        File heapDataFile = new File("covering_bench_heap.dat");
+        HeapFile heap = new HeapFile(heapDataFile);
+
+        int pageId = 0;
+        HeapPage heapPage = new HeapPage(new Page(pageId));
+        for (int id = 0; id < n; id++) {
+            Tuple t = new Tuple(schema);
+            t.setField(0, id);
+            t.setField(1, "customer-" + id);
+            t.setField(2, 18 + id % 60);
+            int slot;
+            try {
+                slot = heapPage.insertTuple(t);
+            } catch (RuntimeException full) {
+                heap.writePage(heapPage.getPage());
+                heapPage = new HeapPage(new Page(++pageId));
+                slot = heapPage.insertTuple(t);
+            }
+            RecordId rid = new RecordId(pageId, slot);
+            btree.insert(id, rid);
+            covering.insert(idCodec.encode(t), rid, includedCodec.encode(t));
+        }
+        heap.writePage(heapPage.getPage());
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] heapReads = new long[2];
+        int lookups = LOOKUPS / 4;
+        for (int round = 0; round < 6; round++) { // Alternate, so both get warm; keep each one's best
+            int mode = round % 2;
+            Random random = new Random(19);
+            long reads = heap.getIoStats().getPageReads();
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int id = random.nextInt(n);
+                Object age;
+                if (mode == 0) {
+                    RecordId rid = btree.find(id);
+                    age = new HeapPage(heap.readPage(rid.pageId)).getTuple(rid.slotNumber, schema).getField(2);
+                } else {
+                    age = includedCodec.decode(covering.lookup(idCodec.encode(id)).included)[1];
+                }
+                assertEquals(18 + id % 60, age);
+            }
+            best[mode] = Math.min(best[mode], System.nanoTime() - start);
+            heapReads[mode] = heap.getIoStats().getPageReads() - reads;
+        }
+
+        System.out.printf("ID lookups with name and age: index + heap page %.0f ns (%d heap reads), covering index %.0f ns (%d heap reads)%n",
+                (double) best[0] / lookups, heapReads[0], (double) best[1] / lookups, heapReads[1]);
+        assertEquals(lookups, heapReads[0]);
+        assertEquals(0, heapReads[1], "A covered query should never touch the heap");
+        assertTrue(best[1] < best[0], "Skipping the heap read should be faster");
+        try { disk.close(); coveringDisk.close(); heap.close(); } catch(Exception e){}
+        coveringFile.delete();
+        heapDataFile.delete();
+    }
+}
@@ -0,0 +1,149 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BTreeBulkLoaderTest {
+    private File tempFile = new File("btree_bulk.dat");
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    @Test
+    public void testLoadBuildsASearchableLinkedTree() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 32);
+
+        // Keys 0, 3, 6, ... (200k of them): ~650 leaves at 90%, so two internal levels
+        int n = 200_000;
+        BTreeFile btree = new BTreeBulkLoader(bm, 0, 0.9).load(sortedEntries(n, 3));
+        assertEquals(3, btree.getHeight());
+
+        // Point lookups
+        for (int i = 0; i < n; i += 7) {
+            RecordId rid = btree.find(i * 3);
+            assertNotNull(rid, "Lost key " + (i * 3));
+            assertEquals(i, rid.pageId);
+        }
+        assertNull(btree.find(1));
+
+        // The leaf chain covers every key, in order, both ways
+        int count = 0;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (cursor.hasNext()) {
+                assertEquals(count * 3, cursor.next().key);
+                count++;
+            }
+        }
+        assertEquals(n, count);
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE, true)) {
+            assertEquals((n - 1) * 3, cursor.next().key);
+        }
+
+        // Regular inserts keep working on a bulk-loaded tree
+        btree.insert(1, new RecordId(-1, 1));
+        assertEquals(-1, btree.find(1).pageId);
+
+        // And it reopens from its header page
+        bm.flushAll();
+        BTreeFile reopened = new BTreeFile(new BufferManager(disk, 32), 0);
+        assertEquals(btree.getRootPageId(), reopened.getRootPageId());
+        assertEquals(n - 1, reopened.find((n - 1) * 3).pageId);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testFillFactorControlsDensity() {
+        int n = 50_000;
+        int[] pages = new int[2];
+        double[] fills = {1.0, 0.5};
+        for (int i = 0; i < fills.length; i++) {
+            if (tempFile.exists()) tempFile.delete();
+            HeapFile disk = new HeapFile(tempFile);
+            BufferManager bm = new BufferManager(disk, 32);
+            new BTreeBulkLoader(bm, 0, fills[i]).load(sortedEntries(n, 1));
+            bm.flushAll();
+            pages[i] = disk.getNumPages();
+            try { disk.close(); } catch(Exception e){}
+        }
+        // 50k keys / 339 per full leaf = 148 leaves (+ a root and the header)
+        assertEquals(148 + 2, pages[0]);
+        assertTrue(pages[1] >= 2 * 148, "Half-full leaves need twice the pages: " + pages[1]);
+    }
+
+    @Test
+    public void testRejectsUnsortedInputAndUsedFiles() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 16);
+        List<IndexEntry> unsorted = new ArrayList<>();
+        unsorted.add(new IndexEntry(5, new RecordId(0, 0)));
+        unsorted.add(new IndexEntry(4, new RecordId(0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> new BTreeBulkLoader(bm, 0, 1.0).load(unsorted.iterator()));
+        assertThrows(IllegalArgumentException.class, () -> new BTreeBulkLoader(bm, 0, 0.0));
+
+        if (tempFile.exists()) tempFile.delete();
+        HeapFile disk2 = new HeapFile(tempFile);
+        BufferManager bm2 = new BufferManager(disk2, 16);
+        new BTreeFile(bm2, 0).insert(1, new RecordId(1, 1));
+        assertThrows(IllegalStateException.class, () -> new BTreeBulkLoader(bm2, 0, 1.0).load(sortedEntries(10, 1)));
+        try { disk.close(); disk2.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testRejectedLoadReleasesItsOpenNodes() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 16);
+
+        // Enough keys to open internal levels before the out-of-order one shows up
+        Iterator<IndexEntry> run = sortedEntries(100_000, 2);
+        Iterator<IndexEntry> unsorted = new Iterator<IndexEntry>() {
+            private boolean tailSent = false;
+
+            @Override
+            public boolean hasNext() {
+                return run.hasNext() || !tailSent;
+            }
+
+            @Override
+            public IndexEntry next() {
+                if (run.hasNext()) return run.next();
+                tailSent = true;
+                return new IndexEntry(1, new RecordId(0, 0));
+            }
+        };
+        assertThrows(IllegalArgumentException.class, () -> new BTreeBulkLoader(bm, 0, 1.0).load(unsorted));
+        for (int i = 0; i < disk.getNumPages(); i++) {
+            assertFalse(bm.isPinned(i), "Page " + i + " still pinned after a rejected load");
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    static Iterator<IndexEntry> sortedEntries(int n, int step) {
+        return new Iterator<IndexEntry>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            @Override
+            public IndexEntry next() {
+                IndexEntry e = new IndexEntry(i * step, new RecordId(i, 0));
+                i++;
+                return e;
+            }
+        };
+    }
+}
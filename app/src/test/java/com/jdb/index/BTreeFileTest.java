@@ -8,6 +8,14 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class BTreeFileTest {
@@ -54,4 +62,656 @@ public class BTreeFileTest {
         // Verify 200
         assertEquals(9, btreeReader.find(200).pageId);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDeepTreeSplitsInternalNodesAndReopens() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        assertEquals(1, btree.getHeight());
+
+        // Enough random keys for more leaves than one internal node can point to
+        int n = 200_000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) keys.add(i);
+        Collections.shuffle(keys, new Random(42));
+        for (int k : keys) {
+            btree.insert(k, new RecordId(k / 100, k % 100));
+        }
+        assertTrue(btree.getHeight() >= 3, "Internal nodes must have split, height=" + btree.getHeight());
+        bm.flushAll();
+
+        // Reopen through a fresh pool: the root comes from the header page
+        BufferManager bm2 = new BufferManager(disk, 64);
+        BTreeFile reopened = new BTreeFile(bm2, 0);
+        assertEquals(btree.getRootPageId(), reopened.getRootPageId());
+        assertEquals(btree.getHeight(), reopened.getHeight());
+        for (int k = 0; k < n; k++) {
+            RecordId rid = reopened.find(k);
+            assertNotNull(rid, "Lost key " + k);
+            assertEquals(k / 100, rid.pageId);
+            assertEquals(k % 100, rid.slotNumber);
+        }
+        assertNull(reopened.find(n));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testOldRootOnPageZeroIsMigrated() {
+        // An index written before the header page existed: the root leaf is page 0,
+        // in the version 1 leaf layout ([type][count][max] then [key][pageId][slot]...)
+        HeapFile disk = new HeapFile(tempFile);
+        Page p0 = new Page(0);
+        p0.setInt(0, BTreePage.TYPE_LEAF);
+        p0.setInt(4, 2);
+        p0.setInt(8, 340);
+        int[][] entries = {{3, 4, 5}, {7, 1, 2}};
+        for (int i = 0; i < entries.length; i++) {
+            for (int j = 0; j < 3; j++) {
+                p0.setInt(12 + i * 12 + j * 4, entries[i][j]);
+            }
+        }
+        disk.writePage(p0);
+
+        BufferManager bm = new BufferManager(disk, 10);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        assertTrue(btree.wasUpgraded());
+        assertNotEquals(0, btree.getRootPageId());
+        assertEquals(1, btree.getHeight());
+        assertEquals(2, btree.find(7).slotNumber);
+        assertEquals(4, btree.find(3).pageId);
+        bm.flushAll();
+
+        BTreeMetaPage meta = new BTreeMetaPage(disk.readPage(0));
+        assertTrue(meta.isValid());
+        assertEquals(BTreeMetaPage.VERSION, meta.getVersion());
+        assertFalse(new BTreeFile(new BufferManager(disk, 10), 0).wasUpgraded());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testRangeScanBothDirectionsPinsOneLeaf() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 16);
+        BTreeFile btree = new BTreeFile(bm, 0);
+
+        // Even keys 0..19998 in random order: ~60+ leaves
+        List<Integer> keys = new ArrayList<>();
+        for (int k = 0; k < 20_000; k += 2) keys.add(k);
+        Collections.shuffle(keys, new Random(1));
+        for (int k : keys) {
+            btree.insert(k, new RecordId(k, 1));
+        }
+
+        // 1. Ascending BETWEEN 101 AND 5001 -> 102, 104, ..., 5000
+        int expected = 102;
+        int maxPinned = 0;
+        try (BTreeCursor cursor = btree.scan(101, 5001)) {
+            while (cursor.hasNext()) {
+                IndexEntry e = cursor.next();
+                assertEquals(expected, e.key);
+                assertEquals(expected, e.rid.pageId);
+                expected += 2;
+                maxPinned = Math.max(maxPinned, countPinned(bm, disk));
+            }
+        }
+        assertEquals(5002, expected);
+        assertEquals(1, maxPinned, "The cursor pins exactly one leaf at a time");
+        assertEquals(0, countPinned(bm, disk));
+
+        // 2. Descending over the whole key space
+        expected = 19998;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE, true)) {
+            while (cursor.hasNext()) {
+                assertEquals(expected, cursor.next().key);
+                expected -= 2;
+            }
+        }
+        assertEquals(-2, expected);
+
+        // 3. Empty ranges, and stopping early releases the pin
+        assertFalse(btree.scan(3, 3).hasNext());
+        assertFalse(btree.scan(10, 5).hasNext());
+        BTreeCursor early = btree.scan(0, 20_000);
+        assertEquals(0, early.next().key);
+        early.close();
+        assertEquals(0, countPinned(bm, disk));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testCursorResumesInsideARunOfDuplicates() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        int copies = 1000; // Several leaves of the same key
+        for (int i = 0; i < copies; i++) {
+            btree.insert(5, new RecordId(i, 0));
+        }
+
+        // 1. Ascending: stop partway through the run, change its leaf, split more off the end, go on
+        boolean[] seen = new boolean[copies + 500];
+        int count = 0;
+        try (BTreeCursor cursor = btree.scan(0, 5)) {
+            for (; count < 10; count++) {
+                seen[cursor.next().rid.pageId] = true;
+            }
+            btree.insert(7, new RecordId(-1, 0));
+            for (int i = copies; i < copies + 500; i++) {
+                btree.insert(5, new RecordId(i, 0)); // After the run: still returned
+            }
+            while (cursor.hasNext()) {
+                int i = cursor.next().rid.pageId;
+                assertFalse(seen[i], "Entry " + i + " returned twice");
+                seen[i] = true;
+                count++;
+            }
+        }
+        assertEquals(copies + 500, count);
+
+        // 2. Descending: the run is read from its end, and a key below it shows up
+        seen = new boolean[copies + 500];
+        count = 0;
+        boolean sawLower = false;
+        try (BTreeCursor cursor = btree.scan(0, 6, true)) {
+            for (; count < 10; count++) {
+                seen[cursor.next().rid.pageId] = true;
+            }
+            btree.insert(5, new RecordId(-1, 0)); // Lands after the place we've reached: not returned
+            btree.insert(3, new RecordId(-2, 0));
+            while (cursor.hasNext()) {
+                IndexEntry e = cursor.next();
+                if (e.key == 3) {
+                    sawLower = true;
+                } else {
+                    assertFalse(e.rid.pageId < 0, "Entry inserted after the scan passed it");
+                    assertFalse(seen[e.rid.pageId], "Entry " + e.rid.pageId + " returned twice");
+                    seen[e.rid.pageId] = true;
+                    count++;
+                }
+            }
+        }
+        assertTrue(sawLower);
+        assertEquals(copies + 500, count);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testCursorResumesAfterItsLeafSplitsSeveralTimes() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        for (int k = 0; k < 2000; k++) {
+            btree.insert(k * 1000, new RecordId(k, 0));
+        }
+
+        // Stop at a key, then fill in the gap just below it: its leaf splits it
+        // off, and the new right half splits again and again, so the last key
+        // returned ends up several leaves on, behind keys the scan already passed
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            for (int k = 0; k <= 500; k++) {
+                assertEquals(k * 1000, cursor.next().key);
+            }
+            for (int key = 499_001; key < 500_000; key++) {
+                btree.insert(key, new RecordId(key, 1));
+            }
+            for (int k = 501; k < 2000; k++) {
+                assertTrue(cursor.hasNext(), "Scan ended before " + k * 1000);
+                assertEquals(k * 1000, cursor.next().key);
+            }
+            assertFalse(cursor.hasNext());
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testDuplicatesSplitAcrossLeavesStayFindable() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        int copies = 400; // Two leaves, split by a separator equal to the key
+        for (int i = 0; i < copies; i++) {
+            btree.insert(5, new RecordId(i, 0));
+        }
+
+        // Deletes take the right leaf's copies first, and with a reader on the
+        // left leaf it is never merged into: once the right leaf is empty, the
+        // copies left are all to the left of the separator the descent follows
+        try (BTreeCursor reader = btree.scan(5, 5)) {
+            assertEquals(5, reader.next().key);
+            for (int i = 0; i < copies; i++) {
+                assertNotNull(btree.find(5), "Lost the key with " + (copies - i) + " copies left");
+                assertNotNull(btree.findBatch(new int[]{5})[0]);
+                assertTrue(btree.delete(5), "Delete " + i + " found no copy");
+            }
+        }
+        assertNull(btree.find(5));
+        assertNull(btree.findBatch(new int[]{5})[0]);
+        assertFalse(btree.delete(5));
+        assertFalse(btree.scan(5, 5).hasNext());
+
+        btree.insert(5, new RecordId(-1, 0));
+        assertEquals(-1, btree.find(5).pageId);
+        assertEquals(0, countPinned(bm, disk));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testConcurrentInsertsLookupsAndScans() throws Exception {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 128); // Small: splits race with evictions too
+        BTreeFile btree = new BTreeFile(bm, 0);
+        for (int k = 1; k <= 20_000; k++) {
+            btree.insert(-k, new RecordId(k, 0)); // Keys every reader must always see
+        }
+
+        int writers = 4;
+        int perWriter = 25_000;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 3);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            final int first = t;
+            results.add(pool.submit(() -> {
+                // Interleaved keys, so the writers keep splitting the same leaves
+                for (int n = 0; n < perWriter; n++) {
+                    int key = n * writers + first;
+                    btree.insert(key, new RecordId(key, 1));
+                }
+                return true;
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                for (int n = 0; n < 50_000; n++) {
+                    int k = 1 + random.nextInt(20_000);
+                    RecordId rid = btree.find(-k);
+                    if (rid == null || rid.pageId != k) return false;
+                }
+                return true;
+            }));
+        }
+        results.add(pool.submit(() -> {
+            // Full scans while leaves split: strictly ascending, nothing old missing
+            for (int round = 0; round < 10; round++) {
+                int count = 0;
+                int previous = Integer.MIN_VALUE;
+                try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    while (cursor.hasNext()) {
+                        int key = cursor.next().key;
+                        if (count > 0 && key <= previous) return false;
+                        previous = key;
+                        count++;
+                    }
+                }
+                if (count < 20_000) return false;
+            }
+            return true;
+        }));
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(), "A concurrent reader saw a missing or out-of-order key");
+        }
+        pool.shutdown();
+
+        // Every write landed exactly once
+        for (int key = 0; key < writers * perWriter; key++) {
+            RecordId rid = btree.find(key);
+            assertNotNull(rid, "Lost key " + key);
+            assertEquals(key, rid.pageId);
+        }
+        int total = 0;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (cursor.hasNext()) {
+                cursor.next();
+                total++;
+            }
+        }
+        assertEquals(20_000 + writers * perWriter, total);
+        assertEquals(0, countPinned(bm, disk));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testOptimisticReadersNeverWriteEmptyPages() throws Exception {
+        // Unlatched readers wrap the (empty) root leaf of a fresh tree while the
+        // first inserts land in it: wrapping a page must not reset its header
+        for (int round = 0; round < 5; round++) {
+            if (tempFile.exists()) tempFile.delete();
+            HeapFile disk = new HeapFile(tempFile);
+            BufferManager bm = new BufferManager(disk, 64);
+            BTreeFile btree = new BTreeFile(bm, 0);
+
+            AtomicBoolean done = new AtomicBoolean();
+            ExecutorService pool = Executors.newFixedThreadPool(3);
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(pool.submit(() -> {
+                    while (!done.get()) {
+                        btree.find(5);
+                    }
+                }));
+            }
+            int n = 3000;
+            for (int k = 0; k < n; k++) {
+                btree.insert(k, new RecordId(k, 0));
+            }
+            done.set(true);
+            for (Future<?> f : readers) f.get();
+            pool.shutdown();
+
+            for (int k = 0; k < n; k++) {
+                RecordId rid = btree.find(k);
+                assertNotNull(rid, "Round " + round + " lost key " + k);
+                assertEquals(k, rid.pageId);
+            }
+            try { disk.close(); } catch(Exception e){}
+        }
+    }
+
+    @Test
+    public void testDeleteShrinksTheTreeAndRecyclesPages() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        int n = 200_000; // Three levels, so internal nodes merge too
+        List<Integer> keys = new ArrayList<>();
+        for (int k = 0; k < n; k++) keys.add(k);
+        Collections.shuffle(keys, new Random(5));
+        for (int k : keys) btree.insert(k, new RecordId(k, 0));
+        int fullHeight = btree.getHeight();
+        int fullPages = disk.getNumPages();
+        assertEquals(3, fullHeight);
+
+        // 1. Delete every odd key: the rest stay reachable, both ways along the leaf chain
+        for (int k = 1; k < n; k += 2) assertTrue(btree.delete(k));
+        assertFalse(btree.delete(1));
+        for (int k = 0; k < n; k += 2) assertEquals(k, btree.find(k).pageId);
+        assertNull(btree.find(n - 1));
+        int expected = 0;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (cursor.hasNext()) {
+                assertEquals(expected, cursor.next().key);
+                expected += 2;
+            }
+        }
+        assertEquals(n, expected);
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE, true)) {
+            assertEquals(n - 2, cursor.next().key);
+        }
+
+        // 2. Delete the rest in random order: the tree shrinks back to one leaf
+        Collections.shuffle(keys, new Random(6));
+        for (int k : keys) {
+            if (k % 2 == 0) assertTrue(btree.delete(k), "Lost key " + k);
+        }
+        assertEquals(1, btree.getHeight());
+        assertFalse(btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE).hasNext());
+        assertEquals(0, countPinned(bm, disk));
+
+        // 3. Refilling reuses the freed pages instead of growing the file
+        for (int k : keys) btree.insert(k, new RecordId(k, 1));
+        assertEquals(fullHeight, btree.getHeight());
+        assertTrue(disk.getNumPages() <= fullPages + 2, disk.getNumPages() + " pages, was " + fullPages);
+
+        // 4. The free list survives a restart
+        for (int k = 0; k < n / 2; k++) btree.delete(k);
+        bm.flushAll();
+        int pagesBefore = disk.getNumPages();
+        BufferManager bm2 = new BufferManager(disk, 64);
+        BTreeFile reopened = new BTreeFile(bm2, 0);
+        assertEquals(bm.getFreeListHead(), bm2.getFreeListHead());
+        assertNotEquals(BufferManager.NO_PAGE, bm2.getFreeListHead());
+        for (int k = 0; k < n / 8; k++) reopened.insert(k, new RecordId(k, 2));
+        assertEquals(pagesBefore, disk.getNumPages());
+        assertEquals(7, reopened.find(7).pageId);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testConcurrentDeletesWithReaders() throws Exception {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 128);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        int n = 80_000;
+        for (int k = 0; k < n; k++) btree.insert(k, new RecordId(k, 0));
+
+        // Writers delete everything except multiples of 10, which readers keep checking
+        int writers = 3;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            final int first = t;
+            results.add(pool.submit(() -> {
+                for (int k = first; k < n; k += writers) {
+                    if (k % 10 != 0 && !btree.delete(k)) return false;
+                }
+                return true;
+            }));
+        }
+        results.add(pool.submit(() -> {
+            Random random = new Random(1);
+            for (int i = 0; i < 50_000; i++) {
+                int k = 10 * random.nextInt(n / 10);
+                RecordId rid = btree.find(k);
+                if (rid == null || rid.pageId != k) return false;
+            }
+            return true;
+        }));
+        results.add(pool.submit(() -> {
+            for (int round = 0; round < 10; round++) {
+                int kept = 0;
+                int previous = -1;
+                try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    while (cursor.hasNext()) {
+                        int key = cursor.next().key;
+                        if (key <= previous) return false;
+                        previous = key;
+                        if (key % 10 == 0) kept++;
+                    }
+                }
+                if (kept != n / 10) return false;
+            }
+            return true;
+        }));
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(), "A key was lost or seen out of order during deletes");
+        }
+        pool.shutdown();
+
+        int count = 0;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (cursor.hasNext()) {
+                assertEquals(10 * count, cursor.next().key);
+                count++;
+            }
+        }
+        assertEquals(n / 10, count);
+        assertEquals(0, countPinned(bm, disk));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testSwizzledUpperLevelsFollowSplitsAndMerges() throws Exception {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 1024);
+        BTreeFile btree = new BTreeFile(bm, 0);
+        btree.setPinnedLevels(2);
+        assertEquals(0, btree.getSwizzledNodeCount()); // A lone leaf root has nothing to swizzle
+
+        int n = 240_000;
+        for (int k = 0; k < n / 2; k++) btree.insert(k, new RecordId(k, 0));
+        assertEquals(2, btree.getHeight());
+        assertEquals(0, btree.find(0).pageId); // Notices the new root and swizzles it
+        assertEquals(1, btree.getSwizzledNodeCount());
+
+        // Writers grow the tree to height 3 while readers go through the swizzled nodes
+        int writers = 2;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            final int first = n / 2 + t;
+            results.add(pool.submit(() -> {
+                for (int k = first; k < n; k += writers) btree.insert(k, new RecordId(k, 0));
+                return true;
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100_000; i++) {
+                    int k = random.nextInt(n / 2);
+                    RecordId rid = btree.find(k);
+                    if (rid == null || rid.pageId != k) return false;
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(), "A lookup through the swizzled levels went wrong");
+        }
+        assertEquals(3, btree.getHeight());
+        for (int k = 0; k < n; k++) {
+            assertEquals(k, btree.find(k).pageId);
+        }
+        // The root and its children, each holding exactly one extra pin
+        assertTrue(btree.getSwizzledNodeCount() > 2);
+        assertEquals(btree.getSwizzledNodeCount(), countPinned(bm, disk));
+
+        // Deletes merge nodes (some of them swizzled) and shrink the tree
+        results.clear();
+        for (int t = 0; t < writers; t++) {
+            final int first = t;
+            results.add(pool.submit(() -> {
+                for (int k = first; k < n; k += writers) {
+                    if (k % 100 != 0 && !btree.delete(k)) return false;
+                }
+                return true;
+            }));
+        }
+        results.add(pool.submit(() -> {
+            Random random = new Random(5);
+            for (int i = 0; i < 100_000; i++) {
+                int k = 100 * random.nextInt(n / 100);
+                RecordId rid = btree.find(k);
+                if (rid == null || rid.pageId != k) return false;
+            }
+            return true;
+        }));
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(), "A key was lost while swizzled nodes were merged");
+        }
+        pool.shutdown();
+        for (int k = 0; k < n; k++) {
+            RecordId rid = btree.find(k);
+            assertEquals(k % 100 == 0, rid != null, "Wrong result for key " + k);
+        }
+        assertEquals(btree.getSwizzledNodeCount(), countPinned(bm, disk));
+
+        btree.setPinnedLevels(0);
+        assertEquals(0, btree.getSwizzledNodeCount());
+        assertEquals(0, countPinned(bm, disk));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testAscendingInsertsFillNodesAndSurviveRightmostMerges() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        BTreeFile btree = new BTreeFile(bm, 0);
+
+        // Append splits leave every leaf but the last full: ~340 keys per leaf, not ~170
+        int n = 200_000;
+        for (int k = 0; k < n; k++) btree.insert(k, new RecordId(k, 0));
+        bm.flushAll();
+        int leavesIfFull = (n + 338) / 339;
+        assertTrue(disk.getNumPages() < leavesIfFull + 10, disk.getNumPages() + " pages for " + leavesIfFull + " full leaves");
+        assertEquals(3, btree.getHeight());
+
+        // Empty the rightmost leaves (they merge away), then append again: the
+        // remembered rightmost leaf is stale and must not be used
+        for (int k = n - 1; k >= n - 2000; k--) assertTrue(btree.delete(k));
+        for (int k = n; k < n + 5000; k++) btree.insert(k, new RecordId(k, 0));
+        // A key in the middle still splits its leaf 50/50
+        btree.insert(-1, new RecordId(-1, 0));
+        btree.insert(100, new RecordId(-100, 0));
+
+        int expected = -1;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (cursor.hasNext()) {
+                IndexEntry e = cursor.next();
+                if (expected == n - 2000) expected = n; // The deleted range
+                if (e.key == 100 && e.rid.pageId == -100) continue; // The duplicate
+                assertEquals(expected, e.key);
+                expected++;
+            }
+        }
+        assertEquals(n + 5000, expected);
+        assertEquals(n + 4999, btree.find(n + 4999).pageId);
+        assertNull(btree.find(n - 1));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    private static int countPinned(BufferManager bm, HeapFile disk) {
+        int pinned = 0;
+        for (int i = 0; i < disk.getNumPages(); i++) {
+            if (bm.isPinned(i)) pinned++;
+        }
+        return pinned;
+    }
+
+    @Test
+    public void testBatchInsertAndFindMatchSingleKeyCalls() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        BTreeFile btree = new BTreeFile(bm, 0);
+
+        // 100k even keys in shuffled batches of 5000 (leaf splits and a root split)
+        int n = 100_000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) keys.add(2 * i);
+        Collections.shuffle(keys, new Random(21));
+        for (int from = 0; from < n; from += 5000) {
+            int[] batch = new int[5000];
+            RecordId[] rids = new RecordId[5000];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = keys.get(from + i);
+                rids[i] = new RecordId(batch[i] / 2, 7);
+            }
+            btree.insertBatch(batch, rids);
+        }
+        assertEquals(2, btree.getHeight());
+
+        // Unsorted lookups with hits, misses and repeats; results come back in input order
+        Random random = new Random(22);
+        int[] probe = new int[20_000];
+        for (int i = 0; i < probe.length; i++) probe[i] = random.nextInt(2 * n + 10) - 5;
+        probe[1] = probe[0];
+        RecordId[] found = btree.findBatch(probe);
+        for (int i = 0; i < probe.length; i++) {
+            int k = probe[i];
+            if (k >= 0 && k < 2 * n && k % 2 == 0) {
+                assertNotNull(found[i], "Lost key " + k);
+                assertEquals(k / 2, found[i].pageId);
+            } else {
+                assertNull(found[i], "Phantom key " + k);
+            }
+            RecordId single = btree.find(k);
+            assertEquals(single == null, found[i] == null);
+        }
+
+        // Every key came out once, in order
+        int count = 0;
+        try (BTreeCursor cursor = btree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (cursor.hasNext()) {
+                assertEquals(2 * count, cursor.next().key);
+                count++;
+            }
+        }
+        assertEquals(n, count);
+        assertEquals(0, btree.findBatch(new int[0]).length);
+        assertThrows(IllegalArgumentException.class, () -> btree.insertBatch(new int[2], new RecordId[1]));
+        try { disk.close(); } catch(Exception e){}
+    }
+}
@@ -11,6 +11,7 @@ public class BTreeInternalPageTest {
         // 1. Create Internal Node
         Page rawPage = new Page(2);
         BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+        internal.format();
 
         // 2. Setup initial Leftmost Pointer (Index 0)
         // "Everything smaller than the first key goes to Page 100"
@@ -37,4 +38,66 @@ public class BTreeInternalPageTest {
         // Case D: Look for exact key 10 -> Should go to 200
         assertEquals(200, internal.lookup(10));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSplitPushesMiddleKeyUp() {
+        Page rawPage = new Page(2);
+        BTreeInternalPage internal = new BTreeInternalPage(rawPage);
+        internal.format();
+        internal.setKeyCount(1);
+        internal.setPointer(0, 100);
+        // Keys 10..60 -> pages 101..106
+        for (int i = 1; i <= 6; i++) {
+            internal.insert(i * 10, 100 + i);
+        }
+        assertEquals(7, internal.getKeyCount());
+
+        BTreeInternalPage right = new BTreeInternalPage(new Page(3));
+
+        right.format();
+        int pushUp = internal.split(right);
+
+        // Entries 0..2 stay, key 30 moves up, its child (103) becomes right's leftmost pointer
+        assertEquals(30, pushUp);
+        assertEquals(3, internal.getKeyCount());
+        assertEquals(4, right.getKeyCount());
+        assertEquals(102, internal.lookup(29));
+        assertEquals(103, right.lookup(30));
+        assertEquals(103, right.lookup(Integer.MIN_VALUE));
+        assertEquals(106, right.lookup(99));
+    }
+
+    @Test
+    public void testMergeAndRedistributeRotateThroughParentKey() {
+        // left: [p10] 20 [p20] 30 [p30]     right: [p50] 60 [p60]     parent key between them: 50
+        BTreeInternalPage left = new BTreeInternalPage(new Page(1));
+        left.format();
+        left.setPointer(0, 10);
+        left.setKeyCount(1);
+        left.insert(20, 20);
+        left.insert(30, 30);
+        BTreeInternalPage right = new BTreeInternalPage(new Page(2));
+        right.format();
+        right.setPointer(0, 50);
+        right.setKeyCount(1);
+        right.insert(60, 60);
+
+        // 3 + 2 children -> 2 + 3: key 30 moves up, 50 comes down
+        assertEquals(30, left.redistribute(50, right));
+        assertEquals(2, left.getKeyCount());
+        assertEquals(3, right.getKeyCount());
+        assertEquals(20, left.lookup(29));
+        assertEquals(30, right.lookup(45));
+        assertEquals(50, right.lookup(55));
+        assertEquals(60, right.lookup(99));
+
+        // Merging brings the separator back down between the two halves
+        left.merge(30, right);
+        assertEquals(5, left.getKeyCount());
+        assertEquals(10, left.lookup(5));
+        assertEquals(30, left.lookup(30));
+        assertEquals(50, left.lookup(50));
+        left.remove(4);
+        assertEquals(50, left.lookup(99));
+    }
+}
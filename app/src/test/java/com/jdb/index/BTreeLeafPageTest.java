@@ -12,6 +12,7 @@ public class BTreeLeafPageTest {
         // 1. Create a raw page and wrap it as a Leaf Node
         Page rawPage = new Page(1);
         BTreeLeafPage leaf = new BTreeLeafPage(rawPage);
+        leaf.format();
 
         // Verify it initialized as a Leaf (Type 1)
         assertEquals(1, leaf.getPageType());
@@ -42,4 +43,77 @@ public class BTreeLeafPageTest {
         // 5. Verify a non-existent key returns null
         assertNull(leaf.lookup(999));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSplitLinksSiblings() {
+        BTreeLeafPage left = new BTreeLeafPage(new Page(4));
+        left.format();
+        left.setPrevPageId(BTreeLeafPage.NO_PAGE);
+        left.setNextPageId(9);
+        for (int k = 0; k < 10; k++) {
+            left.insert(k, new RecordId(k, 0));
+        }
+
+        BTreeLeafPage right = new BTreeLeafPage(new Page(5));
+
+        right.format();
+        assertEquals(5, left.split(right));
+
+        // 4 <-> 5 <-> 9 (the caller fixes page 9's prev link)
+        assertEquals(5, left.getNextPageId());
+        assertEquals(4, right.getPrevPageId());
+        assertEquals(9, right.getNextPageId());
+        assertEquals(BTreeLeafPage.NO_PAGE, left.getPrevPageId());
+        assertEquals(2, left.lowerBound(2));
+        assertEquals(5, left.lowerBound(100));
+    }
+
+    @Test
+    public void testAppendSplitMovesNothing() {
+        BTreeLeafPage left = new BTreeLeafPage(new Page(4));
+        left.format();
+        left.setPrevPageId(BTreeLeafPage.NO_PAGE);
+        left.setNextPageId(BTreeLeafPage.NO_PAGE);
+        for (int k = 0; k < 10; k++) {
+            left.insert(k, new RecordId(k, 0));
+        }
+
+        BTreeLeafPage right = new BTreeLeafPage(new Page(5));
+
+        right.format();
+        left.split(right, left.getKeyCount());
+        assertEquals(10, left.getKeyCount());
+        assertEquals(0, right.getKeyCount());
+        assertEquals(5, left.getNextPageId());
+        assertEquals(4, right.getPrevPageId());
+        assertEquals(BTreeLeafPage.NO_PAGE, right.getNextPageId());
+    }
+
+    @Test
+    public void testMergeAndRedistribute() {
+        BTreeLeafPage left = new BTreeLeafPage(new Page(1));
+        left.format();
+        BTreeLeafPage right = new BTreeLeafPage(new Page(2));
+        right.format();
+        for (int k = 0; k < 10; k++) left.insert(k, new RecordId(k, 0));
+        for (int k = 10; k < 12; k++) right.insert(k, new RecordId(k, 0));
+
+        // 10 + 2 -> 6 + 6, the new separator is right's first key
+        assertEquals(6, left.redistribute(right));
+        assertEquals(6, left.getKeyCount());
+        assertEquals(6, right.getKeyCount());
+        assertEquals(11, right.lookup(11).pageId);
+
+        // And back the other way
+        for (int k = 12; k < 20; k++) right.insert(k, new RecordId(k, 0));
+        assertEquals(10, left.redistribute(right));
+        assertEquals(9, left.lookup(9).pageId);
+
+        left.remove(0);
+        assertNull(left.lookup(0));
+        left.merge(right);
+        assertEquals(19, left.getKeyCount());
+        assertEquals(0, right.getKeyCount());
+        for (int k = 1; k < 20; k++) assertEquals(k, left.lookup(k).pageId);
+    }
+}
@@ -0,0 +1,78 @@
+package com.jdb.index;
+
+import com.jdb.storage.Page;
+import com.jdb.storage.RecordId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BTreeVarLeafPageTest {
+
+    private static byte[] key(String s) {
+        return s.getBytes();
+    }
+
+    @Test
+    public void testSortedInsertAndLookup() {
+        BTreeVarLeafPage leaf = new BTreeVarLeafPage(new Page(1));
+        assertEquals(BTreeVarPage.TYPE_VAR_LEAF, leaf.getPageType());
+
+        String[] keys = {"pear", "apple", "fig", "banana"};
+        for (int i = 0; i < keys.length; i++) {
+            byte[] k = key(keys[i]);
+            assertTrue(leaf.tryInsertAt(leaf.upperBound(k), k, BTreeVarLeafPage.encodeValue(new RecordId(i, 0))));
+        }
+        assertEquals(4, leaf.getKeyCount());
+        assertArrayEquals(key("apple"), leaf.getKeyAt(0));
+        assertArrayEquals(key("pear"), leaf.getKeyAt(3));
+        assertEquals(2, leaf.lookup(key("fig")).pageId);
+        assertNull(leaf.lookup(key("figs")));
+        assertEquals(1, leaf.lowerBound(key("b")));
+    }
+
+    @Test
+    public void testRebuildStoresTheCommonPrefixOnce() {
+        Page raw = new Page(1);
+        BTreeVarLeafPage leaf = new BTreeVarLeafPage(raw);
+        leaf.setNextPageId(9);
+
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(key(String.format("https://example.com/users/%05d", i)));
+            values.add(BTreeVarLeafPage.encodeValue(new RecordId(i, i)));
+        }
+        leaf.rebuild(keys, values);
+
+        // "https://example.com/users/000" is shared by keys 0..99
+        assertEquals("https://example.com/users/000".length(), leaf.getPrefixLength());
+        int used = Page.PAGE_SIZE - leaf.getFreeSpace();
+        assertTrue(used < 100 * (2 + 2 + 2 + 8) + 24 + 30 + 10, "Cells should hold only suffixes, used " + used);
+        assertEquals(9, leaf.getNextPageId());
+        assertEquals(42, leaf.lookup(keys.get(42)).slotNumber);
+        assertNull(leaf.lookup(key("https://example.com/users/")));
+
+        // A key with the same prefix takes the fast path...
+        byte[] inside = key("https://example.com/users/00042a");
+        assertTrue(leaf.tryInsertAt(leaf.upperBound(inside), inside, BTreeVarLeafPage.encodeValue(new RecordId(-1, 0))));
+        assertEquals(-1, leaf.lookup(inside).pageId);
+        assertEquals(43, leaf.lookup(keys.get(43)).pageId);
+
+        // ...one outside it needs a rebuild with a shorter prefix
+        byte[] outside = key("https://example.com/admin");
+        assertFalse(leaf.tryInsertAt(0, outside, BTreeVarLeafPage.encodeValue(new RecordId(-2, 0))));
+        keys.clear();
+        values.clear();
+        leaf.readAll(keys, values);
+        keys.add(0, outside);
+        values.add(0, BTreeVarLeafPage.encodeValue(new RecordId(-2, 0)));
+        assertTrue(leaf.fits(keys, values));
+        leaf.rebuild(keys, values);
+        assertEquals("https://example.com/".length(), leaf.getPrefixLength());
+        assertEquals(-2, leaf.lookup(outside).pageId);
+        assertEquals(-1, leaf.lookup(inside).pageId);
+        assertEquals(102, leaf.getKeyCount());
+    }
+}
@@ -0,0 +1,45 @@
+package com.jdb.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testNoFalseNegativesAndFewFalsePositives() {
+        int n = 50_000;
+        BloomFilter bloom = new BloomFilter(n, 10);
+        Random rnd = new Random(11);
+        Set<Integer> keys = new HashSet<>();
+        while (keys.size() < n) {
+            keys.add(rnd.nextInt());
+        }
+        for (int k : keys) bloom.add(k);
+        for (int k : keys) {
+            assertTrue(bloom.mightContain(k), "False negative for " + k);
+        }
+
+        // 10 bits per key should give about 1% false positives
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            int k = rnd.nextInt();
+            if (!keys.contains(k) && bloom.mightContain(k)) falsePositives++;
+        }
+        assertTrue(falsePositives < probes * 0.02, "False positive rate too high: " + falsePositives + "/" + probes);
+    }
+
+    @Test
+    public void testRebuiltFromBitsAnswersTheSame() {
+        BloomFilter bloom = new BloomFilter(1000, 10);
+        for (int k = 0; k < 1000; k += 2) bloom.add(k);
+        BloomFilter copy = new BloomFilter(bloom.getBits().clone(), bloom.getHashCount());
+        for (int k = 0; k < 2000; k++) {
+            assertEquals(bloom.mightContain(k), copy.mightContain(k));
+        }
+    }
+}
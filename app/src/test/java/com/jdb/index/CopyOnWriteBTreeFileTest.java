@@ -0,0 +1,164 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CopyOnWriteBTreeFileTest {
+    private File tempFile = new File("btree_cow.dat");
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    @Test
+    public void testSnapshotKeepsItsVersion() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        CopyOnWriteBTreeFile index = new CopyOnWriteBTreeFile(bm, 0);
+        for (int k = 0; k < 1000; k++) {
+            index.insert(k, new RecordId(k, 0));
+        }
+
+        CopyOnWriteBTreeFile.Snapshot before = index.snapshot();
+        for (int k = 1000; k < 100_000; k++) {
+            index.insert(k, new RecordId(k, 0)); // Enough to split the root twice
+        }
+        assertTrue(index.getHeight() >= 3);
+
+        // The old snapshot still sees exactly the first 1000 keys
+        assertNull(before.find(5000));
+        assertEquals(999, before.find(999).pageId);
+        assertEquals(1000, count(before.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+        assertTrue(index.getRetiredPageCount() > 0, "Pages an open snapshot can reach must not be reused");
+        Iterator<IndexEntry> unfinished = before.scan(0, 999);
+        unfinished.next();
+        before.close();
+        assertThrows(IllegalStateException.class, () -> before.find(1));
+        assertThrows(IllegalStateException.class, unfinished::hasNext);
+        assertThrows(IllegalStateException.class, unfinished::next);
+
+        // The latest version sees everything, in order
+        try (CopyOnWriteBTreeFile.Snapshot now = index.snapshot()) {
+            assertEquals(99_999, now.find(99_999).pageId);
+            Iterator<IndexEntry> it = now.scan(25_000, 25_999);
+            for (int k = 25_000; k < 26_000; k++) {
+                assertEquals(k, it.next().key);
+            }
+            assertFalse(it.hasNext());
+        }
+
+        // With no snapshot open, the next insert recycles everything retired
+        index.insert(-1, new RecordId(-1, 0));
+        assertEquals(0, index.getRetiredPageCount());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testScanFindsEveryCopyOfADuplicateKey() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        CopyOnWriteBTreeFile index = new CopyOnWriteBTreeFile(bm, 0);
+        index.insert(4, new RecordId(-4, 0));
+        index.insert(6, new RecordId(-6, 0));
+        for (int i = 0; i < 500; i++) {
+            index.insert(5, new RecordId(i, 0)); // Splits inside the run: separators equal to 5
+        }
+
+        try (CopyOnWriteBTreeFile.Snapshot snapshot = index.snapshot()) {
+            assertEquals(500, count(snapshot.scan(5, 5)));
+            assertEquals(501, count(snapshot.scan(5, 6)));
+            assertEquals(502, count(snapshot.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+            assertNotNull(snapshot.find(5));
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testReplacedPagesAreReused() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        CopyOnWriteBTreeFile index = new CopyOnWriteBTreeFile(bm, 0);
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(1_000_000);
+            index.insert(key, new RecordId(key, 0));
+        }
+        // Each insert writes a whole path, but old paths are recycled:
+        // the file stays close to the size of the live tree (~100 leaves)
+        assertTrue(disk.getNumPages() < 400, "File grew to " + disk.getNumPages() + " pages");
+
+        // And the index reopens from its header
+        bm.flushAll();
+        CopyOnWriteBTreeFile reopened = new CopyOnWriteBTreeFile(new BufferManager(disk, 64), 0);
+        assertEquals(index.getRootPageId(), reopened.getRootPageId());
+        try (CopyOnWriteBTreeFile.Snapshot s = reopened.snapshot()) {
+            assertEquals(count(index.snapshot().scan(Integer.MIN_VALUE, Integer.MAX_VALUE)),
+                    count(s.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testReadersSeeConsistentVersionsWhileWriting() throws Exception {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        CopyOnWriteBTreeFile index = new CopyOnWriteBTreeFile(bm, 0);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        List<Future<Boolean>> readers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            readers.add(pool.submit(() -> {
+                // One key per version, so version n holds exactly keys 0..n-1
+                while (writing.get()) {
+                    try (CopyOnWriteBTreeFile.Snapshot s = index.snapshot()) {
+                        long n = s.getVersion();
+                        if (count(s.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) != n) return false;
+                        if (n > 0 && s.find((int) n - 1) == null) return false;
+                        if (s.find((int) n) != null) return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        Future<?> writer = pool.submit(() -> {
+            for (int k = 0; k < 5000; k++) {
+                index.insert(k, new RecordId(k, 0));
+            }
+            writing.set(false);
+        });
+        writer.get();
+        for (Future<Boolean> f : readers) {
+            assertTrue(f.get(), "A snapshot saw a mix of versions");
+        }
+        pool.shutdown();
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    private static int count(Iterator<IndexEntry> it) {
+        int n = 0;
+        int previous = Integer.MIN_VALUE;
+        while (it.hasNext()) {
+            int key = it.next().key;
+            assertTrue(n == 0 || key >= previous);
+            previous = key;
+            n++;
+        }
+        return n;
+    }
+}
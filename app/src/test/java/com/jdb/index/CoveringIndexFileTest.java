@@ -0,0 +1,173 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import com.jdb.storage.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoveringIndexFileTest {
+    private File tempFile = new File("btree_covering.dat");
+
+    // id -> (name, age), as in the GUI
+    private final KeyCodec idCodec = new KeyCodec(Type.INT);
+    private final KeyCodec includedCodec = new KeyCodec(Type.STRING, Type.INT);
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    private static String name(int id) {
+        return "customer-" + id;
+    }
+
+    @Test
+    public void testLookupAnswersFromTheLeaf() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        CoveringIndexFile index = new CoveringIndexFile(bm, 0);
+
+        int n = 20_000;
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < n; i++) order.add(i);
+        Collections.shuffle(order, new Random(6));
+        for (int id : order) {
+            index.insert(idCodec.encode(id), new RecordId(id / 50, id % 50), includedCodec.encode(name(id), id % 90));
+        }
+        assertTrue(index.getHeight() > 1, "Expected leaf splits");
+
+        for (int id = 0; id < n; id += 7) {
+            VarIndexEntry e = index.lookup(idCodec.encode(id));
+            assertNotNull(e, "Lost id " + id);
+            assertEquals(id / 50, e.rid.pageId);
+            assertEquals(id % 50, e.rid.slotNumber);
+            Object[] row = includedCodec.decode(e.included);
+            assertEquals(name(id), row[0]);
+            assertEquals(id % 90, row[1]);
+        }
+        assertNull(index.lookup(idCodec.encode(n)));
+        assertEquals(123 / 50, index.find(idCodec.encode(123)).pageId);
+
+        // Scans carry the included columns too
+        Iterator<VarIndexEntry> it = index.scan(idCodec.encode(500), idCodec.encode(599));
+        for (int id = 500; id < 600; id++) {
+            assertTrue(it.hasNext());
+            VarIndexEntry e = it.next();
+            assertEquals(id, idCodec.decode(e.key)[0]);
+            assertEquals(name(id), includedCodec.decode(e.included)[0]);
+        }
+        assertFalse(it.hasNext());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testUpdateKeepsIncludedColumnsInSync() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        CoveringIndexFile index = new CoveringIndexFile(bm, 0);
+        int n = 5000;
+        for (int id = 0; id < n; id++) {
+            index.insert(idCodec.encode(id), new RecordId(0, id), includedCodec.encode(name(id), 20));
+        }
+
+        // Same length (only the age changes): written in place
+        for (int id = 0; id < n; id += 2) {
+            assertTrue(index.update(idCodec.encode(id), new RecordId(0, id), includedCodec.encode(name(id), 21)));
+        }
+        // Longer names: the entries no longer fit where they were, so leaves rebuild or split
+        for (int id = 1; id < n; id += 2) {
+            String longer = name(id) + "-renamed-to-something-much-longer";
+            assertTrue(index.update(idCodec.encode(id), new RecordId(0, id), includedCodec.encode(longer, 22)));
+        }
+        // The key must match and so must the RecordId
+        assertFalse(index.update(idCodec.encode(n), new RecordId(0, n), includedCodec.encode("nobody", 1)));
+        assertFalse(index.update(idCodec.encode(3), new RecordId(1, 3), includedCodec.encode("nobody", 1)));
+
+        Iterator<VarIndexEntry> it = index.scan(null, null);
+        for (int id = 0; id < n; id++) {
+            assertTrue(it.hasNext(), "Scan ended before id " + id);
+            VarIndexEntry e = it.next();
+            assertEquals(id, idCodec.decode(e.key)[0]);
+            assertEquals(id, e.rid.slotNumber);
+            Object[] row = includedCodec.decode(e.included);
+            if (id % 2 == 0) {
+                assertEquals(name(id), row[0]);
+                assertEquals(21, row[1]);
+            } else {
+                assertEquals(name(id) + "-renamed-to-something-much-longer", row[0]);
+                assertEquals(22, row[1]);
+            }
+        }
+        assertFalse(it.hasNext());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testUpdatePicksTheRightDuplicate() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        CoveringIndexFile index = new CoveringIndexFile(bm, 0);
+
+        // Enough copies of one key to span several leaves
+        byte[] key = idCodec.encode(7);
+        int copies = 1000;
+        for (int i = 0; i < copies; i++) {
+            index.insert(key, new RecordId(i, 0), includedCodec.encode("dup", i));
+        }
+        assertTrue(index.update(key, new RecordId(copies - 1, 0), includedCodec.encode("last", 0)));
+        assertTrue(index.delete(key, new RecordId(0, 0)));
+        assertFalse(index.delete(key, new RecordId(0, 0)));
+
+        int seen = 0;
+        Iterator<VarIndexEntry> it = index.scan(key, key);
+        while (it.hasNext()) {
+            VarIndexEntry e = it.next();
+            assertNotEquals(0, e.rid.pageId);
+            Object[] row = includedCodec.decode(e.included);
+            assertEquals(e.rid.pageId == copies - 1 ? "last" : "dup", row[0]);
+            seen++;
+        }
+        assertEquals(copies - 1, seen);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testReopenAndFormatChecks() throws Exception {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        CoveringIndexFile index = new CoveringIndexFile(bm, 0);
+        for (int id = 0; id < 3000; id++) {
+            index.insert(idCodec.encode(id), new RecordId(0, id), includedCodec.encode(name(id), id % 60));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> index.insert(idCodec.encode(1), new RecordId(0, 1), new byte[CoveringIndexFile.MAX_ENTRY_SIZE]));
+        assertThrows(IllegalStateException.class, () -> new VarKeyBTreeFile(bm, 0));
+        bm.flushAll();
+        disk.close();
+
+        disk = new HeapFile(tempFile);
+        CoveringIndexFile reopened = new CoveringIndexFile(new BufferManager(disk, 64), 0);
+        VarIndexEntry e = reopened.lookup(idCodec.encode(2500));
+        assertEquals(name(2500), includedCodec.decode(e.included)[0]);
+        assertEquals(2500 % 60, includedCodec.decode(e.included)[1]);
+        disk.close();
+
+        // Nor does a plain variable-key index open as a covering one
+        tempFile.delete();
+        disk = new HeapFile(tempFile);
+        BufferManager plainBm = new BufferManager(disk, 16);
+        new VarKeyBTreeFile(plainBm, 0);
+        assertThrows(IllegalStateException.class, () -> new CoveringIndexFile(plainBm, 0));
+        disk.close();
+    }
+}
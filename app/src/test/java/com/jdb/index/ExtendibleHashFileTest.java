@@ -0,0 +1,209 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExtendibleHashFileTest {
+    private File tempFile = new File("hash_test.dat");
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    @Test
+    public void testInsertSplitsBucketsAndFindsEveryKey() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 1024);
+        ExtendibleHashFile hash = new ExtendibleHashFile(bm, 0);
+        assertEquals(0, hash.getGlobalDepth());
+
+        // 100k random keys need ~300+ buckets of 340 entries
+        Random rnd = new Random(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        while (expected.size() < 100_000) {
+            int key = rnd.nextInt();
+            if (expected.putIfAbsent(key, expected.size()) == null) {
+                hash.insert(key, new RecordId(expected.get(key), 3));
+            }
+        }
+        assertTrue(hash.getGlobalDepth() >= 9, "Directory should have doubled, depth " + hash.getGlobalDepth());
+        int buckets = hash.getBucketCount();
+        assertTrue(buckets > 100_000 / HashBucketPage.CAPACITY, "Too few buckets: " + buckets);
+        assertTrue(buckets <= 1 << hash.getGlobalDepth());
+
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            RecordId rid = hash.find(e.getKey());
+            assertNotNull(rid, "Lost key " + e.getKey());
+            assertEquals((int) e.getValue(), rid.pageId);
+            assertEquals(3, rid.slotNumber);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            int key = rnd.nextInt();
+            if (!expected.containsKey(key)) assertNull(hash.find(key));
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testLookupReadsOnePage() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 16); // Far fewer frames than buckets
+        ExtendibleHashFile hash = new ExtendibleHashFile(bm, 0);
+        int n = 50_000;
+        for (int k = 0; k < n; k++) {
+            hash.insert(k, new RecordId(k, 0));
+        }
+        bm.flushAll();
+
+        Random rnd = new Random(8);
+        long before = disk.getIoStats().getPageReads();
+        int lookups = 2000;
+        for (int i = 0; i < lookups; i++) {
+            int key = rnd.nextInt(n);
+            assertEquals(key, hash.find(key).pageId);
+        }
+        long reads = disk.getIoStats().getPageReads() - before;
+        assertTrue(reads <= lookups, "Expected at most one page read per lookup, got " + reads);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testDuplicateKeysOverflowInsteadOfSplitting() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        ExtendibleHashFile hash = new ExtendibleHashFile(bm, 0);
+
+        // More copies of one key than a bucket holds: no split could divide them
+        int copies = HashBucketPage.CAPACITY * 3;
+        for (int i = 0; i < copies; i++) {
+            hash.insert(42, new RecordId(i, 0));
+        }
+        for (int k = 0; k < 1000; k++) {
+            hash.insert(k + 1000, new RecordId(k, 1));
+        }
+        assertTrue(hash.getGlobalDepth() < 8, "Duplicates should not blow up the directory");
+
+        for (int i = 0; i < copies; i++) {
+            assertTrue(hash.delete(42), "Copy " + i + " missing");
+        }
+        assertFalse(hash.delete(42));
+        assertNull(hash.find(42));
+        for (int k = 0; k < 1000; k++) {
+            assertEquals(k, hash.find(k + 1000).pageId);
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testReopenKeepsDirectoryAndBuckets() throws Exception {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        ExtendibleHashFile hash = new ExtendibleHashFile(bm, 0);
+        for (int k = 0; k < 20_000; k++) {
+            hash.insert(k * 3, new RecordId(k, 0));
+        }
+        for (int k = 0; k < 20_000; k += 2) {
+            assertTrue(hash.delete(k * 3));
+        }
+        int depth = hash.getGlobalDepth();
+        bm.flushAll();
+        disk.close();
+
+        disk = new HeapFile(tempFile);
+        bm = new BufferManager(disk, 256);
+        ExtendibleHashFile reopened = new ExtendibleHashFile(bm, 0);
+        assertEquals(depth, reopened.getGlobalDepth());
+        for (int k = 0; k < 20_000; k++) {
+            RecordId rid = reopened.find(k * 3);
+            if (k % 2 == 0) {
+                assertNull(rid);
+            } else {
+                assertNotNull(rid, "Lost key " + k * 3);
+                assertEquals(k, rid.pageId);
+            }
+        }
+        reopened.insert(7, new RecordId(7, 7));
+        assertEquals(7, reopened.find(7).slotNumber);
+        disk.close();
+    }
+
+    @Test
+    public void testReopenAfterTheHeaderWasEvicted() throws Exception {
+        // Two frames: the header is evicted long before flushAll
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 2);
+        ExtendibleHashFile hash = new ExtendibleHashFile(bm, 0);
+        for (int k = 0; k < 1000; k++) {
+            hash.insert(k, new RecordId(k, 0));
+        }
+        int depth = hash.getGlobalDepth();
+        bm.flushAll();
+        disk.close();
+
+        disk = new HeapFile(tempFile);
+        ExtendibleHashFile reopened = new ExtendibleHashFile(new BufferManager(disk, 2), 0);
+        assertEquals(depth, reopened.getGlobalDepth());
+        for (int k = 0; k < 1000; k++) {
+            assertEquals(k, reopened.find(k).pageId);
+        }
+        disk.close();
+    }
+
+    @Test
+    public void testConcurrentReadersOnATinyOffHeapPool() throws Exception {
+        // Six off-heap frames: readers evict each other's buckets all the time,
+        // and an evicted frame's memory is reused at once
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 6, true);
+        ExtendibleHashFile hash = new ExtendibleHashFile(bm, 0);
+        int n = 50_000;
+        for (int k = 0; k < n; k++) {
+            hash.insert(k, new RecordId(k, 0));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                int wrong = 0;
+                for (int j = 0; j < 20_000; j++) {
+                    int key = random.nextInt(n);
+                    RecordId rid = hash.find(key);
+                    if (rid == null || rid.pageId != key) wrong++;
+                }
+                return wrong;
+            }));
+        }
+        for (Future<Integer> f : results) {
+            assertEquals(0, (int) f.get(), "A reader saw another page's bytes");
+        }
+        pool.shutdown();
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testRefusesBTreeFile() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 16);
+        new BTreeFile(bm, 0);
+        assertThrows(IllegalStateException.class, () -> new ExtendibleHashFile(bm, 0));
+        try { disk.close(); } catch(Exception e){}
+    }
+}
@@ -0,0 +1,61 @@
+package com.jdb.index;
+
+import com.jdb.storage.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyCodecTest {
+
+    @Test
+    public void testIntOrderMatchesByteOrder() {
+        KeyCodec codec = new KeyCodec(Type.INT);
+        int[] values = {Integer.MIN_VALUE, -1000, -1, 0, 1, 255, 256, Integer.MAX_VALUE};
+        for (int i = 1; i < values.length; i++) {
+            byte[] a = codec.encode(values[i - 1]);
+            byte[] b = codec.encode(values[i]);
+            assertTrue(KeyCodec.compare(a, b) < 0, values[i - 1] + " should sort before " + values[i]);
+        }
+        assertEquals(-1, codec.decode(codec.encode(-1))[0]);
+    }
+
+    @Test
+    public void testCompositeKeysSortColumnByColumn() {
+        // (name, id): a shorter name must sort first even if the id bytes are larger
+        KeyCodec codec = new KeyCodec(Type.STRING, Type.INT);
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(codec.encode("ab", 999));
+        keys.add(codec.encode("ab\0", 0));
+        keys.add(codec.encode("abc", -5));
+        keys.add(codec.encode("abc", 7));
+        keys.add(codec.encode("b", Integer.MIN_VALUE));
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue(KeyCodec.compare(keys.get(i - 1), keys.get(i)) < 0, "Key " + i + " out of order");
+        }
+
+        // Round trip, including the escaped zero byte
+        Object[] values = codec.decode(codec.encode("ab\0", 42));
+        assertEquals("ab\0", values[0]);
+        assertEquals(42, values[1]);
+        assertThrows(IllegalArgumentException.class, () -> codec.encode("only one"));
+    }
+
+    @Test
+    public void testShortestSeparator() {
+        byte[] left = "customer-00017".getBytes();
+        byte[] right = "customer-00020".getBytes();
+        byte[] sep = KeyCodec.shortestSeparator(left, right);
+        assertArrayEquals("customer-0002".getBytes(), sep);
+        assertTrue(KeyCodec.compare(left, sep) < 0);
+        assertTrue(KeyCodec.compare(sep, right) <= 0);
+
+        // A prefix on the left: one more byte of the right key is enough
+        assertArrayEquals("abc".getBytes(), KeyCodec.shortestSeparator("ab".getBytes(), "abcdef".getBytes()));
+        // Equal keys can't be separated by anything shorter
+        byte[] same = "dup".getBytes();
+        assertTrue(Arrays.equals(same, KeyCodec.shortestSeparator(same, same)));
+    }
+}
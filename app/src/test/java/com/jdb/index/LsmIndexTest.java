@@ -0,0 +1,175 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LsmIndexTest {
+    private File dir = new File("lsm_test");
+    private File btreeFile = new File("lsm_btree.dat");
+
+    @AfterEach
+    public void cleanup() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+        if (btreeFile.exists()) btreeFile.delete();
+    }
+
+    private static void assertScanMatches(TreeMap<Integer, RecordId> expected, Index index, int lo, int hi) {
+        try (IndexCursor cursor = index.scan(lo, hi)) {
+            for (Map.Entry<Integer, RecordId> e : expected.subMap(lo, true, hi, true).entrySet()) {
+                assertTrue(cursor.hasNext(), "Scan ended before key " + e.getKey());
+                IndexEntry entry = cursor.next();
+                assertEquals((int) e.getKey(), entry.key);
+                assertEquals(e.getValue().pageId, entry.rid.pageId);
+            }
+            assertFalse(cursor.hasNext());
+        }
+    }
+
+    @Test
+    public void testInsertsFlushIntoRunsAndStayFindable() {
+        LsmIndex lsm = LsmIndex.open(dir, 2000, 4);
+        Random rnd = new Random(5);
+        TreeMap<Integer, RecordId> expected = new TreeMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            int key = rnd.nextInt(1_000_000);
+            RecordId rid = new RecordId(i, 0);
+            lsm.insert(key, rid);
+            expected.put(key, rid); // A later insert of the same key replaces the earlier one
+        }
+        assertTrue(lsm.getRunCount() > 0, "Expected the memtable to have been flushed");
+
+        for (Map.Entry<Integer, RecordId> e : expected.entrySet()) {
+            RecordId rid = lsm.find(e.getKey());
+            assertNotNull(rid, "Lost key " + e.getKey());
+            assertEquals(e.getValue().pageId, rid.pageId);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int key = 1_000_000 + i;
+            assertNull(lsm.find(key));
+        }
+        assertScanMatches(expected, lsm, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertScanMatches(expected, lsm, 250_000, 260_000);
+        lsm.close();
+    }
+
+    @Test
+    public void testDeletesHideOlderRunsAndSurviveCompaction() {
+        LsmIndex lsm = LsmIndex.open(dir, 1000, 4);
+        TreeMap<Integer, RecordId> expected = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            lsm.insert(i, new RecordId(i, 0));
+            expected.put(i, new RecordId(i, 0));
+        }
+        // The deletes land in newer runs than the keys they hide
+        for (int i = 0; i < 20_000; i += 3) {
+            assertTrue(lsm.delete(i));
+            expected.remove(i);
+        }
+        assertFalse(lsm.delete(0));
+        assertFalse(lsm.delete(-5));
+
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(i % 3 != 0, lsm.find(i) != null, "Wrong result for key " + i);
+        }
+        assertScanMatches(expected, lsm, 0, 20_000);
+
+        // Compaction merges full levels (and drops tombstones at the bottom) without changing answers
+        lsm.flush();
+        lsm.compact();
+        int[] levels = lsm.getRunLevels();
+        for (int level : levels) {
+            int n = 0;
+            for (int l : levels) if (l == level) n++;
+            assertTrue(n < 4, "Level " + level + " still has " + n + " runs");
+        }
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(i % 3 != 0, lsm.find(i) != null, "Wrong result after compaction for key " + i);
+        }
+        assertScanMatches(expected, lsm, 0, 20_000);
+
+        // A deleted key can come back
+        lsm.insert(3, new RecordId(77, 0));
+        assertEquals(77, lsm.find(3).pageId);
+        lsm.close();
+    }
+
+    @Test
+    public void testReopenFindsTheRuns() {
+        LsmIndex lsm = LsmIndex.open(dir, 500, 4);
+        for (int i = 0; i < 5000; i++) {
+            lsm.insert(i * 2, new RecordId(i, 1));
+        }
+        lsm.delete(10);
+        lsm.close(); // Flushes what is still in the memtable
+
+        LsmIndex reopened = LsmIndex.open(dir, 500, 4);
+        assertTrue(reopened.getRunCount() > 0);
+        assertNull(reopened.find(10));
+        for (int i = 0; i < 5000; i++) {
+            if (i == 5) continue;
+            RecordId rid = reopened.find(i * 2);
+            assertNotNull(rid, "Lost key " + i * 2);
+            assertEquals(i, rid.pageId);
+            assertNull(reopened.find(i * 2 + 1));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testTombstoneRecordIdIsRejected() {
+        LsmIndex lsm = LsmIndex.open(dir, 100, 4);
+        assertThrows(IllegalArgumentException.class, () -> lsm.insert(1, SortedRun.TOMBSTONE));
+        lsm.close();
+    }
+
+    @Test
+    public void testBothEnginesAnswerTheSameThroughIndex() {
+        HeapFile disk = new HeapFile(btreeFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        Index[] engines = { new BTreeFile(bm, 0), LsmIndex.open(dir, 1500, 4) };
+
+        Random rnd = new Random(9);
+        TreeMap<Integer, RecordId> expected = new TreeMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            int key = rnd.nextInt(50_000);
+            if (expected.containsKey(key)) continue; // BTreeFile keeps duplicates, LsmIndex overwrites
+            RecordId rid = new RecordId(i, i % 7);
+            expected.put(key, rid);
+            for (Index index : engines) index.insert(key, rid);
+        }
+        for (int i = 0; i < 2000; i++) {
+            int key = rnd.nextInt(50_000);
+            boolean existed = expected.remove(key) != null;
+            for (Index index : engines) assertEquals(existed, index.delete(key));
+        }
+
+        for (Index index : engines) {
+            for (int key = 0; key < 50_000; key += 7) {
+                RecordId want = expected.get(key);
+                RecordId got = index.find(key);
+                if (want == null) {
+                    assertNull(got, index.getClass().getSimpleName() + " found deleted key " + key);
+                } else {
+                    assertNotNull(got, index.getClass().getSimpleName() + " lost key " + key);
+                    assertEquals(want.pageId, got.pageId);
+                    assertEquals(want.slotNumber, got.slotNumber);
+                }
+            }
+            assertScanMatches(expected, index, 10_000, 30_000);
+        }
+        ((LsmIndex) engines[1]).close();
+    }
+}
@@ -0,0 +1,160 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import com.jdb.storage.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NonUniqueBTreeFileTest {
+    private File tempFile = new File("btree_postings.dat");
+    private final KeyCodec byAge = new KeyCodec(Type.INT);
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    @Test
+    public void testLowCardinalityColumnReturnsEveryMatch() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        NonUniqueBTreeFile index = new NonUniqueBTreeFile(bm, 0);
+
+        // 50k rows (100 per heap page), ages 18..67 spread evenly
+        int rows = 50_000;
+        for (int r = 0; r < rows; r++) {
+            index.insert(byAge.encode(18 + r % 50), new RecordId(r / 100, r % 100));
+        }
+        // While the lists grow inline (up to INLINE_LIMIT each) the leaf splits; after that each key is a 13-byte header
+        assertTrue(index.getHeight() <= 2);
+
+        for (int age = 18; age < 68; age++) {
+            List<RecordId> rids = index.lookup(byAge.encode(age));
+            assertEquals(1000, rids.size());
+            assertEquals(1000, index.count(byAge.encode(age)));
+            for (int i = 0; i < rids.size(); i++) {
+                int r = (age - 18) + 50 * i;
+                assertEquals(r / 100, rids.get(i).pageId);
+                assertEquals(r % 100, rids.get(i).slotNumber);
+            }
+        }
+        assertTrue(index.lookup(byAge.encode(99)).isEmpty());
+        assertEquals(0, index.count(byAge.encode(17)));
+
+        // Each list takes ~2 overflow pages of 510: about 100 pages, not one leaf entry per row
+        bm.flushAll();
+        assertTrue(disk.getNumPages() < 150, "Pages: " + disk.getNumPages());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testRandomOrderInsertsStaySortedAcrossOverflowPages() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        NonUniqueBTreeFile index = new NonUniqueBTreeFile(bm, 0);
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) order.add(i);
+        Collections.shuffle(order, new Random(9));
+        byte[] key = byAge.encode(30);
+        for (int i : order) {
+            index.insert(key, new RecordId(i / 7, i % 7));
+        }
+        // Repeats are ignored, inline or overflowed
+        index.insert(key, new RecordId(0, 0));
+        index.insert(key, new RecordId(714, 1));
+
+        List<RecordId> rids = index.lookup(key);
+        assertEquals(5000, rids.size());
+        for (int i = 0; i < rids.size(); i++) {
+            assertEquals(i / 7, rids.get(i).pageId);
+            assertEquals(i % 7, rids.get(i).slotNumber);
+        }
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testManyKeysSplitLeavesAndReopen() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        NonUniqueBTreeFile index = new NonUniqueBTreeFile(bm, 0);
+        KeyCodec byName = new KeyCodec(Type.STRING);
+
+        // 20k distinct names, three rows each, in random order
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 20_000 * 3; i++) order.add(i);
+        Collections.shuffle(order, new Random(11));
+        for (int i : order) {
+            index.insert(byName.encode("name-" + (i % 20_000)), new RecordId(i, 0));
+        }
+        assertEquals(2, index.getHeight());
+        for (int n = 0; n < 20_000; n += 97) {
+            List<RecordId> rids = index.lookup(byName.encode("name-" + n));
+            assertEquals(3, rids.size());
+            assertEquals(n, rids.get(0).pageId);
+            assertEquals(n + 40_000, rids.get(2).pageId);
+        }
+
+        bm.flushAll();
+        NonUniqueBTreeFile reopened = new NonUniqueBTreeFile(new BufferManager(disk, 64), 0);
+        assertEquals(3, reopened.count(byName.encode("name-12345")));
+        assertThrows(IllegalStateException.class, () -> new VarKeyBTreeFile(bm, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> index.insert(new byte[NonUniqueBTreeFile.MAX_KEY_SIZE + 1], new RecordId(0, 0)));
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testConcurrentReadersOnATinyOffHeapPool() throws Exception {
+        // Six off-heap frames: readers evict each other's pages all the time,
+        // and an evicted frame's memory is reused at once
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 6, true);
+        NonUniqueBTreeFile index = new NonUniqueBTreeFile(bm, 0);
+        KeyCodec codec = new KeyCodec(Type.INT);
+        int keys = 3000;
+        for (int k = 0; k < keys; k++) {
+            // Key 0 gets an overflow chain, the rest short inline lists
+            int rows = k == 0 ? 3000 : 3;
+            for (int r = 0; r < rows; r++) {
+                index.insert(codec.encode(k), new RecordId(k, r));
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                int wrong = 0;
+                for (int j = 0; j < 5_000; j++) {
+                    int k = j % 100 == 0 ? 0 : random.nextInt(keys);
+                    List<RecordId> rids = index.lookup(codec.encode(k));
+                    if (rids.size() != (k == 0 ? 3000 : 3)) wrong++;
+                    for (RecordId rid : rids) {
+                        if (rid.pageId != k) wrong++;
+                    }
+                }
+                return wrong;
+            }));
+        }
+        for (Future<Integer> f : results) {
+            assertEquals(0, (int) f.get(), "A reader saw another page's bytes");
+        }
+        pool.shutdown();
+        try { disk.close(); } catch(Exception e){}
+    }
+}
@@ -0,0 +1,54 @@
+package com.jdb.index;
+
+import com.jdb.storage.RecordId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostingListTest {
+
+    @Test
+    public void testInlineRoundTripIsDeltaCoded() {
+        // 40 rows on each of 5 heap pages, the way a table fills up
+        List<RecordId> rids = new ArrayList<>();
+        for (int page = 0; page < 5; page++) {
+            for (int slot = 0; slot < 40; slot++) {
+                rids.add(new RecordId(page, slot));
+            }
+        }
+        byte[] encoded = PostingList.encodeInline(rids);
+        assertFalse(PostingList.isOverflow(encoded));
+        assertEquals(200, PostingList.getCount(encoded));
+        assertTrue(encoded.length < 200 * 8 / 3, "Delta coding should beat 8 bytes a row: " + encoded.length);
+
+        List<RecordId> decoded = PostingList.decodeInline(encoded);
+        assertEquals(200, decoded.size());
+        for (int i = 0; i < rids.size(); i++) {
+            assertEquals(0, PostingList.compare(rids.get(i), decoded.get(i)));
+        }
+    }
+
+    @Test
+    public void testNegativeAndLargeIds() {
+        List<RecordId> rids = new ArrayList<>();
+        rids.add(new RecordId(-5, 3));
+        rids.add(new RecordId(-5, 300_000));
+        rids.add(new RecordId(Integer.MAX_VALUE, 0));
+        List<RecordId> decoded = PostingList.decodeInline(PostingList.encodeInline(rids));
+        assertEquals(-5, decoded.get(0).pageId);
+        assertEquals(300_000, decoded.get(1).slotNumber);
+        assertEquals(Integer.MAX_VALUE, decoded.get(2).pageId);
+    }
+
+    @Test
+    public void testOverflowHeader() {
+        byte[] header = PostingList.encodeOverflow(12_345, 7, 42);
+        assertTrue(PostingList.isOverflow(header));
+        assertEquals(12_345, PostingList.getCount(header));
+        assertEquals(7, PostingList.getFirstPageId(header));
+        assertEquals(42, PostingList.getLastPageId(header));
+        assertEquals(-2, PostingList.search(List.of(new RecordId(1, 1), new RecordId(1, 5)), new RecordId(1, 3)));
+    }
+}
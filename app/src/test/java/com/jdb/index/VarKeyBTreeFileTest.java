@@ -0,0 +1,294 @@
+package com.jdb.index;
+
+import com.jdb.buffer.BufferManager;
+import com.jdb.storage.HeapFile;
+import com.jdb.storage.RecordId;
+import com.jdb.storage.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VarKeyBTreeFileTest {
+    private File tempFile = new File("btree_var.dat");
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    private static byte[] url(int i) {
+        return String.format("https://shop.example.com/customers/acme-corporation/orders/%08d", i).getBytes();
+    }
+
+    @Test
+    public void testLongSharedPrefixKeysStayShallow() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 256);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+
+        // 40k keys of 66 bytes in random order. Stored whole they'd need ~80 bytes
+        // per entry (~50 per page, ~800 full leaves, so three levels); with the
+        // page prefix stored once an entry is ~15 bytes.
+        int n = 40_000;
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < n; i++) order.add(i);
+        Collections.shuffle(order, new Random(3));
+        for (int i : order) {
+            btree.insert(url(i), new RecordId(i, 0));
+        }
+        assertEquals(2, btree.getHeight());
+        bm.flushAll();
+        int pages = disk.getNumPages();
+        assertTrue(pages < n / 50 / 2, "Expected compressed leaves, got " + pages + " pages");
+
+        for (int i = 0; i < n; i += 13) {
+            RecordId rid = btree.find(url(i));
+            assertNotNull(rid, "Lost key " + i);
+            assertEquals(i, rid.pageId);
+        }
+        assertNull(btree.find("https://shop.example.com/customers/acme-corporation/orders/".getBytes()));
+
+        // A range crosses many leaves, in order
+        Iterator<VarIndexEntry> it = btree.scan(url(1000), url(5999));
+        for (int i = 1000; i < 6000; i++) {
+            assertTrue(it.hasNext());
+            assertEquals(i, it.next().rid.pageId);
+        }
+        assertFalse(it.hasNext());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testCompositeKeyRangeScanAndReopen() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        KeyCodec byTenant = new KeyCodec(Type.INT, Type.STRING);
+
+        // 8 tenants x 2000 names, shuffled
+        List<int[]> rows = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            for (int i = 0; i < 2000; i++) rows.add(new int[]{t, i});
+        }
+        Collections.shuffle(rows, new Random(5));
+        for (int[] r : rows) {
+            btree.insert(byTenant.encode(r[0], "user" + r[1]), new RecordId(r[0], r[1]));
+        }
+
+        // Everything for tenant 3: from (3, "") to (3, U+FFFF), which sorts after any name
+        Iterator<VarIndexEntry> it = btree.scan(byTenant.encode(3, ""), byTenant.encode(3, "\uffff"));
+        int count = 0;
+        String last = "";
+        while (it.hasNext()) {
+            VarIndexEntry e = it.next();
+            Object[] values = byTenant.decode(e.key);
+            assertEquals(3, values[0]);
+            assertEquals(3, e.rid.pageId);
+            assertTrue(((String) values[1]).compareTo(last) > 0);
+            last = (String) values[1];
+            count++;
+        }
+        assertEquals(2000, count);
+
+        // Duplicates are kept, and the tree reopens from its header page
+        btree.insert(byTenant.encode(7, "user5"), new RecordId(-7, 5));
+        bm.flushAll();
+        VarKeyBTreeFile reopened = new VarKeyBTreeFile(new BufferManager(disk, 64), 0);
+        assertEquals(btree.getRootPageId(), reopened.getRootPageId());
+        int dups = 0;
+        for (Iterator<VarIndexEntry> d = reopened.scan(byTenant.encode(7, "user5"), byTenant.encode(7, "user5")); d.hasNext(); d.next()) {
+            dups++;
+        }
+        assertEquals(2, dups);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testScanSurvivesSplitsBetweenCalls() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        for (int i = 0; i < 20_000; i += 2) {
+            btree.insert(url(i), new RecordId(i, 0));
+        }
+
+        // Read half the even keys, then fill in every odd key (many splits), then finish
+        Iterator<VarIndexEntry> it = btree.scan(null, null);
+        int expected = 0;
+        for (; expected < 10_000; expected += 2) {
+            assertEquals(expected, it.next().rid.pageId);
+        }
+        for (int i = 1; i < 20_000; i += 2) {
+            btree.insert(url(i), new RecordId(i, 0));
+        }
+        // The rest of the leaf the scan had copied is returned as it was; after
+        // that it re-finds its place, so nothing is skipped or repeated and the
+        // odd keys further on show up
+        int prev = expected - 2;
+        int odd = 0;
+        while (it.hasNext()) {
+            int k = it.next().rid.pageId;
+            assertTrue(k > prev, k + " after " + prev);
+            if (k % 2 == 0) {
+                assertEquals(prev + (prev % 2 == 0 ? 2 : 1), k, "Skipped an even key");
+            } else {
+                odd++;
+            }
+            prev = k;
+        }
+        assertEquals(19_999, prev);
+        assertTrue(odd > 4_800, "Only " + odd + " new keys seen");
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testScanResumesInsideARunOfDuplicates() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        byte[] dup = "dup".getBytes();
+        for (int i = 0; i < 1000; i++) {
+            btree.insert(dup, new RecordId(i, 0));
+        }
+
+        // Stop partway through the run (and through its first leaf), change the tree, go on
+        Iterator<VarIndexEntry> it = btree.scan(null, null);
+        boolean[] seen = new boolean[1000];
+        for (int i = 0; i < 10; i++) {
+            seen[it.next().rid.pageId] = true;
+        }
+        btree.insert("zzz".getBytes(), new RecordId(-1, 0));
+        btree.insert(dup, new RecordId(1000, 0)); // Lands after the run: still returned
+        int count = 10;
+        boolean sawZzz = false;
+        while (it.hasNext()) {
+            VarIndexEntry e = it.next();
+            if (e.rid.pageId == -1) {
+                sawZzz = true;
+            } else if (e.rid.pageId < 1000) {
+                assertFalse(seen[e.rid.pageId], "Entry " + e.rid.pageId + " returned twice");
+                seen[e.rid.pageId] = true;
+            }
+            count++;
+        }
+        assertTrue(sawZzz);
+        assertEquals(1002, count);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testFindSeesDuplicatesLeftOfAnEqualSeparator() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        byte[] smith = "smith".getBytes();
+        int copies = 1000; // Splits fall inside the run: the separators are "smith" itself
+        for (int i = 0; i < copies; i++) {
+            btree.insert(smith, new RecordId(i, 0));
+        }
+
+        // Newest first: the last leaves of the run empty out (leaves aren't
+        // merged), and the copies left are all before the separators
+        for (int i = copies - 1; i >= 0; i--) {
+            assertNotNull(btree.find(smith), "Lost the key with " + (i + 1) + " copies left");
+            assertTrue(btree.delete(smith, new RecordId(i, 0)));
+        }
+        assertNull(btree.find(smith));
+        assertFalse(btree.scan(smith, smith).hasNext());
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testConcurrentReadersOnATinyOffHeapPool() throws Exception {
+        // Six off-heap frames: every lookup evicts, and an evicted frame's memory
+        // is reused at once, so a reader must keep each node pinned while it reads it
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 6, true);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        int n = 20_000;
+        for (int i = 0; i < n; i++) {
+            btree.insert(url(i), new RecordId(i, 0));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                int wrong = 0;
+                for (int j = 0; j < 20_000; j++) {
+                    int i = random.nextInt(n);
+                    RecordId rid = btree.find(url(i));
+                    if (rid == null || rid.pageId != i) wrong++;
+                }
+                return wrong;
+            }));
+        }
+        for (Future<Integer> f : results) {
+            assertEquals(0, (int) f.get(), "A reader saw another page's bytes");
+        }
+        pool.shutdown();
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testDeleteLeavesTheOtherEntries() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 64);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        for (int i = 0; i < 10_000; i++) {
+            btree.insert(url(i), new RecordId(i, 0));
+        }
+        for (int i = 0; i < 10_000; i += 3) {
+            assertTrue(btree.delete(url(i), new RecordId(i, 0)));
+        }
+        assertFalse(btree.delete(url(0), new RecordId(0, 0)));
+        assertFalse(btree.delete(url(1), new RecordId(1, 1))); // Right key, wrong RecordId
+
+        Iterator<VarIndexEntry> it = btree.scan(null, null);
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 3 == 0) {
+                assertNull(btree.find(url(i)));
+                continue;
+            }
+            assertEquals(i, it.next().rid.pageId);
+        }
+        assertFalse(it.hasNext());
+
+        // Deleted space is reused
+        btree.insert(url(3), new RecordId(33, 0));
+        assertEquals(33, btree.find(url(3)).pageId);
+        try { disk.close(); } catch(Exception e){}
+    }
+
+    @Test
+    public void testKeyFormatIsChecked() {
+        HeapFile disk = new HeapFile(tempFile);
+        BufferManager bm = new BufferManager(disk, 16);
+        VarKeyBTreeFile btree = new VarKeyBTreeFile(bm, 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> btree.insert(new byte[BTreeVarPage.MAX_KEY_SIZE + 1], new RecordId(0, 0)));
+        btree.insert(new byte[BTreeVarPage.MAX_KEY_SIZE], new RecordId(0, 0));
+
+        // An int-key BTreeFile refuses a var-key header, and the other way round
+        assertThrows(IllegalStateException.class, () -> new BTreeFile(bm, 0));
+        File other = new File("btree_var_int.dat");
+        HeapFile intDisk = new HeapFile(other);
+        BufferManager intBm = new BufferManager(intDisk, 16);
+        new BTreeFile(intBm, 0).insert(1, new RecordId(1, 1));
+        assertThrows(IllegalStateException.class, () -> new VarKeyBTreeFile(intBm, 0));
+        try { disk.close(); intDisk.close(); } catch(Exception e){}
+        other.delete();
+    }
+}
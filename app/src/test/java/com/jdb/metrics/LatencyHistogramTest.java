@@ -0,0 +1,58 @@
+package com.jdb.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAndPercentiles() {
+        assertEquals(0, LatencyHistogram.bucketOf(500));       // < 1us
+        assertEquals(1, LatencyHistogram.bucketOf(1_000));     // [1, 2) us
+        assertEquals(4, LatencyHistogram.bucketOf(9_000));     // [8, 16) us
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            h.record(3_000); // 3us
+        }
+        h.record(5_000_000); // one 5ms outlier
+
+        HistogramSnapshot s = h.snapshot();
+        assertEquals(100, s.count);
+        assertEquals(4, s.getPercentileMicros(0.5), "3us lands in the [2, 4) bucket");
+        assertEquals(4, s.getPercentileMicros(0.99));
+        assertEquals(8192, s.getPercentileMicros(1.0), "5ms lands in the [4096, 8192) bucket");
+        assertEquals((99 * 3_000 + 5_000_000) / 1000.0 / 100, s.getMeanMicros(), 1e-9);
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentileMicros(0.99));
+    }
+
+    @Test
+    public void testConcurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram h = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    h.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        HistogramSnapshot s = h.snapshot();
+        assertEquals(200_000, s.count);
+        long inBuckets = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            inBuckets += s.getBucketCount(i);
+        }
+        assertEquals(200_000, inBuckets);
+    }
+}
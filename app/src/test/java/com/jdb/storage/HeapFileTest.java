@@ -4,6 +4,11 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class HeapFileTest {
@@ -44,4 +49,41 @@ public class HeapFileTest {
         
         hf2.close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentPositionalReads() throws Exception {
+        HeapFile hf = new HeapFile(tempFile);
+        int numPages = 64;
+        for (int i = 0; i < numPages; i++) {
+            Page p = new Page(i);
+            p.setInt(0, i * 10);
+            p.setInt(Page.PAGE_SIZE - 4, i);
+            hf.writePage(p);
+        }
+        assertEquals(numPages, hf.getNumPages());
+
+        // Many threads read random pages through the same file at once
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            results.add(pool.submit(() -> {
+                for (int n = 0; n < 2000; n++) {
+                    int pageId = (n * 31 + seed) % numPages;
+                    Page p = hf.readPage(pageId);
+                    if (p.getInt(0) != pageId * 10 || p.getInt(Page.PAGE_SIZE - 4) != pageId) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(), "Every concurrent read should see the page it asked for");
+        }
+        pool.shutdown();
+
+        assertThrows(IllegalArgumentException.class, () -> hf.readPage(numPages));
+        hf.close();
+    }
+}
@@ -0,0 +1,74 @@
+package com.jdb.storage;
+
+import com.jdb.buffer.BufferManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedHeapFileTest {
+    private File tempFile = new File("mapped_test.dat");
+
+    @AfterEach
+    public void cleanup() {
+        if (tempFile.exists()) tempFile.delete();
+    }
+
+    @Test
+    public void testViewsWriteThroughToFile() throws IOException {
+        MappedHeapFile mf = new MappedHeapFile(tempFile);
+
+        // 1. Write two ordinary pages through the mapping
+        Page p0 = new Page(0);
+        p0.setInt(0, 111);
+        mf.writePage(p0);
+        Page p1 = new Page(1);
+        p1.setInt(0, 222);
+        mf.writePage(p1);
+        assertEquals(2, mf.getNumPages());
+
+        // 2. Reading returns a zero-copy view
+        Page view = mf.readPage(1);
+        assertTrue(view.isView());
+        assertEquals(222, view.getInt(0));
+
+        // 3. Modifying the view modifies the mapped file directly
+        view.setInt(8, 333);
+        assertEquals(333, mf.readPage(1).getInt(8));
+
+        mf.close();
+
+        // 4. Close trims the chunk padding, and a plain HeapFile sees the data
+        assertEquals(2L * Page.PAGE_SIZE, tempFile.length());
+        HeapFile hf = new HeapFile(tempFile);
+        assertEquals(111, hf.readPage(0).getInt(0));
+        assertEquals(333, hf.readPage(1).getInt(8));
+        hf.close();
+    }
+
+    @Test
+    public void testGrowsAcrossChunksViaBufferManager() throws IOException {
+        MappedHeapFile mf = new MappedHeapFile(tempFile);
+        BufferManager bm = new BufferManager(mf, 8);
+
+        // Allocate past the first mapped chunk
+        int total = MappedHeapFile.CHUNK_PAGES + 5;
+        for (int i = 0; i < total; i++) {
+            int pageId = bm.allocateNewPage();
+            Page p = bm.getPage(pageId);
+            p.setInt(0, pageId + 1);
+            bm.setPageDirty(pageId, true);
+        }
+        bm.flushAll();
+        assertEquals(total, mf.getNumPages());
+        assertEquals(total, mf.readPage(total - 1).getInt(0));
+        mf.close();
+
+        HeapFile hf = new HeapFile(tempFile);
+        assertEquals(total, hf.getNumPages());
+        assertEquals(MappedHeapFile.CHUNK_PAGES + 1, hf.readPage(MappedHeapFile.CHUNK_PAGES).getInt(0));
+        hf.close();
+    }
+}
@@ -0,0 +1,80 @@
+package com.jdb.storage;
+
+import com.jdb.index.BTreeLeafPage;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Micro-benchmark for the Page accessors on the index/heap hot paths.
+ * Uses the per-thread allocation counter to prove that lookups do not allocate.
+ */
+public class PageBenchmarkTest {
+    private static final int OPS = 200_000;
+
+    // Slack for the measurement itself (the counter call, JIT bookkeeping)
+    private static final long ALLOCATION_SLACK_BYTES = 16 * 1024;
+
+    @Test
+    public void testTypedAccessorsAreAllocationFree() {
+        Page p = new Page(0);
+        for (int off = 0; off + 8 <= Page.PAGE_SIZE; off += 8) {
+            p.setLong(off, off);
+        }
+
+        long sink = 0;
+        for (int i = 0; i < OPS; i++) sink += readAll(p); // Warm up
+
+        long before = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS; i++) sink += readAll(p);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - before;
+
+        System.out.printf("Page accessors: %.1f ns/op, %d bytes allocated over %d ops (sink=%d)%n",
+                (double) elapsed / OPS, allocated, OPS, sink);
+        assertTrue(allocated < ALLOCATION_SLACK_BYTES, "Expected ~0 bytes/op but saw " + allocated + " bytes");
+    }
+
+    @Test
+    public void testLeafKeySearchIsAllocationFree() {
+        BTreeLeafPage leaf = new BTreeLeafPage(new Page(1));
+        leaf.format();
+        for (int k = 0; k < leaf.getMaxCapacity(); k++) {
+            leaf.insert(k * 2, new RecordId(k, 0));
+        }
+
+        // Odd keys are never present, so lookup() scans keys without building a RecordId
+        int misses = 0;
+        for (int i = 0; i < OPS / 10; i++) {
+            if (leaf.lookup(i * 2 + 1) == null) misses++;
+        }
+
+        long before = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS; i++) {
+            if (leaf.lookup((i % 680) | 1) == null) misses++;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - before;
+
+        System.out.printf("Leaf key search: %.1f ns/lookup, %d bytes allocated over %d lookups%n",
+                (double) elapsed / OPS, allocated, OPS);
+        assertEquals(OPS + OPS / 10, misses);
+        assertTrue(allocated < ALLOCATION_SLACK_BYTES, "Expected ~0 bytes/lookup but saw " + allocated + " bytes");
+    }
+
+    private static long readAll(Page p) {
+        long sum = 0;
+        for (int off = 0; off + 8 <= 256; off += 8) {
+            sum += p.getInt(off) + p.getLong(off) + p.getShort(off) + p.getByte(off);
+        }
+        return sum;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return mx.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+}
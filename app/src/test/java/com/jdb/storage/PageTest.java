@@ -15,4 +15,38 @@ public class PageTest {
         // Test reading it back
         assertEquals(12345, p.getInt(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTypedAccessorsOnArrayAndView() {
+        Page heap = new Page(1);
+        heap.setLong(8, 1L << 40);
+        heap.setShort(16, (short) -7);
+        heap.setByte(18, (byte) 3);
+        heap.writeBytes(20, new byte[]{1, 2, 3});
+
+        assertEquals(1L << 40, heap.getLong(8));
+        assertEquals(-7, heap.getShort(16));
+        assertEquals(3, heap.getByte(18));
+        assertArrayEquals(new byte[]{1, 2, 3}, heap.readBytes(20, 3));
+
+        // A view over the same bytes sees identical values
+        Page view = new Page(1, java.nio.ByteBuffer.allocateDirect(Page.PAGE_SIZE).put(heap.getBuffer()).clear());
+        assertTrue(view.isView());
+        assertEquals(1L << 40, view.getLong(8));
+        assertEquals(-7, view.getShort(16));
+        assertArrayEquals(new byte[]{1, 2, 3}, view.readBytes(20, 3));
+    }
+
+    @Test
+    public void testMoveBytesHandlesOverlap() {
+        Page heap = new Page(1);
+        Page view = new Page(1, java.nio.ByteBuffer.allocateDirect(Page.PAGE_SIZE));
+        for (Page p : new Page[]{heap, view}) {
+            p.writeBytes(0, new byte[]{1, 2, 3, 4, 5});
+            p.moveBytes(0, 2, 5); // Shift right over itself
+            assertArrayEquals(new byte[]{1, 2, 1, 2, 3, 4, 5}, p.readBytes(0, 7));
+            p.moveBytes(2, 0, 5); // And back left
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, p.readBytes(0, 5));
+        }
+    }
+}